@@ -1,12 +1,19 @@
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.InputStreamReader;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 import controller.ImageControllerFeatures;
 import controller.ImageControllerFeaturesImpl;
 import controller.ImageControllerImpl;
 import model.ImageProcessor;
 import model.ImageProcessorImpl;
+import model.LazyImageProcessor;
+import model.OffHeapImageStore;
+import model.OperationCache;
+import model.SpillingImageStore;
+import model.StreamingPipeline;
 import view.ImageGUIViewImpl;
 import view.ImageTextView;
 
@@ -21,7 +28,61 @@ public class ImageProcessorMain {
    *      if there is an error in the transmission of rendering the message
    */
   public static void main(String[] args) throws IllegalStateException {
-    ImageProcessor model = new ImageProcessorImpl();
+    // split per-pixel work across every core for images larger than 256x256
+    int parallelism = Runtime.getRuntime().availableProcessors();
+    if (args.length > 0 && args[0].equals("-stream")) {
+      // stream a Netpbm file through the given commands, 64 rows at a time
+      if (args.length < 3) {
+        throw new IllegalArgumentException("-stream must be followed by an input file, " +
+                "an output file, and the commands to apply");
+      }
+      StreamingPipeline pipeline = new StreamingPipeline(64, parallelism, 256 * 256);
+      buildPipeline(pipeline, Arrays.copyOfRange(args, 3, args.length));
+      pipeline.run(args[1], args[2]);
+      return;
+    }
+
+    ImageProcessor model;
+    // only the default model can run independent script commands at the same time
+    int scriptParallelism = 1;
+    if (args.length > 0 && args[0].equals("-lazy")) {
+      // defer operations until an image is saved or displayed
+      model = new LazyImageProcessor(parallelism, 256 * 256);
+      args = Arrays.copyOfRange(args, 1, args.length);
+    } else if (args.length > 0 && args[0].equals("-memory")) {
+      // keep at most the given number of megabytes of images in memory, spill the rest
+      if (args.length < 2) {
+        throw new IllegalArgumentException("-memory must be followed by a number of megabytes");
+      }
+      long megabytes;
+      try {
+        megabytes = Long.parseLong(args[1]);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("-memory must be followed by a number of megabytes");
+      }
+      model = new ImageProcessorImpl(parallelism, 256 * 256,
+              new SpillingImageStore(megabytes * 1024 * 1024));
+      args = Arrays.copyOfRange(args, 2, args.length);
+    } else if (args.length > 0 && args[0].equals("-offheap")) {
+      // keep pixels in direct buffers, outside the heap
+      model = new ImageProcessorImpl(parallelism, 256 * 256, new OffHeapImageStore());
+      args = Arrays.copyOfRange(args, 1, args.length);
+    } else if (args.length > 0 && args[0].equals("-mapped")) {
+      // keep pixels in memory-mapped files in the given scratch directory
+      if (args.length < 2) {
+        throw new IllegalArgumentException("-mapped must be followed by a directory");
+      }
+      model = new ImageProcessorImpl(parallelism, 256 * 256,
+              new OffHeapImageStore(Paths.get(args[1])));
+      args = Arrays.copyOfRange(args, 2, args.length);
+    } else if (args.length == 0) {
+      // the GUI keeps up to 64 MB of results, so a slider returning to a value is instant
+      model = new ImageProcessorImpl(parallelism, 256 * 256,
+              new OperationCache(64L * 1024 * 1024));
+    } else {
+      model = new ImageProcessorImpl(parallelism, 256 * 256);
+      scriptParallelism = parallelism;
+    }
     ImageTextView view = new ImageTextView(model);
     ImageControllerImpl controller = new ImageControllerImpl(model, view,
             new InputStreamReader(System.in));
@@ -32,7 +93,19 @@ public class ImageProcessorMain {
     } else if (args[0].equals("-file")) {
       try {
         controller = new ImageControllerImpl(model, view,
-                new FileReader(args[1]));
+                new FileReader(args[1]), scriptParallelism);
+
+        beginProcessor(controller);
+
+      } catch (FileNotFoundException e) {
+        throw new IllegalArgumentException("Invalid filepath. Please make sure " +
+                "you use a .txt file that exists.");
+      }
+    } else if (args[0].equals("-plan")) {
+      // read the whole script first, and only compute the images it saves
+      try {
+        controller = new ImageControllerImpl(model, view,
+                new FileReader(args[1]), scriptParallelism, true);
 
         beginProcessor(controller);
 
@@ -47,7 +120,75 @@ public class ImageProcessorMain {
               "you either inputted:\n" +
               "Nothing for GUI processor\n" +
               "-file filename.txt for script file\n" +
-              "-text for the image processor.");
+              "-plan filename.txt to only compute the images a script saves\n" +
+              "-text for the image processor.\n" +
+              "Any of the above may be preceded by -lazy to defer operations,\n" +
+              "by -memory megabytes to limit the memory used by images,\n" +
+              "or by -offheap or -mapped directory to keep images outside the heap.\n" +
+              "-stream input output commands... streams a Netpbm file through commands.");
+    }
+  }
+
+  /**
+   * Append the given script commands to a streaming pipeline. The commands are the
+   * image operations of the text controller, without image names, e.g.
+   * "brighten 10 sepia blur". Vertical flips cannot be streamed.
+   *
+   * @param pipeline the pipeline to append to
+   * @param commands the commands and their arguments
+   * @throws IllegalArgumentException
+   *      if a command is unknown, cannot be streamed, or is missing arguments
+   */
+  private static void buildPipeline(StreamingPipeline pipeline, String[] commands)
+          throws IllegalArgumentException {
+    try {
+      for (int i = 0; i < commands.length; i++) {
+        switch (commands[i]) {
+          case "brighten":
+            pipeline.brightness(Integer.parseInt(commands[++i]));
+            break;
+          case "horizontal-flip":
+            pipeline.flipHorizontal();
+            break;
+          case "red-component":
+            pipeline.redChannel();
+            break;
+          case "green-component":
+            pipeline.greenChannel();
+            break;
+          case "blue-component":
+            pipeline.blueChannel();
+            break;
+          case "value-component":
+            pipeline.maxVal();
+            break;
+          case "intensity-component":
+            pipeline.intensity();
+            break;
+          case "luma-component":
+            pipeline.luma();
+            break;
+          case "blur":
+            pipeline.gaussianBlur();
+            break;
+          case "sharpen":
+            pipeline.sharpen();
+            break;
+          case "sepia":
+            pipeline.sepia();
+            break;
+          case "greyscale":
+            pipeline.customGreyscale(Double.parseDouble(commands[i + 1]),
+                    Double.parseDouble(commands[i + 2]), Double.parseDouble(commands[i + 3]));
+            i += 3;
+            break;
+          default:
+            throw new IllegalArgumentException("cannot stream command: " + commands[i]);
+        }
+      }
+    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("missing or invalid arguments for a streamed " +
+              "command");
     }
   }
 
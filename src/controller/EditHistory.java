@@ -0,0 +1,291 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
+
+import model.ImageProcessor;
+
+/**
+ * The undo/redo history of the image edited in the GUI. Every state of the image is saved
+ * in the model under its index in the history, starting from 0 for the loaded image, but
+ * only a few states are kept in the model at a time. Each step of the history records the
+ * operation that created it, the state it was applied to, and the operation that reverses
+ * it, if there is one (a flip reverses itself). A state that is not in the model is
+ * rebuilt when it is needed: from the next state with the reversing operation if
+ * possible, otherwise by replaying the operations from the nearest earlier state that is
+ * in the model.
+ * <p></p>
+ * The model keeps the loaded image, the current state, the state brightness is applied
+ * to, the states right before and after the current one if they are already there, and
+ * every keyframe (every state whose index is a multiple of the keyframe spacing). When
+ * that is more states than the cap, the oldest keyframes are dropped first. States that
+ * can no longer be redone are removed from the model as soon as a new step replaces them.
+ */
+final class EditHistory {
+
+  /**
+   * One step of the history.
+   */
+  private static final class Step {
+
+    private final int source;
+    private final BiConsumer<String, String> operation;
+    private final BiConsumer<String, String> inverse;
+
+    /**
+     * Create a step.
+     *
+     * @param source
+     *     The index of the state the operation was applied to
+     * @param operation
+     *     Applies the operation from an image name to a destination name
+     * @param inverse
+     *     Reverses the operation from the name of its result to the name of its source, or
+     *     null if it cannot be reversed
+     */
+    Step(int source, BiConsumer<String, String> operation, BiConsumer<String, String> inverse) {
+      this.source = source;
+      this.operation = operation;
+      this.inverse = inverse;
+    }
+  }
+
+  private final ImageProcessor model;
+  private final int keyframeSpacing;
+  private final int maxStates;
+
+  /**
+   * The steps of the history, by the index of the state they create. The loaded image
+   * has no step; it is null.
+   */
+  private final List<Step> steps;
+
+  /**
+   * The indices of the states that are in the model.
+   */
+  private final TreeSet<Integer> kept;
+
+  private int current;
+  private int base;
+
+  /**
+   * Create an empty history, for before any image is loaded.
+   *
+   * @param model
+   *     The model the states are saved in
+   * @param keyframeSpacing
+   *     Keep every state whose index is a multiple of this
+   * @param maxStates
+   *     The number of states to keep in the model. The loaded, current and base states,
+   *     and the states next to the current one, are kept even beyond it
+   * @throws IllegalArgumentException
+   *     If the spacing or the number of states is less than 1
+   */
+  EditHistory(ImageProcessor model, int keyframeSpacing, int maxStates)
+          throws IllegalArgumentException {
+    if (keyframeSpacing < 1) {
+      throw new IllegalArgumentException("The keyframe spacing must be at least 1.");
+    }
+    if (maxStates < 1) {
+      throw new IllegalArgumentException("The history must keep at least 1 state.");
+    }
+    this.model = model;
+    this.keyframeSpacing = keyframeSpacing;
+    this.maxStates = maxStates;
+    this.steps = new ArrayList<>();
+    this.kept = new TreeSet<>();
+    this.current = 0;
+    this.base = 0;
+  }
+
+  /**
+   * Get the name of a state in the model.
+   *
+   * @param index
+   *     The index of the state
+   * @return
+   *     The name
+   */
+  private static String name(int index) {
+    return Integer.toString(index);
+  }
+
+  /**
+   * Start a new history, after an image has been loaded as state 0. Every other state of
+   * the previous history is removed from the model.
+   */
+  void start() {
+    for (int index : this.kept) {
+      if (index != 0) {
+        this.model.removeImage(EditHistory.name(index));
+      }
+    }
+    this.steps.clear();
+    this.steps.add(null);
+    this.kept.clear();
+    this.kept.add(0);
+    this.current = 0;
+    this.base = 0;
+  }
+
+  /**
+   * Get the name of the current state. It is always in the model once an image is loaded.
+   *
+   * @return
+   *     The name
+   */
+  String current() {
+    return EditHistory.name(this.current);
+  }
+
+  /**
+   * Get the name of the base state, which brightness is applied to. It is always in the
+   * model once an image is loaded.
+   *
+   * @return
+   *     The name
+   */
+  String base() {
+    return EditHistory.name(this.base);
+  }
+
+  /**
+   * Add a step after the current state, and make its result the current state. Every step
+   * that could be redone is discarded.
+   *
+   * @param operation
+   *     Applies the operation from an image name to a destination name
+   * @param inverse
+   *     Reverses the operation from the name of its result to the name of its source, or
+   *     null if it cannot be reversed
+   * @param fromBase
+   *     True to apply the operation to the base state rather than the current state. The
+   *     base state stays the same, so that repeated adjustments do not add up
+   * @throws IllegalArgumentException
+   *     If no image is loaded, or the operation fails
+   */
+  void apply(BiConsumer<String, String> operation, BiConsumer<String, String> inverse,
+             boolean fromBase) throws IllegalArgumentException {
+    if (this.steps.isEmpty()) {
+      throw new IllegalArgumentException("No image is loaded.");
+    }
+    int source = fromBase ? this.base : this.current;
+    int next = this.current + 1;
+    this.materialize(source);
+    operation.accept(EditHistory.name(source), EditHistory.name(next));
+
+    for (int index : new ArrayList<>(this.kept.tailSet(next, false))) {
+      this.model.removeImage(EditHistory.name(index));
+      this.kept.remove(index);
+    }
+    this.steps.subList(next, this.steps.size()).clear();
+    this.steps.add(new Step(source, operation, inverse));
+    this.kept.add(next);
+    this.current = next;
+    if (!fromBase) {
+      this.base = next;
+    }
+    this.trim();
+  }
+
+  /**
+   * Go back to the state before the current one, if there is one.
+   *
+   * @return
+   *     True if there was a state to go back to
+   */
+  boolean undo() {
+    if (this.steps.isEmpty() || this.current == 0) {
+      return false;
+    }
+    this.moveTo(this.current - 1);
+    return true;
+  }
+
+  /**
+   * Go forward to the state after the current one, if it was undone.
+   *
+   * @return
+   *     True if there was a state to go forward to
+   */
+  boolean redo() {
+    if (this.current + 1 >= this.steps.size()) {
+      return false;
+    }
+    this.moveTo(this.current + 1);
+    return true;
+  }
+
+  /**
+   * Make a state the current and base state.
+   *
+   * @param index
+   *     The index of the state
+   */
+  private void moveTo(int index) {
+    this.materialize(index);
+    this.current = index;
+    this.base = index;
+    this.trim();
+  }
+
+  /**
+   * Make sure a state is in the model, rebuilding it if it is not.
+   *
+   * @param index
+   *     The index of the state
+   */
+  private void materialize(int index) {
+    if (this.kept.contains(index)) {
+      return;
+    }
+    int next = index + 1;
+    if (next < this.steps.size() && this.kept.contains(next)
+            && this.steps.get(next).source == index && this.steps.get(next).inverse != null) {
+      this.steps.get(next).inverse.accept(EditHistory.name(next), EditHistory.name(index));
+    } else {
+      Step step = this.steps.get(index);
+      this.materialize(step.source);
+      step.operation.accept(EditHistory.name(step.source), EditHistory.name(index));
+    }
+    this.kept.add(index);
+  }
+
+  /**
+   * Remove the states the history does not need to keep from the model.
+   */
+  private void trim() {
+    Set<Integer> pinned = new HashSet<>();
+    pinned.add(0);
+    pinned.add(this.current);
+    pinned.add(this.base);
+    pinned.add(this.current - 1);
+    pinned.add(this.current + 1);
+
+    List<Integer> dropped = new ArrayList<>();
+    for (int index : this.kept) {
+      if (!pinned.contains(index) && index % this.keyframeSpacing != 0) {
+        dropped.add(index);
+      }
+    }
+    int size = this.kept.size() - dropped.size();
+    for (int index : this.kept) {
+      if (size <= this.maxStates) {
+        break;
+      }
+      if (!pinned.contains(index) && index % this.keyframeSpacing == 0) {
+        dropped.add(index);
+        size--;
+      }
+    }
+
+    for (int index : dropped) {
+      this.model.removeImage(EditHistory.name(index));
+      this.kept.remove(index);
+    }
+  }
+}
@@ -39,6 +39,20 @@ public interface ImageControllerFeatures {
    */
   void brightenRequest(int increment);
 
+  /**
+   * Handle a request to preview a brightness adjustment while it is being made. The
+   * adjustment is applied to a copy of the image shrunk to fit the given size, and is not
+   * added to the history; a brightness request commits it.
+   *
+   * @param increment
+   *     The increment to adjust the brightness by (+/-)
+   * @param width
+   *     The largest width of the preview
+   * @param height
+   *     The largest height of the preview
+   */
+  void previewBrightenRequest(int increment, int width, int height);
+
   /**
    * Handle a request to visualize the red channel of an image.
    */
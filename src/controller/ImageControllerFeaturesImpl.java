@@ -4,6 +4,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Arrays;
+import java.util.function.BiConsumer;
 
 import model.ImageProcessor;
 import model.ImageUtil;
@@ -18,7 +19,9 @@ import view.ImageGUIView;
  * generation of these parameters, since it is not responsible for parsing any user input. This
  * is achieved via a simple counter--image states are saved in the model under names
  * starting from 0. Using this, it is also possible to define more complex features,
- * such as dynamic brightness, undo, and redo.
+ * such as dynamic brightness, undo, and redo. Only a few of these states are kept in the
+ * model; the others are rebuilt from the operations that created them when they are
+ * needed again (see EditHistory).
  * <p></p>
  * While it is possible to load new images, this implementation forces a user
  * to work on one image at a time. It is possible to traverse the states of the current image
@@ -37,26 +40,43 @@ public class ImageControllerFeaturesImpl implements ImageControllerFeatures {
 
   private final ImageProcessor model;
 
-  private final ImageGUIView view;
+  /**
+   * Keep every state whose index is a multiple of this in the model by default.
+   */
+  static final int DEFAULT_KEYFRAME_SPACING = 10;
+
+  /**
+   * The number of states to keep in the model by default.
+   */
+  static final int DEFAULT_MAX_STATES = 8;
 
   /**
-   * The name to give to the model when an operation is performed. Saving images under
-   * an index is also beneficial for undoing and redoing operations.
+   * The name of the shrunk copy of the base image that previews are applied to.
    */
-  
-  private int indexKey;
+  static final String PREVIEW_SOURCE = "preview-source";
 
   /**
-   * The name of the base image to modify. This is especially useful for brightness, which
-   * modifies the brightness of an underlying image rather than exponentially adding to or
-   * subtracting from the brightness of that image.
+   * The name of the latest preview.
    */
-  private int currentIndex;
+  static final String PREVIEW = "preview";
+
+  private final ImageGUIView view;
+
+  /**
+   * The states of the current image. Saving images under an index is beneficial for
+   * undoing and redoing operations. Brightness modifies an underlying base image rather than
+   * exponentially adding to or subtracting from the brightness of that image.
+   */
+  private final EditHistory history;
 
   /**
-   * The number of times a user has requested to undo since the last operation.
+   * The name of the base image that the preview source was shrunk from, or null if there
+   * is no preview source. The preview source is kept while the base image stays the same,
+   * so that every preview of one adjustment reuses it.
    */
-  private int undoCount;
+  private String previewBase;
+  private int previewWidth;
+  private int previewHeight;
 
   /**
    * Constructs an instance of the controller features implementation. This design is
@@ -72,6 +92,29 @@ public class ImageControllerFeaturesImpl implements ImageControllerFeatures {
    */
   public ImageControllerFeaturesImpl(ImageProcessor model, ImageGUIView view)
           throws IllegalArgumentException {
+    this(model, view, DEFAULT_KEYFRAME_SPACING, DEFAULT_MAX_STATES);
+  }
+
+  /**
+   * Constructs an instance of the controller features implementation that keeps at most
+   * the given number of image states in the model.
+   *
+   * @param model
+   *     An object of the ImageProcessor interface
+   * @param view
+   *     An object of the ImageGUIView interface
+   * @param keyframeSpacing
+   *     Keep every state whose index is a multiple of this
+   * @param maxStates
+   *     The number of states to keep. The loaded image, the current state and its
+   *     neighbours are kept even beyond it
+   * @throws IllegalArgumentException
+   *     If the provided model or view are null, or the spacing or number of states is
+   *     less than 1
+   */
+  public ImageControllerFeaturesImpl(ImageProcessor model, ImageGUIView view,
+                                     int keyframeSpacing, int maxStates)
+          throws IllegalArgumentException {
     if (model == null) {
       throw new IllegalArgumentException("The model cannot be null.");
     }
@@ -81,25 +124,20 @@ public class ImageControllerFeaturesImpl implements ImageControllerFeatures {
     }
 
     this.model = model;
+    this.history = new EditHistory(model, keyframeSpacing, maxStates);
+    this.previewBase = null;
 
     this.view = view;
     this.view.addFeatures(this);
-
-
-    // initialize all indices to 0
-    this.indexKey = 0;
-    this.currentIndex = 0;
-    this.undoCount = 0;
   }
 
   @Override
   public void loadRequest(String filepath) {
     try {
-      this.indexKey = 0;
-      this.currentIndex = 0;
-      this.undoCount = 0;
-      this.model.loadImage(filepath, Integer.toString(this.indexKey));
-      this.view.refreshImage(this.model.getImageState(Integer.toString(indexKey)));
+      this.model.loadImage(filepath, "0");
+      this.history.start();
+      this.clearPreview();
+      this.view.refreshImage(this.model.getImageState(this.history.current()));
       this.view.firstMount();
     } catch (IllegalArgumentException e) {
       this.displayMessage("The following error has occurred: " + e.getMessage());
@@ -115,10 +153,10 @@ public class ImageControllerFeaturesImpl implements ImageControllerFeatures {
       // This must be checked in the controller before a file output stream can be generated
       if (!Arrays.asList(model.getSupportedFormats()).contains(extension)) {
         throw new IllegalArgumentException("Please make sure the extension is correct. " +
-                "We only support: .ppm, .jpeg, .jpg, .bmp, .png");
+                "We only support: " + String.join(", ", model.getSupportedFormats()));
       }
       OutputStream imageData = new FileOutputStream(filepath);
-      this.model.saveImage(imageData, Integer.toString(this.indexKey), extension);
+      this.model.saveImage(imageData, this.history.current(), extension);
     } catch (Exception e) {
       this.displayMessage("There was a problem saving your file to: " + filepath);
     }
@@ -127,12 +165,7 @@ public class ImageControllerFeaturesImpl implements ImageControllerFeatures {
   @Override
   public void verticalRequest() {
     try {
-      this.model.flipVertical(Integer.toString(this.indexKey),
-              Integer.toString(this.indexKey + 1));
-      this.indexKey++;
-      this.currentIndex = this.indexKey;
-      this.undoCount = 0;
-      this.view.refreshImage(this.model.getImageState(Integer.toString(indexKey)));
+      this.applyRequest(this.model::flipVertical, this.model::flipVertical);
     } catch (IllegalArgumentException e) {
       this.displayMessage("Please load an image.");
     }
@@ -141,12 +174,7 @@ public class ImageControllerFeaturesImpl implements ImageControllerFeatures {
   @Override
   public void horizontalRequest() {
     try {
-      this.model.flipHorizontal(Integer.toString(this.indexKey),
-              Integer.toString(this.indexKey + 1));
-      this.indexKey++;
-      this.currentIndex = this.indexKey;
-      this.undoCount = 0;
-      this.view.refreshImage(this.model.getImageState(Integer.toString(indexKey)));
+      this.applyRequest(this.model::flipHorizontal, this.model::flipHorizontal);
     } catch (IllegalArgumentException e) {
       this.displayMessage("Please load an image.");
     }
@@ -162,11 +190,32 @@ public class ImageControllerFeaturesImpl implements ImageControllerFeatures {
   @Override
   public void brightenRequest(int increment) {
     try {
-      this.model.brightness(increment, Integer.toString(this.currentIndex),
-              Integer.toString(this.indexKey + 1));
-      this.indexKey++;
-      this.undoCount = 0;
-      this.view.refreshImage(this.model.getImageState(Integer.toString(indexKey)));
+      this.history.apply((name, destName) -> this.model.brightness(increment, name, destName),
+              null, true);
+      this.view.refreshImage(this.model.getImageState(this.history.current()));
+    } catch (IllegalArgumentException e) {
+      this.displayMessage("Please load an image.");
+    }
+  }
+
+  /**
+   * The base image is shrunk once for a whole adjustment, and again only if the base image
+   * or the preview size changes. The preview is not added to the history.
+   */
+  @Override
+  public void previewBrightenRequest(int increment, int width, int height) {
+    try {
+      String base = this.history.base();
+      if (!(base.equals(this.previewBase) && width == this.previewWidth
+              && height == this.previewHeight)) {
+        this.clearPreview();
+        this.model.downscale(width, height, base, PREVIEW_SOURCE);
+        this.previewBase = base;
+        this.previewWidth = width;
+        this.previewHeight = height;
+      }
+      this.model.brightness(increment, PREVIEW_SOURCE, PREVIEW);
+      this.view.refreshImage(this.model.getImageState(PREVIEW));
     } catch (IllegalArgumentException e) {
       this.displayMessage("Please load an image.");
     }
@@ -175,12 +224,7 @@ public class ImageControllerFeaturesImpl implements ImageControllerFeatures {
   @Override
   public void redCompRequest() {
     try {
-      this.model.redChannel(Integer.toString(this.indexKey),
-              Integer.toString(this.indexKey + 1));
-      this.indexKey++;
-      this.currentIndex = this.indexKey;
-      this.undoCount = 0;
-      this.view.refreshImage(this.model.getImageState(Integer.toString(indexKey)));
+      this.applyRequest(this.model::redChannel, null);
     } catch (IllegalArgumentException e) {
       this.displayMessage("Please load an image.");
     }
@@ -189,12 +233,7 @@ public class ImageControllerFeaturesImpl implements ImageControllerFeatures {
   @Override
   public void greenCompRequest() {
     try {
-      this.model.greenChannel(Integer.toString(this.indexKey),
-              Integer.toString(this.indexKey + 1));
-      this.indexKey++;
-      this.currentIndex = this.indexKey;
-      this.undoCount = 0;
-      this.view.refreshImage(this.model.getImageState(Integer.toString(indexKey)));
+      this.applyRequest(this.model::greenChannel, null);
     } catch (IllegalArgumentException e) {
       this.displayMessage("Please load an image.");
     }
@@ -203,12 +242,7 @@ public class ImageControllerFeaturesImpl implements ImageControllerFeatures {
   @Override
   public void blueCompRequest() {
     try {
-      this.model.blueChannel(Integer.toString(this.indexKey),
-              Integer.toString(this.indexKey + 1));
-      this.indexKey++;
-      this.currentIndex = this.indexKey;
-      this.undoCount = 0;
-      this.view.refreshImage(this.model.getImageState(Integer.toString(indexKey)));
+      this.applyRequest(this.model::blueChannel, null);
     } catch (IllegalArgumentException e) {
       this.displayMessage("Please load an image.");
     }
@@ -217,11 +251,7 @@ public class ImageControllerFeaturesImpl implements ImageControllerFeatures {
   @Override
   public void valueRequest() {
     try {
-      this.model.maxVal(Integer.toString(this.indexKey), Integer.toString(this.indexKey + 1));
-      this.indexKey++;
-      this.currentIndex = this.indexKey;
-      this.undoCount = 0;
-      this.view.refreshImage(this.model.getImageState(Integer.toString(indexKey)));
+      this.applyRequest(this.model::maxVal, null);
     } catch (IllegalArgumentException e) {
       this.displayMessage("Please load an image.");
     }
@@ -230,11 +260,7 @@ public class ImageControllerFeaturesImpl implements ImageControllerFeatures {
   @Override
   public void intensityRequest() {
     try {
-      this.model.intensity(Integer.toString(this.indexKey), Integer.toString(this.indexKey + 1));
-      this.indexKey++;
-      this.currentIndex = this.indexKey;
-      this.undoCount = 0;
-      this.view.refreshImage(this.model.getImageState(Integer.toString(indexKey)));
+      this.applyRequest(this.model::intensity, null);
     } catch (IllegalArgumentException e) {
       this.displayMessage("Please load an image.");
     }
@@ -243,11 +269,7 @@ public class ImageControllerFeaturesImpl implements ImageControllerFeatures {
   @Override
   public void lumaRequest() {
     try {
-      this.model.luma(Integer.toString(this.indexKey), Integer.toString(this.indexKey + 1));
-      this.indexKey++;
-      this.currentIndex = this.indexKey;
-      this.undoCount = 0;
-      this.view.refreshImage(this.model.getImageState(Integer.toString(indexKey)));
+      this.applyRequest(this.model::luma, null);
     } catch (IllegalArgumentException e) {
       this.displayMessage("Please load an image.");
     }
@@ -256,12 +278,7 @@ public class ImageControllerFeaturesImpl implements ImageControllerFeatures {
   @Override
   public void blurRequest() {
     try {
-      this.model.gaussianBlur(Integer.toString(this.indexKey),
-              Integer.toString(this.indexKey + 1));
-      this.indexKey++;
-      this.currentIndex = this.indexKey;
-      this.undoCount = 0;
-      this.view.refreshImage(this.model.getImageState(Integer.toString(indexKey)));
+      this.applyRequest(this.model::gaussianBlur, null);
     } catch (IllegalArgumentException e) {
       this.displayMessage("Please load an image.");
     }
@@ -270,11 +287,7 @@ public class ImageControllerFeaturesImpl implements ImageControllerFeatures {
   @Override
   public void sharpenRequest() {
     try {
-      this.model.sharpen(Integer.toString(this.indexKey), Integer.toString(this.indexKey + 1));
-      this.indexKey++;
-      this.currentIndex = this.indexKey;
-      this.undoCount = 0;
-      this.view.refreshImage(this.model.getImageState(Integer.toString(indexKey)));
+      this.applyRequest(this.model::sharpen, null);
     } catch (IllegalArgumentException e) {
       this.displayMessage("Please load an image.");
     }
@@ -283,11 +296,7 @@ public class ImageControllerFeaturesImpl implements ImageControllerFeatures {
   @Override
   public void sepiaRequest() {
     try {
-      this.model.sepia(Integer.toString(this.indexKey), Integer.toString(this.indexKey + 1));
-      this.indexKey++;
-      this.currentIndex = this.indexKey;
-      this.undoCount = 0;
-      this.view.refreshImage(this.model.getImageState(Integer.toString(indexKey)));
+      this.applyRequest(this.model::sepia, null);
     } catch (IllegalArgumentException e) {
       this.displayMessage("Please load an image.");
     }
@@ -296,12 +305,8 @@ public class ImageControllerFeaturesImpl implements ImageControllerFeatures {
   @Override
   public void customMatrixRequest(double[][] cMatrix) { // TODO handle exceptions
     try {
-      this.model.colorTransformation(cMatrix, Integer.toString(this.indexKey),
-              Integer.toString(this.indexKey + 1));
-      this.indexKey++;
-      this.currentIndex = this.indexKey;
-      this.undoCount = 0;
-      this.view.refreshImage(this.model.getImageState(Integer.toString(indexKey)));
+      this.applyRequest((name, destName) -> this.model.colorTransformation(cMatrix, name,
+              destName), null);
     } catch (IllegalArgumentException e) {
       this.displayMessage("Please load an image.");
     }
@@ -309,11 +314,9 @@ public class ImageControllerFeaturesImpl implements ImageControllerFeatures {
 
   @Override
   public void undoRequest() {
-    if (this.indexKey != 0) {
-      this.indexKey--;
-      this.currentIndex = this.indexKey;
-      this.undoCount++;
-      this.view.refreshImage(this.model.getImageState(Integer.toString(indexKey)));
+    if (this.history.undo()) {
+      this.clearPreview();
+      this.view.refreshImage(this.model.getImageState(this.history.current()));
     }
   }
 
@@ -324,11 +327,41 @@ public class ImageControllerFeaturesImpl implements ImageControllerFeatures {
    */
   @Override
   public void redoRequest() {
-    if (this.undoCount != 0) {
-      this.indexKey++;
-      this.currentIndex = this.indexKey;
-      this.undoCount--;
-      this.view.refreshImage(this.model.getImageState(Integer.toString(indexKey)));
+    if (this.history.redo()) {
+      this.clearPreview();
+      this.view.refreshImage(this.model.getImageState(this.history.current()));
+    }
+  }
+
+  /**
+   * Apply an operation to the current image, and show its result.
+   *
+   * @param operation
+   *     Applies the operation from an image name to a destination name
+   * @param inverse
+   *     Reverses the operation, or null if it cannot be reversed
+   * @throws IllegalArgumentException
+   *     If no image is loaded, or the operation fails
+   */
+  private void applyRequest(BiConsumer<String, String> operation,
+                            BiConsumer<String, String> inverse)
+          throws IllegalArgumentException {
+    this.history.apply(operation, inverse, false);
+    this.clearPreview();
+    this.view.refreshImage(this.model.getImageState(this.history.current()));
+  }
+
+  /**
+   * Remove the preview images from the model, once the base image they were made from
+   * has changed.
+   */
+  private void clearPreview() {
+    if (this.previewBase != null) {
+      this.model.removeImage(PREVIEW_SOURCE);
+      if (this.model.hasLoadedImage(PREVIEW)) {
+        this.model.removeImage(PREVIEW);
+      }
+      this.previewBase = null;
     }
   }
 
@@ -4,11 +4,20 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.InputMismatchException;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
 
 import model.ImageProcessor;
 import model.ImageUtil;
@@ -17,6 +26,18 @@ import view.ImageView;
 /**
  * This represents the implementation of the controller.
  * The controller will take in inputs, enact functionalities, and output for the client to react to.
+ * <p></p>
+ * By default, each command is run as soon as it is read. A controller with a parallelism
+ * greater than 1 runs in batch mode instead: once the first image is loaded, it reads the
+ * rest of the script up front and runs independent commands (those that share no image
+ * name or file) at the same time on a pool of worker threads. Messages are still shown in
+ * script order, and every image and file ends up the same as in the default mode. Batch
+ * mode is meant for script files, and needs a model that is safe to use from several
+ * threads.
+ * <p></p>
+ * In plan mode, the rest of the script is also read up front, and then planned before it
+ * runs: commands whose images are never saved or used are skipped, and every image is
+ * removed from the model as soon as the last command that uses it has run.
  */
 
 public class ImageControllerImpl implements ImageController {
@@ -24,6 +45,8 @@ public class ImageControllerImpl implements ImageController {
   private ImageProcessor model;
   private ImageView view;
   private Readable input;
+  private int parallelism;
+  private boolean plan;
 
   /**
    * This represents a constructor that will take in the model, the view, and the readable input.
@@ -37,6 +60,41 @@ public class ImageControllerImpl implements ImageController {
    */
   public ImageControllerImpl(ImageProcessor model, ImageView view, Readable input)
           throws IllegalArgumentException {
+    this(model, view, input, 1, false);
+  }
+
+  /**
+   * This represents a constructor that also takes the number of commands to run at the same
+   * time. With a parallelism greater than 1, the controller runs the script in batch mode.
+   *
+   * @param model       the given model that the controller will be using,
+   *                    which must be thread-safe if the parallelism is greater than 1
+   * @param view        the given view that the controller will be using
+   * @param input       the input that the program will be receiving
+   * @param parallelism the number of commands to run at the same time
+   * @throws IllegalArgumentException if the model, view, or given input is null,
+   *                                  or the parallelism is less than 1
+   */
+  public ImageControllerImpl(ImageProcessor model, ImageView view, Readable input,
+                             int parallelism) throws IllegalArgumentException {
+    this(model, view, input, parallelism, false);
+  }
+
+  /**
+   * This represents a constructor that can also plan the script before running it.
+   *
+   * @param model       the given model that the controller will be using,
+   *                    which must be thread-safe if the parallelism is greater than 1
+   * @param view        the given view that the controller will be using
+   * @param input       the input that the program will be receiving
+   * @param parallelism the number of commands to run at the same time
+   * @param plan        whether to skip commands whose images are never saved or used,
+   *                    and remove images after their last use
+   * @throws IllegalArgumentException if the model, view, or given input is null,
+   *                                  or the parallelism is less than 1
+   */
+  public ImageControllerImpl(ImageProcessor model, ImageView view, Readable input,
+                             int parallelism, boolean plan) throws IllegalArgumentException {
     if (model == null) {
       throw new IllegalArgumentException("The model cannot be null.");
     }
@@ -49,9 +107,15 @@ public class ImageControllerImpl implements ImageController {
       throw new IllegalArgumentException("The read input cannot be null.");
     }
 
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("The parallelism must be at least 1.");
+    }
+
     this.model = model;
     this.view = view;
     this.input = input;
+    this.parallelism = parallelism;
+    this.plan = plan;
   }
 
   @Override
@@ -61,8 +125,6 @@ public class ImageControllerImpl implements ImageController {
 
     // it will contain all the images the user has loaded and modified.
     ArrayList<String> listImages = new ArrayList<>();
-    // if we continue to update images
-    boolean continueProgram = true;
     // if we are in the first phase (waiting for an image to be loaded)
     boolean firstLoad = true;
 
@@ -78,30 +140,13 @@ public class ImageControllerImpl implements ImageController {
       while (firstLoad) {
         modifyInstruction = sc.next();
 
-        switch (modifyInstruction) {
-          case "load":
-            try {
-              String filePath = sc.next();
-              String name = sc.next();
-              this.model.loadImage(filePath, name);
-              // add the name of the loaded image. (If user forgets what they added,
-              // they can get see it
-              listImages.add(name + " - loaded original image");
-              displayMessage("An image has been successfully uploaded!");
-              firstLoad = false;
-            } catch (IllegalArgumentException e) {
-              displayMessage("The following error has occurred: " + e.getMessage() +
-                      " Please try again making sure you have inputted everything correctly.");
-            }
-            break;
-          case "q":
-          case "Q":
-            displayMessage("Successfully ended the program.");
-            return;
-          default:
-            displayMessage("Please make sure command is inputted correctly.");
-            break;
+        if (modifyInstruction.equals("q") || modifyInstruction.equals("Q")) {
+          displayMessage("Successfully ended the program.");
+          return;
         }
+        ScriptCommand.Result result = this.parseFirstCommand(modifyInstruction, sc).run();
+        this.report(result, listImages);
+        firstLoad = !result.isLoaded();
       }
 
       // Once user inputs the image, they can edit or load more.
@@ -132,393 +177,438 @@ public class ImageControllerImpl implements ImageController {
                       "stored-images : view all the images you have stored.\n" +
                       "q or Q : end the program.");
 
-      while (continueProgram) {
-
+      if (this.parallelism > 1 || this.plan) {
+        this.runBatch(sc, listImages);
+      } else {
         modifyInstruction = sc.next();
+        while (!(modifyInstruction.equals("q") || modifyInstruction.equals("Q"))) {
+          this.report(this.parseCommand(modifyInstruction, sc).run(), listImages);
+          modifyInstruction = sc.next();
+        }
+      }
 
-        switch (modifyInstruction) {
-          case "load":
-            try {
-              String filePath = sc.next();
-              String name = sc.next();
-              this.model.loadImage(filePath, name);
-
-              if (!(listImages.contains(name + " - loaded original image"))) {
-                listImages.add(name + " - loaded original image");
-              }
-              displayMessage("An image has been successfully uploaded!");
-              break;
-            } catch (IllegalArgumentException e) {
-              displayMessage("The following error has occurred: " + e.getMessage() +
-                      ". Please try again making sure you have inputted everything correctly.");
-            }
-            break;
-
-          // We made it skip three inputs if the second input was inputted incorreclty.
-          case "brighten":
-            int brightIncrement = 0;
-
-
-            // if the brightIncrement is not a number, then render an error message.
-
-            try {
-              brightIncrement = sc.nextInt();
-            } catch (InputMismatchException e) {
-              String skip = sc.next();
-              String origName = sc.next();
-              String newName = sc.next();
-              displayMessage("Please make sure that the " +
-                      "increment of brighten is an integer.");
-              break;
-            }
-
-
-            try {
-              String origName = sc.next();
-              String newName = sc.next();
-              this.model.brightness(brightIncrement, origName, newName);
-              listImages.add(newName + " - brightened or darkened image");
-              displayMessage("The update to the image has been done! " +
-                      "The image has been brightened or darkened!");
-            } catch (IllegalArgumentException e) {
-              displayMessage("The following error has occurred: " + e.getMessage() +
-                      ". Please try again making sure you have inputted everything correctly.");
-            }
-
-            break;
-          case "vertical-flip":
-
-            try {
-              String origName = sc.next();
-              String newName = sc.next();
-              this.model.flipVertical(origName, newName);
-              listImages.add(newName + " - vertical flipped image");
-              displayMessage("The update to the image has been done! " +
-                      "The image is vertically flipped!");
-            } catch (IllegalArgumentException e) {
-              displayMessage("The following error has occurred: " + e.getMessage() +
-                      ". Please try again making sure you have inputted everything correctly.");
-            }
-
-            break;
-          case "horizontal-flip":
-
-            try {
-              String origName = sc.next();
-              String newName = sc.next();
-              this.model.flipHorizontal(origName, newName);
-              listImages.add(newName + " - horizontally flipped image");
-              displayMessage("The update to the image has been done! " +
-                      "The image is horizontally flipped!");
-            } catch (IllegalArgumentException e) {
-              displayMessage("The following error has occurred: " + e.getMessage() +
-                      ". Please try again making sure you have inputted everything correctly.");
-            }
-
-            break;
-          case "red-component":
-            try {
-              String origName = sc.next();
-              String newName = sc.next();
-              this.model.redChannel(origName, newName);
-              listImages.add(newName + " - greyscale through the Red-component");
-              displayMessage("The update to the image has been done!" +
-                      " The image is greyscale to the Red component!");
-
-            } catch (IllegalArgumentException e) {
-              displayMessage("The following error has occurred: " + e.getMessage() +
-                      ". Please try again making sure you have inputted everything correctly.");
-            }
-
-            break;
-          case "green-component":
-
-            try {
-              String origName = sc.next();
-              String newName = sc.next();
-              this.model.greenChannel(origName, newName);
-              listImages.add(newName + " - greyscale through the Green-component");
-              displayMessage("The update to the image has been done!" +
-                      " The image is greyscale to the Green component!");
-
-            } catch (IllegalArgumentException e) {
-              displayMessage("The following error has occurred: " + e.getMessage() +
-                      ". Please try again making sure you have inputted everything correctly.");
-            }
-
-            break;
-          case "blue-component":
-
-            try {
-              String origName = sc.next();
-              String newName = sc.next();
-              this.model.blueChannel(origName, newName);
-              listImages.add(newName + " - greyscale through the Blue-component");
-              displayMessage("The update to the image has been done!" +
-                      " The image is greyscale to the Blue component!");
-
-            } catch (IllegalArgumentException e) {
-              displayMessage("The following error has occurred: " + e.getMessage() +
-                      ". Please try again making sure you have inputted everything correctly.");
-            }
-
-            break;
-          case "value-component":
-
-            try {
-              String origName = sc.next();
-              String newName = sc.next();
-              this.model.maxVal(origName, newName);
-              listImages.add(newName + " - greyscale through the Value-component");
-              displayMessage("The update to the image has been done!" +
-                      " The image is greyscale to the Value component!");
-
-            } catch (IllegalArgumentException e) {
-              displayMessage("The following error has occurred: " + e.getMessage() +
-                      ". Please try again making sure you have inputted everything correctly.");
-            }
-
-            break;
-          case "intensity-component":
-
-            try {
-              String origName = sc.next();
-              String newName = sc.next();
-              this.model.intensity(origName, newName);
-              listImages.add(newName + " - greyscale through the Intensity-component");
-              displayMessage("The update to the image has been done!" +
-                      " The image is greyscale to the Intensity component!");
-
-            } catch (IllegalArgumentException e) {
-              displayMessage("The following error has occurred: " + e.getMessage() +
-                      ". Please try again making sure you have inputted everything correctly.");
-            }
-
-            break;
-          case "luma-component":
-
-            try {
-              String origName = sc.next();
-              String newName = sc.next();
-              this.model.luma(origName, newName);
-              listImages.add(newName + " - greyscale through the Luma-component");
-              displayMessage("The update to the image has been done!" +
-                      " The image is greyscale to the Luma component!");
-
-            } catch (IllegalArgumentException e) {
-              displayMessage("The following error has occurred: " + e.getMessage() +
-                      ". Please try again making sure you have inputted everything correctly.");
-            }
+      displayMessage("Successfully ended the program.");
+    } catch (NoSuchElementException e) {
+      throw new IllegalStateException("There is not enough inputs.");
+    }
+  }
 
-            break;
-          case "blur":
-
-            try {
-              String origName = sc.next();
-              String newName = sc.next();
-              this.model.gaussianBlur(origName, newName);
-              listImages.add(newName + " - a blur image");
-              displayMessage("The update to the image has been done! " +
-                      "The image has undergone a blur!");
-            } catch (IllegalArgumentException e) {
-              displayMessage("The following error has occurred: " + e.getMessage() +
-                      ". Please try again making sure you have inputted everything correctly.");
-            }
+  /**
+   * Read the rest of the script, plan it if in plan mode, run its commands as a
+   * dependency graph on a pool of worker threads, and show their messages in script
+   * order. Messages are shown as soon as every earlier command has finished.
+   *
+   * @param sc         the scanner positioned after the first loaded image
+   * @param listImages the list of stored images so far
+   * @throws NoSuchElementException if the script ends before q or Q, after the messages of
+   *                                every complete command have been shown
+   * @throws IllegalStateException  if there is a failure with the transmission
+   */
+  private void runBatch(Scanner sc, List<String> listImages)
+          throws NoSuchElementException, IllegalStateException {
+    List<ScriptCommand> commands = new ArrayList<>();
+    NoSuchElementException endOfInput = null;
+    try {
+      String modifyInstruction = sc.next();
+      while (!(modifyInstruction.equals("q") || modifyInstruction.equals("Q"))) {
+        commands.add(this.parseCommand(modifyInstruction, sc));
+        modifyInstruction = sc.next();
+      }
+    } catch (NoSuchElementException e) {
+      endOfInput = e;
+    }
+    if (this.plan) {
+      commands = new ScriptPlanner(this.model).plan(commands);
+    }
 
-            break;
-          case "sharpen":
+    ExecutorService workers = Executors.newFixedThreadPool(this.parallelism);
+    try {
+      ScriptScheduler scheduler = new ScriptScheduler(workers);
+      List<CompletableFuture<ScriptCommand.Result>> results = new ArrayList<>();
+      for (ScriptCommand command : commands) {
+        results.add(scheduler.schedule(command));
+      }
+      for (CompletableFuture<ScriptCommand.Result> result : results) {
+        try {
+          ScriptCommand.Result done = result.join();
+          if (done != null) {
+            this.report(done, listImages);
+          }
+        } catch (CompletionException e) {
+          if (e.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) e.getCause();
+          }
+          throw e;
+        }
+      }
+    } finally {
+      workers.shutdownNow();
+    }
 
-            try {
-              String origName = sc.next();
-              String newName = sc.next();
-              this.model.sharpen(origName, newName);
-              listImages.add(newName + " - a sharpened image");
-              displayMessage("The update to the image has been done! " +
-                      "The image has undergone a sharpening!");
+    if (endOfInput != null) {
+      throw endOfInput;
+    }
+  }
 
-            } catch (IllegalArgumentException e) {
-              displayMessage("The following error has occurred: " + e.getMessage() +
-                      ". Please try again making sure you have inputted everything correctly.");
-            }
+  /**
+   * Show the message of a command that has run, and add the image it created to the list
+   * of stored images. Must be called in script order.
+   *
+   * @param result     what the command did
+   * @param listImages the list of stored images
+   * @throws IllegalStateException if there is a failure with the transmission
+   */
+  private void report(ScriptCommand.Result result, List<String> listImages)
+          throws IllegalStateException {
+    String entry = result.getEntry();
+    // (If user forgets what they added, they can get see it)
+    if (entry != null && !(result.isLoaded() && listImages.contains(entry))) {
+      listImages.add(entry);
+    }
 
-            break;
-          case "sepia":
+    if (result.getMessage() != null) {
+      displayMessage(result.getMessage());
+      return;
+    }
+    String displayMessage = "";
+    for (int count = 0; count < listImages.size(); count++) {
+      if (count == listImages.size() - 1) {
+        displayMessage = displayMessage + (listImages.get(count));
+      } else {
+        displayMessage = displayMessage + (listImages.get(count) + "\n");
+      }
+    }
 
-            try {
-              String origName = sc.next();
-              String newName = sc.next();
-              this.model.sepia(origName, newName);
-              listImages.add(newName + " - a sepia image");
-              displayMessage("The update to the image has been done! " +
-                      "Sepia color transformation has been applied!");
+    displayMessage("Here are all the images you have stored!\n"
+            + displayMessage);
+  }
 
-            } catch (IllegalArgumentException e) {
-              displayMessage("The following error has occurred: " + e.getMessage() +
-                      ". Please try again making sure you have inputted everything correctly.");
-            }
+  /**
+   * Read a command before the first image has been loaded, when only load is accepted.
+   *
+   * @param modifyInstruction the name of the command
+   * @param sc                the scanner to read the arguments of the command from
+   * @return the command, ready to run
+   * @throws NoSuchElementException if the input ends before the arguments of the command
+   */
+  private ScriptCommand parseFirstCommand(String modifyInstruction, Scanner sc)
+          throws NoSuchElementException {
+    if (modifyInstruction.equals("load")) {
+      return this.loadCommand(sc, " Please try again making sure you have inputted " +
+              "everything correctly.");
+    }
+    return this.messageCommand("Please make sure command is inputted correctly.");
+  }
 
-            break;
-
-          case "greyscale":
-
-            try {
-              double red = 0.0;
-              double green = 0.0;
-              double blue = 0.0;
-
-              try {
-                red = sc.nextDouble();
-              } catch (InputMismatchException e) {
-                String skip = sc.next();
-                String secondSkip = sc.next();
-                String origName = sc.next();
-                String newName = sc.next();
-                displayMessage("Please make sure that the " +
-                        "red value is an integer.");
-                break;
-              }
-
-              try {
-                green = sc.nextDouble();
-              } catch (InputMismatchException e) {
-                String skip = sc.next();
-                String origName = sc.next();
-                String newName = sc.next();
-                displayMessage("Please make sure that the " +
-                        "green value is an integer.");
-                break;
-              }
-
-              try {
-                blue = sc.nextDouble();
-              } catch (InputMismatchException e) {
-                String origName = sc.next();
-                String newName = sc.next();
-                displayMessage("Please make sure that the " +
-                        "blue value is an integer.");
-                break;
-              }
-
-              String origName = sc.next();
-              String newName = sc.next();
-
-              this.model.customGreyscale(red, green, blue, origName, newName);
-
-              listImages.add(newName + " - a custom greyscale image");
-              displayMessage("The update to the image has been done! " +
-                      "Custom greyscale color transformation has been applied!");
-
-            } catch (IllegalArgumentException e) {
-              displayMessage("The following error has occurred: " + e.getMessage() +
-                      ". Please try again making sure you have inputted everything correctly.");
-            }
+  /**
+   * Read a command and its arguments. Reading a command never touches the model, so a
+   * whole script can be read before any of it runs.
+   *
+   * @param modifyInstruction the name of the command
+   * @param sc                the scanner to read the arguments of the command from
+   * @return the command, ready to run
+   * @throws NoSuchElementException if the input ends before the arguments of the command
+   */
+  private ScriptCommand parseCommand(String modifyInstruction, Scanner sc)
+          throws NoSuchElementException {
+    switch (modifyInstruction) {
+      case "load":
+        return this.loadCommand(sc, ". Please try again making sure you have inputted " +
+                "everything correctly.");
+
+      // We made it skip three inputs if the second input was inputted incorreclty.
+      case "brighten":
+        int brightIncrement = 0;
+
+        // if the brightIncrement is not a number, then render an error message.
+
+        try {
+          brightIncrement = sc.nextInt();
+        } catch (InputMismatchException e) {
+          String skip = sc.next();
+          String origName = sc.next();
+          String newName = sc.next();
+          return this.messageCommand("Please make sure that the " +
+                  "increment of brighten is an integer.");
+        }
 
+        int increment = brightIncrement;
+        return this.imageCommand(sc,
+            (origName, newName) -> this.model.brightness(increment, origName, newName),
+            " - brightened or darkened image",
+            "The update to the image has been done! " +
+                    "The image has been brightened or darkened!");
+      case "vertical-flip":
+        return this.imageCommand(sc, this.model::flipVertical,
+            " - vertical flipped image",
+            "The update to the image has been done! " +
+                    "The image is vertically flipped!");
+      case "horizontal-flip":
+        return this.imageCommand(sc, this.model::flipHorizontal,
+            " - horizontally flipped image",
+            "The update to the image has been done! " +
+                    "The image is horizontally flipped!");
+      case "red-component":
+        return this.imageCommand(sc, this.model::redChannel,
+            " - greyscale through the Red-component",
+            "The update to the image has been done!" +
+                    " The image is greyscale to the Red component!");
+      case "green-component":
+        return this.imageCommand(sc, this.model::greenChannel,
+            " - greyscale through the Green-component",
+            "The update to the image has been done!" +
+                    " The image is greyscale to the Green component!");
+      case "blue-component":
+        return this.imageCommand(sc, this.model::blueChannel,
+            " - greyscale through the Blue-component",
+            "The update to the image has been done!" +
+                    " The image is greyscale to the Blue component!");
+      case "value-component":
+        return this.imageCommand(sc, this.model::maxVal,
+            " - greyscale through the Value-component",
+            "The update to the image has been done!" +
+                    " The image is greyscale to the Value component!");
+      case "intensity-component":
+        return this.imageCommand(sc, this.model::intensity,
+            " - greyscale through the Intensity-component",
+            "The update to the image has been done!" +
+                    " The image is greyscale to the Intensity component!");
+      case "luma-component":
+        return this.imageCommand(sc, this.model::luma,
+            " - greyscale through the Luma-component",
+            "The update to the image has been done!" +
+                    " The image is greyscale to the Luma component!");
+      case "blur":
+        return this.imageCommand(sc, this.model::gaussianBlur,
+            " - a blur image",
+            "The update to the image has been done! " +
+                    "The image has undergone a blur!");
+      case "sharpen":
+        return this.imageCommand(sc, this.model::sharpen,
+            " - a sharpened image",
+            "The update to the image has been done! " +
+                    "The image has undergone a sharpening!");
+      case "sepia":
+        return this.imageCommand(sc, this.model::sepia,
+            " - a sepia image",
+            "The update to the image has been done! " +
+                    "Sepia color transformation has been applied!");
+
+      case "greyscale":
+        double red = 0.0;
+        double green = 0.0;
+        double blue = 0.0;
+
+        try {
+          red = sc.nextDouble();
+        } catch (InputMismatchException e) {
+          String skip = sc.next();
+          String secondSkip = sc.next();
+          String origName = sc.next();
+          String newName = sc.next();
+          return this.messageCommand("Please make sure that the " +
+                  "red value is an integer.");
+        }
 
-            break;
+        try {
+          green = sc.nextDouble();
+        } catch (InputMismatchException e) {
+          String skip = sc.next();
+          String origName = sc.next();
+          String newName = sc.next();
+          return this.messageCommand("Please make sure that the " +
+                  "green value is an integer.");
+        }
 
-          case "save":
-            // will catch the first exception that's encountered
-            try {
-              String filePath = sc.next();
-              String imageName = sc.next();
+        try {
+          blue = sc.nextDouble();
+        } catch (InputMismatchException e) {
+          String origName = sc.next();
+          String newName = sc.next();
+          return this.messageCommand("Please make sure that the " +
+                  "blue value is an integer.");
+        }
 
-              if (!this.model.hasLoadedImage(imageName)) {
-                throw new IllegalArgumentException("Cannot find image with name "
-                        + imageName + ".");
-              }
+        double r = red;
+        double g = green;
+        double b = blue;
+        return this.imageCommand(sc,
+            (origName, newName) -> this.model.customGreyscale(r, g, b, origName, newName),
+            " - a custom greyscale image",
+            "The update to the image has been done! " +
+                    "Custom greyscale color transformation has been applied!");
+
+      case "save":
+        return this.saveCommand(sc);
+      case "menu":
+        return this.messageCommand("Here is the list of commands you can do.\n" +
+                "load image-path image-name : load an image from a specified path.\n" +
+                "save image-path image-name : save the image to a specified path.\n" +
+                "brighten increment image-name dest-image-name :" +
+                " brighten or darken the image.\n" +
+                "vertical-flip image-name dest-image-name : flips the image upside-down.\n" +
+                "horizontal-flip image-name dest-image-name : " +
+                "flips the image horizontally.\n" +
+                "red-component image-name dest-image-name : " +
+                "creates a greyscale image with the red component.\n" +
+                "green-component image-name dest-image-name : " +
+                "creates a greyscale image with the green component.\n" +
+                "blue-component image-name dest-image-name : " +
+                "creates a greyscale image with the blue component.\n" +
+                "value-component image-name dest-image-name :" +
+                " creates a greyscale image with the value component\n" +
+                "intensity-component image-name dest-image-name :" +
+                " creates a greyscale image with the intensity component\n" +
+                "luma-component image-name dest-image-name :" +
+                " creates a greyscale image with the luma component.\n" +
+                "blur image-name dest-image-name :" +
+                " blurs the image.\n" +
+                "sharpen image-name dest-image-name :" +
+                " sharpens the image.\n" +
+                "sepia image-name dest-image-name :" +
+                " greyscale it through sepia of the image.\n" +
+                "greyscale redIncrement greenIncrement " +
+                "blueIncrement image-name dest-image-name :" +
+                " custom greyscale.\n" +
+                "format : view all supported formats that this program has!\n" +
+                "menu : a reminder of the list of commands you can do.\n" +
+                "stored-images : view all the images you have stored.\n" +
+                "q or Q : end the program.");
+      case "stored-images":
+        // the list is built when the message is shown, in script order
+        return new ScriptCommand(Collections.singletonList(ScriptCommand.ALL_IMAGES),
+            Collections.emptyList(), () -> new ScriptCommand.Result(null, null, false));
+      case "format" :
+        String allFormats = "";
+
+        for (String s : this.model.getSupportedFormats()) {
+          allFormats = allFormats + s + "\n";
+        }
 
-              String extension = ImageUtil.getExtension(filePath);
+        return this.messageCommand("The following are the formats this " +
+                "program can support:\n" +
+                allFormats + "Have fun!");
 
-              if (!Arrays.asList(model.getSupportedFormats()).contains(extension)) {
-                throw new IllegalArgumentException("Cannot find image with name "
-                        + imageName + ".");
-              }
+      default:
+        return this.messageCommand("Please make sure the" +
+                " modification is inputted correctly.");
+    }
+  }
 
-              OutputStream imageData = new FileOutputStream(filePath);
-              this.model.saveImage(imageData, imageName, extension);
+  /**
+   * Read a load command.
+   *
+   * @param sc          the scanner to read the file path and image name from
+   * @param errorSuffix what to show after the message of an error
+   * @return the command, ready to run
+   * @throws NoSuchElementException if the input ends before the arguments of the command
+   */
+  private ScriptCommand loadCommand(Scanner sc, String errorSuffix)
+          throws NoSuchElementException {
+    String filePath = sc.next();
+    String name = sc.next();
+    return new ScriptCommand(Collections.singletonList(ImageControllerImpl.file(filePath)),
+        Collections.singletonList(name), () -> {
+          try {
+            this.model.loadImage(filePath, name);
+            return new ScriptCommand.Result("An image has been successfully uploaded!",
+                    name + " - loaded original image", true);
+          } catch (IllegalArgumentException e) {
+            return new ScriptCommand.Result("The following error has occurred: " +
+                    e.getMessage() + errorSuffix, null, false);
+          }
+        });
+  }
 
-              displayMessage("The image has been saved! Check it out!");
-            } catch (FileNotFoundException | IllegalArgumentException e) {
-              displayMessage("The following error has occurred: " + e.getMessage() +
-                      " Please try again making sure you have inputted everything correctly.");
-            }
+  /**
+   * Read an operation that creates a new image from an existing one.
+   *
+   * @param sc        the scanner to read the image names from
+   * @param operation the operation, given the original and the new image name
+   * @param entry     what to list after the new image name in the stored images
+   * @param success   the message to show if the operation succeeds
+   * @return the command, ready to run
+   * @throws NoSuchElementException if the input ends before the arguments of the command
+   */
+  private ScriptCommand imageCommand(Scanner sc, BiConsumer<String, String> operation,
+                                     String entry, String success)
+          throws NoSuchElementException {
+    String origName = sc.next();
+    String newName = sc.next();
+    return new ScriptCommand(Collections.singletonList(origName),
+        Collections.singletonList(newName), () -> {
+          try {
+            operation.accept(origName, newName);
+            return new ScriptCommand.Result(success, newName + entry, false);
+          } catch (IllegalArgumentException e) {
+            return new ScriptCommand.Result("The following error has occurred: " +
+                    e.getMessage() + ". Please try again making sure you have inputted " +
+                    "everything correctly.", null, false);
+          }
+        });
+  }
 
-            break;
-          case "menu":
-            displayMessage("Here is the list of commands you can do.\n" +
-                    "load image-path image-name : load an image from a specified path.\n" +
-                    "save image-path image-name : save the image to a specified path.\n" +
-                    "brighten increment image-name dest-image-name :" +
-                    " brighten or darken the image.\n" +
-                    "vertical-flip image-name dest-image-name : flips the image upside-down.\n" +
-                    "horizontal-flip image-name dest-image-name : " +
-                    "flips the image horizontally.\n" +
-                    "red-component image-name dest-image-name : " +
-                    "creates a greyscale image with the red component.\n" +
-                    "green-component image-name dest-image-name : " +
-                    "creates a greyscale image with the green component.\n" +
-                    "blue-component image-name dest-image-name : " +
-                    "creates a greyscale image with the blue component.\n" +
-                    "value-component image-name dest-image-name :" +
-                    " creates a greyscale image with the value component\n" +
-                    "intensity-component image-name dest-image-name :" +
-                    " creates a greyscale image with the intensity component\n" +
-                    "luma-component image-name dest-image-name :" +
-                    " creates a greyscale image with the luma component.\n" +
-                    "blur image-name dest-image-name :" +
-                    " blurs the image.\n" +
-                    "sharpen image-name dest-image-name :" +
-                    " sharpens the image.\n" +
-                    "sepia image-name dest-image-name :" +
-                    " greyscale it through sepia of the image.\n" +
-                    "greyscale redIncrement greenIncrement " +
-                    "blueIncrement image-name dest-image-name :" +
-                    " custom greyscale.\n" +
-                    "format : view all supported formats that this program has!\n" +
-                    "menu : a reminder of the list of commands you can do.\n" +
-                    "stored-images : view all the images you have stored.\n" +
-                    "q or Q : end the program.");
-            break;
-          case "stored-images":
-            String displayMessage = "";
-            for (int count = 0; count < listImages.size(); count++) {
-              if (count == listImages.size() - 1) {
-                displayMessage = displayMessage + (listImages.get(count));
-              } else {
-                displayMessage = displayMessage + (listImages.get(count) + "\n");
-              }
+  /**
+   * Read a save command.
+   *
+   * @param sc the scanner to read the file path and image name from
+   * @return the command, ready to run
+   * @throws NoSuchElementException if the input ends before the arguments of the command
+   */
+  private ScriptCommand saveCommand(Scanner sc) throws NoSuchElementException {
+    String filePath = sc.next();
+    String imageName = sc.next();
+    return new ScriptCommand(Collections.singletonList(imageName),
+        Collections.singletonList(ImageControllerImpl.file(filePath)), () -> {
+          // will catch the first exception that's encountered
+          try {
+            if (!this.model.hasLoadedImage(imageName)) {
+              throw new IllegalArgumentException("Cannot find image with name "
+                      + imageName + ".");
             }
 
-            displayMessage("Here are all the images you have stored!\n"
-                    + displayMessage);
-            break;
-          case "format" :
-            String allFormats = "";
+            String extension = ImageUtil.getExtension(filePath);
 
-            for (String s : this.model.getSupportedFormats()) {
-              allFormats = allFormats + s + "\n";
+            if (!Arrays.asList(model.getSupportedFormats()).contains(extension)) {
+              throw new IllegalArgumentException("Cannot find image with name "
+                      + imageName + ".");
             }
 
-            displayMessage("The following are the formats this " +
-                    "program can support:\n" +
-                    allFormats + "Have fun!");
-
-            break;
+            OutputStream imageData = new FileOutputStream(filePath);
+            this.model.saveImage(imageData, imageName, extension);
+
+            return new ScriptCommand.Result("The image has been saved! Check it out!",
+                    null, false);
+          } catch (FileNotFoundException | IllegalArgumentException e) {
+            return new ScriptCommand.Result("The following error has occurred: " +
+                    e.getMessage() + " Please try again making sure you have inputted " +
+                    "everything correctly.", null, false);
+          }
+        });
+  }
 
-          case "q":
-          case "Q":
-            continueProgram = false;
-            break;
-          default:
-            displayMessage("Please make sure the" +
-                    " modification is inputted correctly.");
-            break;
-        }
-      }
+  /**
+   * Create a command that only shows a message.
+   *
+   * @param message the message
+   * @return the command, ready to run
+   */
+  private ScriptCommand messageCommand(String message) {
+    ScriptCommand.Result result = new ScriptCommand.Result(message, null, false);
+    return new ScriptCommand(Collections.emptyList(), Collections.emptyList(), () -> result);
+  }
 
-      displayMessage("Successfully ended the program.");
-    } catch (NoSuchElementException e) {
-      throw new IllegalStateException("There is not enough inputs.");
+  /**
+   * Name the resource of a file, so that two paths to the same file are the same resource.
+   *
+   * @param filePath the path of the file
+   * @return the resource name
+   */
+  private static String file(String filePath) {
+    try {
+      return ScriptCommand.FILE_PREFIX + Paths.get(filePath).toAbsolutePath().normalize();
+    } catch (InvalidPathException e) {
+      return ScriptCommand.FILE_PREFIX + filePath;
     }
   }
 
@@ -537,4 +627,3 @@ public class ImageControllerImpl implements ImageController {
     }
   }
 }
-
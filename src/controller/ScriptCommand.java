@@ -0,0 +1,132 @@
+package controller;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * One parsed command of a script, ready to run. A command knows which resources it
+ * reads and writes: image names, and files (prefixed with "file:"). Two commands that
+ * touch a common resource, where at least one of them writes it, must run in script
+ * order; any other commands may run at the same time.
+ */
+final class ScriptCommand {
+
+  /**
+   * The prefix of the resource of a file, followed by its absolute path.
+   */
+  static final String FILE_PREFIX = "file:";
+
+  /**
+   * The resource read by a command that needs every image created before it. Image
+   * names are never empty, so it cannot clash with one.
+   */
+  static final String ALL_IMAGES = "";
+
+  /**
+   * What running a command produced: the message to show, and the entry to add to the
+   * list of stored images if the command created an image.
+   */
+  static final class Result {
+
+    private final String message;
+    private final String entry;
+    private final boolean loaded;
+
+    /**
+     * Create a result.
+     *
+     * @param message
+     *     The message to show, or null if it is the list of stored images
+     * @param entry
+     *     The entry for the list of stored images, or null if no image was created
+     * @param loaded
+     *     True if an image was loaded. A loaded image is only listed once
+     */
+    Result(String message, String entry, boolean loaded) {
+      this.message = message;
+      this.entry = entry;
+      this.loaded = loaded;
+    }
+
+    /**
+     * Get the message to show.
+     *
+     * @return
+     *     The message, or null if the message is the list of stored images at the time
+     *     the command runs in script order
+     */
+    String getMessage() {
+      return this.message;
+    }
+
+    /**
+     * Get the entry for the list of stored images.
+     *
+     * @return
+     *     The entry, or null if no image was created
+     */
+    String getEntry() {
+      return this.entry;
+    }
+
+    /**
+     * Check whether an image was loaded.
+     *
+     * @return
+     *     True if an image was loaded
+     */
+    boolean isLoaded() {
+      return this.loaded;
+    }
+  }
+
+  private final List<String> reads;
+  private final List<String> writes;
+  private final Supplier<Result> action;
+
+  /**
+   * Create a command.
+   *
+   * @param reads
+   *     The resources the command reads
+   * @param writes
+   *     The resources the command writes
+   * @param action
+   *     Runs the command and reports what it did
+   */
+  ScriptCommand(List<String> reads, List<String> writes, Supplier<Result> action) {
+    this.reads = reads;
+    this.writes = writes;
+    this.action = action;
+  }
+
+  /**
+   * Get the resources this command reads.
+   *
+   * @return
+   *     The image names and files
+   */
+  List<String> getReads() {
+    return this.reads;
+  }
+
+  /**
+   * Get the resources this command writes.
+   *
+   * @return
+   *     The image names and files
+   */
+  List<String> getWrites() {
+    return this.writes;
+  }
+
+  /**
+   * Run this command.
+   *
+   * @return
+   *     What the command did, or null if the command has nothing to report
+   */
+  Result run() {
+    return this.action.get();
+  }
+}
@@ -0,0 +1,165 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import model.ImageProcessor;
+
+/**
+ * Plans a whole script before it runs, so that only the work its outputs need is done.
+ * A command is dead if no image it creates is ever saved or used by a later live
+ * command before being replaced; dead commands are skipped, and report so instead
+ * of running. Every image is removed from the model as soon as its last reader has run,
+ * so intermediate images do not pile up over a long script.
+ * <p></p>
+ * Saves (and anything else that writes a file) and commands that only show a message are
+ * always live. A command that lists the stored images makes every earlier command live.
+ */
+final class ScriptPlanner {
+
+  private final ImageProcessor model;
+
+  /**
+   * Create a planner for scripts that run on the given model.
+   *
+   * @param model
+   *     The model that the planned commands use
+   */
+  ScriptPlanner(ImageProcessor model) {
+    this.model = model;
+  }
+
+  /**
+   * Plan a script.
+   *
+   * @param commands
+   *     The commands of the script, in order
+   * @return
+   *     The commands to run, in order: every live command, a message for every dead
+   *     command, and commands that remove images after their last use, which report
+   *     nothing
+   */
+  List<ScriptCommand> plan(List<ScriptCommand> commands) {
+    boolean[] live = ScriptPlanner.findLive(commands);
+
+    // remove each image right after the last live command that reads it, before the
+    // image is replaced or the script ends
+    List<List<String>> removals = new ArrayList<>();
+    Map<String, Integer> lastReader = new HashMap<>();
+    for (int i = 0; i < commands.size(); i++) {
+      removals.add(new ArrayList<>());
+      if (!live[i]) {
+        continue;
+      }
+      for (String resource : commands.get(i).getReads()) {
+        if (ScriptPlanner.isImage(resource)) {
+          lastReader.put(resource, i);
+        }
+      }
+      for (String resource : commands.get(i).getWrites()) {
+        Integer reader = lastReader.remove(resource);
+        if (reader != null && reader < i) {
+          removals.get(reader).add(resource);
+        }
+      }
+    }
+    for (Map.Entry<String, Integer> entry : lastReader.entrySet()) {
+      removals.get(entry.getValue()).add(entry.getKey());
+    }
+
+    List<ScriptCommand> planned = new ArrayList<>();
+    for (int i = 0; i < commands.size(); i++) {
+      planned.add(live[i] ? commands.get(i) : ScriptPlanner.skip(commands.get(i)));
+      for (String name : removals.get(i)) {
+        planned.add(this.remove(name));
+      }
+    }
+    return planned;
+  }
+
+  /**
+   * Find the live commands of a script, walking it backwards from its outputs.
+   *
+   * @param commands
+   *     The commands of the script, in order
+   * @return
+   *     Whether each command is live
+   */
+  private static boolean[] findLive(List<ScriptCommand> commands) {
+    boolean[] live = new boolean[commands.size()];
+    // the images that a later live command reads before replacing them
+    Set<String> needed = new HashSet<>();
+    boolean allNeeded = false;
+    for (int i = commands.size() - 1; i >= 0; i--) {
+      ScriptCommand command = commands.get(i);
+      allNeeded = allNeeded || command.getReads().contains(ScriptCommand.ALL_IMAGES);
+      boolean isLive = allNeeded || command.getWrites().isEmpty();
+      for (String resource : command.getWrites()) {
+        isLive = isLive || !ScriptPlanner.isImage(resource) || needed.contains(resource);
+      }
+      live[i] = isLive;
+      if (isLive) {
+        needed.removeAll(command.getWrites());
+        for (String resource : command.getReads()) {
+          if (ScriptPlanner.isImage(resource)) {
+            needed.add(resource);
+          }
+        }
+      }
+    }
+    return live;
+  }
+
+  /**
+   * Check whether a resource of a command is an image name.
+   *
+   * @param resource
+   *     The resource
+   * @return
+   *     True if it is an image name, false if it is a file or all images
+   */
+  private static boolean isImage(String resource) {
+    return !(resource.startsWith(ScriptCommand.FILE_PREFIX)
+            || resource.equals(ScriptCommand.ALL_IMAGES));
+  }
+
+  /**
+   * Replace a dead command with one that reports that it was skipped.
+   *
+   * @param command
+   *     The dead command, which creates at least one image
+   * @return
+   *     A command that only shows a message
+   */
+  private static ScriptCommand skip(ScriptCommand command) {
+    ScriptCommand.Result result = new ScriptCommand.Result("The image \""
+            + command.getWrites().get(0) + "\" is never saved or used, "
+            + "so it has not been created.", null, false);
+    return new ScriptCommand(Collections.emptyList(), Collections.emptyList(), () -> result);
+  }
+
+  /**
+   * Create a command that removes an image from the model.
+   *
+   * @param name
+   *     The name of the image
+   * @return
+   *     A command that writes the image, so that it runs after every earlier reader of
+   *     it, and reports nothing
+   */
+  private ScriptCommand remove(String name) {
+    return new ScriptCommand(Collections.emptyList(), Collections.singletonList(name), () -> {
+      try {
+        this.model.removeImage(name);
+      } catch (IllegalArgumentException e) {
+        // the command that should have created the image failed
+      }
+      return null;
+    });
+  }
+}
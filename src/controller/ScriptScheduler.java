@@ -0,0 +1,92 @@
+package controller;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs the commands of a script on a pool of worker threads, as a dependency graph. A
+ * command waits for the last earlier command that wrote any resource it reads or writes,
+ * and a command that writes a resource also waits for every earlier command that read it
+ * since. Commands that share no resource run at the same time, and every image and file
+ * ends up exactly as if the script had run one command after another.
+ */
+final class ScriptScheduler {
+
+  private final ExecutorService workers;
+
+  /**
+   * Maps resource -> the last scheduled command that writes it.
+   */
+  private final Map<String, CompletableFuture<ScriptCommand.Result>> lastWriter;
+
+  /**
+   * Maps resource -> the scheduled commands that read it since it was last written.
+   */
+  private final Map<String, List<CompletableFuture<ScriptCommand.Result>>> readers;
+
+  /**
+   * Create a scheduler with no scheduled commands.
+   *
+   * @param workers
+   *     The threads to run the commands on
+   */
+  ScriptScheduler(ExecutorService workers) {
+    this.workers = workers;
+    this.lastWriter = new HashMap<>();
+    this.readers = new HashMap<>();
+  }
+
+  /**
+   * Schedule a command to run as soon as the commands it depends on have finished.
+   * Commands must be scheduled in script order.
+   *
+   * @param command
+   *     The command
+   * @return
+   *     The result of the command. It completes exceptionally if the command, or a
+   *     command it depends on, threw an exception
+   */
+  CompletableFuture<ScriptCommand.Result> schedule(ScriptCommand command) {
+    List<CompletableFuture<ScriptCommand.Result>> dependencies = new ArrayList<>();
+    for (String resource : command.getReads()) {
+      this.addWriter(resource, dependencies);
+    }
+    for (String resource : command.getWrites()) {
+      this.addWriter(resource, dependencies);
+      dependencies.addAll(this.readers.getOrDefault(resource, new ArrayList<>()));
+    }
+
+    CompletableFuture<ScriptCommand.Result> result = CompletableFuture
+            .allOf(dependencies.toArray(new CompletableFuture<?>[0]))
+            .thenApplyAsync(done -> command.run(), this.workers);
+
+    for (String resource : command.getReads()) {
+      this.readers.computeIfAbsent(resource, r -> new ArrayList<>()).add(result);
+    }
+    for (String resource : command.getWrites()) {
+      this.lastWriter.put(resource, result);
+      this.readers.remove(resource);
+    }
+    return result;
+  }
+
+  /**
+   * Add the last command that wrote the given resource to a list of dependencies.
+   *
+   * @param resource
+   *     The resource
+   * @param dependencies
+   *     The dependencies to add to
+   */
+  private void addWriter(String resource,
+                         List<CompletableFuture<ScriptCommand.Result>> dependencies) {
+    CompletableFuture<ScriptCommand.Result> writer = this.lastWriter.get(resource);
+    if (writer != null) {
+      dependencies.add(writer);
+    }
+  }
+}
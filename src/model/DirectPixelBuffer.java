@@ -0,0 +1,209 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A pixel buffer whose packed pixels live outside the Java heap, either in direct byte
+ * buffers or in a memory-mapped file. Large images then neither count against the heap
+ * limit nor have to be copied around by the garbage collector.
+ * <p></p>
+ * A single NIO buffer holds at most 2GB, so the pixels are split into segments of
+ * 2^28 pixels (1GB). Pixels are stored in native byte order, 4 bytes per pixel, in
+ * row-major order. Reading and writing distinct pixels from several threads is safe.
+ */
+final class DirectPixelBuffer implements PixelBuffer {
+
+  private static final int SEGMENT_SHIFT = 28;
+  private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+  private final int width;
+  private final int height;
+  private final IntBuffer[] segments;
+
+  /**
+   * The file the pixels are mapped from, or null if they are in direct buffers.
+   */
+  private final Path file;
+
+  /**
+   * Wrap the given segments.
+   *
+   * @param width
+   *     The width in pixels
+   * @param height
+   *     The height in pixels
+   * @param segments
+   *     The pixel segments
+   * @param file
+   *     The file the segments are mapped from, or null
+   */
+  private DirectPixelBuffer(int width, int height, IntBuffer[] segments, Path file) {
+    this.width = width;
+    this.height = height;
+    this.segments = segments;
+    this.file = file;
+  }
+
+  /**
+   * Create a buffer of the given size backed by direct byte buffers.
+   *
+   * @param width
+   *     The width in pixels
+   * @param height
+   *     The height in pixels
+   * @return
+   *     The new buffer
+   * @throws IllegalArgumentException
+   *     If the width or height is not positive, or the image has more than 2^31 - 1 pixels
+   */
+  static DirectPixelBuffer allocateDirect(int width, int height)
+          throws IllegalArgumentException {
+    int size = DirectPixelBuffer.checkedSize(width, height);
+    IntBuffer[] segments = new IntBuffer[DirectPixelBuffer.segmentCount(size)];
+    for (int i = 0; i < segments.length; i++) {
+      segments[i] = ByteBuffer.allocateDirect(4 * DirectPixelBuffer.segmentSize(size, i))
+              .order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+    return new DirectPixelBuffer(width, height, segments, null);
+  }
+
+  /**
+   * Create a buffer of the given size backed by a new memory-mapped file in the given
+   * directory. The owner of the buffer deletes the file when it releases the buffer.
+   *
+   * @param width
+   *     The width in pixels
+   * @param height
+   *     The height in pixels
+   * @param directory
+   *     The directory to create the file in
+   * @return
+   *     The new buffer
+   * @throws IllegalArgumentException
+   *     If the width or height is not positive, or the image has more than 2^31 - 1 pixels
+   * @throws IllegalStateException
+   *     If the file cannot be created or mapped
+   */
+  static DirectPixelBuffer allocateMapped(int width, int height, Path directory)
+          throws IllegalArgumentException, IllegalStateException {
+    int size = DirectPixelBuffer.checkedSize(width, height);
+    IntBuffer[] segments = new IntBuffer[DirectPixelBuffer.segmentCount(size)];
+    Path file;
+    try {
+      file = Files.createTempFile(directory, "pixels", ".raw");
+      // a mapping stays valid after its channel is closed
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ,
+              StandardOpenOption.WRITE)) {
+        for (int i = 0; i < segments.length; i++) {
+          long offset = 4L * ((long) i << SEGMENT_SHIFT);
+          segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, offset,
+                  4L * DirectPixelBuffer.segmentSize(size, i))
+                  .order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("could not map pixels into " + directory);
+    }
+    return new DirectPixelBuffer(width, height, segments, file);
+  }
+
+  /**
+   * Compute the number of pixels in an image of the given size.
+   *
+   * @param width
+   *     The width in pixels
+   * @param height
+   *     The height in pixels
+   * @return
+   *     The number of pixels
+   * @throws IllegalArgumentException
+   *     If the width or height is not positive, or the image is too large
+   */
+  private static int checkedSize(int width, int height) throws IllegalArgumentException {
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("image dimensions must be positive");
+    }
+    long size = (long) width * height;
+    if (size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("image is too large: " + width + "x" + height);
+    }
+    return (int) size;
+  }
+
+  /**
+   * Compute the number of segments needed for the given number of pixels.
+   *
+   * @param size
+   *     The number of pixels
+   * @return
+   *     The number of segments
+   */
+  private static int segmentCount(int size) {
+    return (int) (((long) size + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+  }
+
+  /**
+   * Compute the number of pixels in the given segment.
+   *
+   * @param size
+   *     The number of pixels in the image
+   * @param segment
+   *     The index of the segment
+   * @return
+   *     The number of pixels in the segment
+   */
+  private static int segmentSize(int size, int segment) {
+    return Math.min(1 << SEGMENT_SHIFT, size - (segment << SEGMENT_SHIFT));
+  }
+
+  /**
+   * Get the file the pixels are mapped from.
+   *
+   * @return
+   *     The file, or null if the pixels are in direct buffers
+   */
+  Path getFile() {
+    return this.file;
+  }
+
+  @Override
+  public int getWidth() {
+    return this.width;
+  }
+
+  @Override
+  public int getHeight() {
+    return this.height;
+  }
+
+  @Override
+  public int getRGB(int index) {
+    return this.segments[index >>> SEGMENT_SHIFT].get(index & SEGMENT_MASK);
+  }
+
+  @Override
+  public void setRGB(int index, int rgb) {
+    this.segments[index >>> SEGMENT_SHIFT].put(index & SEGMENT_MASK, rgb);
+  }
+
+  /**
+   * The copy is backed by new direct byte buffers.
+   */
+  @Override
+  public PixelBuffer copy() {
+    DirectPixelBuffer copy = DirectPixelBuffer.allocateDirect(this.width, this.height);
+    for (int i = 0; i < this.segments.length; i++) {
+      // duplicate, so that the position of the shared buffer is not moved
+      copy.segments[i].put(this.segments[i].duplicate());
+      copy.segments[i].clear();
+    }
+    return copy;
+  }
+}
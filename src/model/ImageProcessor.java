@@ -141,6 +141,80 @@ public interface ImageProcessor extends ImageReadWrite {
    */
   void brightness(int increment, String name, String destName) throws IllegalArgumentException;
 
+  /**
+   * Apply gamma correction to every RGB value of an image. Each value is normalized
+   * to 0-1, raised to the power of 1/gamma, and scaled back to 0-255. A gamma above 1
+   * brightens the midtones, whereas a gamma below 1 darkens them.
+   *
+   * @param gamma
+   *     The gamma value (must be positive)
+   * @param name
+   *     The name of the image to be edited
+   * @param destName
+   *     The name of the new edited image
+   * @throws IllegalArgumentException
+   *     If gamma is not positive, or if the provided name or destination name
+   *     are invalid (i.e. "")
+   */
+  void gamma(double gamma, String name, String destName) throws IllegalArgumentException;
+
+  /**
+   * Adjust the levels of an image. RGB values at or below the black point become 0,
+   * values at or above the white point become 255, and values in between follow
+   * the quadratic curve that maps the black, mid, and white points to 0, 128, and 255.
+   *
+   * @param black
+   *     The black point
+   * @param mid
+   *     The mid point
+   * @param white
+   *     The white point
+   * @param name
+   *     The name of the image to be edited
+   * @param destName
+   *     The name of the new edited image
+   * @throws IllegalArgumentException
+   *     If the points do not satisfy 0 &lt;= black &lt; mid &lt; white &lt;= 255, or if
+   *     the provided name or destination name are invalid (i.e. "")
+   */
+  void levels(int black, int mid, int white, String name, String destName)
+          throws IllegalArgumentException;
+
+  /**
+   * Change the contrast of an image by scaling the distance of every RGB value
+   * from the middle value 128. RGB values max out at 255 and min out at 0.
+   *
+   * @param factor
+   *     The contrast factor. 1 leaves the image unchanged, values above 1 increase
+   *     the contrast, and values between 0 and 1 decrease it
+   * @param name
+   *     The name of the image to be edited
+   * @param destName
+   *     The name of the new edited image
+   * @throws IllegalArgumentException
+   *     If the factor is negative, or if the provided name or destination name
+   *     are invalid (i.e. "")
+   */
+  void contrast(double factor, String name, String destName) throws IllegalArgumentException;
+
+  /**
+   * Apply a tone curve to every RGB value of an image. The curve linearly interpolates
+   * between the given control points. Values before the first point take the output
+   * of the first point, and values after the last point take the output of the last point.
+   *
+   * @param points
+   *     The control points as {input, output} pairs within 0-255, with
+   *     strictly increasing inputs
+   * @param name
+   *     The name of the image to be edited
+   * @param destName
+   *     The name of the new edited image
+   * @throws IllegalArgumentException
+   *     If there are fewer than 2 control points, the control points are invalid,
+   *     or if the provided name or destination name are invalid (i.e. "")
+   */
+  void curves(int[][] points, String name, String destName) throws IllegalArgumentException;
+
   /**
    * Flip the image horizontally.
    *
@@ -165,6 +239,99 @@ public interface ImageProcessor extends ImageReadWrite {
    */
   void flipVertical(String name, String destName) throws IllegalArgumentException;
 
+  /**
+   * Rotate the image by 90 degrees clockwise. The width and height of the image swap.
+   *
+   * @param name
+   *     The name of the image to be rotated
+   * @param destName
+   *     The name of the new rotated image
+   * @throws IllegalArgumentException
+   *     If the provided name or destination name are invalid (i.e. "")
+   */
+  void rotate90(String name, String destName) throws IllegalArgumentException;
+
+  /**
+   * Rotate the image by 180 degrees.
+   *
+   * @param name
+   *     The name of the image to be rotated
+   * @param destName
+   *     The name of the new rotated image
+   * @throws IllegalArgumentException
+   *     If the provided name or destination name are invalid (i.e. "")
+   */
+  void rotate180(String name, String destName) throws IllegalArgumentException;
+
+  /**
+   * Rotate the image by 270 degrees clockwise (90 degrees counterclockwise).
+   * The width and height of the image swap.
+   *
+   * @param name
+   *     The name of the image to be rotated
+   * @param destName
+   *     The name of the new rotated image
+   * @throws IllegalArgumentException
+   *     If the provided name or destination name are invalid (i.e. "")
+   */
+  void rotate270(String name, String destName) throws IllegalArgumentException;
+
+  /**
+   * Transpose the image, mirroring it along the diagonal from its top left corner.
+   * The width and height of the image swap.
+   *
+   * @param name
+   *     The name of the image to be transposed
+   * @param destName
+   *     The name of the new transposed image
+   * @throws IllegalArgumentException
+   *     If the provided name or destination name are invalid (i.e. "")
+   */
+  void transpose(String name, String destName) throws IllegalArgumentException;
+
+  /**
+   * Crop the image to a rectangle.
+   *
+   * @param x
+   *     The column of the top left corner of the rectangle
+   * @param y
+   *     The row of the top left corner of the rectangle
+   * @param width
+   *     The width of the rectangle
+   * @param height
+   *     The height of the rectangle
+   * @param name
+   *     The name of the image to be cropped
+   * @param destName
+   *     The name of the new cropped image
+   * @throws IllegalArgumentException
+   *     If the rectangle is empty or does not lie within the image,
+   *     or if the provided name or destination name are invalid (i.e. "")
+   */
+  void crop(int x, int y, int width, int height, String name, String destName)
+          throws IllegalArgumentException;
+
+  /**
+   * Shrink the image so that it fits within the given size, keeping its aspect ratio.
+   * The image shrinks by a whole factor, and each new pixel is the average of the block
+   * of pixels it replaces. An image that already fits is not changed. This is meant
+   * for quick previews of large images.
+   *
+   * @param maxWidth
+   *     The largest width of the new image
+   * @param maxHeight
+   *     The largest height of the new image
+   * @param name
+   *     The name of the image to be shrunk
+   * @param destName
+   *     The name of the new shrunk image
+   * @throws IllegalArgumentException
+   *     If the size is not positive, or if the provided name or destination name are
+   *     invalid (i.e. "")
+   */
+  void downscale(int maxWidth, int maxHeight, String name, String destName)
+          throws IllegalArgumentException;
+
   /**
    * Applies a Gaussian blur filter to the given image.
    * It is possible to blur an image that has already been blurred.
@@ -178,6 +345,23 @@ public interface ImageProcessor extends ImageReadWrite {
    */
   void gaussianBlur(String name, String destName) throws IllegalArgumentException;
 
+  /**
+   * Applies a Gaussian blur of the given radius to the given image. The blur kernel
+   * spans (2 * radius + 1) pixels in each direction, and samples a Gaussian whose
+   * standard deviation is half the radius. Larger radii produce stronger blurs.
+   *
+   * @param radius
+   *     The radius of the blur kernel in pixels (at least 1)
+   * @param name
+   *     The name of the image to blur
+   * @param destName
+   *     The name of the new blurred image
+   * @throws IllegalArgumentException
+   *     If the radius is less than 1, if the kernel is larger than the image, or if
+   *     the provided name or destination name are invalid (i.e. "")
+   */
+  void gaussianBlur(int radius, String name, String destName) throws IllegalArgumentException;
+
   /**
    * Sharpens the given image. It is possible to sharpen an image that has already been sharpened.
    *
@@ -223,4 +407,15 @@ public interface ImageProcessor extends ImageReadWrite {
    *     If the provided image name does not exist
    */
   BufferedImage getImageState(String name);
+
+  /**
+   * Remove the image with the given name. Its pixels are freed once no other image
+   * needs them.
+   *
+   * @param name
+   *     The name of the image to remove
+   * @throws IllegalArgumentException
+   *     If the provided image name does not exist
+   */
+  void removeImage(String name) throws IllegalArgumentException;
 }
@@ -2,54 +2,257 @@ package model;
 
 import java.awt.image.BufferedImage;
 import java.io.OutputStream;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntUnaryOperator;
+import java.util.function.UnaryOperator;
 
 /**
  * This class represents the model for a ppm image processing application.
  * It implements the functionality offered in the ImageProcessor interface.
- * The state of the model is represented by a map of loaded images. Images are
- * represented by a given name and an array of pixels. The state of the model can
- * be updated by loading an image or performing an operation on an image
- * that has already been loaded.
+ * The state of the model is represented by a store of loaded images. Images are
+ * represented by a given name and a buffer of packed pixels. By default every image
+ * stays in memory; a store with a memory budget can spill images to disk instead.
+ * The state of the model can be updated by loading an image or performing an
+ * operation on an image that has already been loaded.
+ * <p></p>
+ * Per-pixel operations can optionally run in parallel. In parallel mode, an image is
+ * split into bands of rows that are processed on a fork/join pool. Images with fewer
+ * pixels than a configurable threshold are always processed sequentially. Both modes
+ * produce identical results. Image processors with the same parallelism share one pool,
+ * whose idle daemon threads need no shutdown.
+ * <p></p>
+ * With the default store, one image processor can be shared by several sessions or
+ * threads. Images are immutable once stored, and every operation looks up its source
+ * image exactly once and stores its result with a single put, so operations on different
+ * images run in parallel and any number of threads can read the same image. When two
+ * threads save to the same name at the same time, one of the results wins as a whole.
+ * Stores that move images around (spilling and off-heap stores) are not thread-safe.
+ * <p></p>
+ * An image processor can be given a bounded cache of operation results, so that
+ * repeating an operation on the same pixels (such as returning a slider to an earlier
+ * value) shares the earlier result instead of computing it again. There is no cache by
+ * default.
  */
 public class ImageProcessorImpl implements ImageProcessor {
 
   /**
-   * Maps image-name -> pixel-array.
+   * The color transformation matrix of the sepia tone.
    */
-  private Map<String, int[][][]> imageStates;
+  static final double[][] SEPIA = new double[][]{
+      new double[]{0.393, 0.769, 0.189},
+      new double[]{0.349, 0.686, 0.168},
+      new double[]{0.272, 0.534, 0.131}
+  };
+
+  /**
+   * The color transformation matrix of the red channel.
+   */
+  static final double[][] RED_CHANNEL = ImageProcessorImpl.greyscaleMatrix(1, 0, 0);
+
+  /**
+   * The color transformation matrix of the green channel.
+   */
+  static final double[][] GREEN_CHANNEL = ImageProcessorImpl.greyscaleMatrix(0, 1, 0);
+
+  /**
+   * The color transformation matrix of the blue channel.
+   */
+  static final double[][] BLUE_CHANNEL = ImageProcessorImpl.greyscaleMatrix(0, 0, 1);
+
+  /**
+   * The color transformation matrix of the luma component.
+   */
+  static final double[][] LUMA = ImageProcessorImpl.greyscaleMatrix(0.2126, 0.7152, 0.0722);
+
+  /**
+   * Stores image-name -> pixel-buffer.
+   */
+  private final ImageStore imageStates;
+
+  /**
+   * Caches the results of operations, or null if this image processor does not cache.
+   */
+  private final OperationCache cache;
+
+  /**
+   * Maps parallelism -> the pool shared by every parallel image processor with it.
+   */
+  private static final Map<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+  /**
+   * The pool that runs per-pixel operations in parallel, or null if this
+   * image processor runs sequentially.
+   */
+  private final ForkJoinPool pool;
+
+  /**
+   * Images with fewer pixels than this are processed sequentially, even in parallel mode.
+   */
+  private final int sequentialThreshold;
 
   /**
    * Create a new image processing application. The default
-   * image processor has no loaded images.
+   * image processor has no loaded images, and runs every operation sequentially.
    */
   public ImageProcessorImpl() {
-    this.imageStates = new HashMap<>();
+    this(1, Integer.MAX_VALUE, new MemoryImageStore(), null);
+  }
+
+  /**
+   * Create a new image processing application that keeps its images in the given store.
+   * The image processor runs every operation sequentially.
+   *
+   * @param store
+   *     The empty store to keep loaded images in
+   * @throws IllegalArgumentException
+   *     If the store is null
+   */
+  public ImageProcessorImpl(ImageStore store) throws IllegalArgumentException {
+    if (store == null) {
+      throw new IllegalArgumentException("the image store cannot be null");
+    }
+    this.imageStates = store;
+    this.cache = null;
+    this.pool = null;
+    this.sequentialThreshold = Integer.MAX_VALUE;
+  }
+
+  /**
+   * Create a new image processing application that runs per-pixel operations in parallel.
+   * The image processor has no loaded images.
+   *
+   * @param parallelism
+   *     The number of worker threads to use; a parallelism of 1 runs every
+   *     operation sequentially
+   * @param sequentialThreshold
+   *     The number of pixels below which an image is processed sequentially
+   * @throws IllegalArgumentException
+   *     If the parallelism is less than 1 or the threshold is negative
+   */
+  public ImageProcessorImpl(int parallelism, int sequentialThreshold)
+          throws IllegalArgumentException {
+    this(parallelism, sequentialThreshold, new MemoryImageStore(), null);
+  }
+
+  /**
+   * Create a new image processing application that runs per-pixel operations in parallel,
+   * and keeps the results of operations in the given cache. The image processor has no
+   * loaded images, and keeps them in memory.
+   *
+   * @param parallelism
+   *     The number of worker threads to use; a parallelism of 1 runs every
+   *     operation sequentially
+   * @param sequentialThreshold
+   *     The number of pixels below which an image is processed sequentially
+   * @param cache
+   *     The cache to keep the results of operations in, or null to compute every
+   *     operation
+   * @throws IllegalArgumentException
+   *     If the parallelism is less than 1 or the threshold is negative
+   */
+  public ImageProcessorImpl(int parallelism, int sequentialThreshold, OperationCache cache)
+          throws IllegalArgumentException {
+    this(parallelism, sequentialThreshold, new MemoryImageStore(), cache);
+  }
+
+  /**
+   * Create a new image processing application that runs per-pixel operations in parallel,
+   * and keeps its images in the given store. The image processor has no loaded images.
+   *
+   * @param parallelism
+   *     The number of worker threads to use; a parallelism of 1 runs every
+   *     operation sequentially
+   * @param sequentialThreshold
+   *     The number of pixels below which an image is processed sequentially
+   * @param store
+   *     The empty store to keep loaded images in
+   * @throws IllegalArgumentException
+   *     If the parallelism is less than 1, the threshold is negative, or the store is null
+   */
+  public ImageProcessorImpl(int parallelism, int sequentialThreshold, ImageStore store)
+          throws IllegalArgumentException {
+    this(parallelism, sequentialThreshold, store, null);
+  }
+
+  /**
+   * Create a new image processing application with the given execution mode, store,
+   * and cache.
+   *
+   * @param parallelism
+   *     The number of worker threads to use
+   * @param sequentialThreshold
+   *     The number of pixels below which an image is processed sequentially
+   * @param store
+   *     The empty store to keep loaded images in
+   * @param cache
+   *     The cache to keep the results of operations in, or null
+   * @throws IllegalArgumentException
+   *     If the parallelism is less than 1, the threshold is negative, or the store is null
+   */
+  private ImageProcessorImpl(int parallelism, int sequentialThreshold, ImageStore store,
+                             OperationCache cache) throws IllegalArgumentException {
+    if (store == null) {
+      throw new IllegalArgumentException("the image store cannot be null");
+    }
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("parallelism must be at least 1");
+    }
+    if (sequentialThreshold < 0) {
+      throw new IllegalArgumentException("the sequential threshold cannot be negative");
+    }
+    this.imageStates = store;
+    this.cache = cache;
+    this.pool = parallelism == 1 ? null
+            : POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
+    this.sequentialThreshold = sequentialThreshold;
   }
 
   /**
-   * Creates a new empty array of pixels with the same dimensions
-   * as the given image. The new image (pixel array) is added
-   * to the map of loaded images. This method returns the reference
-   * to the new image (pixel array).
+   * Apply the given operation to every row of an image. Depending on the execution
+   * mode of this image processor, the rows are either processed in a single loop, or split
+   * into bands that are processed in parallel. The operation must only write to
+   * the rows it is given.
+   *
+   * @param img
+   *     The image whose rows should be processed
+   * @param op
+   *     The operation to apply to each band of rows
+   */
+  private void forEachRow(PixelBuffer img, RowBandTask.RowOperation op) {
+    int height = img.getHeight();
+    if (this.pool == null || (long) img.getWidth() * height < this.sequentialThreshold) {
+      op.apply(0, height);
+      return;
+    }
+    // aim for a few bands per worker so that uneven bands balance out
+    int bands = this.pool.getParallelism() * 4;
+    int bandSize = (height + bands - 1) / bands;
+    this.pool.invoke(new RowBandTask(op, 0, height, bandSize));
+  }
+
+  /**
+   * Look up the source image of an operation, after checking that the operation
+   * can save its result under the given destination name.
    *
    * @param name
    *     The name of the original image
    * @param destName
    *     What name to save the new image under
    * @return
-   *     The new image (pixel array)
+   *     The original image (pixel buffer)
    * @throws IllegalArgumentException
    *     If the provided name for the original image or the
    *     destination name are invalid. The original image must
    *     exist within the map of loaded images. The new name
    *     cannot be the same as the old name.
    */
-  private int[][][] createNewImage(String name, String destName) throws IllegalArgumentException {
-    if (!(this.imageStates.containsKey(name))) {
-      throw new IllegalArgumentException("cannot find image named: \"" + name + "\"");
-    }
+  private PixelBuffer getSourceImage(String name, String destName)
+          throws IllegalArgumentException {
+    // a single lookup, so that another thread cannot replace the image in between
+    PixelBuffer oldImg = this.imageStates.get(name);
     if (destName.length() == 0 || destName.contains(" ")) {
       throw new IllegalArgumentException("the destination name cannot be empty or contain spaces");
     }
@@ -57,120 +260,256 @@ public class ImageProcessorImpl implements ImageProcessor {
       throw new IllegalArgumentException("The name \"" + destName + "\" is already taken. " +
               "Please choose a different name");
     }
+    return oldImg;
+  }
 
-    int[][][] oldImg = this.imageStates.get(name);
-    int[][][] newImg = new int[ImageUtil.getHeight(oldImg)][ImageUtil.getWidth(oldImg)][3];
-    this.imageStates.put(destName, newImg);
+  /**
+   * Apply an operation to an image, or get its result from the cache if the operation
+   * was already applied to the same pixels.
+   *
+   * @param operation
+   *     The name of the operation, followed by all of its parameters
+   * @param oldImg
+   *     The image to apply the operation to
+   * @param op
+   *     Computes the result of the operation
+   * @return
+   *     The result, which may be shared with other images
+   */
+  private PixelBuffer memoize(String operation, PixelBuffer oldImg,
+                              UnaryOperator<PixelBuffer> op) {
+    if (this.cache == null) {
+      return op.apply(oldImg);
+    }
+    return this.cache.apply(operation, oldImg, op);
+  }
 
+  /**
+   * Apply an operation that only builds a view of its image. Views are too cheap to
+   * cache, but the cache is told how the view was derived, so that operations on the
+   * view can be looked up without hashing its pixels.
+   *
+   * @param operation
+   *     The name of the operation, followed by all of its parameters
+   * @param oldImg
+   *     The image to apply the operation to
+   * @param op
+   *     Builds the view
+   * @return
+   *     The view
+   */
+  private PixelBuffer view(String operation, PixelBuffer oldImg,
+                           UnaryOperator<PixelBuffer> op) {
+    PixelBuffer newImg = op.apply(oldImg);
+    if (this.cache != null) {
+      this.cache.record(operation, oldImg, newImg);
+    }
     return newImg;
   }
 
   /**
-   * Apply the given kernel filter to the given image. The filter will be applied
-   * on the specified color channel (red, green, or blue). This method returns a
-   * new array with the modifications; it does NOT store this array in image states, as
-   * this operation can be performed in suces
+   * Apply the given kernel filter to the given image. The filter is applied to the
+   * red, green, and blue channels of each pixel in a single traversal of the image.
+   * Pixels whose kernel lies entirely inside the image are convolved with a tight loop
+   * over the flattened kernel; only the border strips, where the kernel must be clipped
+   * to the image, use the general convolution. This
+   * method returns a new buffer with the modifications; it does NOT store this buffer
+   * in image states, as this operation can be performed in suces
    *
    * @param k
    *     The filter kernel (an NxM matrix, such that N and M are odd)
-   * @param c
-   *     The color channel to modify (red, green, or blue)
-   * @param oldImg
-   *     The image pixel array to modify
+   * @param img
+   *     The image pixel buffer to modify
    * @throws IllegalArgumentException
-   *     If the kernel is an invalid size (less than 1x1 or greater than the image size), or
-   *     if the provided color channel is invalid
+   *     If the kernel is an invalid size (less than 1x1 or greater than the image size)
    */
-  private int[][][] applyFilter(Filter k, Channel c, int[][][] oldImg)
+  private PixelBuffer applyFilter(Filter k, PixelBuffer img)
           throws IllegalArgumentException {
+    // a filter reads every pixel many times, so a view is copied into one buffer first
+    PixelBuffer oldImg = PixelView.contiguous(img);
     if (k.getHeight() < 1 || k.getWidth() < 1) {
       throw new IllegalArgumentException("Invalid kernel size. Must be larger than 1x1.");
     }
-    if (k.getHeight() > ImageUtil.getHeight(oldImg) || k.getWidth() > ImageUtil.getWidth(oldImg)) {
+    if (k.getHeight() > oldImg.getHeight() || k.getWidth() > oldImg.getWidth()) {
       throw new IllegalArgumentException("Invalid kernel size. Must be smaller than the image.");
     }
+    if (k.isSeparable()) {
+      return this.applySeparableFilter(k, oldImg);
+    }
+
+    int width = oldImg.getWidth();
+    int height = oldImg.getHeight();
+    int xOffset = k.getXOffset();
+    int yOffset = k.getYOffset();
+    double[] weights = k.getFlattened();
+    // the flat-index distance from the center pixel to the pixel under each kernel value
+    int[] offsets = new int[weights.length];
+    for (int kRow = 0; kRow < k.getHeight(); kRow++) {
+      for (int kCol = 0; kCol < k.getWidth(); kCol++) {
+        offsets[kRow * k.getWidth() + kCol] = (kRow - yOffset) * width + (kCol - xOffset);
+      }
+    }
 
-    int[][][] newImg = new int[ImageUtil.getHeight(oldImg)][ImageUtil.getWidth(oldImg)][3];
+    PixelBuffer newImg = this.imageStates.allocate(width, height);
 
-    for (int row = 0; row < oldImg.length; row++) {
-      for (int col = 0; col < oldImg[row].length; col++) {
-        int rgbVal = this.channelToRGBIndex(c);
-        // perform a convolution centered at the current pixel (row, col)
-        int sum = this.convolution(k, oldImg, row, col, rgbVal);
-        // if the sum is over 255, make it 255
-        if (sum > 255) {
-          sum = 255;
+    this.forEachRow(oldImg, (startRow, endRow) -> {
+      for (int row = startRow; row < endRow; row++) {
+        // the kernel overlaps the top or bottom edge for every pixel in this row
+        if (row < yOffset || row >= height - yOffset) {
+          for (int col = 0; col < width; col++) {
+            newImg.setRGB(row, col, this.convolution(k, oldImg, row, col));
+          }
+          continue;
         }
-        // if the sum is below 0, we make it 0
-        if (sum < 0) {
-          sum = 0;
+        // left border strip
+        for (int col = 0; col < xOffset; col++) {
+          newImg.setRGB(row, col, this.convolution(k, oldImg, row, col));
         }
-        // copy over the unmodified RGB values from the original image and updated the
-        // specified RGB channel with the sum
-        for (int i = 0; i < 3; i++) {
-          if (i != rgbVal) {
-            newImg[row][col][i] = oldImg[row][col][i];
-          } else {
-            newImg[row][col][rgbVal] = sum;
+        // interior: the kernel lies entirely inside the image
+        for (int col = xOffset; col < width - xOffset; col++) {
+          int center = row * width + col;
+          double rSum = 0.0;
+          double gSum = 0.0;
+          double bSum = 0.0;
+          for (int i = 0; i < weights.length; i++) {
+            int oldRGB = oldImg.getRGB(center + offsets[i]);
+            rSum += PixelBuffer.red(oldRGB) * weights[i];
+            gSum += PixelBuffer.green(oldRGB) * weights[i];
+            bSum += PixelBuffer.blue(oldRGB) * weights[i];
           }
+          newImg.setRGB(center, PixelBuffer.pack(PixelBuffer.clamp((int) rSum),
+                  PixelBuffer.clamp((int) gSum), PixelBuffer.clamp((int) bSum)));
+        }
+        // right border strip
+        for (int col = width - xOffset; col < width; col++) {
+          newImg.setRGB(row, col, this.convolution(k, oldImg, row, col));
         }
       }
-    }
+    });
     return newImg;
   }
 
   /**
-   * Convert an RGB channel to its associated array index:
-   * 0 for red, 1 for green, and 2 for blue.
+   * Apply a separable filter kernel to the given image, on all three color channels.
+   * The kernel is applied as a horizontal pass with its row weights, followed by a
+   * vertical pass with its column weights. Both passes treat pixels outside the image
+   * as 0, so the result matches a full 2D convolution of the kernel. This takes
+   * (width + height) multiply-adds per pixel rather than (width * height).
+   * Each band of rows only keeps the horizontal sums of the last kernel-height rows it
+   * read, rather than those of the whole image.
    *
-   * @param c
-   *     The RBG channel
+   * @param k
+   *     The separable filter kernel
+   * @param oldImg
+   *     The image pixel buffer to modify
    * @return
-   *     The RGB array index
+   *     A new pixel buffer with the filtered image
    */
-  private final int channelToRGBIndex(Channel c) {
-    int index = 0;
-    if (c == Channel.Green) {
-      index = 1;
-    }
-    if (c == Channel.Blue) {
-      index = 2;
+  private PixelBuffer applySeparableFilter(Filter k, PixelBuffer oldImg) {
+    int width = oldImg.getWidth();
+    int height = oldImg.getHeight();
+    double[] colWeights = k.getColumnWeights();
+    int yOffset = k.getYOffset();
+
+    PixelBuffer newImg = this.imageStates.allocate(width, height);
+    this.forEachRow(oldImg, (startRow, endRow) -> {
+      // horizontal sums of image row r are kept in window[r % kernel height], with the
+      // red, green, and blue sums of each pixel next to each other
+      double[][] window = new double[colWeights.length][3 * width];
+      int nextRow = Math.max(0, startRow - yOffset);
+      double[] sums = new double[3 * width];
+      for (int row = startRow; row < endRow; row++) {
+        // horizontal pass over the rows the kernel reaches that were not read yet
+        int lastRow = Math.min(height, row + yOffset + 1);
+        for (; nextRow < lastRow; nextRow++) {
+          this.horizontalPass(oldImg, nextRow, k, window[nextRow % window.length]);
+        }
+
+        // vertical pass, clipping the kernel to the top and bottom edges of the image
+        int kStart = Math.max(0, yOffset - row);
+        int kEnd = Math.min(colWeights.length, height - row + yOffset);
+        Arrays.fill(sums, 0.0);
+        for (int kRow = kStart; kRow < kEnd; kRow++) {
+          double[] horizontal = window[(row + kRow - yOffset) % window.length];
+          for (int i = 0; i < sums.length; i++) {
+            sums[i] += horizontal[i] * colWeights[kRow];
+          }
+        }
+        for (int col = 0; col < width; col++) {
+          newImg.setRGB(row, col, PixelBuffer.pack(PixelBuffer.clamp((int) sums[3 * col]),
+                  PixelBuffer.clamp((int) sums[3 * col + 1]),
+                  PixelBuffer.clamp((int) sums[3 * col + 2])));
+        }
+      }
+    });
+    return newImg;
+  }
+
+  /**
+   * Convolve one row of an image with the row weights of a separable kernel.
+   *
+   * @param oldImg
+   *     The image pixel buffer
+   * @param row
+   *     The row to convolve
+   * @param k
+   *     The separable filter kernel
+   * @param sums
+   *     Receives the red, green, and blue sums of each pixel of the row, next to each
+   *     other
+   */
+  private void horizontalPass(PixelBuffer oldImg, int row, Filter k, double[] sums) {
+    int width = oldImg.getWidth();
+    double[] rowWeights = k.getRowWeights();
+    int xOffset = k.getXOffset();
+    for (int col = 0; col < width; col++) {
+      // clip the kernel to the left and right edges of the image
+      int kStart = Math.max(0, xOffset - col);
+      int kEnd = Math.min(rowWeights.length, width - col + xOffset);
+      double rSum = 0.0;
+      double gSum = 0.0;
+      double bSum = 0.0;
+      for (int kCol = kStart; kCol < kEnd; kCol++) {
+        int oldRGB = oldImg.getRGB(row, col + kCol - xOffset);
+        rSum += PixelBuffer.red(oldRGB) * rowWeights[kCol];
+        gSum += PixelBuffer.green(oldRGB) * rowWeights[kCol];
+        bSum += PixelBuffer.blue(oldRGB) * rowWeights[kCol];
+      }
+      sums[3 * col] = rSum;
+      sums[3 * col + 1] = gSum;
+      sums[3 * col + 2] = bSum;
     }
-    return index;
   }
 
   /**
    * Compute a convolution for a set of pixels centered at (origRow, origCol).
-   * This method will return the sum of the convolution as an integer. This represents
-   * the new value for the center pixel.
+   * The red, green, and blue sums of the convolution are computed together, clamped to
+   * 0-255, and returned as a packed pixel. This represents the new value for the
+   * center pixel.
    *
    * @param k
    *     The filter kernel
    * @param img
-   *     The reference image for this convolution (as an array of pixels)
+   *     The reference image for this convolution (as a buffer of pixels)
    * @param origRow
    *     The row-position of the center pixel
    * @param origCol
    *     The column-position of the center pixel
-   * @param rgbVal
-   *     The color channel to base the convolution on
    * @return
-   *     The sum resulting from a single convolution; represents the new value for the
-   *     center pixel and the provided color channel
+   *     The packed pixel resulting from a single convolution; represents the new value
+   *     for the center pixel
    * @throws IllegalArgumentException
-   *     If the provided RGB index is not one of 0, 1, or 2, or if the provided row
-   *     and column positions are out of bounds for the given image
+   *     If the provided row and column positions are out of bounds for the given image
    */
-  private final int convolution(Filter k, int[][][] img, int origRow, int origCol, int rgbVal)
+  private final int convolution(Filter k, PixelBuffer img, int origRow, int origCol)
           throws IllegalArgumentException {
-    if (rgbVal > 2 || rgbVal < 0) {
-      throw new IllegalArgumentException("RGB index must be 0 (red), 1 (green), or 2 (blue)");
-    }
-    if (origRow < 0 || origRow > img.length || origCol < 0 || origCol > img[0].length) {
+    if (origRow < 0 || origRow > img.getHeight() || origCol < 0 || origCol > img.getWidth()) {
       throw new IllegalArgumentException("out of bounds row and/or column for given image");
     }
 
-    double sum = 0.0;
+    double rSum = 0.0;
+    double gSum = 0.0;
+    double bSum = 0.0;
     int kRow;
     int kCol;
     // if kernel extends beyond the top of the image, start from the top-edge of the image
@@ -188,18 +527,20 @@ public class ImageProcessorImpl implements ImageProcessor {
       kCol = 0;
     }
     // height and width of the original image
-    int height = img.length;
-    int width = img[0].length;
+    int height = img.getHeight();
+    int width = img.getWidth();
     // perform convolution by iterating through kernel overlaid with the original image
     while (kRow < height - origRow + k.getYOffset() && kRow < k.getHeight()) {
       while (kCol < width - origCol + k.getXOffset() && kCol < k.getWidth()) {
         int shiftRow = origRow + kRow - k.getYOffset();
         int shiftCol = origCol + kCol - k.getXOffset();
-        // kernel value and the corresponding RGB value from the original image
+        // kernel value and the corresponding RGB values from the original image
         double kVal = k.getValAt(kRow, kCol);
-        int oldVal = img[shiftRow][shiftCol][rgbVal];
-        // update sum with the product of the kernel value and original RGB value
-        sum += oldVal * kVal;
+        int oldRGB = img.getRGB(shiftRow, shiftCol);
+        // update sums with the product of the kernel value and original RGB values
+        rSum += PixelBuffer.red(oldRGB) * kVal;
+        gSum += PixelBuffer.green(oldRGB) * kVal;
+        bSum += PixelBuffer.blue(oldRGB) * kVal;
         kCol++;
       }
       kRow++;
@@ -211,296 +552,233 @@ public class ImageProcessorImpl implements ImageProcessor {
         kCol = 0;
       }
     }
-    return (int) sum;
+    // sums over 255 become 255, and sums below 0 become 0
+    return PixelBuffer.pack(PixelBuffer.clamp((int) rSum), PixelBuffer.clamp((int) gSum),
+            PixelBuffer.clamp((int) bSum));
   }
 
   @Override
   public void gaussianBlur(String name, String destName) throws IllegalArgumentException {
-    if (!(this.imageStates.containsKey(name))) {
-      throw new IllegalArgumentException("cannot find image named: \"" + name + "\"");
-    }
+    PixelBuffer oldImg = this.imageStates.get(name);
 
     if (destName.equals(name)) {
       throw new IllegalArgumentException("The name \"" + destName + "\" is already taken. " +
               "Please choose a different name");
     }
 
-    int[][][] oldImg = this.imageStates.get(name);
-
-    Filter filter = new Filter(new double[][]{
-        new double []{0.0625, 0.125, 0.0625},
-        new double []{0.125, 0.25, 0.125},
-        new double []{0.0625, 0.125, 0.0625}
-    });
-
-    int[][][] redChannel = this.applyFilter(filter, Channel.Red, oldImg);
-    int[][][] greenChannel = this.applyFilter(filter, Channel.Green, redChannel);
-    int[][][] blueChannel = this.applyFilter(filter, Channel.Blue, greenChannel);
+    this.imageStates.put(destName, this.memoize("gaussianBlur", oldImg, this::gaussianBlur));
+  }
 
-    this.imageStates.put(destName, blueChannel);
+  @Override
+  public void gaussianBlur(int radius, String name, String destName)
+          throws IllegalArgumentException {
+    PixelBuffer oldImg = this.getSourceImage(name, destName);
+    this.imageStates.put(destName, this.memoize("gaussianBlur " + radius, oldImg,
+            img -> this.gaussianBlur(radius, img)));
   }
 
   @Override
   public void sharpen(String name, String destName) throws IllegalArgumentException {
-    if (!(this.imageStates.containsKey(name))) {
-      throw new IllegalArgumentException("cannot find image named: \"" + name + "\"");
-    }
+    PixelBuffer oldImg = this.imageStates.get(name);
 
     if (destName.equals(name)) {
       throw new IllegalArgumentException("The name \"" + destName + "\" is already taken. " +
               "Please choose a different name");
     }
-    int[][][] oldImg = this.imageStates.get(name);
-
-    Filter filter = new Filter(new double[][]{
-        new double []{-0.125, -0.125, -0.125, -0.125, -0.125},
-        new double []{-0.125, 0.25, 0.25, 0.25, -0.125},
-        new double []{-0.125, 0.25, 1, 0.25, -0.125},
-        new double []{-0.125, 0.25, 0.25, 0.25, -0.125},
-        new double []{-0.125, -0.125, -0.125, -0.125, -0.125}
-    });
-
-    int[][][] redChannel = this.applyFilter(filter, Channel.Red, oldImg);
-    int[][][] greenChannel = this.applyFilter(filter, Channel.Green, redChannel);
-    int[][][] blueChannel = this.applyFilter(filter, Channel.Blue, greenChannel);
 
-    this.imageStates.put(destName, blueChannel);
+    this.imageStates.put(destName, this.memoize("sharpen", oldImg, this::sharpen));
   }
 
   @Override
   public void colorTransformation(double[][] cMatrix, String name, String destName)
           throws IllegalArgumentException {
-
-    int[][][] newImg = this.createNewImage(name, destName);
-    int[][][] oldImg = this.imageStates.get(name);
-
-    for (int row = 0; row < oldImg.length; row++) {
-      for (int col = 0; col < oldImg[row].length; col++) {
-        for (int i = 0; i < 3; i++) {
-          int newVal = (int) ((cMatrix[i][0] * oldImg[row][col][0])
-                  + (cMatrix[i][1] * oldImg[row][col][1])
-                  + (cMatrix[i][2] * oldImg[row][col][2]));
-
-          if (newVal > 255) {
-            newImg[row][col][i] = 255;
-          }
-          else if (newVal < 0) {
-            newImg[row][col][i] = 255;
-          }
-          else {
-            newImg[row][col][i] = newVal;
-          }
-        }
-      }
-    }
+    PixelBuffer oldImg = this.getSourceImage(name, destName);
+    this.imageStates.put(destName, this.memoize("colorTransformation "
+            + Arrays.deepToString(cMatrix), oldImg, img -> this.colorTransformation(cMatrix, img)));
   }
 
   @Override
   public void sepia(String name, String destName) throws IllegalArgumentException {
-    this.colorTransformation(new double[][]{
-        new double[]{0.393, 0.769, 0.189},
-        new double[]{0.349, 0.686, 0.168},
-        new double[]{0.272, 0.534, 0.131}
-    }, name, destName);
+    this.colorTransformation(SEPIA, name, destName);
   }
 
   @Override
   public void redChannel(String name, String destName) throws IllegalArgumentException {
-    this.colorTransformation(new double[][]{
-        new double[]{1, 0, 0},
-        new double[]{1, 0, 0},
-        new double[]{1, 0, 0}
-    }, name, destName);
+    this.colorTransformation(RED_CHANNEL, name, destName);
   }
 
   @Override
   public void greenChannel(String name, String destName) throws IllegalArgumentException {
-    this.colorTransformation(new double[][]{
-        new double[]{0, 1, 0},
-        new double[]{0, 1, 0},
-        new double[]{0, 1, 0}
-    }, name, destName);
+    this.colorTransformation(GREEN_CHANNEL, name, destName);
   }
 
   @Override
   public void blueChannel(String name, String destName) throws IllegalArgumentException {
-    this.colorTransformation(new double[][]{
-        new double[]{0, 0, 1},
-        new double[]{0, 0, 1},
-        new double[]{0, 0, 1}
-    }, name, destName);
+    this.colorTransformation(BLUE_CHANNEL, name, destName);
   }
 
   @Override
   public void luma(String name, String destName) throws IllegalArgumentException {
-    this.colorTransformation(new double[][]{
-        new double[]{0.2126, 0.7152, 0.0722},
-        new double[]{0.2126, 0.7152, 0.0722},
-        new double[]{0.2126, 0.7152, 0.0722}
-    }, name, destName);
+    this.colorTransformation(LUMA, name, destName);
   }
 
   @Override
   public void maxVal(String name, String destName) throws IllegalArgumentException {
-    int[][][] newImg = this.createNewImage(name, destName);
-    int[][][] oldImg = this.imageStates.get(name);
-
-    for (int row = 0; row < oldImg.length; row++) {
-      for (int col = 0; col < oldImg[row].length; col++) {
-        int maxValue = oldImg[row][col][0];
-
-        if (oldImg[row][col][1] > maxValue) {
-          maxValue = oldImg[row][col][1];
-        }
-        if (oldImg[row][col][2] > maxValue) {
-          maxValue = oldImg[row][col][2];
-        }
-
-        newImg[row][col][0] = maxValue;
-        newImg[row][col][1] = maxValue;
-        newImg[row][col][2] = maxValue;
-      }
-    }
+    PixelBuffer oldImg = this.getSourceImage(name, destName);
+    this.imageStates.put(destName, this.memoize("maxVal", oldImg, this::maxVal));
   }
 
   @Override
   public void intensity(String name, String destName) throws IllegalArgumentException {
-    int[][][] newImg = this.createNewImage(name, destName);
-    int[][][] oldImg = this.imageStates.get(name);
-
-    for (int row = 0; row < oldImg.length; row++) {
-      for (int col = 0; col < oldImg[row].length; col++) {
-        int average = (oldImg[row][col][0]
-                + oldImg[row][col][1]
-                + oldImg[row][col][2]) / 3;
-
-        newImg[row][col][0] = average;
-        newImg[row][col][1] = average;
-        newImg[row][col][2] = average;
-      }
-    }
+    PixelBuffer oldImg = this.getSourceImage(name, destName);
+    this.imageStates.put(destName, this.memoize("intensity", oldImg, this::intensity));
   }
 
   @Override
   public void customGreyscale(double rC, double gC, double bC, String name, String destName)
           throws IllegalArgumentException {
 
-    this.colorTransformation(new double[][]{
-        new double[]{rC, gC, bC},
-        new double[]{rC, gC, bC},
-        new double[]{rC, gC, bC}
-    }, name, destName);
+    this.colorTransformation(ImageProcessorImpl.greyscaleMatrix(rC, gC, bC), name, destName);
   }
 
   @Override
   public void brightness(int increment, String name, String destName)
           throws IllegalArgumentException {
+    PixelBuffer oldImg = this.getSourceImage(name, destName);
+    this.imageStates.put(destName, this.memoize("brightness " + increment, oldImg,
+            img -> this.brightness(increment, img)));
+  }
 
-    int[][][] newImg = this.createNewImage(name, destName);
-    int[][][] oldImg = this.imageStates.get(name);
+  @Override
+  public void gamma(double gamma, String name, String destName)
+          throws IllegalArgumentException {
+    PixelBuffer oldImg = this.getSourceImage(name, destName);
+    this.imageStates.put(destName, this.memoize("gamma " + gamma, oldImg,
+            img -> this.applyLookupTable(LookupTable.gamma(gamma), img)));
+  }
 
-    for (int row = 0; row < oldImg.length; row++) {
-      for (int col = 0; col < oldImg[row].length; col++) {
-        for (int i = 0; i < 3; i++) {
-          if (oldImg[row][col][i] + increment > 255) {
-            newImg[row][col][i] = 255;
-          }
-          else if (oldImg[row][col][i] + increment < 0) {
-            newImg[row][col][i] = 0;
-          }
-          else {
-            newImg[row][col][i] = oldImg[row][col][i] + increment;
-          }
-        }
-      }
-    }
+  @Override
+  public void levels(int black, int mid, int white, String name, String destName)
+          throws IllegalArgumentException {
+    PixelBuffer oldImg = this.getSourceImage(name, destName);
+    this.imageStates.put(destName, this.memoize("levels " + black + " " + mid + " " + white,
+            oldImg, img -> this.applyLookupTable(LookupTable.levels(black, mid, white), img)));
   }
 
   @Override
-  public void flipHorizontal(String name, String destName) throws IllegalArgumentException {
+  public void contrast(double factor, String name, String destName)
+          throws IllegalArgumentException {
+    PixelBuffer oldImg = this.getSourceImage(name, destName);
+    this.imageStates.put(destName, this.memoize("contrast " + factor, oldImg,
+            img -> this.applyLookupTable(LookupTable.contrast(factor), img)));
+  }
 
-    int[][][] newImg = this.createNewImage(name, destName);
-    int[][][] oldImg = this.imageStates.get(name);
+  @Override
+  public void curves(int[][] points, String name, String destName)
+          throws IllegalArgumentException {
+    PixelBuffer oldImg = this.getSourceImage(name, destName);
+    this.imageStates.put(destName, this.memoize("curves " + Arrays.deepToString(points), oldImg,
+            img -> this.applyLookupTable(LookupTable.curves(points), img)));
+  }
 
-    for (int row = 0; row < oldImg.length; row++) {
-      for (int col = 0; col < oldImg[row].length; col++) {
-        // replace current column val with last column val
-        newImg[row][col] = oldImg[row][oldImg[row].length - col - 1];
-      }
-    }
+  @Override
+  public void flipHorizontal(String name, String destName) throws IllegalArgumentException {
+    PixelBuffer oldImg = this.getSourceImage(name, destName);
+    this.imageStates.put(destName, this.view("flipHorizontal", oldImg, this::flipHorizontal));
   }
 
   @Override
   public void flipVertical(String name, String destName) throws IllegalArgumentException {
+    PixelBuffer oldImg = this.getSourceImage(name, destName);
+    this.imageStates.put(destName, this.view("flipVertical", oldImg, this::flipVertical));
+  }
 
-    int[][][] newImg = this.createNewImage(name, destName);
-    int[][][] oldImg = this.imageStates.get(name);
+  @Override
+  public void rotate90(String name, String destName) throws IllegalArgumentException {
+    PixelBuffer oldImg = this.getSourceImage(name, destName);
+    this.imageStates.put(destName, this.view("rotate90", oldImg, PixelView::rotate90));
+  }
 
-    for (int i = 0; i < oldImg.length; i++) {
-      // replace current row with last row
-      newImg[i] = oldImg[oldImg.length - i - 1];
-    }
+  @Override
+  public void rotate180(String name, String destName) throws IllegalArgumentException {
+    PixelBuffer oldImg = this.getSourceImage(name, destName);
+    this.imageStates.put(destName, this.view("rotate180", oldImg, PixelView::rotate180));
+  }
+
+  @Override
+  public void rotate270(String name, String destName) throws IllegalArgumentException {
+    PixelBuffer oldImg = this.getSourceImage(name, destName);
+    this.imageStates.put(destName, this.view("rotate270", oldImg, PixelView::rotate270));
+  }
+
+  @Override
+  public void transpose(String name, String destName) throws IllegalArgumentException {
+    PixelBuffer oldImg = this.getSourceImage(name, destName);
+    this.imageStates.put(destName, this.view("transpose", oldImg, PixelView::transpose));
+  }
+
+  @Override
+  public void crop(int x, int y, int width, int height, String name, String destName)
+          throws IllegalArgumentException {
+    PixelBuffer oldImg = this.getSourceImage(name, destName);
+    this.imageStates.put(destName, this.view("crop " + x + " " + y + " " + width + " " + height,
+            oldImg, img -> PixelView.crop(img, x, y, width, height)));
+  }
+
+  @Override
+  public void downscale(int maxWidth, int maxHeight, String name, String destName)
+          throws IllegalArgumentException {
+    PixelBuffer oldImg = this.getSourceImage(name, destName);
+    int factor = ImageProcessorImpl.downscaleFactor(oldImg.getWidth(), oldImg.getHeight(),
+            maxWidth, maxHeight);
+    this.imageStates.put(destName, this.memoize("downscale " + factor, oldImg,
+            img -> this.downscale(factor, img)));
   }
 
   @Override
   public boolean hasLoadedImage(String name) {
-    return this.imageStates.containsKey(name);
+    return this.imageStates.contains(name);
+  }
+
+  @Override
+  public void removeImage(String name) throws IllegalArgumentException {
+    if (!(this.imageStates.contains(name))) {
+      throw new IllegalArgumentException("cannot find image named: \"" + name + "\"");
+    }
+    if (this.cache != null) {
+      this.cache.forget(this.imageStates.get(name));
+    }
+    this.imageStates.remove(name);
   }
 
   /**
-   * Load a PPM image as a 3D array of RGB values. Uses readPPM() from ImageUtil.
-   * The outermost array represents row values. The inner array represents column values.
-   * The innermost array represents the set of RGB values for each pixel.
+   * Load an image as a buffer of packed RGB values. Uses readImage() from ImageUtil,
+   * which picks a reader based on the extension.
    */
   @Override
   public void loadImage(String imagePath, String name) throws IllegalArgumentException {
     if (name.length() == 0 || name.contains(" ")) {
       throw new IllegalArgumentException("invalid image name");
     }
-
-    String extension = ImageUtil.getExtension(imagePath);
-    int[][][] loadedImage;
-
-    switch (extension) {
-      case ".ppm":
-        loadedImage = ImageUtil.readPPM(imagePath);
-        break;
-      case ".jpg":
-      case ".jpeg":
-      case ".png":
-      case ".bmp":
-        loadedImage = ImageUtil.readWithIO(imagePath);
-        break;
-      default:
-        throw new IllegalArgumentException("Invalid file: \"" + extension + "\" extension is " +
-                "not supported. Please use one of: .ppm (ASCII), .jpg, .jpeg, .png, .bmp");
-    }
-    this.imageStates.put(name, loadedImage);
+    this.imageStates.put(name, ImageUtil.readImage(imagePath, this.imageStates));
   }
 
   @Override
   public void saveImage(OutputStream imageData, String name, String extension)
           throws IllegalArgumentException {
-    if (!(this.imageStates.containsKey(name))) {
-      throw new IllegalArgumentException("invalid image name");
-    }
-
-    int[][][] img = this.imageStates.get(name);
+    this.saveImage(imageData, name, extension, new SaveOptions());
+  }
 
-    switch (extension) {
-      case ".ppm":
-        ImageUtil.savePPM(imageData, img);
-        break;
-      case ".jpg":
-      case ".jpeg":
-      case ".png":
-      case ".bmp":
-        ImageUtil.saveWithIO(imageData, img);
-        break;
-      default:
-        throw new IllegalArgumentException("Invalid file: \"" + extension + "\" extension is " +
-                "not supported. Please use one of: .ppm (ASCII), .jpg, .jpeg, .png, .bmp");
+  @Override
+  public void saveImage(OutputStream imageData, String name, String extension,
+                        SaveOptions options) throws IllegalArgumentException {
+    PixelBuffer img;
+    try {
+      img = this.imageStates.get(name);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("invalid image name");
     }
+    ImageUtil.writeImage(imageData, img, extension, options);
   }
 
   /**
@@ -511,7 +789,7 @@ public class ImageProcessorImpl implements ImageProcessor {
    */
   @Override
   public String[] getSupportedFormats() {
-    return new String[]{".ppm", ".jpg", ".jpeg", ".png", ".bmp"};
+    return ImageUtil.getSupportedFormats();
   }
 
   /**
@@ -521,23 +799,466 @@ public class ImageProcessorImpl implements ImageProcessor {
   @Override
   public BufferedImage getImageState(String name)
           throws IllegalArgumentException {
-    if (!(this.imageStates.containsKey(name))) {
-      throw new IllegalArgumentException("cannot find image named: \"" + name + "\"");
-    }
-    int[][][] oldImg = this.imageStates.get(name);
+    PixelBuffer oldImg = this.imageStates.get(name);
     return ImageUtil.generateBufferedImage(oldImg);
   }
 
+  /**
+   * Blur the given image with the 3x3 Gaussian kernel.
+   *
+   * @param oldImg
+   *     The image to blur
+   * @return
+   *     A new, blurred image
+   * @throws IllegalArgumentException
+   *     If the image is smaller than the kernel
+   */
+  PixelBuffer gaussianBlur(PixelBuffer oldImg) throws IllegalArgumentException {
+    Filter filter = new Filter(new double[][]{
+        new double []{0.0625, 0.125, 0.0625},
+        new double []{0.125, 0.25, 0.125},
+        new double []{0.0625, 0.125, 0.0625}
+    });
+
+    return this.applyFilter(filter, oldImg);
+  }
+
+  /**
+   * Blur the given image with a Gaussian kernel of the given radius. The kernel samples
+   * a normalized Gaussian with a standard deviation of half the radius.
+   *
+   * @param radius
+   *     The radius of the kernel (at least 1)
+   * @param oldImg
+   *     The image to blur
+   * @return
+   *     A new, blurred image
+   * @throws IllegalArgumentException
+   *     If the radius is less than 1, or the image is smaller than the kernel
+   */
+  PixelBuffer gaussianBlur(int radius, PixelBuffer oldImg) throws IllegalArgumentException {
+    if (radius < 1) {
+      throw new IllegalArgumentException("the blur radius must be at least 1");
+    }
+
+    // sample a normalized Gaussian with a standard deviation of half the radius
+    double sigma = radius / 2.0;
+    double[] weights = new double[2 * radius + 1];
+    double total = 0.0;
+    for (int i = -radius; i <= radius; i++) {
+      weights[i + radius] = Math.exp(-(i * i) / (2 * sigma * sigma));
+      total += weights[i + radius];
+    }
+    for (int i = 0; i < weights.length; i++) {
+      weights[i] /= total;
+    }
+    Filter filter = new Filter(weights, weights);
+
+    return this.applyFilter(filter, oldImg);
+  }
+
+  /**
+   * Sharpen the given image with the 5x5 sharpening kernel.
+   *
+   * @param oldImg
+   *     The image to sharpen
+   * @return
+   *     A new, sharpened image
+   * @throws IllegalArgumentException
+   *     If the image is smaller than the kernel
+   */
+  PixelBuffer sharpen(PixelBuffer oldImg) throws IllegalArgumentException {
+    Filter filter = new Filter(new double[][]{
+        new double []{-0.125, -0.125, -0.125, -0.125, -0.125},
+        new double []{-0.125, 0.25, 0.25, 0.25, -0.125},
+        new double []{-0.125, 0.25, 1, 0.25, -0.125},
+        new double []{-0.125, 0.25, 0.25, 0.25, -0.125},
+        new double []{-0.125, -0.125, -0.125, -0.125, -0.125}
+    });
+
+    return this.applyFilter(filter, oldImg);
+  }
+
+  /**
+   * Apply a linear color transformation to every pixel of the given image.
+   *
+   * @param cMatrix
+   *     The 3x3 color transformation matrix
+   * @param oldImg
+   *     The image to transform
+   * @return
+   *     A new, transformed image, or the image itself if the matrix is the identity
+   * @throws IllegalArgumentException
+   *     If the matrix is not 3x3
+   */
+  PixelBuffer colorTransformation(double[][] cMatrix, PixelBuffer oldImg)
+          throws IllegalArgumentException {
+    ImageProcessorImpl.checkColorMatrix(cMatrix);
+    if (ImageProcessorImpl.isIdentityMatrix(cMatrix)) {
+      // images are immutable, so the unchanged image is shared instead of copied
+      return oldImg;
+    }
+    PixelBuffer newImg = this.imageStates.allocate(oldImg.getWidth(), oldImg.getHeight());
+
+    this.forEachRow(oldImg, (startRow, endRow) -> {
+      for (int row = startRow; row < endRow; row++) {
+        for (int col = 0; col < oldImg.getWidth(); col++) {
+          newImg.setRGB(row, col,
+                  ImageProcessorImpl.transformPixel(cMatrix, oldImg.getRGB(row, col)));
+        }
+      }
+    });
+    return newImg;
+  }
+
+  /**
+   * Replace every pixel of the given image with its maximum RGB value.
+   *
+   * @param oldImg
+   *     The image to transform
+   * @return
+   *     A new, greyscale image
+   */
+  PixelBuffer maxVal(PixelBuffer oldImg) {
+    PixelBuffer newImg = this.imageStates.allocate(oldImg.getWidth(), oldImg.getHeight());
+
+    this.forEachRow(oldImg, (startRow, endRow) -> {
+      for (int row = startRow; row < endRow; row++) {
+        for (int col = 0; col < oldImg.getWidth(); col++) {
+          newImg.setRGB(row, col, ImageProcessorImpl.maxValPixel(oldImg.getRGB(row, col)));
+        }
+      }
+    });
+    return newImg;
+  }
+
+  /**
+   * Replace every pixel of the given image with the average of its RGB values.
+   *
+   * @param oldImg
+   *     The image to transform
+   * @return
+   *     A new, greyscale image
+   */
+  PixelBuffer intensity(PixelBuffer oldImg) {
+    PixelBuffer newImg = this.imageStates.allocate(oldImg.getWidth(), oldImg.getHeight());
+
+    this.forEachRow(oldImg, (startRow, endRow) -> {
+      for (int row = startRow; row < endRow; row++) {
+        for (int col = 0; col < oldImg.getWidth(); col++) {
+          newImg.setRGB(row, col, ImageProcessorImpl.intensityPixel(oldImg.getRGB(row, col)));
+        }
+      }
+    });
+    return newImg;
+  }
+
+  /**
+   * Add the given increment to every RGB value of the given image.
+   *
+   * @param increment
+   *     The value to add (+/-)
+   * @param oldImg
+   *     The image to brighten or darken
+   * @return
+   *     A new, brightened or darkened image
+   */
+  PixelBuffer brightness(int increment, PixelBuffer oldImg) {
+    return this.applyLookupTable(LookupTable.brightness(increment), oldImg);
+  }
+
+  /**
+   * Apply a lookup table to every pixel of the given image in a single pass.
+   *
+   * @param table
+   *     The lookup table
+   * @param oldImg
+   *     The image to transform
+   * @return
+   *     A new, transformed image, or the image itself if the table changes no pixel
+   */
+  PixelBuffer applyLookupTable(LookupTable table, PixelBuffer oldImg) {
+    if (table.isIdentity()) {
+      // images are immutable, so the unchanged image is shared instead of copied
+      return oldImg;
+    }
+    PixelBuffer newImg = this.imageStates.allocate(oldImg.getWidth(), oldImg.getHeight());
+
+    this.forEachRow(oldImg, (startRow, endRow) -> {
+      int start = startRow * oldImg.getWidth();
+      int end = endRow * oldImg.getWidth();
+      for (int i = start; i < end; i++) {
+        newImg.setRGB(i, table.apply(oldImg.getRGB(i)));
+      }
+    });
+    return newImg;
+  }
+
+  /**
+   * Flip the given image horizontally. The flip is a view of the given image,
+   * so no pixels are copied.
+   *
+   * @param oldImg
+   *     The image to flip
+   * @return
+   *     A flipped view of the image
+   */
+  PixelBuffer flipHorizontal(PixelBuffer oldImg) {
+    return PixelView.flipHorizontal(oldImg);
+  }
+
+  /**
+   * Flip the given image vertically. The flip is a view of the given image,
+   * so no pixels are copied.
+   *
+   * @param oldImg
+   *     The image to flip
+   * @return
+   *     A flipped view of the image
+   */
+  PixelBuffer flipVertical(PixelBuffer oldImg) {
+    return PixelView.flipVertical(oldImg);
+  }
+
+  /**
+   * Shrink the given image by a whole factor. Each new pixel is the average of a block of
+   * factor x factor pixels; blocks along the right and bottom edges may be smaller.
+   *
+   * @param factor
+   *     The factor to shrink by, at least 1
+   * @param oldImg
+   *     The image to shrink
+   * @return
+   *     The shrunk image, or the given image if the factor is 1
+   */
+  PixelBuffer downscale(int factor, PixelBuffer oldImg) {
+    if (factor == 1) {
+      return oldImg;
+    }
+    int oldWidth = oldImg.getWidth();
+    int oldHeight = oldImg.getHeight();
+    PixelBuffer newImg = this.imageStates.allocate((oldWidth + factor - 1) / factor,
+            (oldHeight + factor - 1) / factor);
+
+    this.forEachRow(newImg, (startRow, endRow) -> {
+      for (int row = startRow; row < endRow; row++) {
+        int top = row * factor;
+        int bottom = Math.min(top + factor, oldHeight);
+        for (int col = 0; col < newImg.getWidth(); col++) {
+          int left = col * factor;
+          int right = Math.min(left + factor, oldWidth);
+          long r = 0;
+          long g = 0;
+          long b = 0;
+          for (int y = top; y < bottom; y++) {
+            for (int x = left; x < right; x++) {
+              int rgb = oldImg.getRGB(y * oldWidth + x);
+              r += PixelBuffer.red(rgb);
+              g += PixelBuffer.green(rgb);
+              b += PixelBuffer.blue(rgb);
+            }
+          }
+          long count = (long) (bottom - top) * (right - left);
+          newImg.setRGB(row, col, PixelBuffer.pack((int) (r / count), (int) (g / count),
+                  (int) (b / count)));
+        }
+      }
+    });
+    return newImg;
+  }
+
+  /**
+   * Find the smallest whole factor that shrinks an image to fit within the given size.
+   *
+   * @param width
+   *     The width of the image
+   * @param height
+   *     The height of the image
+   * @param maxWidth
+   *     The largest width of the shrunk image
+   * @param maxHeight
+   *     The largest height of the shrunk image
+   * @return
+   *     The factor, at least 1
+   * @throws IllegalArgumentException
+   *     If the size is not positive
+   */
+  static int downscaleFactor(int width, int height, int maxWidth, int maxHeight)
+          throws IllegalArgumentException {
+    if (maxWidth < 1 || maxHeight < 1) {
+      throw new IllegalArgumentException("the size to shrink to must be positive");
+    }
+    int widthFactor = (width + maxWidth - 1) / maxWidth;
+    int heightFactor = (height + maxHeight - 1) / maxHeight;
+    return Math.max(1, Math.max(widthFactor, heightFactor));
+  }
+
+  /**
+   * Apply an arbitrary per-pixel function to every pixel of the given image.
+   *
+   * @param oldImg
+   *     The image to transform
+   * @param op
+   *     A function from an old packed pixel to a new packed pixel
+   * @return
+   *     A new, transformed image
+   */
+  PixelBuffer mapPixels(PixelBuffer oldImg, IntUnaryOperator op) {
+    PixelBuffer newImg = this.imageStates.allocate(oldImg.getWidth(), oldImg.getHeight());
+
+    this.forEachRow(oldImg, (startRow, endRow) -> {
+      int start = startRow * oldImg.getWidth();
+      int end = endRow * oldImg.getWidth();
+      for (int i = start; i < end; i++) {
+        newImg.setRGB(i, op.applyAsInt(oldImg.getRGB(i)));
+      }
+    });
+    return newImg;
+  }
+
+  /**
+   * Build the matrix of a custom greyscale operation, which assigns each RGB value
+   * the same weighted sum of the original RGB values.
+   *
+   * @param rC
+   *     Red coefficient
+   * @param gC
+   *     Green coefficient
+   * @param bC
+   *     Blue coefficient
+   * @return
+   *     The 3x3 color transformation matrix
+   */
+  static double[][] greyscaleMatrix(double rC, double gC, double bC) {
+    return new double[][]{
+        new double[]{rC, gC, bC},
+        new double[]{rC, gC, bC},
+        new double[]{rC, gC, bC}
+    };
+  }
+
+  /**
+   * Check that a color transformation matrix is 3x3.
+   *
+   * @param cMatrix
+   *     The matrix to check
+   * @throws IllegalArgumentException
+   *     If the matrix is not 3x3
+   */
+  static void checkColorMatrix(double[][] cMatrix) throws IllegalArgumentException {
+    if (cMatrix == null || cMatrix.length != 3) {
+      throw new IllegalArgumentException("the color transformation matrix must be 3x3");
+    }
+    for (double[] row : cMatrix) {
+      if (row == null || row.length != 3) {
+        throw new IllegalArgumentException("the color transformation matrix must be 3x3");
+      }
+    }
+  }
+
+  /**
+   * Check whether a 3x3 color transformation matrix is the identity, which leaves every
+   * pixel unchanged.
+   *
+   * @param cMatrix
+   *     The 3x3 matrix to check
+   * @return
+   *     True if the matrix is the identity
+   */
+  static boolean isIdentityMatrix(double[][] cMatrix) {
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 3; j++) {
+        if (cMatrix[i][j] != (i == j ? 1 : 0)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Multiply a packed pixel by a color transformation matrix. Each new RGB value is
+   * truncated to an integer; values over 255 become 255, and so do negative values.
+   *
+   * @param cMatrix
+   *     The 3x3 color transformation matrix
+   * @param rgb
+   *     The packed pixel
+   * @return
+   *     The transformed packed pixel
+   */
+  static int transformPixel(double[][] cMatrix, int rgb) {
+    int r = PixelBuffer.red(rgb);
+    int g = PixelBuffer.green(rgb);
+    int b = PixelBuffer.blue(rgb);
+    int newRGB = 0;
+    for (int i = 0; i < 3; i++) {
+      int newVal = (int) ((cMatrix[i][0] * r)
+              + (cMatrix[i][1] * g)
+              + (cMatrix[i][2] * b));
+
+      if (newVal > 255) {
+        newVal = 255;
+      }
+      else if (newVal < 0) {
+        newVal = 255;
+      }
+      newRGB = (newRGB << 8) | newVal;
+    }
+    return newRGB;
+  }
+
+  /**
+   * Replace a packed pixel with its maximum RGB value.
+   *
+   * @param rgb
+   *     The packed pixel
+   * @return
+   *     The greyscale packed pixel
+   */
+  static int maxValPixel(int rgb) {
+    int maxValue = PixelBuffer.red(rgb);
+
+    if (PixelBuffer.green(rgb) > maxValue) {
+      maxValue = PixelBuffer.green(rgb);
+    }
+    if (PixelBuffer.blue(rgb) > maxValue) {
+      maxValue = PixelBuffer.blue(rgb);
+    }
+    return PixelBuffer.pack(maxValue, maxValue, maxValue);
+  }
+
+  /**
+   * Replace a packed pixel with the average of its RGB values.
+   *
+   * @param rgb
+   *     The packed pixel
+   * @return
+   *     The greyscale packed pixel
+   */
+  static int intensityPixel(int rgb) {
+    int average = (PixelBuffer.red(rgb)
+            + PixelBuffer.green(rgb)
+            + PixelBuffer.blue(rgb)) / 3;
+    return PixelBuffer.pack(average, average, average);
+  }
+
+
 
   /**
    * Represents a filter kernel. Kernel values are stored in a 2D array (matrix).
-   * This matrix can be applied in a filtering operation.
+   * This matrix can be applied in a filtering operation. If the matrix has rank 1
+   * (every row is a multiple of the same row), the kernel is separable: it is the product
+   * of a column of weights and a row of weights, and can be applied as two 1D passes.
    */
   private final class Filter {
     private final double[][] filter;
+    private final double[] flattened;
+    private final double[] colWeights;
+    private final double[] rowWeights;
 
     /**
-     * Create a filter kernel.
+     * Create a filter kernel. The kernel is checked for separability.
      *
      * @param filter
      *     The filter matrix
@@ -549,6 +1270,123 @@ public class ImageProcessorImpl implements ImageProcessor {
       if (this.getHeight() % 2 == 0 || this.getWidth() % 2 == 0) {
         throw new IllegalArgumentException("must have odd width and height");
       }
+      this.flattened = this.flatten(filter);
+
+      // factor the kernel around its largest value: the column through that value,
+      // and the row through that value scaled so the two multiply back to the kernel
+      int pivotRow = 0;
+      int pivotCol = 0;
+      for (int row = 0; row < this.getHeight(); row++) {
+        for (int col = 0; col < this.getWidth(); col++) {
+          if (Math.abs(filter[row][col]) > Math.abs(filter[pivotRow][pivotCol])) {
+            pivotRow = row;
+            pivotCol = col;
+          }
+        }
+      }
+      double pivot = filter[pivotRow][pivotCol];
+      double[] colWeights = new double[this.getHeight()];
+      double[] rowWeights = new double[this.getWidth()];
+      for (int row = 0; row < this.getHeight(); row++) {
+        colWeights[row] = filter[row][pivotCol];
+      }
+      for (int col = 0; col < this.getWidth(); col++) {
+        rowWeights[col] = pivot == 0 ? 0 : filter[pivotRow][col] / pivot;
+      }
+
+      boolean separable = true;
+      for (int row = 0; row < this.getHeight() && separable; row++) {
+        for (int col = 0; col < this.getWidth() && separable; col++) {
+          separable = Math.abs(colWeights[row] * rowWeights[col] - filter[row][col])
+                  <= Math.abs(pivot) * 1e-12;
+        }
+      }
+      this.colWeights = separable ? colWeights : null;
+      this.rowWeights = separable ? rowWeights : null;
+    }
+
+    /**
+     * Create a separable filter kernel from a column of weights and a row of weights.
+     * The kernel value at (row, col) is colWeights[row] * rowWeights[col].
+     *
+     * @param colWeights
+     *     The weights of the vertical pass
+     * @param rowWeights
+     *     The weights of the horizontal pass
+     * @throws IllegalArgumentException
+     *     If either set of weights does not have an odd length
+     */
+    public Filter(double[] colWeights, double[] rowWeights) throws IllegalArgumentException {
+      if (colWeights.length % 2 == 0 || rowWeights.length % 2 == 0) {
+        throw new IllegalArgumentException("must have odd width and height");
+      }
+      this.filter = new double[colWeights.length][rowWeights.length];
+      for (int row = 0; row < colWeights.length; row++) {
+        for (int col = 0; col < rowWeights.length; col++) {
+          this.filter[row][col] = colWeights[row] * rowWeights[col];
+        }
+      }
+      this.flattened = this.flatten(this.filter);
+      this.colWeights = colWeights;
+      this.rowWeights = rowWeights;
+    }
+
+    /**
+     * Copy a kernel matrix into a single array, in row-major order.
+     *
+     * @param filter
+     *     The filter matrix
+     * @return
+     *     The kernel values in row-major order
+     */
+    private double[] flatten(double[][] filter) {
+      int width = filter[0].length;
+      double[] flattened = new double[filter.length * width];
+      for (int row = 0; row < filter.length; row++) {
+        System.arraycopy(filter[row], 0, flattened, row * width, width);
+      }
+      return flattened;
+    }
+
+    /**
+     * Return the values of this kernel in a single array, in row-major order.
+     * The value at (row, col) is at index (row * width + col).
+     *
+     * @return
+     *     The flattened kernel (NOT a copy)
+     */
+    public double[] getFlattened() {
+      return this.flattened;
+    }
+
+    /**
+     * Whether this kernel can be applied as a horizontal pass followed by a vertical pass.
+     *
+     * @return
+     *     True if this kernel is separable, false otherwise
+     */
+    public boolean isSeparable() {
+      return this.rowWeights != null;
+    }
+
+    /**
+     * Return the weights of the horizontal pass of this separable kernel.
+     *
+     * @return
+     *     The row weights, or null if this kernel is not separable
+     */
+    public double[] getRowWeights() {
+      return this.rowWeights;
+    }
+
+    /**
+     * Return the weights of the vertical pass of this separable kernel.
+     *
+     * @return
+     *     The column weights, or null if this kernel is not separable
+     */
+    public double[] getColumnWeights() {
+      return this.colWeights;
     }
 
     /**
@@ -52,6 +52,28 @@ public interface ImageReadWrite {
   void saveImage(OutputStream imageData, String name, String extension)
           throws IllegalArgumentException;
 
+  /**
+   * Saves an image to the provided OutputStream with the given encoder settings, such as
+   * the JPEG quality or the PNG compression level. Settings that do not apply to the
+   * format of the given extension are ignored.
+   *
+   * @param imageData
+   *     The output format for the image
+   * @param name
+   *     The name of the image to be saved
+   * @param extension
+   *     The filename extension
+   * @param options
+   *     The encoder settings
+   * @throws IllegalArgumentException
+   *     If the provided image name is invalid (i.e. has not been saved in this implementation),
+   *     or if the file transmission fails (encountered an IOException).
+   *     NOTE: this method does NOT handle exceptions related to OutputStream instantiation;
+   *     such exceptions must be handled by the caller of this method.
+   */
+  void saveImage(OutputStream imageData, String name, String extension, SaveOptions options)
+          throws IllegalArgumentException;
+
   /**
    * Does the image processor already have an image loaded with the given name.
    *
@@ -0,0 +1,91 @@
+package model;
+
+/**
+ * A store of named images, used by an image processor to keep its image states.
+ * A store decides where each image lives: it may keep every image in memory,
+ * or move images it has not used recently somewhere cheaper and bring them back
+ * when they are asked for. Either way, get() always returns the image that was last
+ * put under the given name.
+ * <p></p>
+ * A store counts how its lookups were served, so that its memory budget can be tuned.
+ * It is also the allocator of the images that are put into it, so that new images are
+ * created wherever the store keeps them.
+ */
+public interface ImageStore extends PixelAllocator {
+
+  /**
+   * Create a new buffer for an image that will be put into this store. By default,
+   * images are allocated on the Java heap.
+   */
+  @Override
+  default PixelBuffer allocate(int width, int height) throws IllegalArgumentException {
+    return new PackedPixelBuffer(width, height);
+  }
+
+  /**
+   * Store an image under the given name, replacing any image already stored under it.
+   * The store takes ownership of the image: the caller must not modify it afterwards.
+   * Stored images are immutable, so the same image may be stored under several names,
+   * and it is kept until none of them refers to it.
+   *
+   * @param name
+   *     The name of the image
+   * @param img
+   *     The image to store
+   */
+  void put(String name, PixelBuffer img);
+
+  /**
+   * Get the image stored under the given name.
+   *
+   * @param name
+   *     The name of the image
+   * @return
+   *     The image. It must not be modified
+   * @throws IllegalArgumentException
+   *     If no image is stored under the given name
+   */
+  PixelBuffer get(String name) throws IllegalArgumentException;
+
+  /**
+   * Check whether an image is stored under the given name.
+   *
+   * @param name
+   *     The name of the image
+   * @return
+   *     True if an image is stored under the name, false otherwise
+   */
+  boolean contains(String name);
+
+  /**
+   * Remove the image stored under the given name, if any.
+   *
+   * @param name
+   *     The name of the image
+   */
+  void remove(String name);
+
+  /**
+   * Get the number of lookups that found their image in memory.
+   *
+   * @return
+   *     The number of hits
+   */
+  long getHits();
+
+  /**
+   * Get the number of lookups that had to bring their image back into memory.
+   *
+   * @return
+   *     The number of misses
+   */
+  long getMisses();
+
+  /**
+   * Get the number of times an image was moved out of memory to stay within budget.
+   *
+   * @return
+   *     The number of evictions
+   */
+  long getEvictions();
+}
@@ -1,14 +1,17 @@
 package model;
 
-import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.Scanner;
-import java.io.FileNotFoundException;
 import java.io.FileInputStream;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
 
 /**
  * This class contains utility methods to read an image from a file.
@@ -16,61 +19,164 @@ import javax.imageio.ImageIO;
 public class ImageUtil {
 
   /**
-   * Read an image file in the PPM format and print the colors.
+   * Return the file extensions that can be read and written by readImage() and writeImage().
+   * Netpbm files (.ppm, .pnm, .pgm, .pbm) are read in any of the P1-P6 formats. They are
+   * written as plain pixmaps (.ppm), raw pixmaps (.pnm), raw greymaps (.pgm) and
+   * raw bitmaps (.pbm).
    *
-   * @param filename The path of the file
+   * @return
+   *     An array of supported file extensions as strings
    */
-  public static int[][][] readPPM(String filename) {
-    Scanner sc;
-
-    try {
-      sc = new Scanner(new FileInputStream(filename));
-    } catch (FileNotFoundException e) {
-      throw new IllegalArgumentException("File " + filename + " not found!");
-    }
-
-    StringBuilder builder = new StringBuilder();
-
-    // read the file line by line, and populate a string. This will throw away any comment lines
-    while (sc.hasNextLine()) {
-      String s = sc.nextLine();
+  public static String[] getSupportedFormats() {
+    return new String[]{".ppm", ".pnm", ".pgm", ".pbm", ".jpg", ".jpeg", ".png", ".bmp"};
+  }
 
-      // if P6 formatting is ever encountered, stop reading (file invalid)
-      if (s.equals("P6")) {
-        throw new IllegalArgumentException("Cannot be in RAW formatting (P6)");
-      }
+  /**
+   * Read an image file into a pixel buffer, using the reader that matches its extension.
+   *
+   * @param imagePath
+   *     The path of the file
+   * @return
+   *     The image's pixel buffer
+   * @throws IllegalArgumentException
+   *     If the file cannot be read, or its extension is not supported
+   */
+  public static PixelBuffer readImage(String imagePath) throws IllegalArgumentException {
+    return ImageUtil.readImage(imagePath, PackedPixelBuffer::new);
+  }
 
-      if (s.charAt(0) != '#') {
-        builder.append(s + System.lineSeparator());
-      }
+  /**
+   * Read an image file into a pixel buffer created by the given allocator, using
+   * the reader that matches its extension.
+   *
+   * @param imagePath
+   *     The path of the file
+   * @param allocator
+   *     Creates the pixel buffer the image is read into
+   * @return
+   *     The image's pixel buffer
+   * @throws IllegalArgumentException
+   *     If the file cannot be read, or its extension is not supported
+   */
+  public static PixelBuffer readImage(String imagePath, PixelAllocator allocator)
+          throws IllegalArgumentException {
+    String extension = ImageUtil.getExtension(imagePath);
+
+    switch (extension) {
+      case ".ppm":
+      case ".pnm":
+      case ".pgm":
+      case ".pbm":
+        return PNMReader.read(imagePath, allocator);
+      case ".jpg":
+      case ".jpeg":
+      case ".png":
+      case ".bmp":
+        return ImageUtil.readPixelsWithIO(imagePath, allocator);
+      default:
+        throw new IllegalArgumentException("Invalid file: \"" + extension + "\" extension is " +
+                "not supported. Please use one of: " +
+                String.join(", ", ImageUtil.getSupportedFormats()));
     }
+  }
 
-    // now set up the scanner to read from the string we just built
-    sc = new Scanner(builder.toString());
-
-    String token = sc.next();
+  /**
+   * Write a pixel buffer to the given output stream, using the writer that matches
+   * the given extension.
+   *
+   * @param imageData
+   *     The output stream to save to
+   * @param img
+   *     The pixel buffer to save
+   * @param extension
+   *     The file extension (includes ".")
+   * @throws IllegalArgumentException
+   *     If the extension is not supported, or the file transmission fails
+   */
+  public static void writeImage(OutputStream imageData, PixelBuffer img, String extension)
+          throws IllegalArgumentException {
+    ImageUtil.writeImage(imageData, img, extension, new SaveOptions());
+  }
 
-    if (!token.equals("P3")) {
-      System.out.println("Invalid PPM file: plain ASCII file should begin with P3");
+  /**
+   * Write a pixel buffer to the given output stream, using the writer that matches
+   * the given extension, with the given encoder settings.
+   *
+   * @param imageData
+   *     The output stream to save to
+   * @param img
+   *     The pixel buffer to save
+   * @param extension
+   *     The file extension (includes ".")
+   * @param options
+   *     The encoder settings
+   * @throws IllegalArgumentException
+   *     If the extension is not supported, or the file transmission fails
+   */
+  public static void writeImage(OutputStream imageData, PixelBuffer img, String extension,
+                                SaveOptions options) throws IllegalArgumentException {
+    switch (extension) {
+      case ".ppm":
+        ImageUtil.savePPM(imageData, img, options.getPpmSamplesPerLine());
+        break;
+      case ".pnm":
+        ImageUtil.saveRawPPM(imageData, img);
+        break;
+      case ".pgm":
+        ImageUtil.savePGM(imageData, img);
+        break;
+      case ".pbm":
+        ImageUtil.savePBM(imageData, img);
+        break;
+      case ".jpg":
+      case ".jpeg":
+      case ".png":
+      case ".bmp":
+        ImageUtil.saveWithIO(imageData, img, extension, options);
+        break;
+      default:
+        throw new IllegalArgumentException("Invalid file: \"" + extension + "\" extension is " +
+                "not supported. Please use one of: " +
+                String.join(", ", ImageUtil.getSupportedFormats()));
     }
+  }
 
-    int width = sc.nextInt();
-
-    int height = sc.nextInt();
-
-    // must be included to skip (otherwise image RGBs will shift, becoming green and purple)
-    int maxValue = sc.nextInt();
+  /**
+   * Read an image file in the PPM format and print the colors.
+   *
+   * @param filename The path of the file
+   */
+  public static int[][][] readPPM(String filename) {
+    return ImageUtil.toArray(ImageUtil.readPPMPixels(filename));
+  }
 
-    int[][][] pixels = new int[height][width][3];
+  /**
+   * Read an image file in the PPM format, plain (P3) or raw (P6), into a pixel buffer.
+   * Plain channel values above the max value are clamped. Comments may appear anywhere
+   * whitespace is allowed.
+   *
+   * @param filename
+   *     The path of the file
+   * @return
+   *     The image's pixel buffer
+   */
+  public static PixelBuffer readPPMPixels(String filename) {
+    return ImageUtil.readPNMPixels(filename);
+  }
 
-    for (int row = 0; row < height; row++) {
-      for (int col = 0; col < width; col++) {
-        pixels[row][col][0] = sc.nextInt(); // r
-        pixels[row][col][1] = sc.nextInt(); // g
-        pixels[row][col][2] = sc.nextInt(); // b
-      }
-    }
-    return pixels;
+  /**
+   * Read an image file in any Netpbm format (P1-P6) into a pixel buffer. Greymaps and
+   * bitmaps are loaded as RGB images with equal channels.
+   *
+   * @param filename
+   *     The path of the file
+   * @return
+   *     The image's pixel buffer
+   * @throws IllegalArgumentException
+   *     If the file cannot be read, or is not a valid Netpbm file
+   */
+  public static PixelBuffer readPNMPixels(String filename) {
+    return PNMReader.read(filename, PackedPixelBuffer::new);
   }
 
   /**
@@ -82,26 +188,116 @@ public class ImageUtil {
    *     The image's pixel array
    */
   public static int[][][] readWithIO(String filename) {
+    return ImageUtil.toArray(ImageUtil.readPixelsWithIO(filename));
+  }
+
+  /**
+   * Read an image file using ImageIO into a pixel buffer.
+   *
+   * @param filename
+   *     The file to read from
+   * @return
+   *     The image's pixel buffer
+   */
+  public static PixelBuffer readPixelsWithIO(String filename) {
+    return ImageUtil.readPixelsWithIO(filename, PackedPixelBuffer::new);
+  }
+
+  /**
+   * Read an image file using ImageIO into a pixel buffer created by the given allocator.
+   * ImageIO decodes the whole image on the heap first.
+   *
+   * @param filename
+   *     The file to read from
+   * @param allocator
+   *     Creates the pixel buffer the image is copied into
+   * @return
+   *     The image's pixel buffer
+   */
+  public static PixelBuffer readPixelsWithIO(String filename, PixelAllocator allocator) {
     BufferedImage img;
 
-    try {
-      img = ImageIO.read(new FileInputStream(filename));
+    try (FileInputStream in = new FileInputStream(filename)) {
+      img = ImageIO.read(in);
     } catch (IOException e) {
       throw new IllegalArgumentException("Could not read from: " + filename);
     }
+    if (img == null) {
+      throw new IllegalArgumentException("Could not read from: " + filename);
+    }
 
-    int width = img.getWidth();
-    int height = img.getHeight();
-    int[][][] pixels = new int[height][width][3];
+    return ImageUtil.toPixelBuffer(img, allocator);
+  }
 
-    for (int row = 0; row < height; row++) {
-      for (int col = 0; col < width; col++) {
-        int pixel = img.getRGB(col, row);
-        Color rgb = new Color(pixel);
+  /**
+   * Copy the pixels of a buffered image into a new pixel buffer, ignoring transparency.
+   * Images of type TYPE_INT_RGB, TYPE_INT_ARGB, TYPE_3BYTE_BGR and TYPE_4BYTE_ABGR are
+   * copied straight from their raster, one row at a time. Other images are converted to
+   * RGB by AWT, also one row at a time.
+   *
+   * @param img
+   *     The buffered image
+   * @return
+   *     The image's pixel buffer
+   */
+  public static PixelBuffer toPixelBuffer(BufferedImage img) {
+    return ImageUtil.toPixelBuffer(img, PackedPixelBuffer::new);
+  }
 
-        pixels[row][col][0] = rgb.getRed(); // r
-        pixels[row][col][1] = rgb.getGreen(); // g
-        pixels[row][col][2] = rgb.getBlue(); // b
+  /**
+   * Copy the pixels of a buffered image into a pixel buffer created by the given
+   * allocator, ignoring transparency. See {@link #toPixelBuffer(BufferedImage)}.
+   *
+   * @param img
+   *     The buffered image
+   * @param allocator
+   *     Creates the pixel buffer the image is copied into
+   * @return
+   *     The image's pixel buffer
+   */
+  public static PixelBuffer toPixelBuffer(BufferedImage img, PixelAllocator allocator) {
+    int width = img.getWidth();
+    int height = img.getHeight();
+    PixelBuffer pixels = allocator.allocate(width, height);
+    WritableRaster raster = img.getRaster();
+
+    switch (img.getType()) {
+      case BufferedImage.TYPE_INT_RGB:
+      case BufferedImage.TYPE_INT_ARGB: {
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+          raster.getDataElements(0, y, width, 1, row);
+          for (int x = 0; x < width; x++) {
+            pixels.setRGB(y * width + x, row[x] & 0xFFFFFF);
+          }
+        }
+        break;
+      }
+      case BufferedImage.TYPE_3BYTE_BGR:
+      case BufferedImage.TYPE_4BYTE_ABGR: {
+        // the data elements of each pixel are in band order: red, green, blue (, alpha)
+        int stride = img.getType() == BufferedImage.TYPE_3BYTE_BGR ? 3 : 4;
+        byte[] row = new byte[width * stride];
+        for (int y = 0; y < height; y++) {
+          raster.getDataElements(0, y, width, 1, row);
+          for (int x = 0; x < width; x++) {
+            int i = x * stride;
+            pixels.setRGB(y * width + x, ((row[i] & 0xFF) << 16)
+                    | ((row[i + 1] & 0xFF) << 8)
+                    | (row[i + 2] & 0xFF));
+          }
+        }
+        break;
+      }
+      default: {
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+          img.getRGB(0, y, width, 1, row, 0, width);
+          for (int x = 0; x < width; x++) {
+            pixels.setRGB(y * width + x, row[x] & 0xFFFFFF);
+          }
+        }
+        break;
       }
     }
     return pixels;
@@ -116,26 +312,86 @@ public class ImageUtil {
    *     includes if the filename or extension contains any invalid characters)
    */
   public static void savePPM(OutputStream imageData, int[][][] img) {
-    try {
-      imageData.write("P3\n".getBytes());
-      imageData.write((ImageUtil.getWidth(img) + " " + ImageUtil.getHeight(img) + "\n").getBytes());
-      imageData.write((ImageUtil.getMaxValue(img) + "\n").getBytes()); // max value
-
-      for (int[][] col : img) {
-        for (int[] rgb : col) {
-          imageData.write((rgb[0] + "\n").getBytes());
-          imageData.write((rgb[1] + "\n").getBytes());
-          imageData.write((rgb[2] + "\n").getBytes());
-        }
-      }
-      imageData.close();
-    } catch (IOException e) {
-      throw new IllegalArgumentException("encountered IOException: could not transmit to file");
-    }
+    ImageUtil.savePPM(imageData, ImageUtil.toPixelBuffer(img));
   }
 
   /**
-   * Save using ImageIO.
+   * Saves a pixel buffer in PPM ASCII format, one sample per line.
+   *
+   * @param imageData
+   *     The output stream to save to
+   * @param img
+   *     The pixel buffer to save
+   * @throws IllegalArgumentException
+   *     If the file transmission fails (IOException is caught)
+   */
+  public static void savePPM(OutputStream imageData, PixelBuffer img) {
+    ImageUtil.savePPM(imageData, img, 1);
+  }
+
+  /**
+   * Saves a pixel buffer in PPM ASCII format, with the given number of samples per line.
+   * The max value is always 255.
+   *
+   * @param imageData
+   *     The output stream to save to
+   * @param img
+   *     The pixel buffer to save
+   * @param samplesPerLine
+   *     How many samples to write on each line (at least 1). Lines of at most
+   *     70 characters (17 samples) are recommended by the PPM format
+   * @throws IllegalArgumentException
+   *     If samplesPerLine is less than 1, or the file transmission fails
+   */
+  public static void savePPM(OutputStream imageData, PixelBuffer img, int samplesPerLine) {
+    PNMWriter.writePlain(imageData, img, samplesPerLine);
+  }
+
+  /**
+   * Saves a pixel buffer in raw (binary) PPM format (P6).
+   *
+   * @param imageData
+   *     The output stream to save to
+   * @param img
+   *     The pixel buffer to save
+   * @throws IllegalArgumentException
+   *     If the file transmission fails (IOException is caught)
+   */
+  public static void saveRawPPM(OutputStream imageData, PixelBuffer img) {
+    PNMWriter.writeRaw(imageData, img, 6);
+  }
+
+  /**
+   * Saves a pixel buffer in raw (binary) PGM format (P5). Each pixel is stored as its luma.
+   *
+   * @param imageData
+   *     The output stream to save to
+   * @param img
+   *     The pixel buffer to save
+   * @throws IllegalArgumentException
+   *     If the file transmission fails (IOException is caught)
+   */
+  public static void savePGM(OutputStream imageData, PixelBuffer img) {
+    PNMWriter.writeRaw(imageData, img, 5);
+  }
+
+  /**
+   * Saves a pixel buffer in raw (binary) PBM format (P4). Each pixel is stored as black
+   * if its luma is below 128, and as white otherwise.
+   *
+   * @param imageData
+   *     The output stream to save to
+   * @param img
+   *     The pixel buffer to save
+   * @throws IllegalArgumentException
+   *     If the file transmission fails (IOException is caught)
+   */
+  public static void savePBM(OutputStream imageData, PixelBuffer img) {
+    PNMWriter.writeRaw(imageData, img, 4);
+  }
+
+  /**
+   * Save as PNG using ImageIO.
    *
    * @param imageData
    *     The output stream to save to
@@ -143,16 +399,115 @@ public class ImageUtil {
    *     The image array to save
    */
   public static void saveWithIO(OutputStream imageData, int[][][] img) {
-    int width = ImageUtil.getWidth(img);
-    int height = ImageUtil.getHeight(img);
-    BufferedImage bufferedImage = ImageUtil.generateBufferedImage(img);
+    ImageUtil.saveWithIO(imageData, ImageUtil.toPixelBuffer(img));
+  }
+
+  /**
+   * Save a pixel buffer as PNG using ImageIO.
+   *
+   * @param imageData
+   *     The output stream to save to
+   * @param img
+   *     The pixel buffer to save
+   */
+  public static void saveWithIO(OutputStream imageData, PixelBuffer img) {
+    ImageUtil.saveWithIO(imageData, img, ".png", new SaveOptions());
+  }
+
+  /**
+   * Save a pixel buffer using the ImageIO encoder that matches the given extension.
+   * JPEG images are saved with the JPEG quality of the given options, and PNG images
+   * with its deflate level (and without interlacing). BMP images are handed to the
+   * encoder in its own 24-bit BGR layout, so they are written without conversion.
+   *
+   * @param imageData
+   *     The output stream to save to
+   * @param img
+   *     The pixel buffer to save
+   * @param extension
+   *     The file extension (".jpg", ".jpeg", ".png" or ".bmp")
+   * @param options
+   *     The encoder settings
+   * @throws IllegalArgumentException
+   *     If the extension is not supported by ImageIO, or the file transmission fails
+   */
+  public static void saveWithIO(OutputStream imageData, PixelBuffer img, String extension,
+                                SaveOptions options) throws IllegalArgumentException {
+    String formatName;
+    BufferedImage bufferedImage;
+    switch (extension) {
+      case ".jpg":
+      case ".jpeg":
+        formatName = "jpeg";
+        bufferedImage = ImageUtil.generateBufferedImage(img);
+        break;
+      case ".png":
+        formatName = "png";
+        bufferedImage = ImageUtil.generateBufferedImage(img);
+        break;
+      case ".bmp":
+        formatName = "bmp";
+        bufferedImage = ImageUtil.generateBGRImage(img);
+        break;
+      default:
+        throw new IllegalArgumentException("Invalid file: \"" + extension + "\" extension is " +
+                "not supported by ImageIO. Please use one of: .jpg, .jpeg, .png, .bmp");
+    }
+
+    ImageWriter writer = ImageIO.getImageWritersByFormatName(formatName).next();
+    ImageWriteParam param = writer.getDefaultWriteParam();
+    if (formatName.equals("jpeg")) {
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(options.getJpegQuality());
+    }
+    else if (formatName.equals("png")) {
+      // the encoder uses deflate level (9 - round(9 * quality))
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality((9 - options.getPngCompressionLevel()) / 9f);
+      param.setProgressiveMode(ImageWriteParam.MODE_DISABLED);
+    }
 
     try {
-      ImageIO.write(bufferedImage, "gif", imageData);
+      // cache in memory, rather than in a temporary file
+      ImageOutputStream out = new MemoryCacheImageOutputStream(imageData);
+      writer.setOutput(out);
+      writer.write(null, new IIOImage(bufferedImage, null, null), param);
+      out.close();
       imageData.close();
     } catch (IOException e) {
       throw new IllegalArgumentException("encountered IOException: could not transmit to file");
+    } finally {
+      writer.dispose();
+    }
+  }
+
+  /**
+   * Generate a buffered image of type TYPE_3BYTE_BGR from a pixel buffer.
+   *
+   * @param img
+   *     The pixel buffer
+   * @return
+   *     A buffered image based on the given pixel buffer
+   */
+  private static BufferedImage generateBGRImage(PixelBuffer img) {
+    int width = img.getWidth();
+    int height = img.getHeight();
+    BufferedImage bufferedImage = new BufferedImage(width, height,
+            BufferedImage.TYPE_3BYTE_BGR);
+    WritableRaster raster = bufferedImage.getRaster();
+
+    // the data elements of each pixel are in band order: red, green, blue
+    byte[] row = new byte[width * 3];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int rgb = img.getRGB(y, x);
+        row[x * 3] = (byte) (rgb >> 16);
+        row[x * 3 + 1] = (byte) (rgb >> 8);
+        row[x * 3 + 2] = (byte) rgb;
+      }
+      raster.setDataElements(0, y, width, 1, row);
     }
+    return bufferedImage;
   }
 
   /**
@@ -164,19 +519,36 @@ public class ImageUtil {
    *     A buffered image based on the given pixel array
    */
   public static BufferedImage generateBufferedImage(int[][][] img) {
-    int width = ImageUtil.getWidth(img);
-    int height = ImageUtil.getHeight(img);
+    return ImageUtil.generateBufferedImage(ImageUtil.toPixelBuffer(img));
+  }
+
+  /**
+   * Generate a buffered image from a pixel buffer.
+   *
+   * @param img
+   *     The pixel buffer
+   * @return
+   *     A buffered image based on the given pixel buffer
+   */
+  public static BufferedImage generateBufferedImage(PixelBuffer img) {
+    int width = img.getWidth();
+    int height = img.getHeight();
     BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    WritableRaster raster = bufferedImage.getRaster();
 
-    for (int row = 0; row < height; row++) {
-      for (int col = 0; col < width; col++) {
-        int r = img[row][col][0];
-        int g = img[row][col][1];
-        int b = img[row][col][2];
-        bufferedImage.setRGB(col, row, new Color(r, g, b).getRGB());
-      }
+    // packed 0xRRGGBB pixels are exactly the data elements of TYPE_INT_RGB
+    if (img instanceof PackedPixelBuffer) {
+      raster.setDataElements(0, 0, width, height, ((PackedPixelBuffer) img).getPixels());
+      return bufferedImage;
     }
 
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        row[x] = img.getRGB(y, x);
+      }
+      raster.setDataElements(0, y, width, 1, row);
+    }
     return bufferedImage;
   }
 
@@ -203,6 +575,53 @@ public class ImageUtil {
     return maxVal;
   }
 
+  /**
+   * Convert an array of pixels into a packed pixel buffer. Channel values outside
+   * of 0-255 are clamped.
+   *
+   * @param img
+   *     The image pixel array
+   * @return
+   *     A new pixel buffer holding the same pixels
+   */
+  public static PixelBuffer toPixelBuffer(int[][][] img) {
+    int width = ImageUtil.getWidth(img);
+    int height = ImageUtil.getHeight(img);
+    PixelBuffer pixels = new PackedPixelBuffer(width, height);
+
+    for (int row = 0; row < height; row++) {
+      for (int col = 0; col < width; col++) {
+        int[] rgb = img[row][col];
+        pixels.setRGB(row, col, PixelBuffer.pack(PixelBuffer.clamp(rgb[0]),
+                PixelBuffer.clamp(rgb[1]), PixelBuffer.clamp(rgb[2])));
+      }
+    }
+    return pixels;
+  }
+
+  /**
+   * Convert a pixel buffer into an array of pixels. The outermost array represents rows,
+   * the inner array represents columns, and the innermost array holds the RGB values.
+   *
+   * @param img
+   *     The pixel buffer
+   * @return
+   *     A new pixel array holding the same pixels
+   */
+  public static int[][][] toArray(PixelBuffer img) {
+    int[][][] pixels = new int[img.getHeight()][img.getWidth()][3];
+
+    for (int row = 0; row < img.getHeight(); row++) {
+      for (int col = 0; col < img.getWidth(); col++) {
+        int rgb = img.getRGB(row, col);
+        pixels[row][col][0] = PixelBuffer.red(rgb);
+        pixels[row][col][1] = PixelBuffer.green(rgb);
+        pixels[row][col][2] = PixelBuffer.blue(rgb);
+      }
+    }
+    return pixels;
+  }
+
   /**
    * Get the height of an image in pixels.
    *
@@ -0,0 +1,761 @@
+package model;
+
+import java.awt.image.BufferedImage;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+import java.util.function.UnaryOperator;
+
+/**
+ * An image processor that defers every operation until its pixels are needed.
+ * Instead of computing a new image, each operation records a node in an operation graph
+ * under its destination name. A node is only materialized when <code>saveImage</code>
+ * or <code>getImageState</code> asks for its pixels. Besides the requested nodes, only
+ * the nodes that more than one other node was recorded from keep their result, so that
+ * an intermediate shared by several images (such as a blur that several variants start
+ * from) is computed once. Other intermediate images never hold a buffer of their own.
+ * <p></p>
+ * Chains of per-pixel operations are fused into a single pass over the image, and
+ * consecutive point operations (brightness, gamma, levels, contrast and curves) into a
+ * single lookup table, which gives exactly the eager result.
+ * <p></p>
+ * Consecutive linear color operations (sepia, luma, the channel operations,
+ * customGreyscale and colorTransformation) can also be fused into a single 3x3 matrix,
+ * but only when the processor is created with matrix fusion turned on, since the result
+ * can differ from the eager one. A matrix is only fused with the next one when it cannot
+ * take a channel out of 0-255, so that the clamping the eager processor does between
+ * them would change nothing; otherwise each matrix is applied, and clamped, in turn.
+ * Since a fused matrix does not truncate to whole values between the original
+ * operations, a fused chain can still differ from the eager result by the fraction
+ * dropped after the first operation, as scaled by the later ones.
+ * <p></p>
+ * All arguments are validated when an operation is recorded, with the same
+ * rules and messages as <code>ImageProcessorImpl</code>, which performs the
+ * actual pixel work.
+ */
+public class LazyImageProcessor implements ImageProcessor {
+
+  /**
+   * Maps image-name -> node in the operation graph.
+   */
+  private final Map<String, Node> nodes;
+
+  /**
+   * Performs the pixel work of materialized nodes.
+   */
+  private final ImageProcessorImpl engine;
+
+  /**
+   * Whether consecutive color transformations are fused into a single matrix.
+   */
+  private final boolean fuseMatrices;
+
+  /**
+   * Create a new lazy image processor with no loaded images. Materialized
+   * nodes are computed sequentially, and give exactly the eager result.
+   */
+  public LazyImageProcessor() {
+    this(new ImageProcessorImpl(), false);
+  }
+
+  /**
+   * Create a new lazy image processor with no loaded images. Materialized
+   * nodes are computed in parallel, as in <code>ImageProcessorImpl</code>.
+   *
+   * @param parallelism
+   *     The number of worker threads (1 runs every operation sequentially)
+   * @param sequentialThreshold
+   *     Images with fewer pixels than this are always processed sequentially
+   * @throws IllegalArgumentException
+   *     If parallelism is less than 1 or the threshold is negative
+   */
+  public LazyImageProcessor(int parallelism, int sequentialThreshold)
+          throws IllegalArgumentException {
+    this(parallelism, sequentialThreshold, false);
+  }
+
+  /**
+   * Create a new lazy image processor with no loaded images, which may fuse consecutive
+   * color transformations. Materialized nodes are computed in parallel, as in
+   * <code>ImageProcessorImpl</code>.
+   *
+   * @param parallelism
+   *     The number of worker threads (1 runs every operation sequentially)
+   * @param sequentialThreshold
+   *     Images with fewer pixels than this are always processed sequentially
+   * @param fuseMatrices
+   *     True to fuse consecutive color transformations into a single matrix, which can
+   *     differ slightly from the eager result
+   * @throws IllegalArgumentException
+   *     If parallelism is less than 1 or the threshold is negative
+   */
+  public LazyImageProcessor(int parallelism, int sequentialThreshold, boolean fuseMatrices)
+          throws IllegalArgumentException {
+    this(new ImageProcessorImpl(parallelism, sequentialThreshold), fuseMatrices);
+  }
+
+  /**
+   * Create a new lazy image processor backed by the given engine.
+   *
+   * @param engine
+   *     The image processor that performs the pixel work
+   * @param fuseMatrices
+   *     True to fuse consecutive color transformations into a single matrix
+   */
+  private LazyImageProcessor(ImageProcessorImpl engine, boolean fuseMatrices) {
+    this.nodes = new HashMap<>();
+    this.engine = engine;
+    this.fuseMatrices = fuseMatrices;
+  }
+
+  @Override
+  public void redChannel(String name, String destName) throws IllegalArgumentException {
+    this.colorTransformation(ImageProcessorImpl.RED_CHANNEL, name, destName);
+  }
+
+  @Override
+  public void greenChannel(String name, String destName) throws IllegalArgumentException {
+    this.colorTransformation(ImageProcessorImpl.GREEN_CHANNEL, name, destName);
+  }
+
+  @Override
+  public void blueChannel(String name, String destName) throws IllegalArgumentException {
+    this.colorTransformation(ImageProcessorImpl.BLUE_CHANNEL, name, destName);
+  }
+
+  @Override
+  public void luma(String name, String destName) throws IllegalArgumentException {
+    this.colorTransformation(ImageProcessorImpl.LUMA, name, destName);
+  }
+
+  @Override
+  public void maxVal(String name, String destName) throws IllegalArgumentException {
+    Node source = this.getSourceNode(name, destName);
+    this.nodes.put(destName,
+            PixelNode.of(source, this.engine).thenApply(ImageProcessorImpl::maxValPixel));
+  }
+
+  @Override
+  public void intensity(String name, String destName) throws IllegalArgumentException {
+    Node source = this.getSourceNode(name, destName);
+    this.nodes.put(destName,
+            PixelNode.of(source, this.engine).thenApply(ImageProcessorImpl::intensityPixel));
+  }
+
+  @Override
+  public void sepia(String name, String destName) throws IllegalArgumentException {
+    this.colorTransformation(ImageProcessorImpl.SEPIA, name, destName);
+  }
+
+  @Override
+  public void customGreyscale(double rC, double gC, double bC, String name, String destName)
+          throws IllegalArgumentException {
+    this.colorTransformation(ImageProcessorImpl.greyscaleMatrix(rC, gC, bC), name, destName);
+  }
+
+  @Override
+  public void brightness(int increment, String name, String destName)
+          throws IllegalArgumentException {
+    Node source = this.getSourceNode(name, destName);
+    this.nodes.put(destName,
+            PixelNode.of(source, this.engine).thenLookup(LookupTable.brightness(increment)));
+  }
+
+  @Override
+  public void gamma(double gamma, String name, String destName)
+          throws IllegalArgumentException {
+    Node source = this.getSourceNode(name, destName);
+    this.nodes.put(destName,
+            PixelNode.of(source, this.engine).thenLookup(LookupTable.gamma(gamma)));
+  }
+
+  @Override
+  public void levels(int black, int mid, int white, String name, String destName)
+          throws IllegalArgumentException {
+    Node source = this.getSourceNode(name, destName);
+    this.nodes.put(destName,
+            PixelNode.of(source, this.engine).thenLookup(LookupTable.levels(black, mid, white)));
+  }
+
+  @Override
+  public void contrast(double factor, String name, String destName)
+          throws IllegalArgumentException {
+    Node source = this.getSourceNode(name, destName);
+    this.nodes.put(destName,
+            PixelNode.of(source, this.engine).thenLookup(LookupTable.contrast(factor)));
+  }
+
+  @Override
+  public void curves(int[][] points, String name, String destName)
+          throws IllegalArgumentException {
+    Node source = this.getSourceNode(name, destName);
+    this.nodes.put(destName,
+            PixelNode.of(source, this.engine).thenLookup(LookupTable.curves(points)));
+  }
+
+  @Override
+  public void flipHorizontal(String name, String destName) throws IllegalArgumentException {
+    Node source = this.getSourceNode(name, destName);
+    this.nodes.put(destName, new OpNode(source, this.engine::flipHorizontal));
+  }
+
+  @Override
+  public void flipVertical(String name, String destName) throws IllegalArgumentException {
+    Node source = this.getSourceNode(name, destName);
+    this.nodes.put(destName, new OpNode(source, this.engine::flipVertical));
+  }
+
+  @Override
+  public void rotate90(String name, String destName) throws IllegalArgumentException {
+    Node source = this.getSourceNode(name, destName);
+    this.nodes.put(destName, new OpNode(source, source.getHeight(), source.getWidth(),
+        PixelView::rotate90));
+  }
+
+  @Override
+  public void rotate180(String name, String destName) throws IllegalArgumentException {
+    Node source = this.getSourceNode(name, destName);
+    this.nodes.put(destName, new OpNode(source, PixelView::rotate180));
+  }
+
+  @Override
+  public void rotate270(String name, String destName) throws IllegalArgumentException {
+    Node source = this.getSourceNode(name, destName);
+    this.nodes.put(destName, new OpNode(source, source.getHeight(), source.getWidth(),
+        PixelView::rotate270));
+  }
+
+  @Override
+  public void transpose(String name, String destName) throws IllegalArgumentException {
+    Node source = this.getSourceNode(name, destName);
+    this.nodes.put(destName, new OpNode(source, source.getHeight(), source.getWidth(),
+        PixelView::transpose));
+  }
+
+  @Override
+  public void crop(int x, int y, int width, int height, String name, String destName)
+          throws IllegalArgumentException {
+    Node source = this.getSourceNode(name, destName);
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("the crop size must be positive");
+    }
+    if (x < 0 || y < 0 || (long) x + width > source.getWidth()
+            || (long) y + height > source.getHeight()) {
+      throw new IllegalArgumentException("the crop rectangle must lie within the image");
+    }
+    this.nodes.put(destName, new OpNode(source, width, height,
+        img -> PixelView.crop(img, x, y, width, height)));
+  }
+
+  @Override
+  public void downscale(int maxWidth, int maxHeight, String name, String destName)
+          throws IllegalArgumentException {
+    Node source = this.getSourceNode(name, destName);
+    int factor = ImageProcessorImpl.downscaleFactor(source.getWidth(), source.getHeight(),
+        maxWidth, maxHeight);
+    this.nodes.put(destName, new OpNode(source, (source.getWidth() + factor - 1) / factor,
+        (source.getHeight() + factor - 1) / factor, img -> this.engine.downscale(factor, img)));
+  }
+
+  @Override
+  public void gaussianBlur(String name, String destName) throws IllegalArgumentException {
+    if (!(this.nodes.containsKey(name))) {
+      throw new IllegalArgumentException("cannot find image named: \"" + name + "\"");
+    }
+
+    if (destName.equals(name)) {
+      throw new IllegalArgumentException("The name \"" + destName + "\" is already taken. " +
+              "Please choose a different name");
+    }
+
+    Node source = this.nodes.get(name);
+    LazyImageProcessor.checkKernelSize(3, source);
+    this.nodes.put(destName, new OpNode(source, this.engine::gaussianBlur));
+  }
+
+  @Override
+  public void gaussianBlur(int radius, String name, String destName)
+          throws IllegalArgumentException {
+    Node source = this.getSourceNode(name, destName);
+    if (radius < 1) {
+      throw new IllegalArgumentException("the blur radius must be at least 1");
+    }
+    LazyImageProcessor.checkKernelSize(2 * radius + 1, source);
+    this.nodes.put(destName, new OpNode(source, img -> this.engine.gaussianBlur(radius, img)));
+  }
+
+  @Override
+  public void sharpen(String name, String destName) throws IllegalArgumentException {
+    if (!(this.nodes.containsKey(name))) {
+      throw new IllegalArgumentException("cannot find image named: \"" + name + "\"");
+    }
+
+    if (destName.equals(name)) {
+      throw new IllegalArgumentException("The name \"" + destName + "\" is already taken. " +
+              "Please choose a different name");
+    }
+
+    Node source = this.nodes.get(name);
+    LazyImageProcessor.checkKernelSize(5, source);
+    this.nodes.put(destName, new OpNode(source, this.engine::sharpen));
+  }
+
+  @Override
+  public void colorTransformation(double[][] cMatrix, String name, String destName)
+          throws IllegalArgumentException {
+    Node source = this.getSourceNode(name, destName);
+    ImageProcessorImpl.checkColorMatrix(cMatrix);
+    this.nodes.put(destName,
+            PixelNode.of(source, this.engine).thenTransform(cMatrix, this.fuseMatrices));
+  }
+
+  @Override
+  public boolean hasLoadedImage(String name) {
+    return this.nodes.containsKey(name);
+  }
+
+  /**
+   * Images recorded from the removed image keep its node until they are materialized.
+   */
+  @Override
+  public void removeImage(String name) throws IllegalArgumentException {
+    if (this.nodes.remove(name) == null) {
+      throw new IllegalArgumentException("cannot find image named: \"" + name + "\"");
+    }
+  }
+
+  /**
+   * The image is read immediately, so that a missing or unreadable file is reported
+   * by this method rather than by a later save.
+   */
+  @Override
+  public void loadImage(String imagePath, String name) throws IllegalArgumentException {
+    if (name.length() == 0 || name.contains(" ")) {
+      throw new IllegalArgumentException("invalid image name");
+    }
+    this.nodes.put(name, new LoadedNode(ImageUtil.readImage(imagePath)));
+  }
+
+  @Override
+  public void saveImage(OutputStream imageData, String name, String extension)
+          throws IllegalArgumentException {
+    this.saveImage(imageData, name, extension, new SaveOptions());
+  }
+
+  /**
+   * Materializes the image (and keeps the result) before writing it.
+   */
+  @Override
+  public void saveImage(OutputStream imageData, String name, String extension,
+                        SaveOptions options) throws IllegalArgumentException {
+    if (!(this.nodes.containsKey(name))) {
+      throw new IllegalArgumentException("invalid image name");
+    }
+    ImageUtil.writeImage(imageData, this.nodes.get(name).materialize(), extension, options);
+  }
+
+  @Override
+  public String[] getSupportedFormats() {
+    return ImageUtil.getSupportedFormats();
+  }
+
+  /**
+   * Materializes the image (and keeps the result), then returns a copy of it
+   * as a BufferedImage.
+   */
+  @Override
+  public BufferedImage getImageState(String name) throws IllegalArgumentException {
+    if (!(this.nodes.containsKey(name))) {
+      throw new IllegalArgumentException("cannot find image named: \"" + name + "\"");
+    }
+    return ImageUtil.generateBufferedImage(this.nodes.get(name).materialize());
+  }
+
+  /**
+   * Look up the source node of an operation, after checking that the operation
+   * can save its result under the given destination name.
+   *
+   * @param name
+   *     The name of the original image
+   * @param destName
+   *     What name to save the new image under
+   * @return
+   *     The node of the original image
+   * @throws IllegalArgumentException
+   *     If the original image does not exist, or the destination name is empty,
+   *     contains spaces, or is the same as the original name
+   */
+  private Node getSourceNode(String name, String destName) throws IllegalArgumentException {
+    if (!(this.nodes.containsKey(name))) {
+      throw new IllegalArgumentException("cannot find image named: \"" + name + "\"");
+    }
+    if (destName.length() == 0 || destName.contains(" ")) {
+      throw new IllegalArgumentException("the destination name cannot be empty or contain spaces");
+    }
+    if (destName.equals(name)) {
+      throw new IllegalArgumentException("The name \"" + destName + "\" is already taken. " +
+              "Please choose a different name");
+    }
+    return this.nodes.get(name);
+  }
+
+  /**
+   * Check that a square kernel of the given size fits within the image of a node.
+   *
+   * @param size
+   *     The width and height of the kernel
+   * @param source
+   *     The node of the image to filter
+   * @throws IllegalArgumentException
+   *     If the kernel is larger than the image
+   */
+  private static void checkKernelSize(int size, Node source) throws IllegalArgumentException {
+    if (size > source.getHeight() || size > source.getWidth()) {
+      throw new IllegalArgumentException("Invalid kernel size. Must be smaller than the image.");
+    }
+  }
+
+  /**
+   * A node in the operation graph. A node knows the size of its image without
+   * being computed.
+   */
+  private abstract static class Node {
+    private final int width;
+    private final int height;
+    private PixelBuffer result;
+
+    /**
+     * The number of nodes recorded from this node.
+     */
+    private int consumers;
+
+    /**
+     * Create a node of an image with the given size.
+     *
+     * @param width
+     *     The width in pixels
+     * @param height
+     *     The height in pixels
+     */
+    Node(int width, int height) {
+      this.width = width;
+      this.height = height;
+      this.result = null;
+      this.consumers = 0;
+    }
+
+    int getWidth() {
+      return this.width;
+    }
+
+    int getHeight() {
+      return this.height;
+    }
+
+    /**
+     * Record that another node is computed from this node.
+     */
+    void addConsumer() {
+      this.consumers++;
+    }
+
+    /**
+     * Get the pixels of this node, computing them if this node has not been materialized.
+     * A computed result is only kept if more than one node was recorded from this node,
+     * since each of them may ask for it.
+     *
+     * @return
+     *     The pixels of this node (must not be modified)
+     */
+    PixelBuffer evaluate() {
+      if (this.consumers > 1) {
+        return this.materialize();
+      }
+      if (this.result != null) {
+        return this.result;
+      }
+      return this.compute();
+    }
+
+    /**
+     * Compute the pixels of this node and keep them for later requests. Once
+     * materialized, this node no longer needs its source.
+     *
+     * @return
+     *     The pixels of this node (must not be modified)
+     */
+    PixelBuffer materialize() {
+      if (this.result == null) {
+        this.result = this.compute();
+        this.release();
+      }
+      return this.result;
+    }
+
+    /**
+     * Check whether the pixels of this node are available without computation.
+     *
+     * @return
+     *     True if this node holds its pixels
+     */
+    boolean isMaterialized() {
+      return this.result != null;
+    }
+
+    /**
+     * Compute the pixels of this node from its source.
+     *
+     * @return
+     *     A new buffer with the pixels of this node
+     */
+    abstract PixelBuffer compute();
+
+    /**
+     * Drop the references this node needs to compute its pixels.
+     */
+    abstract void release();
+  }
+
+  /**
+   * A node whose pixels were loaded from a file.
+   */
+  private static final class LoadedNode extends Node {
+    private final PixelBuffer img;
+
+    LoadedNode(PixelBuffer img) {
+      super(img.getWidth(), img.getHeight());
+      this.img = img;
+    }
+
+    @Override
+    PixelBuffer compute() {
+      return this.img;
+    }
+
+    @Override
+    void release() {
+      // the loaded pixels are the result
+    }
+  }
+
+  /**
+   * A node that applies a whole-image operation, such as a flip or a filter, to its source.
+   */
+  private static final class OpNode extends Node {
+    private Node source;
+    private UnaryOperator<PixelBuffer> op;
+
+    OpNode(Node source, UnaryOperator<PixelBuffer> op) {
+      this(source, source.getWidth(), source.getHeight(), op);
+    }
+
+    OpNode(Node source, int width, int height, UnaryOperator<PixelBuffer> op) {
+      super(width, height);
+      this.source = source;
+      this.op = op;
+      source.addConsumer();
+    }
+
+    @Override
+    PixelBuffer compute() {
+      return this.op.apply(this.source.evaluate());
+    }
+
+    @Override
+    void release() {
+      this.source = null;
+      this.op = null;
+    }
+  }
+
+  /**
+   * A node that applies a chain of per-pixel stages to its source in a single pass.
+   * A trailing linear color transformation is kept as a matrix, and a trailing point
+   * operation is kept as a lookup table, so that the next operation of the same kind
+   * can be fused into it instead of adding a stage.
+   */
+  private static final class PixelNode extends Node {
+    private Node source;
+    private final List<IntUnaryOperator> stages;
+    private final double[][] matrix;
+    private final LookupTable table;
+    private final ImageProcessorImpl engine;
+
+    /**
+     * Create a node that applies the given stages, then the given matrix or table,
+     * to every pixel.
+     *
+     * @param source
+     *     The node of the original image
+     * @param stages
+     *     The per-pixel stages, in order
+     * @param matrix
+     *     The trailing color transformation matrix, or null if there is none
+     * @param table
+     *     The trailing lookup table, or null if there is none
+     * @param engine
+     *     The image processor that performs the pass over the image
+     */
+    private PixelNode(Node source, List<IntUnaryOperator> stages, double[][] matrix,
+                      LookupTable table, ImageProcessorImpl engine) {
+      super(source.getWidth(), source.getHeight());
+      this.source = source;
+      source.addConsumer();
+      this.stages = stages;
+      this.matrix = matrix;
+      this.table = table;
+      this.engine = engine;
+    }
+
+    /**
+     * Start a chain of per-pixel stages on the given node. If the node is itself an
+     * unmaterialized chain, the new chain continues it from the same source, so that
+     * the whole chain is computed in one pass.
+     *
+     * @param source
+     *     The node of the original image
+     * @param engine
+     *     The image processor that performs the pass over the image
+     * @return
+     *     A node on which further stages can be chained
+     */
+    static PixelNode of(Node source, ImageProcessorImpl engine) {
+      if (source instanceof PixelNode && !source.isMaterialized()) {
+        return (PixelNode) source;
+      }
+      return new PixelNode(source, new ArrayList<>(), null, null, engine);
+    }
+
+    /**
+     * Create a node that applies the stages of this node followed by the given
+     * color transformation. If fusion is allowed, the matrix is fused with a trailing
+     * matrix of this node that keeps every channel within 0-255.
+     *
+     * @param cMatrix
+     *     The 3x3 color transformation matrix
+     * @param fuse
+     *     True to allow fusing the matrix with a trailing matrix of this node
+     * @return
+     *     A new node
+     */
+    PixelNode thenTransform(double[][] cMatrix, boolean fuse) {
+      if (this.matrix != null && (!fuse || !PixelNode.staysInRange(this.matrix))) {
+        return new PixelNode(this.source, this.allStages(), cMatrix, null, this.engine);
+      }
+      double[][] fused = new double[3][3];
+      for (int i = 0; i < 3; i++) {
+        for (int j = 0; j < 3; j++) {
+          if (this.matrix == null) {
+            fused[i][j] = cMatrix[i][j];
+          }
+          else {
+            fused[i][j] = cMatrix[i][0] * this.matrix[0][j]
+                    + cMatrix[i][1] * this.matrix[1][j]
+                    + cMatrix[i][2] * this.matrix[2][j];
+          }
+        }
+      }
+      List<IntUnaryOperator> newStages = this.matrix == null ? this.allStages() : this.stages;
+      return new PixelNode(this.source, newStages, fused, null, this.engine);
+    }
+
+    /**
+     * Check that a color transformation can never produce a channel outside of 0-255,
+     * which the eager processor would clamp, from channels within 0-255.
+     *
+     * @param cMatrix
+     *     The 3x3 color transformation matrix
+     * @return
+     *     True if every coefficient is non-negative and every row adds up to at most 1
+     */
+    private static boolean staysInRange(double[][] cMatrix) {
+      for (double[] row : cMatrix) {
+        double sum = 0;
+        for (double coefficient : row) {
+          if (coefficient < 0) {
+            return false;
+          }
+          sum += coefficient;
+        }
+        if (sum > 1) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Create a node that applies the stages of this node followed by the given
+     * lookup table. The table is composed with a trailing table of this node.
+     *
+     * @param next
+     *     The lookup table
+     * @return
+     *     A new node
+     */
+    PixelNode thenLookup(LookupTable next) {
+      if (this.table != null) {
+        return new PixelNode(this.source, this.stages, null, this.table.andThen(next),
+                this.engine);
+      }
+      return new PixelNode(this.source, this.allStages(), null, next, this.engine);
+    }
+
+    /**
+     * Create a node that applies the stages of this node followed by the given
+     * per-pixel function.
+     *
+     * @param op
+     *     A function from an old packed pixel to a new packed pixel
+     * @return
+     *     A new node
+     */
+    PixelNode thenApply(IntUnaryOperator op) {
+      List<IntUnaryOperator> newStages = this.allStages();
+      newStages.add(op);
+      return new PixelNode(this.source, newStages, null, null, this.engine);
+    }
+
+    /**
+     * Collect every stage of this node, including a trailing matrix or table.
+     *
+     * @return
+     *     A new list of the stages, in order
+     */
+    private List<IntUnaryOperator> allStages() {
+      List<IntUnaryOperator> all = new ArrayList<>(this.stages);
+      if (this.matrix != null) {
+        double[][] cMatrix = this.matrix;
+        all.add(rgb -> ImageProcessorImpl.transformPixel(cMatrix, rgb));
+      }
+      if (this.table != null) {
+        all.add(this.table::apply);
+      }
+      return all;
+    }
+
+    @Override
+    PixelBuffer compute() {
+      List<IntUnaryOperator> all = this.allStages();
+      if (all.size() == 1 && this.table != null) {
+        return this.engine.applyLookupTable(this.table, this.source.evaluate());
+      }
+      if (all.size() == 1 && this.matrix != null) {
+        return this.engine.colorTransformation(this.matrix, this.source.evaluate());
+      }
+      IntUnaryOperator op = IntUnaryOperator.identity();
+      for (IntUnaryOperator stage : all) {
+        op = op.andThen(stage);
+      }
+      return this.engine.mapPixels(this.source.evaluate(), op);
+    }
+
+    @Override
+    void release() {
+      this.source = null;
+    }
+  }
+}
@@ -0,0 +1,248 @@
+package model;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A point operation stored as a 256-entry table per color channel. The new value of a
+ * channel only depends on its old value, so the table is built once per operation and
+ * each pixel costs three array lookups, no matter how complicated the operation is.
+ * <p></p>
+ * Tables compose: applying one table and then another is the same as applying
+ * their composition, so a chain of point operations still costs a single pass.
+ * Tables are immutable.
+ */
+final class LookupTable {
+
+  private static final int SIZE = 256;
+
+  private final int[] red;
+  private final int[] green;
+  private final int[] blue;
+
+  /**
+   * Create a table from its per-channel entries. The arrays are NOT copied.
+   *
+   * @param red
+   *     The new red value for each old red value (0-255)
+   * @param green
+   *     The new green value for each old green value (0-255)
+   * @param blue
+   *     The new blue value for each old blue value (0-255)
+   */
+  private LookupTable(int[] red, int[] green, int[] blue) {
+    this.red = red;
+    this.green = green;
+    this.blue = blue;
+  }
+
+  /**
+   * Build a table that applies the same function to every channel. The results of
+   * the function are clamped to 0-255.
+   *
+   * @param f
+   *     A function from an old channel value (0-255) to a new one
+   * @return
+   *     The table
+   */
+  static LookupTable of(IntUnaryOperator f) {
+    int[] table = new int[SIZE];
+    for (int i = 0; i < SIZE; i++) {
+      table[i] = PixelBuffer.clamp(f.applyAsInt(i));
+    }
+    return new LookupTable(table, table, table);
+  }
+
+  /**
+   * Build a table that adds the given increment to every channel.
+   *
+   * @param increment
+   *     The value to add (+/-)
+   * @return
+   *     The table
+   */
+  static LookupTable brightness(int increment) {
+    return LookupTable.of(val -> val + increment);
+  }
+
+  /**
+   * Build a gamma correction table. Each channel is normalized to 0-1, raised to the
+   * power of 1/gamma, and scaled back to 0-255.
+   *
+   * @param gamma
+   *     The gamma value. Values above 1 brighten the image, values below 1 darken it
+   * @return
+   *     The table
+   * @throws IllegalArgumentException
+   *     If gamma is not a positive number
+   */
+  static LookupTable gamma(double gamma) throws IllegalArgumentException {
+    if (!(gamma > 0) || Double.isInfinite(gamma)) {
+      throw new IllegalArgumentException("gamma must be a positive number");
+    }
+    return LookupTable.of(val -> (int) Math.round(255 * Math.pow(val / 255.0, 1 / gamma)));
+  }
+
+  /**
+   * Build a levels adjustment table. Channel values at or below the black point become 0,
+   * values at or above the white point become 255, and values in between follow the
+   * quadratic curve through (black, 0), (mid, 128) and (white, 255).
+   *
+   * @param black
+   *     The black point
+   * @param mid
+   *     The mid point
+   * @param white
+   *     The white point
+   * @return
+   *     The table
+   * @throws IllegalArgumentException
+   *     If the points are not in ascending order within 0-255
+   */
+  static LookupTable levels(int black, int mid, int white) throws IllegalArgumentException {
+    if (black < 0 || black >= mid || mid >= white || white > 255) {
+      throw new IllegalArgumentException("levels must satisfy 0 <= black < mid < white <= 255");
+    }
+    // fit y = ax^2 + bx + c through the three points (Cramer's rule)
+    double b = black;
+    double m = mid;
+    double w = white;
+    double det = b * b * (m - w) - b * (m * m - w * w) + w * m * m - m * w * w;
+    double detA = -b * (128 - 255) + 128 * w - 255 * m;
+    double detB = b * b * (128 - 255) + 255 * m * m - 128 * w * w;
+    double detC = b * b * (255 * m - 128 * w) - b * (255 * m * m - 128 * w * w);
+    double qa = detA / det;
+    double qb = detB / det;
+    double qc = detC / det;
+
+    return LookupTable.of(val -> {
+      if (val <= black) {
+        return 0;
+      }
+      if (val >= white) {
+        return 255;
+      }
+      return (int) Math.round(qa * val * val + qb * val + qc);
+    });
+  }
+
+  /**
+   * Build a contrast table that stretches every channel away from (or towards) the
+   * middle value 128.
+   *
+   * @param factor
+   *     The contrast factor. 1 leaves the image unchanged, values above 1 increase
+   *     contrast, and values between 0 and 1 decrease it
+   * @return
+   *     The table
+   * @throws IllegalArgumentException
+   *     If the factor is negative or not a number
+   */
+  static LookupTable contrast(double factor) throws IllegalArgumentException {
+    if (!(factor >= 0) || Double.isInfinite(factor)) {
+      throw new IllegalArgumentException("the contrast factor cannot be negative");
+    }
+    return LookupTable.of(val -> (int) Math.round((val - 128) * factor + 128));
+  }
+
+  /**
+   * Build a curves table that linearly interpolates between the given control points.
+   * Channel values before the first point take the output of the first point, and
+   * values after the last point take the output of the last point.
+   *
+   * @param points
+   *     The control points as {input, output} pairs, with strictly increasing
+   *     inputs. Inputs and outputs must be within 0-255
+   * @return
+   *     The table
+   * @throws IllegalArgumentException
+   *     If there are fewer than 2 points, a point is not a pair within 0-255,
+   *     or the inputs are not strictly increasing
+   */
+  static LookupTable curves(int[][] points) throws IllegalArgumentException {
+    if (points == null || points.length < 2) {
+      throw new IllegalArgumentException("a curve needs at least 2 control points");
+    }
+    for (int i = 0; i < points.length; i++) {
+      if (points[i] == null || points[i].length != 2
+              || points[i][0] < 0 || points[i][0] > 255
+              || points[i][1] < 0 || points[i][1] > 255) {
+        throw new IllegalArgumentException("control points must be {input, output} " +
+                "pairs within 0-255");
+      }
+      if (i > 0 && points[i][0] <= points[i - 1][0]) {
+        throw new IllegalArgumentException("control point inputs must be strictly increasing");
+      }
+    }
+
+    int[] table = new int[SIZE];
+    int segment = 0;
+    for (int val = 0; val < SIZE; val++) {
+      if (val <= points[0][0]) {
+        table[val] = points[0][1];
+        continue;
+      }
+      if (val >= points[points.length - 1][0]) {
+        table[val] = points[points.length - 1][1];
+        continue;
+      }
+      while (val > points[segment + 1][0]) {
+        segment++;
+      }
+      int x0 = points[segment][0];
+      int y0 = points[segment][1];
+      int x1 = points[segment + 1][0];
+      int y1 = points[segment + 1][1];
+      table[val] = (int) Math.round(y0 + (double) (y1 - y0) * (val - x0) / (x1 - x0));
+    }
+    return new LookupTable(table, table, table);
+  }
+
+  /**
+   * Compose this table with the given table.
+   *
+   * @param next
+   *     The table to apply after this one
+   * @return
+   *     A table that has the same effect as applying this table, then the next one
+   */
+  LookupTable andThen(LookupTable next) {
+    int[] r = new int[SIZE];
+    int[] g = new int[SIZE];
+    int[] b = new int[SIZE];
+    for (int i = 0; i < SIZE; i++) {
+      r[i] = next.red[this.red[i]];
+      g[i] = next.green[this.green[i]];
+      b[i] = next.blue[this.blue[i]];
+    }
+    return new LookupTable(r, g, b);
+  }
+
+  /**
+   * Check whether this table leaves every pixel unchanged, such as brightening by 0.
+   *
+   * @return
+   *     True if every entry maps a value to itself
+   */
+  boolean isIdentity() {
+    for (int i = 0; i < SIZE; i++) {
+      if (this.red[i] != i || this.green[i] != i || this.blue[i] != i) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Apply this table to a packed pixel.
+   *
+   * @param rgb
+   *     The pixel as 0xRRGGBB
+   * @return
+   *     The new pixel as 0xRRGGBB
+   */
+  int apply(int rgb) {
+    return PixelBuffer.pack(this.red[PixelBuffer.red(rgb)],
+            this.green[PixelBuffer.green(rgb)],
+            this.blue[PixelBuffer.blue(rgb)]);
+  }
+}
@@ -0,0 +1,69 @@
+package model;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An unbounded image store that keeps every image in memory. Every lookup is a hit,
+ * and images are never evicted. This is the default store of an image processor.
+ * <p></p>
+ * The store is thread-safe: lookups never block, and puts to different names do not
+ * contend with each other.
+ */
+public final class MemoryImageStore implements ImageStore {
+
+  /**
+   * Maps image-name -> pixel-buffer.
+   */
+  private final Map<String, PixelBuffer> images;
+  private final LongAdder hits;
+
+  /**
+   * Create an empty store.
+   */
+  public MemoryImageStore() {
+    this.images = new ConcurrentHashMap<>();
+    this.hits = new LongAdder();
+  }
+
+  @Override
+  public void put(String name, PixelBuffer img) {
+    this.images.put(name, img);
+  }
+
+  @Override
+  public PixelBuffer get(String name) throws IllegalArgumentException {
+    PixelBuffer img = this.images.get(name);
+    if (img == null) {
+      throw new IllegalArgumentException("cannot find image named: \"" + name + "\"");
+    }
+    this.hits.increment();
+    return img;
+  }
+
+  @Override
+  public boolean contains(String name) {
+    return this.images.containsKey(name);
+  }
+
+  @Override
+  public void remove(String name) {
+    this.images.remove(name);
+  }
+
+  @Override
+  public long getHits() {
+    return this.hits.sum();
+  }
+
+  @Override
+  public long getMisses() {
+    return 0;
+  }
+
+  @Override
+  public long getEvictions() {
+    return 0;
+  }
+}
@@ -0,0 +1,186 @@
+package model;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * An image store that keeps pixels outside the Java heap, so that images larger than the
+ * heap can be processed without long garbage collection pauses. The pixels are either
+ * kept in direct byte buffers, or in memory-mapped files in a scratch directory, which
+ * lets the operating system page them in and out of memory.
+ * <p></p>
+ * The store allocates the images that are put into it, so operations read their source
+ * image and write their result off-heap directly. Images are released explicitly as soon
+ * as they are replaced or removed: a mapped image's file is deleted, and a direct image's
+ * buffers are kept for reuse by the next image of the same size, up to a few images.
+ * Images created elsewhere are copied off-heap when they are put into the store. An
+ * image stored under several names is only released once the last of them is gone.
+ */
+public final class OffHeapImageStore implements ImageStore {
+
+  private static final int MAX_POOLED = 4;
+
+  /**
+   * The directory of the mapped files, or null if pixels are kept in direct buffers.
+   */
+  private final Path scratchDirectory;
+
+  /**
+   * Maps image-name -> pixel-buffer.
+   */
+  private final Map<String, DirectPixelBuffer> images;
+  private final ReferenceCounts references;
+
+  /**
+   * Released direct buffers that can be reused by allocate().
+   */
+  private final Deque<DirectPixelBuffer> pool;
+
+  private long hits;
+
+  /**
+   * Create an empty store that keeps pixels in direct byte buffers.
+   */
+  public OffHeapImageStore() {
+    this.scratchDirectory = null;
+    this.images = new HashMap<>();
+    this.references = new ReferenceCounts();
+    this.pool = new ArrayDeque<>();
+    this.hits = 0;
+  }
+
+  /**
+   * Create an empty store that keeps pixels in memory-mapped files in the given
+   * directory. The directory is created if it does not exist, and a directory created
+   * here is deleted on exit once its files are.
+   *
+   * @param scratchDirectory
+   *     The directory to create the mapped files in
+   * @throws IllegalArgumentException
+   *     If the directory cannot be created
+   */
+  public OffHeapImageStore(Path scratchDirectory) throws IllegalArgumentException {
+    try {
+      if (!Files.isDirectory(scratchDirectory)) {
+        Files.createDirectories(scratchDirectory);
+        // mapped files are deleted as they are released, leaving it empty
+        scratchDirectory.toFile().deleteOnExit();
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("cannot create scratch directory: "
+              + scratchDirectory);
+    }
+    this.scratchDirectory = scratchDirectory;
+    this.images = new HashMap<>();
+    this.references = new ReferenceCounts();
+    this.pool = new ArrayDeque<>();
+    this.hits = 0;
+  }
+
+  /**
+   * Create a new off-heap buffer, reusing a released one of the same size if possible.
+   *
+   * @throws IllegalStateException
+   *     If a mapped file cannot be created
+   */
+  @Override
+  public PixelBuffer allocate(int width, int height)
+          throws IllegalArgumentException, IllegalStateException {
+    Iterator<DirectPixelBuffer> released = this.pool.iterator();
+    while (released.hasNext()) {
+      DirectPixelBuffer img = released.next();
+      if (img.getWidth() == width && img.getHeight() == height) {
+        released.remove();
+        return img;
+      }
+    }
+    if (this.scratchDirectory == null) {
+      return DirectPixelBuffer.allocateDirect(width, height);
+    }
+    return DirectPixelBuffer.allocateMapped(width, height, this.scratchDirectory);
+  }
+
+  @Override
+  public void put(String name, PixelBuffer img) {
+    DirectPixelBuffer offHeap;
+    if (img instanceof DirectPixelBuffer) {
+      offHeap = (DirectPixelBuffer) img;
+    } else {
+      offHeap = (DirectPixelBuffer) this.allocate(img.getWidth(), img.getHeight());
+      for (int i = 0; i < img.getWidth() * img.getHeight(); i++) {
+        offHeap.setRGB(i, img.getRGB(i));
+      }
+    }
+    this.references.retain(offHeap);
+    DirectPixelBuffer old = this.images.put(name, offHeap);
+    if (old != null && this.references.release(old)) {
+      this.release(old);
+    }
+  }
+
+  @Override
+  public PixelBuffer get(String name) throws IllegalArgumentException {
+    PixelBuffer img = this.images.get(name);
+    if (img == null) {
+      throw new IllegalArgumentException("cannot find image named: \"" + name + "\"");
+    }
+    this.hits++;
+    return img;
+  }
+
+  @Override
+  public boolean contains(String name) {
+    return this.images.containsKey(name);
+  }
+
+  @Override
+  public void remove(String name) {
+    DirectPixelBuffer old = this.images.remove(name);
+    if (old != null && this.references.release(old)) {
+      this.release(old);
+    }
+  }
+
+  @Override
+  public long getHits() {
+    return this.hits;
+  }
+
+  @Override
+  public long getMisses() {
+    return 0;
+  }
+
+  @Override
+  public long getEvictions() {
+    return 0;
+  }
+
+  /**
+   * Release an image that is no longer stored under any name. Its mapped file is deleted, or its
+   * direct buffers are kept for reuse if the pool is not full.
+   *
+   * @param img
+   *     The image to release
+   */
+  private void release(DirectPixelBuffer img) {
+    if (img.getFile() == null) {
+      if (this.pool.size() < MAX_POOLED) {
+        this.pool.addFirst(img);
+      }
+      return;
+    }
+    try {
+      // the mapping stays valid until it is collected, but the file is unlinked now
+      Files.deleteIfExists(img.getFile());
+    } catch (IOException e) {
+      img.getFile().toFile().deleteOnExit();
+    }
+  }
+}
@@ -0,0 +1,349 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * A bounded cache of the results of image operations, with a memory budget. A result is
+ * looked up by its operation (including its parameters) and the hash of the contents of
+ * its source image, so repeating an operation on the same pixels returns the very same
+ * result buffer instead of computing it again, even if the source was loaded or computed
+ * again in between. Results are kept in least-recently-used order, and the least recently
+ * used ones are evicted when the results take up more than the budget.
+ * <p></p>
+ * Every image is hashed at most once. A loaded image is hashed by scanning its pixels
+ * the first time it is the source of an operation. An image larger than the budget is
+ * never hashed, and operations on it are not cached, since their results would almost
+ * always be too large to keep. The hash of a result is derived from
+ * the operation and the hash of its source without looking at its pixels, because
+ * operations are deterministic. A hash only finds a candidate result: each result keeps
+ * the source it was computed from, and is only returned for a source with the same
+ * pixels, so two different images whose hashes collide never share a result. An image
+ * processor forgets the results computed from an image it removes, so the cache never
+ * keeps a removed source alive; results themselves stay within the budget.
+ * <p></p>
+ * Cached results are shared with the images stored under other names, so they must never
+ * be modified, and the cache must not be used with a store that reuses the memory of the
+ * images it removes. The cache is thread-safe; an operation that two threads miss at the
+ * same time is computed by both of them.
+ */
+public final class OperationCache {
+
+  /**
+   * The result of an operation, and the source it was computed from.
+   */
+  private static final class Entry {
+
+    private final PixelBuffer source;
+    private final PixelBuffer result;
+
+    /**
+     * Create an entry.
+     *
+     * @param source
+     *     The image the operation was applied to
+     * @param result
+     *     The result of the operation
+     */
+    Entry(PixelBuffer source, PixelBuffer result) {
+      this.source = source;
+      this.result = result;
+    }
+  }
+
+  private final long memoryBudget;
+
+  /**
+   * Maps operation@source-hash -> entry, least recently used first.
+   */
+  private final LinkedHashMap<String, Entry> results;
+
+  /**
+   * Maps image -> hash of its contents. Images are compared by identity, and forgotten
+   * once they are no longer used.
+   */
+  private final Map<PixelBuffer, Long> hashes;
+
+  private long memoryUsed;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * Create an empty cache.
+   *
+   * @param memoryBudget
+   *     The number of bytes of results to keep. A result larger than the budget is
+   *     never cached
+   * @throws IllegalArgumentException
+   *     If the budget is negative
+   */
+  public OperationCache(long memoryBudget) throws IllegalArgumentException {
+    if (memoryBudget < 0) {
+      throw new IllegalArgumentException("the memory budget cannot be negative");
+    }
+    this.memoryBudget = memoryBudget;
+    this.results = new LinkedHashMap<>(16, 0.75f, true);
+    this.hashes = new WeakHashMap<>();
+    this.memoryUsed = 0;
+    this.hits = 0;
+    this.misses = 0;
+    this.evictions = 0;
+  }
+
+  /**
+   * Compute how many bytes an image takes up in memory.
+   *
+   * @param img
+   *     The image
+   * @return
+   *     The size in bytes
+   */
+  private static long sizeOf(PixelBuffer img) {
+    return 4L * img.getWidth() * img.getHeight();
+  }
+
+  /**
+   * Get the result of an operation on an image, computing it only if it is not cached.
+   *
+   * @param operation
+   *     The name of the operation, followed by all of its parameters. Two operations
+   *     with the same name must compute the same result from the same pixels
+   * @param source
+   *     The image to apply the operation to
+   * @param op
+   *     Computes the result of the operation
+   * @return
+   *     The result. It must not be modified
+   */
+  PixelBuffer apply(String operation, PixelBuffer source, UnaryOperator<PixelBuffer> op) {
+    if (OperationCache.sizeOf(source) > this.memoryBudget) {
+      synchronized (this) {
+        this.misses++;
+      }
+      return op.apply(source);
+    }
+    long hash = OperationCache.derive(this.hashOf(source), operation);
+    String key = operation + "@" + Long.toHexString(hash);
+    Entry cached;
+    synchronized (this) {
+      cached = this.results.get(key);
+    }
+    // compared outside of the lock, since it may scan both images
+    if (cached != null && OperationCache.samePixels(cached.source, source)) {
+      synchronized (this) {
+        this.hits++;
+      }
+      return cached.result;
+    }
+    synchronized (this) {
+      this.misses++;
+    }
+
+    PixelBuffer result = op.apply(source);
+    synchronized (this) {
+      this.hashes.putIfAbsent(result, hash);
+      long size = OperationCache.sizeOf(result);
+      if (size <= this.memoryBudget) {
+        Entry replaced = this.results.put(key, new Entry(source, result));
+        if (replaced != null) {
+          this.memoryUsed -= OperationCache.sizeOf(replaced.result);
+        }
+        this.memoryUsed += size;
+        this.evict();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Check that two images have the same dimensions and pixels.
+   *
+   * @param first
+   *     The first image
+   * @param second
+   *     The second image
+   * @return
+   *     True if the images are the same
+   */
+  private static boolean samePixels(PixelBuffer first, PixelBuffer second) {
+    if (first == second) {
+      return true;
+    }
+    if (first.getWidth() != second.getWidth() || first.getHeight() != second.getHeight()) {
+      return false;
+    }
+    int size = first.getWidth() * first.getHeight();
+    if (first instanceof PackedPixelBuffer && second instanceof PackedPixelBuffer) {
+      return Arrays.equals(((PackedPixelBuffer) first).getPixels(),
+              ((PackedPixelBuffer) second).getPixels());
+    }
+    for (int i = 0; i < size; i++) {
+      if (first.getRGB(i) != second.getRGB(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Record the result of an operation that is too cheap to cache, such as a view of its
+   * source, so that later operations on the result do not have to hash its pixels. Only
+   * a source that was already hashed is recorded.
+   *
+   * @param operation
+   *     The name of the operation, followed by all of its parameters
+   * @param source
+   *     The image the operation was applied to
+   * @param result
+   *     The result of the operation
+   */
+  void record(String operation, PixelBuffer source, PixelBuffer result) {
+    synchronized (this) {
+      Long sourceHash = this.hashes.get(source);
+      if (sourceHash != null) {
+        this.hashes.putIfAbsent(result, OperationCache.derive(sourceHash, operation));
+      }
+    }
+  }
+
+  /**
+   * Forget every result computed from the given image, once it is removed.
+   *
+   * @param img
+   *     The removed image
+   */
+  synchronized void forget(PixelBuffer img) {
+    Iterator<Entry> entries = this.results.values().iterator();
+    while (entries.hasNext()) {
+      Entry entry = entries.next();
+      if (entry.source == img) {
+        this.memoryUsed -= OperationCache.sizeOf(entry.result);
+        entries.remove();
+      }
+    }
+  }
+
+  /**
+   * Get the number of operations whose result was found in the cache.
+   *
+   * @return
+   *     The number of hits
+   */
+  public synchronized long getHits() {
+    return this.hits;
+  }
+
+  /**
+   * Get the number of operations whose result had to be computed.
+   *
+   * @return
+   *     The number of misses
+   */
+  public synchronized long getMisses() {
+    return this.misses;
+  }
+
+  /**
+   * Get the number of results that were evicted to stay within the budget.
+   *
+   * @return
+   *     The number of evictions
+   */
+  public synchronized long getEvictions() {
+    return this.evictions;
+  }
+
+  /**
+   * Get the fraction of operations whose result was found in the cache.
+   *
+   * @return
+   *     The hit rate between 0 and 1, or 0 if no operation has been looked up
+   */
+  public synchronized double getHitRate() {
+    long lookups = this.hits + this.misses;
+    return lookups == 0 ? 0 : (double) this.hits / lookups;
+  }
+
+  /**
+   * Evict the least recently used results until the results fit the budget.
+   */
+  private void evict() {
+    Iterator<Entry> eldest = this.results.values().iterator();
+    while (this.memoryUsed > this.memoryBudget) {
+      this.memoryUsed -= OperationCache.sizeOf(eldest.next().result);
+      this.evictions++;
+      eldest.remove();
+    }
+  }
+
+  /**
+   * Get the hash of the contents of an image, scanning its pixels only if the image has
+   * not been hashed before.
+   *
+   * @param img
+   *     The image
+   * @return
+   *     The hash
+   */
+  private long hashOf(PixelBuffer img) {
+    synchronized (this) {
+      Long hash = this.hashes.get(img);
+      if (hash != null) {
+        return hash;
+      }
+    }
+    long hash = OperationCache.mix(((long) img.getWidth() << 32) | img.getHeight());
+    int size = img.getWidth() * img.getHeight();
+    if (img instanceof PackedPixelBuffer) {
+      for (int rgb : ((PackedPixelBuffer) img).getPixels()) {
+        hash = hash * 0x100000001B3L + rgb;
+      }
+    } else {
+      for (int i = 0; i < size; i++) {
+        hash = hash * 0x100000001B3L + img.getRGB(i);
+      }
+    }
+    hash = OperationCache.mix(hash);
+    synchronized (this) {
+      this.hashes.putIfAbsent(img, hash);
+    }
+    return hash;
+  }
+
+  /**
+   * Derive the hash of the result of an operation from the hash of its source.
+   *
+   * @param sourceHash
+   *     The hash of the source image
+   * @param operation
+   *     The name of the operation, followed by all of its parameters
+   * @return
+   *     The hash of the result
+   */
+  private static long derive(long sourceHash, String operation) {
+    long hash = sourceHash;
+    for (int i = 0; i < operation.length(); i++) {
+      hash = hash * 0x100000001B3L + operation.charAt(i);
+    }
+    return OperationCache.mix(hash);
+  }
+
+  /**
+   * Scramble the bits of a hash, so that similar inputs give unrelated hashes.
+   *
+   * @param hash
+   *     The hash
+   * @return
+   *     The scrambled hash
+   */
+  private static long mix(long hash) {
+    hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+    hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+    return hash ^ (hash >>> 31);
+  }
+}
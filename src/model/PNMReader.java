@@ -0,0 +1,553 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A streaming reader for the Netpbm family of image files: plain (ASCII) and raw (binary)
+ * bitmaps (P1/P4), greymaps (P2/P5) and pixmaps (P3/P6). The format is chosen by the
+ * magic number at the start of the file, not by its extension.
+ * <p></p>
+ * The file is read through a channel in large chunks into a reusable byte buffer. Plain
+ * samples are parsed by hand directly from those bytes, and raw samples are decoded from
+ * the buffer straight into the pixel buffer, so reading never allocates per sample and
+ * never holds a copy of the whole file. Comments (from '#' to the end of the line) are
+ * allowed anywhere whitespace is allowed in the header, and anywhere in a plain raster.
+ * <p></p>
+ * The raster can also be read a few rows at a time, so that an image can be streamed
+ * through a pipeline without ever being held in memory as a whole.
+ * <p></p>
+ * Samples are scaled from 0-maxval to 0-255. Plain samples above maxval are clamped to 255.
+ * Greymaps and bitmaps are loaded as RGB images with equal channels.
+ */
+final class PNMReader {
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final ReadableByteChannel channel;
+  private final ByteBuffer buffer;
+  private int format;
+  private int width;
+  private int height;
+  private int maxValue;
+  private int lastByte;
+
+  /**
+   * Create a reader over the given channel. The channel is closed by close().
+   *
+   * @param channel
+   *     The channel to read from
+   */
+  private PNMReader(ReadableByteChannel channel) {
+    this.channel = channel;
+    this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    // start out empty, ready for reading
+    this.buffer.flip();
+    this.maxValue = 255;
+    this.lastByte = -1;
+  }
+
+  /**
+   * Read a Netpbm file into a pixel buffer.
+   *
+   * @param filename
+   *     The path of the file
+   * @param allocator
+   *     Creates the pixel buffer the image is read into
+   * @return
+   *     The image's pixel buffer
+   * @throws IllegalArgumentException
+   *     If the file cannot be found or read, or is not a valid Netpbm file
+   */
+  static PixelBuffer read(String filename, PixelAllocator allocator)
+          throws IllegalArgumentException {
+    PNMReader reader = PNMReader.open(filename);
+    try {
+      PixelBuffer pixels = allocator.allocate(reader.width, reader.height);
+      reader.readPixels(pixels, 0, reader.width * reader.height);
+      return pixels;
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Open a Netpbm file and read its header, leaving the reader at the start of the
+   * raster. The raster can then be read in consecutive ranges of pixels with
+   * readPixels(), and the reader must be closed afterwards.
+   *
+   * @param filename
+   *     The path of the file
+   * @return
+   *     The reader
+   * @throws IllegalArgumentException
+   *     If the file cannot be found or read, or does not start with a valid Netpbm header
+   */
+  static PNMReader open(String filename) throws IllegalArgumentException {
+    FileChannel channel;
+    try {
+      channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+    } catch (NoSuchFileException | InvalidPathException e) {
+      throw new IllegalArgumentException("File " + filename + " not found!");
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Could not read file " + filename);
+    }
+
+    PNMReader reader = new PNMReader(channel);
+    try {
+      reader.readHeader();
+      return reader;
+    } catch (IOException e) {
+      reader.close();
+      throw new IllegalArgumentException("Could not read file " + filename);
+    } catch (IllegalArgumentException e) {
+      reader.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Close the channel of this reader.
+   */
+  void close() {
+    try {
+      this.channel.close();
+    } catch (IOException e) {
+      // the image has already been read (or has already failed)
+    }
+  }
+
+  /**
+   * Get the width of the image, once the header has been read.
+   *
+   * @return
+   *     The width in pixels
+   */
+  int getWidth() {
+    return this.width;
+  }
+
+  /**
+   * Get the height of the image, once the header has been read.
+   *
+   * @return
+   *     The height in pixels
+   */
+  int getHeight() {
+    return this.height;
+  }
+
+  /**
+   * Read the next pixels of the raster into a range of the given buffer. Ranges must
+   * start and end on whole rows of the image.
+   *
+   * @param pixels
+   *     The buffer to fill, as wide as the image
+   * @param start
+   *     The flat index of the first pixel to fill
+   * @param end
+   *     The flat index after the last pixel to fill
+   * @throws IllegalArgumentException
+   *     If reading fails, or the raster is invalid or too short
+   */
+  void readPixels(PixelBuffer pixels, int start, int end) throws IllegalArgumentException {
+    try {
+      switch (this.format) {
+        case 1:
+          this.readPlainBits(pixels, start, end);
+          break;
+        case 2:
+          this.readPlainSamples(pixels, start, end, 1);
+          break;
+        case 3:
+          this.readPlainSamples(pixels, start, end, 3);
+          break;
+        case 4:
+          this.readRawBits(pixels, start, end);
+          break;
+        default:
+          this.readRawSamples(pixels, start, end, this.format == 6 ? 3 : 1);
+          break;
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Could not read the raster of the image");
+    }
+  }
+
+  /**
+   * Read the header of a Netpbm image: the magic number, the size, and the max value.
+   *
+   * @throws IOException
+   *     If reading from the channel fails
+   * @throws IllegalArgumentException
+   *     If the channel does not start with a valid Netpbm header
+   */
+  private void readHeader() throws IOException, IllegalArgumentException {
+    String magic = this.readMagic();
+    if (magic.length() != 2 || magic.charAt(0) != 'P'
+            || magic.charAt(1) < '1' || magic.charAt(1) > '6') {
+      throw new IllegalArgumentException("Invalid PPM file: the file should begin with " +
+              "a magic number from P1 to P6");
+    }
+    this.format = magic.charAt(1) - '0';
+
+    this.width = this.readInt();
+    this.height = this.readInt();
+    // bitmaps do not have a max value
+    if (this.format != 1 && this.format != 4) {
+      this.maxValue = this.readInt();
+      if (this.maxValue < 1 || this.maxValue > 65535) {
+        throw new IllegalArgumentException("Invalid PPM file: the max value must be " +
+                "within 1-65535");
+      }
+    }
+    if (this.width < 1 || this.height < 1
+            || (long) this.width * this.height > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Invalid PPM file: the image size is invalid");
+    }
+
+    // a raw raster starts after exactly one whitespace character
+    if (this.format >= 4 && !PNMReader.isWhitespace(this.lastByte)) {
+      throw new IllegalArgumentException("Invalid PPM file: expected whitespace before " +
+              "the raster");
+    }
+  }
+
+  /**
+   * Read a plain bitmap raster, where each pixel is a '1' (black) or '0' (white),
+   * optionally separated by whitespace.
+   *
+   * @param pixels
+   *     The buffer to fill
+   * @param start
+   *     The flat index of the first pixel to fill
+   * @param end
+   *     The flat index after the last pixel to fill
+   * @throws IOException
+   *     If reading from the channel fails
+   * @throws IllegalArgumentException
+   *     If the raster is invalid or too short
+   */
+  private void readPlainBits(PixelBuffer pixels, int start, int end)
+          throws IOException, IllegalArgumentException {
+    for (int i = start; i < end; i++) {
+      int c = this.skipWhitespace();
+      if (c != '0' && c != '1') {
+        throw new IllegalArgumentException("Invalid PPM file: expected a bit but found "
+                + PNMReader.describe(c));
+      }
+      pixels.setRGB(i, c == '1' ? 0x000000 : 0xFFFFFF);
+    }
+  }
+
+  /**
+   * Read a plain raster of decimal samples.
+   *
+   * @param pixels
+   *     The buffer to fill
+   * @param start
+   *     The flat index of the first pixel to fill
+   * @param end
+   *     The flat index after the last pixel to fill
+   * @param channels
+   *     The number of samples per pixel (1 for greymaps, 3 for pixmaps)
+   * @throws IOException
+   *     If reading from the channel fails
+   * @throws IllegalArgumentException
+   *     If the raster is invalid or too short
+   */
+  private void readPlainSamples(PixelBuffer pixels, int start, int end, int channels)
+          throws IOException, IllegalArgumentException {
+    for (int i = start; i < end; i++) {
+      int r = this.scale(this.readInt());
+      if (channels == 1) {
+        pixels.setRGB(i, PixelBuffer.pack(r, r, r));
+      }
+      else {
+        int g = this.scale(this.readInt());
+        int b = this.scale(this.readInt());
+        pixels.setRGB(i, PixelBuffer.pack(r, g, b));
+      }
+    }
+  }
+
+  /**
+   * Read a raw bitmap raster, where each row is packed 8 pixels per byte (most
+   * significant bit first, 1 is black) and padded to a whole byte.
+   *
+   * @param pixels
+   *     The buffer to fill
+   * @param start
+   *     The flat index of the first pixel to fill (the start of a row)
+   * @param end
+   *     The flat index after the last pixel to fill (the end of a row)
+   * @throws IOException
+   *     If reading from the channel fails
+   * @throws IllegalArgumentException
+   *     If the raster is too short
+   */
+  private void readRawBits(PixelBuffer pixels, int start, int end)
+          throws IOException, IllegalArgumentException {
+    int width = pixels.getWidth();
+    int index = start;
+    for (int row = start / width; row < end / width; row++) {
+      for (int col = 0; col < width; col += 8) {
+        this.ensure(1);
+        int bits = this.buffer.get() & 0xFF;
+        for (int bit = 0; bit < 8 && col + bit < width; bit++) {
+          boolean black = (bits & (0x80 >>> bit)) != 0;
+          pixels.setRGB(index++, black ? 0x000000 : 0xFFFFFF);
+        }
+      }
+    }
+  }
+
+  /**
+   * Read a raw raster of 1-byte or 2-byte (big-endian) samples, decoding straight from
+   * the read buffer.
+   *
+   * @param pixels
+   *     The buffer to fill
+   * @param start
+   *     The flat index of the first pixel to fill
+   * @param end
+   *     The flat index after the last pixel to fill
+   * @param channels
+   *     The number of samples per pixel (1 for greymaps, 3 for pixmaps)
+   * @throws IOException
+   *     If reading from the channel fails
+   * @throws IllegalArgumentException
+   *     If the raster is too short
+   */
+  private void readRawSamples(PixelBuffer pixels, int start, int end, int channels)
+          throws IOException, IllegalArgumentException {
+    int bytesPerSample = this.maxValue < 256 ? 1 : 2;
+    int bytesPerPixel = bytesPerSample * channels;
+    byte[] bytes = this.buffer.array();
+
+    int index = start;
+    while (index < end) {
+      this.ensure(bytesPerPixel);
+      int count = Math.min(this.buffer.remaining() / bytesPerPixel, end - index);
+      int pos = this.buffer.arrayOffset() + this.buffer.position();
+
+      if (bytesPerPixel == 3 && this.maxValue == 255) {
+        // the common case: 8-bit RGB
+        for (int i = 0; i < count; i++) {
+          pixels.setRGB(index++, ((bytes[pos] & 0xFF) << 16)
+                  | ((bytes[pos + 1] & 0xFF) << 8)
+                  | (bytes[pos + 2] & 0xFF));
+          pos += 3;
+        }
+      }
+      else {
+        for (int i = 0; i < count; i++) {
+          int r = this.scale(PNMReader.sample(bytes, pos, bytesPerSample));
+          if (channels == 1) {
+            pixels.setRGB(index++, PixelBuffer.pack(r, r, r));
+          }
+          else {
+            int g = this.scale(PNMReader.sample(bytes, pos + bytesPerSample, bytesPerSample));
+            int b = this.scale(PNMReader.sample(bytes, pos + 2 * bytesPerSample,
+                    bytesPerSample));
+            pixels.setRGB(index++, PixelBuffer.pack(r, g, b));
+          }
+          pos += bytesPerPixel;
+        }
+      }
+      this.buffer.position(this.buffer.position() + count * bytesPerPixel);
+    }
+  }
+
+  /**
+   * Decode a 1-byte or 2-byte (big-endian) raw sample.
+   *
+   * @param bytes
+   *     The bytes to decode from
+   * @param pos
+   *     The position of the sample
+   * @param bytesPerSample
+   *     The size of the sample (1 or 2)
+   * @return
+   *     The sample
+   */
+  private static int sample(byte[] bytes, int pos, int bytesPerSample) {
+    if (bytesPerSample == 1) {
+      return bytes[pos] & 0xFF;
+    }
+    return ((bytes[pos] & 0xFF) << 8) | (bytes[pos + 1] & 0xFF);
+  }
+
+  /**
+   * Scale a sample from 0-maxval to 0-255, clamping samples above maxval.
+   *
+   * @param sample
+   *     The sample
+   * @return
+   *     The scaled sample (0-255)
+   */
+  private int scale(int sample) {
+    if (this.maxValue == 255) {
+      return PixelBuffer.clamp(sample);
+    }
+    long scaled = ((long) sample * 255 + this.maxValue / 2) / this.maxValue;
+    return (int) Math.min(255, scaled);
+  }
+
+  /**
+   * Read the two-character magic number at the start of the file.
+   *
+   * @return
+   *     The magic number (e.g. "P3")
+   * @throws IOException
+   *     If reading from the channel fails
+   * @throws IllegalArgumentException
+   *     If the channel ends before the magic number
+   */
+  private String readMagic() throws IOException, IllegalArgumentException {
+    int first = this.next();
+    int second = this.next();
+    if (first < 0 || second < 0) {
+      throw new IllegalArgumentException("Invalid PPM file: the file is empty");
+    }
+    return new String(new char[]{(char) first, (char) second});
+  }
+
+  /**
+   * Skip whitespace and comments, then parse a non-negative decimal integer. The byte
+   * that ends the integer is consumed, unless it starts a comment.
+   *
+   * @return
+   *     The integer
+   * @throws IOException
+   *     If reading from the channel fails
+   * @throws IllegalArgumentException
+   *     If the next token is not a non-negative integer, or the channel ends first
+   */
+  private int readInt() throws IOException, IllegalArgumentException {
+    int c = this.skipWhitespace();
+    if (c < '0' || c > '9') {
+      throw new IllegalArgumentException("Invalid PPM file: expected a number but found "
+              + PNMReader.describe(c));
+    }
+
+    int value = 0;
+    while (c >= '0' && c <= '9') {
+      int digit = c - '0';
+      if (value > (Integer.MAX_VALUE - digit) / 10) {
+        throw new IllegalArgumentException("Invalid PPM file: number is too large");
+      }
+      value = value * 10 + digit;
+      c = this.next();
+    }
+    if (c >= 0 && c != '#' && !PNMReader.isWhitespace(c)) {
+      throw new IllegalArgumentException("Invalid PPM file: expected a number but found "
+              + PNMReader.describe(c));
+    }
+    if (c == '#') {
+      // let the next call skip this comment
+      this.buffer.position(this.buffer.position() - 1);
+    }
+    this.lastByte = c;
+    return value;
+  }
+
+  /**
+   * Skip whitespace and comments.
+   *
+   * @return
+   *     The first byte after them, or -1 at the end of the channel
+   * @throws IOException
+   *     If reading from the channel fails
+   */
+  private int skipWhitespace() throws IOException {
+    int c = this.next();
+    while (c == '#' || PNMReader.isWhitespace(c)) {
+      if (c == '#') {
+        while (c >= 0 && c != '\n' && c != '\r') {
+          c = this.next();
+        }
+      }
+      else {
+        c = this.next();
+      }
+    }
+    return c;
+  }
+
+  /**
+   * Get the next byte of the channel, refilling the buffer when it runs out.
+   *
+   * @return
+   *     The next byte (0-255), or -1 at the end of the channel
+   * @throws IOException
+   *     If reading from the channel fails
+   */
+  private int next() throws IOException {
+    if (!this.buffer.hasRemaining()) {
+      this.buffer.clear();
+      int read = this.channel.read(this.buffer);
+      this.buffer.flip();
+      if (read <= 0) {
+        return -1;
+      }
+    }
+    return this.buffer.get() & 0xFF;
+  }
+
+  /**
+   * Make sure that at least the given number of bytes can be read from the buffer.
+   *
+   * @param count
+   *     The number of bytes needed
+   * @throws IOException
+   *     If reading from the channel fails
+   * @throws IllegalArgumentException
+   *     If the channel ends first
+   */
+  private void ensure(int count) throws IOException, IllegalArgumentException {
+    if (this.buffer.remaining() >= count) {
+      return;
+    }
+    this.buffer.compact();
+    while (this.buffer.position() < count) {
+      if (this.channel.read(this.buffer) < 0) {
+        throw new IllegalArgumentException("Invalid PPM file: unexpected end of file");
+      }
+    }
+    this.buffer.flip();
+  }
+
+  /**
+   * Describe a byte for an error message.
+   *
+   * @param c
+   *     The byte, or -1 at the end of the file
+   * @return
+   *     A description of the byte
+   */
+  private static String describe(int c) {
+    if (c < 0) {
+      return "the end of the file";
+    }
+    return "'" + (char) c + "'";
+  }
+
+  /**
+   * Check whether a byte is Netpbm whitespace.
+   *
+   * @param c
+   *     The byte
+   * @return
+   *     True if the byte is a space, tab, or line break
+   */
+  private static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0B;
+  }
+}
@@ -0,0 +1,361 @@
+package model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A writer for Netpbm image files: plain (ASCII) pixmaps (P3), and raw (binary) bitmaps
+ * (P4), greymaps (P5) and pixmaps (P6). Samples are encoded into a reusable byte buffer,
+ * formatting plain samples digit by digit, and the buffer is flushed to the output
+ * stream in large chunks. Writing does not allocate per sample. The raster may be
+ * written a few rows at a time, so that an image can be streamed out of a pipeline.
+ * <p></p>
+ * Greymaps store the luma of each pixel, rounded to the nearest integer. Bitmaps store
+ * a pixel as black if its luma is below 128, and as white otherwise.
+ */
+final class PNMWriter {
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final OutputStream out;
+  private final byte[] buffer;
+  private int position;
+  private final int format;
+  private final int samplesPerLine;
+
+  /**
+   * How many samples are already on the current line of a plain raster.
+   */
+  private int onLine;
+
+  /**
+   * Create a writer over the given stream.
+   *
+   * @param out
+   *     The stream to write to
+   * @param format
+   *     The Netpbm format: 3 (plain pixmap), 4 (raw bitmap), 5 (raw greymap)
+   *     or 6 (raw pixmap)
+   * @param samplesPerLine
+   *     How many samples to write on each line of a plain raster
+   */
+  private PNMWriter(OutputStream out, int format, int samplesPerLine) {
+    this.out = out;
+    this.buffer = new byte[BUFFER_SIZE];
+    this.position = 0;
+    this.format = format;
+    this.samplesPerLine = samplesPerLine;
+    this.onLine = 0;
+  }
+
+  /**
+   * Write a pixel buffer as a plain PPM image (P3) with a max value of 255, then close
+   * the stream.
+   *
+   * @param out
+   *     The stream to write to
+   * @param img
+   *     The pixel buffer to write
+   * @param samplesPerLine
+   *     How many samples to write on each line of the raster (at least 1)
+   * @throws IllegalArgumentException
+   *     If samplesPerLine is less than 1, or the file transmission fails
+   */
+  static void writePlain(OutputStream out, PixelBuffer img, int samplesPerLine)
+          throws IllegalArgumentException {
+    PNMWriter writer = PNMWriter.start(out, 3, img.getWidth(), img.getHeight(),
+            samplesPerLine);
+    writer.writePixels(img, 0, img.getWidth() * img.getHeight());
+    writer.finish();
+  }
+
+  /**
+   * Write a pixel buffer as a raw Netpbm image, then close the stream.
+   *
+   * @param out
+   *     The stream to write to
+   * @param img
+   *     The pixel buffer to write
+   * @param format
+   *     The raw format: 4 (bitmap), 5 (greymap) or 6 (pixmap)
+   * @throws IllegalArgumentException
+   *     If the format is not a raw format, or the file transmission fails
+   */
+  static void writeRaw(OutputStream out, PixelBuffer img, int format)
+          throws IllegalArgumentException {
+    if (format < 4 || format > 6) {
+      throw new IllegalArgumentException("not a raw Netpbm format: P" + format);
+    }
+    PNMWriter writer = PNMWriter.start(out, format, img.getWidth(), img.getHeight(), 1);
+    writer.writePixels(img, 0, img.getWidth() * img.getHeight());
+    writer.finish();
+  }
+
+  /**
+   * Start writing a Netpbm image by writing its header. The raster can then be written
+   * in consecutive ranges of pixels with writePixels(), and must be ended with finish().
+   *
+   * @param out
+   *     The stream to write to
+   * @param format
+   *     The Netpbm format: 3 (plain pixmap), 4 (raw bitmap), 5 (raw greymap)
+   *     or 6 (raw pixmap)
+   * @param width
+   *     The width of the image
+   * @param height
+   *     The height of the image
+   * @param samplesPerLine
+   *     How many samples to write on each line of a plain raster (at least 1)
+   * @return
+   *     The writer
+   * @throws IllegalArgumentException
+   *     If the format is not supported, samplesPerLine is less than 1,
+   *     or the file transmission fails
+   */
+  static PNMWriter start(OutputStream out, int format, int width, int height,
+                         int samplesPerLine) throws IllegalArgumentException {
+    if (format < 3 || format > 6) {
+      throw new IllegalArgumentException("cannot write Netpbm format: P" + format);
+    }
+    if (samplesPerLine < 1) {
+      throw new IllegalArgumentException("there must be at least 1 sample per line");
+    }
+    PNMWriter writer = new PNMWriter(out, format, samplesPerLine);
+
+    StringBuilder header = new StringBuilder();
+    header.append('P').append(format).append('\n');
+    header.append(width).append(' ').append(height).append('\n');
+    if (format != 4) {
+      header.append("255\n");
+    }
+    try {
+      writer.writeBytes(header.toString().getBytes(StandardCharsets.US_ASCII));
+    } catch (IOException e) {
+      throw new IllegalArgumentException("encountered IOException: could not transmit to file");
+    }
+    return writer;
+  }
+
+  /**
+   * Write a range of pixels of the given buffer as the next part of the raster. Ranges
+   * of bitmaps must start and end on whole rows.
+   *
+   * @param img
+   *     The pixel buffer to write from, as wide as the image
+   * @param start
+   *     The flat index of the first pixel to write
+   * @param end
+   *     The flat index after the last pixel to write
+   * @throws IllegalArgumentException
+   *     If the file transmission fails
+   */
+  void writePixels(PixelBuffer img, int start, int end) throws IllegalArgumentException {
+    try {
+      switch (this.format) {
+        case 3:
+          this.writePlainSamples(img, start, end);
+          break;
+        case 4:
+          this.writeBits(img, start, end);
+          break;
+        case 5:
+          this.writeGrey(img, start, end);
+          break;
+        default:
+          this.writeRGB(img, start, end);
+          break;
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("encountered IOException: could not transmit to file");
+    }
+  }
+
+  /**
+   * End the raster, flush everything that is buffered, and close the stream.
+   *
+   * @throws IllegalArgumentException
+   *     If the file transmission fails
+   */
+  void finish() throws IllegalArgumentException {
+    if (this.format == 3 && this.onLine != 0) {
+      // end the last, partial line
+      this.buffer[this.position - 1] = '\n';
+    }
+    try {
+      this.flush();
+      this.out.close();
+    } catch (IOException e) {
+      throw new IllegalArgumentException("encountered IOException: could not transmit to file");
+    }
+  }
+
+  /**
+   * Write every pixel as three decimal samples.
+   *
+   * @param img
+   *     The pixel buffer to write
+   * @param start
+   *     The flat index of the first pixel to write
+   * @param end
+   *     The flat index after the last pixel to write
+   * @throws IOException
+   *     If writing to the stream fails
+   */
+  private void writePlainSamples(PixelBuffer img, int start, int end) throws IOException {
+    for (int i = start; i < end; i++) {
+      // at most 3 samples of 3 digits and a separator each
+      if (this.position + 12 > this.buffer.length) {
+        this.flush();
+      }
+      int rgb = img.getRGB(i);
+      this.writeSample(PixelBuffer.red(rgb));
+      this.writeSample(PixelBuffer.green(rgb));
+      this.writeSample(PixelBuffer.blue(rgb));
+    }
+  }
+
+  /**
+   * Format a sample (0-255) as decimal digits into the buffer, followed by a space, or by
+   * a line break if the line is full. The buffer must have room for 4 bytes.
+   *
+   * @param sample
+   *     The sample (0-255)
+   */
+  private void writeSample(int sample) {
+    if (sample >= 100) {
+      this.buffer[this.position++] = (byte) ('0' + sample / 100);
+    }
+    if (sample >= 10) {
+      this.buffer[this.position++] = (byte) ('0' + sample / 10 % 10);
+    }
+    this.buffer[this.position++] = (byte) ('0' + sample % 10);
+
+    this.onLine++;
+    if (this.onLine == this.samplesPerLine) {
+      this.buffer[this.position++] = '\n';
+      this.onLine = 0;
+      return;
+    }
+    this.buffer[this.position++] = ' ';
+  }
+
+  /**
+   * Write every pixel as three bytes (red, green, blue).
+   *
+   * @param img
+   *     The pixel buffer to write
+   * @param start
+   *     The flat index of the first pixel to write
+   * @param end
+   *     The flat index after the last pixel to write
+   * @throws IOException
+   *     If writing to the stream fails
+   */
+  private void writeRGB(PixelBuffer img, int start, int end) throws IOException {
+    for (int i = start; i < end; i++) {
+      if (this.position + 3 > this.buffer.length) {
+        this.flush();
+      }
+      int rgb = img.getRGB(i);
+      this.buffer[this.position] = (byte) (rgb >> 16);
+      this.buffer[this.position + 1] = (byte) (rgb >> 8);
+      this.buffer[this.position + 2] = (byte) rgb;
+      this.position += 3;
+    }
+  }
+
+  /**
+   * Write every pixel as one byte (its luma).
+   *
+   * @param img
+   *     The pixel buffer to write
+   * @param start
+   *     The flat index of the first pixel to write
+   * @param end
+   *     The flat index after the last pixel to write
+   * @throws IOException
+   *     If writing to the stream fails
+   */
+  private void writeGrey(PixelBuffer img, int start, int end) throws IOException {
+    for (int i = start; i < end; i++) {
+      if (this.position == this.buffer.length) {
+        this.flush();
+      }
+      this.buffer[this.position++] = (byte) PNMWriter.luma(img.getRGB(i));
+    }
+  }
+
+  /**
+   * Write every row as 8 pixels per byte (most significant bit first, 1 is black),
+   * padded to a whole byte.
+   *
+   * @param img
+   *     The pixel buffer to write
+   * @param start
+   *     The flat index of the first pixel to write (the start of a row)
+   * @param end
+   *     The flat index after the last pixel to write (the end of a row)
+   * @throws IOException
+   *     If writing to the stream fails
+   */
+  private void writeBits(PixelBuffer img, int start, int end) throws IOException {
+    int width = img.getWidth();
+    for (int row = start / width; row < end / width; row++) {
+      for (int col = 0; col < width; col += 8) {
+        int bits = 0;
+        for (int bit = 0; bit < 8 && col + bit < width; bit++) {
+          if (PNMWriter.luma(img.getRGB(row, col + bit)) < 128) {
+            bits |= 0x80 >>> bit;
+          }
+        }
+        if (this.position == this.buffer.length) {
+          this.flush();
+        }
+        this.buffer[this.position++] = (byte) bits;
+      }
+    }
+  }
+
+  /**
+   * Compute the luma of a packed pixel, rounded to the nearest integer.
+   *
+   * @param rgb
+   *     The pixel as 0xRRGGBB
+   * @return
+   *     The luma (0-255)
+   */
+  private static int luma(int rgb) {
+    return PixelBuffer.clamp((int) Math.round(0.2126 * PixelBuffer.red(rgb)
+            + 0.7152 * PixelBuffer.green(rgb)
+            + 0.0722 * PixelBuffer.blue(rgb)));
+  }
+
+  /**
+   * Append bytes to the buffer, flushing it when it is full.
+   *
+   * @param bytes
+   *     The bytes to append
+   * @throws IOException
+   *     If writing to the stream fails
+   */
+  private void writeBytes(byte[] bytes) throws IOException {
+    for (byte b : bytes) {
+      if (this.position == this.buffer.length) {
+        this.flush();
+      }
+      this.buffer[this.position++] = b;
+    }
+  }
+
+  /**
+   * Write the buffered bytes to the stream.
+   *
+   * @throws IOException
+   *     If writing to the stream fails
+   */
+  private void flush() throws IOException {
+    this.out.write(this.buffer, 0, this.position);
+    this.position = 0;
+  }
+}
@@ -0,0 +1,110 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * A pixel buffer that stores every pixel of an image in a single contiguous array of
+ * packed 0xRRGGBB integers, in row-major order. This costs 4 bytes per pixel and keeps
+ * neighbouring pixels next to each other in memory.
+ */
+public final class PackedPixelBuffer implements PixelBuffer {
+
+  private final int width;
+  private final int height;
+  private final int[] pixels;
+
+  /**
+   * Create a new buffer of the given size. Every pixel starts out black.
+   *
+   * @param width
+   *     The width in pixels
+   * @param height
+   *     The height in pixels
+   * @throws IllegalArgumentException
+   *     If the width or height is not positive
+   */
+  public PackedPixelBuffer(int width, int height) throws IllegalArgumentException {
+    this(width, height, new int[PackedPixelBuffer.checkedSize(width, height)]);
+  }
+
+  /**
+   * Wrap an existing array of packed pixels. The array is NOT copied.
+   *
+   * @param width
+   *     The width in pixels
+   * @param height
+   *     The height in pixels
+   * @param pixels
+   *     The packed pixels in row-major order
+   * @throws IllegalArgumentException
+   *     If the width or height is not positive, or if the array length does not
+   *     match the given dimensions
+   */
+  PackedPixelBuffer(int width, int height, int[] pixels) throws IllegalArgumentException {
+    if (pixels.length != PackedPixelBuffer.checkedSize(width, height)) {
+      throw new IllegalArgumentException("pixel array does not match the image dimensions");
+    }
+    this.width = width;
+    this.height = height;
+    this.pixels = pixels;
+  }
+
+  /**
+   * Compute the number of pixels in an image of the given size.
+   *
+   * @param width
+   *     The width in pixels
+   * @param height
+   *     The height in pixels
+   * @return
+   *     The number of pixels
+   * @throws IllegalArgumentException
+   *     If the width or height is not positive, or the image is too large to index
+   */
+  private static int checkedSize(int width, int height) throws IllegalArgumentException {
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("image dimensions must be positive");
+    }
+    long size = (long) width * height;
+    if (size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("image is too large");
+    }
+    return (int) size;
+  }
+
+  @Override
+  public int getWidth() {
+    return this.width;
+  }
+
+  @Override
+  public int getHeight() {
+    return this.height;
+  }
+
+  @Override
+  public int getRGB(int index) {
+    return this.pixels[index];
+  }
+
+  @Override
+  public void setRGB(int index, int rgb) {
+    this.pixels[index] = rgb;
+  }
+
+  @Override
+  public PixelBuffer copy() {
+    return new PackedPixelBuffer(this.width, this.height,
+            Arrays.copyOf(this.pixels, this.pixels.length));
+  }
+
+  /**
+   * Give direct access to the backing array. Used by bulk operations within the model.
+   *
+   * @return
+   *     The backing array (NOT a copy)
+   */
+  int[] getPixels() {
+    return this.pixels;
+  }
+}
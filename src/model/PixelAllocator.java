@@ -0,0 +1,23 @@
+package model;
+
+/**
+ * Creates the pixel buffers that images are read or computed into. An allocator decides
+ * where the pixels of a new image live, for example on the Java heap or off-heap.
+ */
+public interface PixelAllocator {
+
+  /**
+   * Create a new buffer of the given size. The contents of the new buffer are undefined,
+   * so every pixel must be written before it is read.
+   *
+   * @param width
+   *     The width in pixels
+   * @param height
+   *     The height in pixels
+   * @return
+   *     The new buffer
+   * @throws IllegalArgumentException
+   *     If the width or height is not positive
+   */
+  PixelBuffer allocate(int width, int height) throws IllegalArgumentException;
+}
@@ -0,0 +1,156 @@
+package model;
+
+/**
+ * A rectangular grid of RGB pixels. Each pixel is exchanged in packed form, as a single
+ * integer of the form 0xRRGGBB where each color channel occupies 8 bits (0-255).
+ * Pixels may be addressed either by their (row, col) position or by their flat index,
+ * which is defined as (row * width + col).
+ * <p></p>
+ * The static helpers on this interface convert between packed pixels and their
+ * individual color channels.
+ */
+public interface PixelBuffer {
+
+  /**
+   * Get the width of this buffer in pixels.
+   *
+   * @return
+   *     The width in pixels
+   */
+  int getWidth();
+
+  /**
+   * Get the height of this buffer in pixels.
+   *
+   * @return
+   *     The height in pixels
+   */
+  int getHeight();
+
+  /**
+   * Get the packed RGB value of the pixel at the given flat index.
+   *
+   * @param index
+   *     The flat index of the pixel (row * width + col)
+   * @return
+   *     The pixel as 0xRRGGBB
+   */
+  int getRGB(int index);
+
+  /**
+   * Set the packed RGB value of the pixel at the given flat index.
+   *
+   * @param index
+   *     The flat index of the pixel (row * width + col)
+   * @param rgb
+   *     The pixel as 0xRRGGBB
+   */
+  void setRGB(int index, int rgb);
+
+  /**
+   * Get the packed RGB value of the pixel at the given position.
+   *
+   * @param row
+   *     The row position of the pixel
+   * @param col
+   *     The column position of the pixel
+   * @return
+   *     The pixel as 0xRRGGBB
+   */
+  default int getRGB(int row, int col) {
+    return this.getRGB(row * this.getWidth() + col);
+  }
+
+  /**
+   * Set the packed RGB value of the pixel at the given position.
+   *
+   * @param row
+   *     The row position of the pixel
+   * @param col
+   *     The column position of the pixel
+   * @param rgb
+   *     The pixel as 0xRRGGBB
+   */
+  default void setRGB(int row, int col, int rgb) {
+    this.setRGB(row * this.getWidth() + col, rgb);
+  }
+
+  /**
+   * Create a deep copy of this buffer. Modifying the copy does not modify this buffer.
+   *
+   * @return
+   *     A copy of this buffer
+   */
+  PixelBuffer copy();
+
+  /**
+   * Pack the given color channels into a single pixel. Each channel must already be
+   * in the range 0-255.
+   *
+   * @param r
+   *     The red value
+   * @param g
+   *     The green value
+   * @param b
+   *     The blue value
+   * @return
+   *     The pixel as 0xRRGGBB
+   */
+  static int pack(int r, int g, int b) {
+    return (r << 16) | (g << 8) | b;
+  }
+
+  /**
+   * Get the red channel of a packed pixel.
+   *
+   * @param rgb
+   *     The pixel as 0xRRGGBB
+   * @return
+   *     The red value (0-255)
+   */
+  static int red(int rgb) {
+    return (rgb >> 16) & 0xFF;
+  }
+
+  /**
+   * Get the green channel of a packed pixel.
+   *
+   * @param rgb
+   *     The pixel as 0xRRGGBB
+   * @return
+   *     The green value (0-255)
+   */
+  static int green(int rgb) {
+    return (rgb >> 8) & 0xFF;
+  }
+
+  /**
+   * Get the blue channel of a packed pixel.
+   *
+   * @param rgb
+   *     The pixel as 0xRRGGBB
+   * @return
+   *     The blue value (0-255)
+   */
+  static int blue(int rgb) {
+    return rgb & 0xFF;
+  }
+
+  /**
+   * Clamp a channel value to the range 0-255.
+   *
+   * @param val
+   *     The channel value
+   * @return
+   *     The value, clamped to 0-255
+   */
+  static int clamp(int val) {
+    if (val > 255) {
+      return 255;
+    }
+    if (val < 0) {
+      return 0;
+    }
+    return val;
+  }
+}
@@ -0,0 +1,288 @@
+package model;
+
+/**
+ * A geometric view of another pixel buffer: a flip, rotation, transpose or crop that is
+ * computed by remapping indices instead of copying pixels. Creating a view costs the
+ * same no matter how large the image is.
+ * <p></p>
+ * Each view maps its (row, col) to a flat index of its source as
+ * offset + row * rowStride + col * colStride. A view of a view is collapsed into a single
+ * view of the original buffer, so chains of geometric operations never stack.
+ * <p></p>
+ * Views rely on their source never changing, which holds for every image stored by an
+ * image processor. Writing to a view first copies its pixels into a buffer of its own
+ * (copy on write), so the source is never modified through a view. Views must only be
+ * written to by one thread.
+ */
+final class PixelView implements PixelBuffer {
+
+  private final PixelBuffer source;
+  private final int width;
+  private final int height;
+  private final int offset;
+  private final int rowStride;
+  private final int colStride;
+
+  /**
+   * The private copy of the pixels, once this view has been written to.
+   */
+  private PixelBuffer copy;
+
+  /**
+   * Create a view.
+   *
+   * @param source
+   *     The buffer to view (not a view)
+   * @param width
+   *     The width of the view
+   * @param height
+   *     The height of the view
+   * @param offset
+   *     The flat source index of pixel (0, 0)
+   * @param rowStride
+   *     The change in source index for each row down
+   * @param colStride
+   *     The change in source index for each column right
+   */
+  private PixelView(PixelBuffer source, int width, int height, int offset, int rowStride,
+                    int colStride) {
+    this.source = source;
+    this.width = width;
+    this.height = height;
+    this.offset = offset;
+    this.rowStride = rowStride;
+    this.colStride = colStride;
+    this.copy = null;
+  }
+
+  /**
+   * Create a view of a buffer whose pixel (row, col) is the pixel
+   * (r0 + row * rr + col * rc, c0 + row * cr + col * cc) of the given buffer.
+   *
+   * @param img
+   *     The buffer to view (may be a view)
+   * @param width
+   *     The width of the view
+   * @param height
+   *     The height of the view
+   * @param r0
+   *     The source row of pixel (0, 0)
+   * @param rr
+   *     The change in source row for each row down
+   * @param rc
+   *     The change in source row for each column right
+   * @param c0
+   *     The source column of pixel (0, 0)
+   * @param cr
+   *     The change in source column for each row down
+   * @param cc
+   *     The change in source column for each column right
+   * @return
+   *     The view
+   */
+  private static PixelBuffer of(PixelBuffer img, int width, int height,
+                                int r0, int rr, int rc, int c0, int cr, int cc) {
+    PixelBuffer source = img;
+    int offset = 0;
+    int rowStride = img.getWidth();
+    int colStride = 1;
+    if (img instanceof PixelView && ((PixelView) img).copy == null) {
+      PixelView view = (PixelView) img;
+      source = view.source;
+      offset = view.offset;
+      rowStride = view.rowStride;
+      colStride = view.colStride;
+    } else if (img instanceof PixelView) {
+      source = ((PixelView) img).copy;
+    }
+    return new PixelView(source, width, height,
+            offset + r0 * rowStride + c0 * colStride,
+            rr * rowStride + cr * colStride,
+            rc * rowStride + cc * colStride);
+  }
+
+  /**
+   * Flip a buffer horizontally.
+   *
+   * @param img
+   *     The buffer
+   * @return
+   *     A flipped view of the buffer
+   */
+  static PixelBuffer flipHorizontal(PixelBuffer img) {
+    int w = img.getWidth();
+    return PixelView.of(img, w, img.getHeight(), 0, 1, 0, w - 1, 0, -1);
+  }
+
+  /**
+   * Flip a buffer vertically.
+   *
+   * @param img
+   *     The buffer
+   * @return
+   *     A flipped view of the buffer
+   */
+  static PixelBuffer flipVertical(PixelBuffer img) {
+    int h = img.getHeight();
+    return PixelView.of(img, img.getWidth(), h, h - 1, -1, 0, 0, 0, 1);
+  }
+
+  /**
+   * Rotate a buffer by 90 degrees clockwise.
+   *
+   * @param img
+   *     The buffer
+   * @return
+   *     A rotated view of the buffer
+   */
+  static PixelBuffer rotate90(PixelBuffer img) {
+    int h = img.getHeight();
+    return PixelView.of(img, h, img.getWidth(), h - 1, 0, -1, 0, 1, 0);
+  }
+
+  /**
+   * Rotate a buffer by 180 degrees.
+   *
+   * @param img
+   *     The buffer
+   * @return
+   *     A rotated view of the buffer
+   */
+  static PixelBuffer rotate180(PixelBuffer img) {
+    int w = img.getWidth();
+    int h = img.getHeight();
+    return PixelView.of(img, w, h, h - 1, -1, 0, w - 1, 0, -1);
+  }
+
+  /**
+   * Rotate a buffer by 270 degrees clockwise (90 degrees counterclockwise).
+   *
+   * @param img
+   *     The buffer
+   * @return
+   *     A rotated view of the buffer
+   */
+  static PixelBuffer rotate270(PixelBuffer img) {
+    int w = img.getWidth();
+    return PixelView.of(img, img.getHeight(), w, 0, 0, 1, w - 1, -1, 0);
+  }
+
+  /**
+   * Transpose a buffer, mirroring it along its main diagonal.
+   *
+   * @param img
+   *     The buffer
+   * @return
+   *     A transposed view of the buffer
+   */
+  static PixelBuffer transpose(PixelBuffer img) {
+    return PixelView.of(img, img.getHeight(), img.getWidth(), 0, 0, 1, 0, 1, 0);
+  }
+
+  /**
+   * Crop a buffer to the given rectangle.
+   *
+   * @param img
+   *     The buffer
+   * @param x
+   *     The column of the top left corner of the rectangle
+   * @param y
+   *     The row of the top left corner of the rectangle
+   * @param width
+   *     The width of the rectangle
+   * @param height
+   *     The height of the rectangle
+   * @return
+   *     A cropped view of the buffer
+   * @throws IllegalArgumentException
+   *     If the rectangle is empty or does not lie within the buffer
+   */
+  static PixelBuffer crop(PixelBuffer img, int x, int y, int width, int height)
+          throws IllegalArgumentException {
+    if (width < 1 || height < 1) {
+      throw new IllegalArgumentException("the crop size must be positive");
+    }
+    if (x < 0 || y < 0 || (long) x + width > img.getWidth()
+            || (long) y + height > img.getHeight()) {
+      throw new IllegalArgumentException("the crop rectangle must lie within the image");
+    }
+    return PixelView.of(img, width, height, y, 1, 0, x, 0, 1);
+  }
+
+  /**
+   * Get a buffer with the same pixels as the given buffer, whose pixels are stored
+   * contiguously. Used by operations that read every pixel many times.
+   *
+   * @param img
+   *     The buffer
+   * @return
+   *     The buffer itself, or a copy of it if it is a view
+   */
+  static PixelBuffer contiguous(PixelBuffer img) {
+    if (img instanceof PixelView) {
+      PixelView view = (PixelView) img;
+      return view.copy != null ? view.copy : view.materialize();
+    }
+    return img;
+  }
+
+  /**
+   * Copy the pixels of this view into a new buffer.
+   *
+   * @return
+   *     The new buffer
+   */
+  private PixelBuffer materialize() {
+    PixelBuffer pixels = new PackedPixelBuffer(this.width, this.height);
+    int index = 0;
+    for (int row = 0; row < this.height; row++) {
+      int src = this.offset + row * this.rowStride;
+      for (int col = 0; col < this.width; col++) {
+        pixels.setRGB(index++, this.source.getRGB(src));
+        src += this.colStride;
+      }
+    }
+    return pixels;
+  }
+
+  @Override
+  public int getWidth() {
+    return this.width;
+  }
+
+  @Override
+  public int getHeight() {
+    return this.height;
+  }
+
+  @Override
+  public int getRGB(int index) {
+    return this.getRGB(index / this.width, index % this.width);
+  }
+
+  @Override
+  public void setRGB(int index, int rgb) {
+    if (this.copy == null) {
+      this.copy = this.materialize();
+    }
+    this.copy.setRGB(index, rgb);
+  }
+
+  @Override
+  public int getRGB(int row, int col) {
+    if (this.copy != null) {
+      return this.copy.getRGB(row, col);
+    }
+    return this.source.getRGB(this.offset + row * this.rowStride + col * this.colStride);
+  }
+
+  @Override
+  public void setRGB(int row, int col, int rgb) {
+    this.setRGB(row * this.width + col, rgb);
+  }
+
+  @Override
+  public PixelBuffer copy() {
+    return this.copy != null ? this.copy.copy() : this.materialize();
+  }
+}
@@ -0,0 +1,69 @@
+package model;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Counts how many names an image store keeps each image under. Stored images are
+ * immutable, so an operation that does not change its source (such as brightening by 0)
+ * stores the very same buffer under a second name instead of a copy. A store that frees
+ * memory explicitly uses these counts to release a buffer only once no name refers to it.
+ * <p></p>
+ * Buffers are compared by identity, not by their pixels.
+ */
+final class ReferenceCounts {
+
+  /**
+   * Maps buffer -> number of names it is stored under.
+   */
+  private final Map<PixelBuffer, Integer> counts;
+
+  /**
+   * Create an empty set of counts.
+   */
+  ReferenceCounts() {
+    this.counts = new IdentityHashMap<>();
+  }
+
+  /**
+   * Add a reference to the given buffer.
+   *
+   * @param img
+   *     The buffer
+   * @return
+   *     True if this is its first reference
+   */
+  boolean retain(PixelBuffer img) {
+    return this.counts.merge(img, 1, Integer::sum) == 1;
+  }
+
+  /**
+   * Remove a reference to the given buffer.
+   *
+   * @param img
+   *     The buffer, which must have been retained
+   * @return
+   *     True if this was its last reference, so it can be released
+   */
+  boolean release(PixelBuffer img) {
+    int count = this.counts.get(img) - 1;
+    if (count == 0) {
+      this.counts.remove(img);
+      return true;
+    }
+    this.counts.put(img, count);
+    return false;
+  }
+
+  /**
+   * Get the number of references to the given buffer.
+   *
+   * @param img
+   *     The buffer
+   * @return
+   *     The number of names it is stored under
+   */
+  int count(PixelBuffer img) {
+    return this.counts.getOrDefault(img, 0);
+  }
+}
@@ -0,0 +1,65 @@
+package model;
+
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A fork/join task that applies a row operation to a band of rows. Bands larger than the
+ * given band size are split in half until every band is small enough to be processed
+ * sequentially. Since each row of the destination image is written by exactly one band,
+ * the result is identical to running the operation over all rows in a single loop.
+ */
+final class RowBandTask extends RecursiveAction {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * An operation on a band of rows of an image.
+   */
+  interface RowOperation {
+
+    /**
+     * Apply this operation to every row in [startRow, endRow).
+     *
+     * @param startRow
+     *     The first row to process (inclusive)
+     * @param endRow
+     *     The last row to process (exclusive)
+     */
+    void apply(int startRow, int endRow);
+  }
+
+  private final RowOperation op;
+  private final int startRow;
+  private final int endRow;
+  private final int bandSize;
+
+  /**
+   * Create a task over the rows [startRow, endRow).
+   *
+   * @param op
+   *     The operation to apply
+   * @param startRow
+   *     The first row to process (inclusive)
+   * @param endRow
+   *     The last row to process (exclusive)
+   * @param bandSize
+   *     The largest number of rows to process without splitting further
+   */
+  RowBandTask(RowOperation op, int startRow, int endRow, int bandSize) {
+    this.op = op;
+    this.startRow = startRow;
+    this.endRow = endRow;
+    this.bandSize = Math.max(1, bandSize);
+  }
+
+  @Override
+  protected void compute() {
+    if (this.endRow - this.startRow <= this.bandSize) {
+      this.op.apply(this.startRow, this.endRow);
+      return;
+    }
+    int mid = (this.startRow + this.endRow) >>> 1;
+    RecursiveAction.invokeAll(new RowBandTask(this.op, this.startRow, mid, this.bandSize),
+            new RowBandTask(this.op, mid, this.endRow, this.bandSize));
+  }
+}
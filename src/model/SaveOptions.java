@@ -0,0 +1,121 @@
+package model;
+
+/**
+ * Encoder settings for saving an image. Each setting only applies to the formats it
+ * names, and is ignored by the others. Save options are immutable: every "with" method
+ * returns a new set of options.
+ * <p></p>
+ * The default options are a JPEG quality of 0.75, a PNG deflate level of 4,
+ * and one sample per line for ASCII PPMs.
+ */
+public final class SaveOptions {
+
+  private final float jpegQuality;
+  private final int pngCompressionLevel;
+  private final int ppmSamplesPerLine;
+
+  /**
+   * Create the default save options.
+   */
+  public SaveOptions() {
+    this(0.75f, 4, 1);
+  }
+
+  /**
+   * Create save options with the given settings.
+   *
+   * @param jpegQuality
+   *     The JPEG quality
+   * @param pngCompressionLevel
+   *     The PNG deflate level
+   * @param ppmSamplesPerLine
+   *     The number of samples per line of an ASCII PPM
+   */
+  private SaveOptions(float jpegQuality, int pngCompressionLevel, int ppmSamplesPerLine) {
+    this.jpegQuality = jpegQuality;
+    this.pngCompressionLevel = pngCompressionLevel;
+    this.ppmSamplesPerLine = ppmSamplesPerLine;
+  }
+
+  /**
+   * Set the quality of JPEG images. Lower qualities give smaller files.
+   *
+   * @param quality
+   *     The quality, from 0 (smallest file) to 1 (best image)
+   * @return
+   *     New options with the given JPEG quality
+   * @throws IllegalArgumentException
+   *     If the quality is not within 0-1
+   */
+  public SaveOptions withJpegQuality(float quality) throws IllegalArgumentException {
+    if (!(quality >= 0 && quality <= 1)) {
+      throw new IllegalArgumentException("JPEG quality must be within 0-1");
+    }
+    return new SaveOptions(quality, this.pngCompressionLevel, this.ppmSamplesPerLine);
+  }
+
+  /**
+   * Set the deflate level of PNG images. PNG is lossless at every level; lower levels
+   * save faster, and higher levels give smaller files.
+   *
+   * @param level
+   *     The deflate level, from 0 (no compression) to 9 (best compression)
+   * @return
+   *     New options with the given PNG deflate level
+   * @throws IllegalArgumentException
+   *     If the level is not within 0-9
+   */
+  public SaveOptions withPngCompressionLevel(int level) throws IllegalArgumentException {
+    if (level < 0 || level > 9) {
+      throw new IllegalArgumentException("PNG compression level must be within 0-9");
+    }
+    return new SaveOptions(this.jpegQuality, level, this.ppmSamplesPerLine);
+  }
+
+  /**
+   * Set the number of samples on each line of an ASCII PPM image.
+   *
+   * @param samplesPerLine
+   *     The number of samples per line (at least 1)
+   * @return
+   *     New options with the given number of samples per line
+   * @throws IllegalArgumentException
+   *     If the number of samples per line is less than 1
+   */
+  public SaveOptions withPpmSamplesPerLine(int samplesPerLine) throws IllegalArgumentException {
+    if (samplesPerLine < 1) {
+      throw new IllegalArgumentException("there must be at least 1 sample per line");
+    }
+    return new SaveOptions(this.jpegQuality, this.pngCompressionLevel, samplesPerLine);
+  }
+
+  /**
+   * Get the quality of JPEG images.
+   *
+   * @return
+   *     The quality (0-1)
+   */
+  public float getJpegQuality() {
+    return this.jpegQuality;
+  }
+
+  /**
+   * Get the deflate level of PNG images.
+   *
+   * @return
+   *     The deflate level (0-9)
+   */
+  public int getPngCompressionLevel() {
+    return this.pngCompressionLevel;
+  }
+
+  /**
+   * Get the number of samples on each line of an ASCII PPM image.
+   *
+   * @return
+   *     The number of samples per line
+   */
+  public int getPpmSamplesPerLine() {
+    return this.ppmSamplesPerLine;
+  }
+}
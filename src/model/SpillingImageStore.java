@@ -0,0 +1,445 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An image store with a memory budget. Images are kept in memory in least-recently-used
+ * order. When the images in memory take up more than the budget, the least recently
+ * used ones are spilled to files in a spill directory until the rest fit. A spilled image
+ * is read back into memory the next time it is asked for, and its file is deleted.
+ * <p></p>
+ * An image takes up 4 bytes per pixel, and an image stored under several names only
+ * counts against the budget once. It is also spilled to a single file, and all of its
+ * spilled names are read back together, as one image again. The most recently used
+ * image always stays in memory, even if it alone is larger than the budget. Spill files
+ * store the width and height of an image, followed by its packed pixels in row-major
+ * order, and are deleted as soon as no name refers to them.
+ */
+public final class SpillingImageStore implements ImageStore {
+
+  /**
+   * A spill file, and the names of its image that were spilled to it.
+   */
+  private static final class SpillFile {
+
+    private final Path path;
+    private final List<String> names;
+
+    /**
+     * The image, while any of its names is still in memory, or null.
+     */
+    private PixelBuffer image;
+
+    /**
+     * Create a spill file that no name refers to yet.
+     *
+     * @param path
+     *     The path of the file
+     * @param image
+     *     The image written to the file, which is still in memory
+     */
+    SpillFile(Path path, PixelBuffer image) {
+      this.path = path;
+      this.names = new ArrayList<>();
+      this.image = image;
+    }
+  }
+
+  private static final int CHUNK_SIZE = 1 << 16;
+
+  private final long memoryBudget;
+  private final Path spillDirectory;
+
+  /**
+   * Maps image-name -> pixel-buffer for the images in memory, least recently used first.
+   */
+  private final LinkedHashMap<String, PixelBuffer> inMemory;
+
+  /**
+   * Maps image-name -> spill-file for the images on disk.
+   */
+  private final Map<String, SpillFile> spilled;
+
+  /**
+   * Maps each image in memory that some of its names were spilled from -> its spill file,
+   * by identity, so that its other names are spilled to the same file.
+   */
+  private final Map<PixelBuffer, SpillFile> spillFiles;
+
+  /**
+   * Counts the names of each image in memory, so that shared images are counted once.
+   */
+  private final ReferenceCounts references;
+
+  private final ByteBuffer chunk;
+  private long memoryUsed;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * Create an empty store that spills images to the given directory. The directory is
+   * created if it does not exist.
+   *
+   * @param memoryBudget
+   *     The number of bytes of images to keep in memory
+   * @param spillDirectory
+   *     The directory to write spilled images to
+   * @throws IllegalArgumentException
+   *     If the budget is negative, or the spill directory cannot be created
+   */
+  public SpillingImageStore(long memoryBudget, Path spillDirectory)
+          throws IllegalArgumentException {
+    if (memoryBudget < 0) {
+      throw new IllegalArgumentException("the memory budget cannot be negative");
+    }
+    try {
+      Files.createDirectories(spillDirectory);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("cannot create spill directory: " + spillDirectory);
+    }
+    this.memoryBudget = memoryBudget;
+    this.spillDirectory = spillDirectory;
+    this.inMemory = new LinkedHashMap<>(16, 0.75f, true);
+    this.spilled = new HashMap<>();
+    this.spillFiles = new IdentityHashMap<>();
+    this.references = new ReferenceCounts();
+    this.chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+    this.memoryUsed = 0;
+    this.hits = 0;
+    this.misses = 0;
+    this.evictions = 0;
+  }
+
+  /**
+   * Create an empty store that spills images to a new temporary directory.
+   *
+   * @param memoryBudget
+   *     The number of bytes of images to keep in memory
+   * @throws IllegalArgumentException
+   *     If the budget is negative, or the temporary directory cannot be created
+   */
+  public SpillingImageStore(long memoryBudget) throws IllegalArgumentException {
+    this(memoryBudget, SpillingImageStore.createSpillDirectory());
+  }
+
+  /**
+   * Create a temporary spill directory that is deleted when the program exits.
+   *
+   * @return
+   *     The path of the directory
+   * @throws IllegalArgumentException
+   *     If the directory cannot be created
+   */
+  private static Path createSpillDirectory() throws IllegalArgumentException {
+    try {
+      Path dir = Files.createTempDirectory("imageStore");
+      // spill files are deleted as they are read back or removed, leaving it empty
+      dir.toFile().deleteOnExit();
+      return dir;
+    } catch (IOException e) {
+      throw new IllegalArgumentException("cannot create spill directory");
+    }
+  }
+
+  /**
+   * Compute how many bytes an image takes up in memory.
+   *
+   * @param img
+   *     The image
+   * @return
+   *     The size in bytes
+   */
+  private static long sizeOf(PixelBuffer img) {
+    return 4L * img.getWidth() * img.getHeight();
+  }
+
+  /**
+   * A view is copied into a buffer of its own first, so that the image never keeps the
+   * pixels of another image in memory behind the budget's back.
+   */
+  @Override
+  public void put(String name, PixelBuffer img) {
+    PixelBuffer own = PixelView.contiguous(img);
+    this.remove(name);
+    this.retain(name, own);
+    this.evict();
+  }
+
+  @Override
+  public PixelBuffer get(String name) throws IllegalArgumentException {
+    PixelBuffer img = this.inMemory.get(name);
+    if (img != null) {
+      this.hits++;
+      return img;
+    }
+    SpillFile file = this.spilled.get(name);
+    if (file == null) {
+      throw new IllegalArgumentException("cannot find image named: \"" + name + "\"");
+    }
+    if (file.image != null) {
+      // another name of the image is still in memory
+      this.hits++;
+      img = file.image;
+      this.unspill(name);
+      this.retain(name, img);
+    } else {
+      this.misses++;
+      img = this.readSpillFile(file.path);
+      for (String spilledName : new ArrayList<>(file.names)) {
+        this.unspill(spilledName);
+        this.retain(spilledName, img);
+      }
+      // the requested name is the most recently used one
+      this.inMemory.get(name);
+    }
+    this.evict();
+    return img;
+  }
+
+  /**
+   * Keep an image in memory under a name that is not in the store.
+   *
+   * @param name
+   *     The name
+   * @param img
+   *     The image
+   */
+  private void retain(String name, PixelBuffer img) {
+    this.inMemory.put(name, img);
+    if (this.references.retain(img)) {
+      this.memoryUsed += SpillingImageStore.sizeOf(img);
+    }
+  }
+
+  /**
+   * Release the memory of an image once none of its names is in memory.
+   *
+   * @param img
+   *     The image one of whose names left memory
+   */
+  private void release(PixelBuffer img) {
+    if (this.references.release(img)) {
+      this.memoryUsed -= SpillingImageStore.sizeOf(img);
+      SpillFile file = this.spillFiles.remove(img);
+      if (file != null) {
+        file.image = null;
+      }
+    }
+  }
+
+  /**
+   * Forget that a name was spilled, deleting its spill file if no other name refers to
+   * it.
+   *
+   * @param name
+   *     The spilled name
+   */
+  private void unspill(String name) {
+    SpillFile file = this.spilled.remove(name);
+    file.names.remove(name);
+    if (file.names.isEmpty()) {
+      SpillingImageStore.deleteSpillFile(file.path);
+      if (file.image != null) {
+        this.spillFiles.remove(file.image);
+      }
+    }
+  }
+
+  @Override
+  public boolean contains(String name) {
+    return this.inMemory.containsKey(name) || this.spilled.containsKey(name);
+  }
+
+  @Override
+  public void remove(String name) {
+    PixelBuffer img = this.inMemory.remove(name);
+    if (img != null) {
+      this.release(img);
+    }
+    if (this.spilled.containsKey(name)) {
+      this.unspill(name);
+    }
+  }
+
+  @Override
+  public long getHits() {
+    return this.hits;
+  }
+
+  @Override
+  public long getMisses() {
+    return this.misses;
+  }
+
+  @Override
+  public long getEvictions() {
+    return this.evictions;
+  }
+
+  /**
+   * Spill the least recently used images until the images in memory fit the budget,
+   * keeping at least the most recently used image in memory. Spilling one name of a
+   * shared image only frees its memory once its other names are spilled too, and every
+   * name of it is spilled to the same file.
+   *
+   * @throws IllegalStateException
+   *     If an image cannot be written to the spill directory
+   */
+  private void evict() throws IllegalStateException {
+    Iterator<Map.Entry<String, PixelBuffer>> eldest = this.inMemory.entrySet().iterator();
+    while (this.memoryUsed > this.memoryBudget && this.inMemory.size() > 1) {
+      Map.Entry<String, PixelBuffer> entry = eldest.next();
+      PixelBuffer img = entry.getValue();
+      SpillFile file = this.spillFiles.get(img);
+      if (file == null) {
+        file = new SpillFile(this.writeSpillFile(img), img);
+        this.spillFiles.put(img, file);
+      }
+      file.names.add(entry.getKey());
+      this.spilled.put(entry.getKey(), file);
+      eldest.remove();
+      this.release(img);
+      this.evictions++;
+    }
+  }
+
+  /**
+   * Write an image to a new file in the spill directory.
+   *
+   * @param img
+   *     The image to write
+   * @return
+   *     The path of the file
+   * @throws IllegalStateException
+   *     If the file cannot be written
+   */
+  private Path writeSpillFile(PixelBuffer img) throws IllegalStateException {
+    try {
+      Path file = Files.createTempFile(this.spillDirectory, "image", ".pix");
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+        this.chunk.clear();
+        this.chunk.putInt(img.getWidth()).putInt(img.getHeight());
+        this.drain(channel);
+
+        int size = img.getWidth() * img.getHeight();
+        int written = 0;
+        while (written < size) {
+          int count = Math.min(size - written, CHUNK_SIZE / 4);
+          IntBuffer ints = this.chunk.asIntBuffer();
+          if (img instanceof PackedPixelBuffer) {
+            ints.put(((PackedPixelBuffer) img).getPixels(), written, count);
+          } else {
+            for (int i = written; i < written + count; i++) {
+              ints.put(img.getRGB(i));
+            }
+          }
+          this.chunk.position(count * 4);
+          this.drain(channel);
+          written += count;
+        }
+      }
+      return file;
+    } catch (IOException e) {
+      throw new IllegalStateException("could not spill image to " + this.spillDirectory);
+    }
+  }
+
+  /**
+   * Write the contents of the chunk buffer to a channel, and clear it.
+   *
+   * @param channel
+   *     The channel to write to
+   * @throws IOException
+   *     If writing fails
+   */
+  private void drain(FileChannel channel) throws IOException {
+    this.chunk.flip();
+    while (this.chunk.hasRemaining()) {
+      channel.write(this.chunk);
+    }
+    this.chunk.clear();
+  }
+
+  /**
+   * Read an image back from a spill file.
+   *
+   * @param file
+   *     The spill file
+   * @return
+   *     The image
+   * @throws IllegalStateException
+   *     If the file cannot be read
+   */
+  private PixelBuffer readSpillFile(Path file) throws IllegalStateException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      this.chunk.clear();
+      this.fill(channel, 8);
+      int width = this.chunk.getInt();
+      int height = this.chunk.getInt();
+      int[] pixels = new int[width * height];
+
+      int read = 0;
+      while (read < pixels.length) {
+        int count = Math.min(pixels.length - read, CHUNK_SIZE / 4);
+        this.chunk.clear();
+        this.fill(channel, count * 4);
+        IntBuffer ints = this.chunk.asIntBuffer();
+        ints.get(pixels, read, count);
+        read += count;
+      }
+      return new PackedPixelBuffer(width, height, pixels);
+    } catch (IOException e) {
+      throw new IllegalStateException("could not read spilled image from " + file);
+    }
+  }
+
+  /**
+   * Read exactly the given number of bytes from a channel into the (cleared) chunk
+   * buffer, and flip it for reading.
+   *
+   * @param channel
+   *     The channel to read from
+   * @param bytes
+   *     The number of bytes to read
+   * @throws IOException
+   *     If reading fails, or the file ends early
+   */
+  private void fill(FileChannel channel, int bytes) throws IOException {
+    this.chunk.limit(bytes);
+    while (this.chunk.hasRemaining()) {
+      if (channel.read(this.chunk) < 0) {
+        throw new IOException("spill file ended early");
+      }
+    }
+    this.chunk.flip();
+  }
+
+  /**
+   * Delete a spill file. Only a file that cannot be deleted now is left to be deleted
+   * on exit.
+   *
+   * @param file
+   *     The spill file
+   */
+  private static void deleteSpillFile(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      file.toFile().deleteOnExit();
+    }
+  }
+}
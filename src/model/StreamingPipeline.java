@@ -0,0 +1,580 @@
+package model;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * A chain of operations that streams an image from a Netpbm file to another Netpbm file,
+ * a strip of rows at a time, without ever holding the whole image in memory. Peak memory
+ * scales with the width of the image and the strip height, not with the image height.
+ * <p></p>
+ * Per-pixel operations and horizontal flips only need the rows of the strip itself.
+ * Filters also need a halo of rows above and below the strip, as deep as the radius of
+ * their kernel; the halos of chained filters add up. The input rows a strip shares
+ * with the previous one are kept rather than read again. Consecutive lookup-table
+ * operations are composed into a single table. Every operation produces exactly the same
+ * pixels as the same chain run by <code>ImageProcessorImpl</code> on the whole image.
+ * <p></p>
+ * A vertical flip cannot be streamed from top to bottom, so it is not offered here.
+ * Any Netpbm file (P1-P6) can be read, and results are written as an ASCII PPM (.ppm),
+ * or as a raw pixmap (.pnm), greymap (.pgm) or bitmap (.pbm).
+ */
+public final class StreamingPipeline {
+
+  private final ImageProcessorImpl engine;
+  private final int stripHeight;
+  private final List<Stage> stages;
+
+  /**
+   * Create an empty pipeline that processes strips of the given height sequentially.
+   *
+   * @param stripHeight
+   *     The number of rows in each strip (at least 1)
+   * @throws IllegalArgumentException
+   *     If the strip height is less than 1
+   */
+  public StreamingPipeline(int stripHeight) throws IllegalArgumentException {
+    this(stripHeight, new ImageProcessorImpl());
+  }
+
+  /**
+   * Create an empty pipeline that processes the rows of each strip in parallel,
+   * as in <code>ImageProcessorImpl</code>.
+   *
+   * @param stripHeight
+   *     The number of rows in each strip (at least 1)
+   * @param parallelism
+   *     The number of worker threads (1 runs every operation sequentially)
+   * @param sequentialThreshold
+   *     Strips with fewer pixels than this are always processed sequentially
+   * @throws IllegalArgumentException
+   *     If the strip height or parallelism is less than 1, or the threshold is negative
+   */
+  public StreamingPipeline(int stripHeight, int parallelism, int sequentialThreshold)
+          throws IllegalArgumentException {
+    this(stripHeight, new ImageProcessorImpl(parallelism, sequentialThreshold));
+  }
+
+  /**
+   * Create an empty pipeline backed by the given engine.
+   *
+   * @param stripHeight
+   *     The number of rows in each strip (at least 1)
+   * @param engine
+   *     The image processor that performs the pixel work
+   * @throws IllegalArgumentException
+   *     If the strip height is less than 1
+   */
+  private StreamingPipeline(int stripHeight, ImageProcessorImpl engine)
+          throws IllegalArgumentException {
+    if (stripHeight < 1) {
+      throw new IllegalArgumentException("the strip height must be at least 1");
+    }
+    this.engine = engine;
+    this.stripHeight = stripHeight;
+    this.stages = new ArrayList<>();
+  }
+
+  /**
+   * An operation of the pipeline, applied to one window of rows at a time.
+   */
+  private static final class Stage {
+    private final int halo;
+    private final UnaryOperator<PixelBuffer> op;
+    private final LookupTable table;
+
+    /**
+     * Create a stage.
+     *
+     * @param halo
+     *     The number of rows above and below a row that its new value depends on
+     * @param op
+     *     The operation on a window of rows
+     * @param table
+     *     The lookup table of a point operation, or null
+     */
+    private Stage(int halo, UnaryOperator<PixelBuffer> op, LookupTable table) {
+      this.halo = halo;
+      this.op = op;
+      this.table = table;
+    }
+  }
+
+  /**
+   * Append an operation that only depends on the row it is applied to.
+   *
+   * @param op
+   *     The operation on a window of rows
+   * @return
+   *     This pipeline
+   */
+  private StreamingPipeline addRowStage(UnaryOperator<PixelBuffer> op) {
+    this.stages.add(new Stage(0, op, null));
+    return this;
+  }
+
+  /**
+   * Append a point operation, composing it with the previous stage if that is a point
+   * operation too.
+   *
+   * @param table
+   *     The lookup table of the operation
+   * @return
+   *     This pipeline
+   */
+  private StreamingPipeline addTableStage(LookupTable table) {
+    LookupTable composed = table;
+    int last = this.stages.size() - 1;
+    if (last >= 0 && this.stages.get(last).table != null) {
+      composed = this.stages.remove(last).table.andThen(table);
+    }
+    LookupTable finalTable = composed;
+    this.stages.add(new Stage(0, img -> this.engine.applyLookupTable(finalTable, img),
+            finalTable));
+    return this;
+  }
+
+  /**
+   * Append a filter whose kernel reaches the given number of rows above and below.
+   *
+   * @param halo
+   *     The radius of the kernel in rows
+   * @param op
+   *     The filter on a window of rows
+   * @return
+   *     This pipeline
+   */
+  private StreamingPipeline addFilterStage(int halo, UnaryOperator<PixelBuffer> op) {
+    this.stages.add(new Stage(halo, op, null));
+    return this;
+  }
+
+  /**
+   * Append a brightness adjustment.
+   *
+   * @param increment
+   *     The value to add to every channel (+/-)
+   * @return
+   *     This pipeline
+   */
+  public StreamingPipeline brightness(int increment) {
+    return this.addTableStage(LookupTable.brightness(increment));
+  }
+
+  /**
+   * Append a gamma correction.
+   *
+   * @param gamma
+   *     The gamma value (positive)
+   * @return
+   *     This pipeline
+   * @throws IllegalArgumentException
+   *     If gamma is not a positive number
+   */
+  public StreamingPipeline gamma(double gamma) throws IllegalArgumentException {
+    return this.addTableStage(LookupTable.gamma(gamma));
+  }
+
+  /**
+   * Append a levels adjustment.
+   *
+   * @param black
+   *     The black point
+   * @param mid
+   *     The mid point
+   * @param white
+   *     The white point
+   * @return
+   *     This pipeline
+   * @throws IllegalArgumentException
+   *     If the points are not in ascending order within 0-255
+   */
+  public StreamingPipeline levels(int black, int mid, int white)
+          throws IllegalArgumentException {
+    return this.addTableStage(LookupTable.levels(black, mid, white));
+  }
+
+  /**
+   * Append a contrast adjustment.
+   *
+   * @param factor
+   *     The contrast factor (1 leaves the image unchanged)
+   * @return
+   *     This pipeline
+   * @throws IllegalArgumentException
+   *     If the factor is negative or not a number
+   */
+  public StreamingPipeline contrast(double factor) throws IllegalArgumentException {
+    return this.addTableStage(LookupTable.contrast(factor));
+  }
+
+  /**
+   * Append a curves adjustment.
+   *
+   * @param points
+   *     The control points as {input, output} pairs, with strictly increasing inputs
+   * @return
+   *     This pipeline
+   * @throws IllegalArgumentException
+   *     If the control points are invalid
+   */
+  public StreamingPipeline curves(int[][] points) throws IllegalArgumentException {
+    return this.addTableStage(LookupTable.curves(points));
+  }
+
+  /**
+   * Append a linear color transformation.
+   *
+   * @param cMatrix
+   *     The 3x3 color transformation matrix
+   * @return
+   *     This pipeline
+   * @throws IllegalArgumentException
+   *     If the matrix is not 3x3
+   */
+  public StreamingPipeline colorTransformation(double[][] cMatrix)
+          throws IllegalArgumentException {
+    ImageProcessorImpl.checkColorMatrix(cMatrix);
+    return this.addRowStage(img -> this.engine.colorTransformation(cMatrix, img));
+  }
+
+  /**
+   * Append a sepia tone.
+   *
+   * @return
+   *     This pipeline
+   */
+  public StreamingPipeline sepia() {
+    return this.colorTransformation(ImageProcessorImpl.SEPIA);
+  }
+
+  /**
+   * Append a greyscale conversion by luma.
+   *
+   * @return
+   *     This pipeline
+   */
+  public StreamingPipeline luma() {
+    return this.colorTransformation(ImageProcessorImpl.LUMA);
+  }
+
+  /**
+   * Append a greyscale conversion by the red channel.
+   *
+   * @return
+   *     This pipeline
+   */
+  public StreamingPipeline redChannel() {
+    return this.colorTransformation(ImageProcessorImpl.RED_CHANNEL);
+  }
+
+  /**
+   * Append a greyscale conversion by the green channel.
+   *
+   * @return
+   *     This pipeline
+   */
+  public StreamingPipeline greenChannel() {
+    return this.colorTransformation(ImageProcessorImpl.GREEN_CHANNEL);
+  }
+
+  /**
+   * Append a greyscale conversion by the blue channel.
+   *
+   * @return
+   *     This pipeline
+   */
+  public StreamingPipeline blueChannel() {
+    return this.colorTransformation(ImageProcessorImpl.BLUE_CHANNEL);
+  }
+
+  /**
+   * Append a custom greyscale conversion.
+   *
+   * @param rC
+   *     Red coefficient
+   * @param gC
+   *     Green coefficient
+   * @param bC
+   *     Blue coefficient
+   * @return
+   *     This pipeline
+   */
+  public StreamingPipeline customGreyscale(double rC, double gC, double bC) {
+    return this.colorTransformation(ImageProcessorImpl.greyscaleMatrix(rC, gC, bC));
+  }
+
+  /**
+   * Append a greyscale conversion by the maximum channel value.
+   *
+   * @return
+   *     This pipeline
+   */
+  public StreamingPipeline maxVal() {
+    return this.addRowStage(this.engine::maxVal);
+  }
+
+  /**
+   * Append a greyscale conversion by the average channel value.
+   *
+   * @return
+   *     This pipeline
+   */
+  public StreamingPipeline intensity() {
+    return this.addRowStage(this.engine::intensity);
+  }
+
+  /**
+   * Append a horizontal flip.
+   *
+   * @return
+   *     This pipeline
+   */
+  public StreamingPipeline flipHorizontal() {
+    return this.addRowStage(this.engine::flipHorizontal);
+  }
+
+  /**
+   * Append a blur with the 3x3 Gaussian kernel.
+   *
+   * @return
+   *     This pipeline
+   */
+  public StreamingPipeline gaussianBlur() {
+    return this.addFilterStage(1, this.engine::gaussianBlur);
+  }
+
+  /**
+   * Append a blur with a Gaussian kernel of the given radius.
+   *
+   * @param radius
+   *     The radius of the kernel (at least 1)
+   * @return
+   *     This pipeline
+   * @throws IllegalArgumentException
+   *     If the radius is less than 1
+   */
+  public StreamingPipeline gaussianBlur(int radius) throws IllegalArgumentException {
+    if (radius < 1) {
+      throw new IllegalArgumentException("the blur radius must be at least 1");
+    }
+    return this.addFilterStage(radius, img -> this.engine.gaussianBlur(radius, img));
+  }
+
+  /**
+   * Append a sharpen with the 5x5 sharpening kernel.
+   *
+   * @return
+   *     This pipeline
+   */
+  public StreamingPipeline sharpen() {
+    return this.addFilterStage(2, this.engine::sharpen);
+  }
+
+  /**
+   * Stream an image through the pipeline, from one Netpbm file to another.
+   *
+   * @param inputPath
+   *     The path of the Netpbm file to read
+   * @param outputPath
+   *     The path of the file to write: a .ppm, .pnm, .pgm or .pbm file
+   * @throws IllegalArgumentException
+   *     If either file is not a Netpbm file, the input cannot be read, the output
+   *     cannot be written, or the image is smaller than a filter kernel
+   */
+  public void run(String inputPath, String outputPath) throws IllegalArgumentException {
+    int format = StreamingPipeline.outputFormat(ImageUtil.getExtension(outputPath));
+    String inputExtension = ImageUtil.getExtension(inputPath);
+    if (!(inputExtension.equals(".ppm") || inputExtension.equals(".pnm")
+            || inputExtension.equals(".pgm") || inputExtension.equals(".pbm"))) {
+      throw new IllegalArgumentException("only Netpbm files can be streamed, not \""
+              + inputExtension + "\" files");
+    }
+
+    PNMReader reader = PNMReader.open(inputPath);
+    try {
+      int kernel = 2 * this.maxHalo() + 1;
+      if (kernel > reader.getWidth() || kernel > reader.getHeight()) {
+        throw new IllegalArgumentException("Invalid kernel size. Must be smaller than the image.");
+      }
+      FileOutputStream out;
+      try {
+        out = new FileOutputStream(outputPath);
+      } catch (FileNotFoundException e) {
+        throw new IllegalArgumentException("cannot write to file: " + outputPath);
+      }
+      try {
+        PNMWriter writer = PNMWriter.start(out, format, reader.getWidth(), reader.getHeight(),
+                1);
+        this.stream(reader, writer);
+        writer.finish();
+      } catch (IllegalArgumentException e) {
+        try {
+          out.close();
+        } catch (IOException closeFailure) {
+          // report the original failure
+        }
+        throw e;
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Get the deepest halo of any stage.
+   *
+   * @return
+   *     The largest kernel radius, or 0 if there are no filters
+   */
+  private int maxHalo() {
+    int maxHalo = 0;
+    for (Stage stage : this.stages) {
+      maxHalo = Math.max(maxHalo, stage.halo);
+    }
+    return maxHalo;
+  }
+
+  /**
+   * Pick the Netpbm format to write for the given output extension.
+   *
+   * @param extension
+   *     The extension of the output file (includes ".")
+   * @return
+   *     The Netpbm format number
+   * @throws IllegalArgumentException
+   *     If the extension is not a Netpbm extension
+   */
+  private static int outputFormat(String extension) throws IllegalArgumentException {
+    switch (extension) {
+      case ".ppm":
+        return 3;
+      case ".pnm":
+        return 6;
+      case ".pgm":
+        return 5;
+      case ".pbm":
+        return 4;
+      default:
+        throw new IllegalArgumentException("only Netpbm files can be streamed, not \""
+                + extension + "\" files");
+    }
+  }
+
+  /**
+   * Stream every strip of the input through the stages into the output.
+   *
+   * @param reader
+   *     The reader, positioned at the start of the raster
+   * @param writer
+   *     The writer, positioned at the start of the raster
+   * @throws IllegalArgumentException
+   *     If reading or writing fails, or the image is smaller than a filter kernel
+   */
+  private void stream(PNMReader reader, PNMWriter writer) throws IllegalArgumentException {
+    int width = reader.getWidth();
+    int height = reader.getHeight();
+    int halo = 0;
+    for (Stage stage : this.stages) {
+      halo += stage.halo;
+    }
+    // a window must be at least as tall as every kernel that is applied to it
+    int maxHalo = this.maxHalo();
+    int strip = Math.max(this.stripHeight, 2 * maxHalo + 1);
+
+    // the input rows [windowStart, windowEnd) that have been read
+    PixelBuffer window = null;
+    int windowStart = 0;
+    int windowEnd = 0;
+
+    for (int y0 = 0, y1; y0 < height; y0 = y1) {
+      y1 = Math.min(height, y0 + strip);
+      // the window of a last strip of at most maxHalo rows would be shorter than a kernel
+      // once its top halo is dropped, so those rows are streamed with this strip instead
+      if (height - y1 <= maxHalo) {
+        y1 = height;
+      }
+      int start = Math.max(0, y0 - halo);
+      int end = Math.min(height, y1 + halo);
+
+      // keep the rows shared with the previous window, and read the rest
+      PixelBuffer input = new PackedPixelBuffer(width, end - start);
+      int kept = 0;
+      if (window != null && windowEnd > start) {
+        kept = windowEnd - start;
+        StreamingPipeline.copyRows(window, start - windowStart, input, 0, kept);
+      }
+      reader.readPixels(input, kept * width, (end - start) * width);
+      window = input;
+      windowStart = start;
+      windowEnd = end;
+
+      // apply every stage, dropping the rows whose halo was cut off by the window
+      PixelBuffer current = input;
+      int top = start;
+      int bottom = end;
+      for (Stage stage : this.stages) {
+        PixelBuffer result = stage.op.apply(current);
+        int newTop = top == 0 ? 0 : top + stage.halo;
+        int newBottom = bottom == height ? height : bottom - stage.halo;
+        current = StreamingPipeline.rows(result, newTop - top, newBottom - top);
+        top = newTop;
+        bottom = newBottom;
+      }
+
+      writer.writePixels(current, (y0 - top) * width, (y1 - top) * width);
+    }
+  }
+
+  /**
+   * Get the given range of rows of a buffer.
+   *
+   * @param img
+   *     The buffer
+   * @param from
+   *     The first row
+   * @param to
+   *     The row after the last row
+   * @return
+   *     The buffer itself if the range covers it, otherwise a copy of the rows
+   */
+  private static PixelBuffer rows(PixelBuffer img, int from, int to) {
+    if (from == 0 && to == img.getHeight()) {
+      return img;
+    }
+    PixelBuffer copy = new PackedPixelBuffer(img.getWidth(), to - from);
+    StreamingPipeline.copyRows(img, from, copy, 0, to - from);
+    return copy;
+  }
+
+  /**
+   * Copy rows from one buffer to another buffer of the same width.
+   *
+   * @param src
+   *     The buffer to copy from
+   * @param srcRow
+   *     The first row to copy
+   * @param dest
+   *     The buffer to copy to
+   * @param destRow
+   *     The row to copy the first row to
+   * @param count
+   *     The number of rows to copy
+   */
+  private static void copyRows(PixelBuffer src, int srcRow, PixelBuffer dest, int destRow,
+                               int count) {
+    int width = src.getWidth();
+    if (src instanceof PackedPixelBuffer && dest instanceof PackedPixelBuffer) {
+      System.arraycopy(((PackedPixelBuffer) src).getPixels(), srcRow * width,
+              ((PackedPixelBuffer) dest).getPixels(), destRow * width, count * width);
+      return;
+    }
+    for (int i = 0; i < count * width; i++) {
+      dest.setRGB(destRow * width + i, src.getRGB(srcRow * width + i));
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package view;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.stream.IntStream;
+
+/**
+ * The red, green, blue and intensity histograms of an image, counted together in a
+ * single pass over its pixels. The intensity of a pixel is the average of its channels.
+ * <p></p>
+ * Rows of packed RGB images are read straight from the raster; other images are read a
+ * row at a time through their color model. Large images are split into bands of rows that
+ * are counted in parallel, each into histograms of its own, which are added up at the end.
+ */
+public final class Histogram {
+
+  /**
+   * The channels of a histogram, in the order they are stored.
+   */
+  private static final String[] CHANNELS = new String[]{"red", "green", "blue", "intensity"};
+
+  /**
+   * Images with at least this many pixels are counted in parallel.
+   */
+  public static final int PARALLEL_THRESHOLD = 1 << 18;
+
+  /**
+   * Stores channel -> value -> count, with channels in the order of CHANNELS.
+   */
+  private final int[][] counts;
+  private final int totalPixels;
+
+  /**
+   * Create a histogram from its counts.
+   *
+   * @param counts
+   *     The counts of each channel
+   * @param totalPixels
+   *     The number of pixels counted
+   */
+  private Histogram(int[][] counts, int totalPixels) {
+    this.counts = counts;
+    this.totalPixels = totalPixels;
+  }
+
+  /**
+   * Count the histograms of an image.
+   *
+   * @param img
+   *     The image, or null for an empty histogram
+   * @return
+   *     The histograms
+   */
+  public static Histogram of(BufferedImage img) {
+    if (img == null) {
+      return new Histogram(new int[CHANNELS.length][256], 0);
+    }
+    int width = img.getWidth();
+    int height = img.getHeight();
+    int[][] counts;
+    if ((long) width * height < PARALLEL_THRESHOLD) {
+      counts = Histogram.countRows(img, 0, height);
+    } else {
+      // a few bands per core, so that uneven bands balance out
+      int bands = Math.min(height, Runtime.getRuntime().availableProcessors() * 4);
+      counts = IntStream.range(0, bands).parallel()
+              .mapToObj(band -> Histogram.countRows(img, band * height / bands,
+                      (band + 1) * height / bands))
+              .reduce(Histogram::add)
+              .orElseGet(() -> new int[CHANNELS.length][256]);
+    }
+    return new Histogram(counts, width * height);
+  }
+
+  /**
+   * Count the histograms of a band of rows of an image.
+   *
+   * @param img
+   *     The image
+   * @param startRow
+   *     The first row of the band
+   * @param endRow
+   *     The row after the last row of the band
+   * @return
+   *     The counts of each channel
+   */
+  private static int[][] countRows(BufferedImage img, int startRow, int endRow) {
+    int[] red = new int[256];
+    int[] green = new int[256];
+    int[] blue = new int[256];
+    int[] intensity = new int[256];
+    int width = img.getWidth();
+    boolean packed = img.getType() == BufferedImage.TYPE_INT_RGB
+            || img.getType() == BufferedImage.TYPE_INT_ARGB;
+    Raster raster = img.getRaster();
+    int[] row = new int[width];
+
+    for (int y = startRow; y < endRow; y++) {
+      if (packed) {
+        // the data elements of these types are packed 0x(AA)RRGGBB pixels
+        raster.getDataElements(0, y, width, 1, row);
+      } else {
+        img.getRGB(0, y, width, 1, row, 0, width);
+      }
+      for (int x = 0; x < width; x++) {
+        int r = (row[x] >> 16) & 0xFF;
+        int g = (row[x] >> 8) & 0xFF;
+        int b = row[x] & 0xFF;
+        red[r]++;
+        green[g]++;
+        blue[b]++;
+        intensity[(r + g + b) / 3]++;
+      }
+    }
+    return new int[][]{red, green, blue, intensity};
+  }
+
+  /**
+   * Add the counts of one band to those of another.
+   *
+   * @param into
+   *     The counts to add to
+   * @param from
+   *     The counts to add
+   * @return
+   *     The sum, in the first counts
+   */
+  private static int[][] add(int[][] into, int[][] from) {
+    for (int channel = 0; channel < into.length; channel++) {
+      for (int value = 0; value < 256; value++) {
+        into[channel][value] += from[channel][value];
+      }
+    }
+    return into;
+  }
+
+  /**
+   * Get the counts of a channel.
+   *
+   * @param channel
+   *     One of: red, green, blue, or intensity
+   * @return
+   *     A copy of the counts of each value 0-255
+   * @throws IllegalArgumentException
+   *     If the channel is not one of: red, green, blue, or intensity
+   */
+  public int[] getCounts(String channel) throws IllegalArgumentException {
+    for (int i = 0; i < CHANNELS.length; i++) {
+      if (CHANNELS[i].equals(channel)) {
+        return this.counts[i].clone();
+      }
+    }
+    throw new IllegalArgumentException("Histogram only supports red, "
+            + "green, blue, or intensity");
+  }
+
+  /**
+   * Get the number of pixels counted.
+   *
+   * @return
+   *     The number of pixels of the image
+   */
+  public int getTotalPixels() {
+    return this.totalPixels;
+  }
+}
@@ -5,8 +5,6 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Color;
 import java.awt.image.BufferedImage;
-import java.util.HashMap;
-import java.util.Map;
 
 import javax.swing.JPanel;
 
@@ -47,7 +45,7 @@ public class HistogramPanel extends JPanel {
     this.totalPixels = 0;
     this.yScale = 5;
     this.xScale = 0.55;
-    this.channelPoints(this.channelFrequencies(this.image));
+    this.refreshHistogram(Histogram.of(image));
   }
 
   /**
@@ -58,93 +56,37 @@ public class HistogramPanel extends JPanel {
    */
   public void refreshImage(BufferedImage image) {
     this.image = image;
-    this.channelPoints(this.channelFrequencies(this.image));
+    this.refreshHistogram(Histogram.of(image));
   }
 
   /**
-   * Compute the frequency of values for the channel of interest. These
-   * are returned as a map of 0-255-value : count.
+   * Update the histogram from counts that were already computed, such as counts shared by
+   * the panels of every channel.
    *
-   * @param img
-   *     The histogram image
-   * @return
-   *     A map of 0-255-value : count
+   * @param histogram
+   *     The histograms of the image
    */
-  private Map<Integer, Integer> channelFrequencies(BufferedImage img) {
-    if (img == null) {
-      return new HashMap<>();
-    }
-
-    this.totalPixels = img.getWidth() * img.getHeight();
-
-    // 0-255 val : count
-    Map<Integer, Integer> values = new HashMap<>();
-
-    for (int x = 0; x < img.getWidth() - 1; x++) {
-      for (int y = 0; y < img.getHeight() - 1; y++) {
-        Color c = new Color(img.getRGB(x, y));
-        int val;
-        switch (this.channel) {
-          case "red":
-            val = c.getRed();
-            if (values.containsKey(val)) {
-              values.put(val, values.get(val) + 1);
-            }
-            else {
-              values.put(val, 1);
-            }
-            break;
-          case "green":
-            val = c.getGreen();
-            if (values.containsKey(val)) {
-              values.put(val, values.get(val) + 1);
-            }
-            else {
-              values.put(val, 1);
-            }
-            break;
-          case "blue":
-            val = c.getBlue();
-            if (values.containsKey(val)) {
-              values.put(val, values.get(val) + 1);
-            }
-            else {
-              values.put(val, 1);
-            }
-            break;
-          case "intensity":
-            val = (c.getRed() + c.getGreen() + c.getBlue()) / 3;
-            if (values.containsKey(val)) {
-              values.put(val, values.get(val) + 1);
-            }
-            else {
-              values.put(val, 1);
-            }
-            break;
-          default:
-            break;
-        }
-      }
-    }
-    return values;
+  public void refreshHistogram(Histogram histogram) {
+    this.totalPixels = histogram.getTotalPixels();
+    this.channelPoints(histogram.getCounts(this.channel));
   }
 
   /**
    * Generate the points to display on the histogram.
    *
    * @param freq
-   *     The map of 0-255-value frequencies -- these represent the y-values for each point
+   *     The count of each 0-255 value -- these represent the y-values for each point
    */
-  private void channelPoints(Map<Integer, Integer> freq) {
+  private void channelPoints(int[] freq) {
 
     for (int i = 0; i < this.points.length; i++) {
       int x = (int) (i * this.xScale);
       int y;
-      if (!freq.containsKey(i)) {
+      if (freq[i] == 0) {
         y = 0;
       }
       else {
-        y = (int) (Math.log(freq.get(i)) * yScale); // logarithmic scale
+        y = (int) (Math.log(freq[i]) * yScale); // logarithmic scale
       }
       this.points[i] = new Point(x, y);
     }
@@ -21,6 +21,8 @@ import javax.swing.JFileChooser;
 import javax.swing.JFormattedTextField;
 import javax.swing.Box;
 import javax.swing.JOptionPane;
+import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
 
 import javax.swing.border.EmptyBorder;
 import javax.swing.text.NumberFormatter;
@@ -31,6 +33,10 @@ import controller.ImageControllerFeatures;
  * A GUI for an ImageProcessor. It visually supports the functionalities offered by the
  * ControllerFeatures interface. This GUI consists of 4 mains parts: an image,
  * a toolbar side panel, a histogram side panel, and an options panel.
+ * <p></p>
+ * Requests run on a background thread (see RequestQueue), so the GUI stays responsive
+ * while an image is processed. A progress bar is shown while requests are running, and
+ * only the image of the latest request is rendered.
  */
 public class ImageGUIViewImpl extends JFrame implements ImageGUIView {
 
@@ -58,6 +64,8 @@ public class ImageGUIViewImpl extends JFrame implements ImageGUIView {
   private JButton sharpenButton;
   private JButton sepiaButton;
   private JButton customMatrixButton;
+  private JProgressBar progressBar;
+  private final RequestQueue requests;
 
   /**
    * Construct the image processor GUI.
@@ -104,6 +112,16 @@ public class ImageGUIViewImpl extends JFrame implements ImageGUIView {
     this.redoButton.setPreferredSize(new Dimension(20, 20));
     optionsPanel.add(this.undoButton);
     optionsPanel.add(this.redoButton);
+
+    // progress bar -- visible while requests are running
+    JPanel progressPanel = new JPanel();
+    topPanel.add(progressPanel, BorderLayout.CENTER);
+    this.progressBar = new JProgressBar();
+    this.progressBar.setIndeterminate(true);
+    this.progressBar.setVisible(false);
+    progressPanel.add(this.progressBar);
+    this.requests = new RequestQueue(SwingUtilities::invokeLater,
+            busy -> this.progressBar.setVisible(busy));
     
     // toolbar side panel -- contains all image modification buttons,
     // invisible until a user loads their first image
@@ -243,7 +261,8 @@ public class ImageGUIViewImpl extends JFrame implements ImageGUIView {
         File f = fchooser.getSelectedFile();
         filepath = f.getAbsolutePath();
       }
-      controller.loadRequest(filepath);
+      String path = filepath;
+      this.requests.submit(() -> controller.loadRequest(path));
     });
 
     saveButton.addActionListener(evt -> {
@@ -254,68 +273,80 @@ public class ImageGUIViewImpl extends JFrame implements ImageGUIView {
         File f = fchooser.getSelectedFile();
         filepath = f.getAbsolutePath();
       }
-      controller.saveRequest(filepath);
+      String path = filepath;
+      this.requests.submit(() -> controller.saveRequest(path));
     });
 
     undoButton.addActionListener(evt -> {
-      controller.undoRequest();
+      this.requests.submit(controller::undoRequest);
 
       // return brightness slider back to 0 upon undo
       this.brightnessSlider.setValue(0);
     });
 
     redoButton.addActionListener(evt -> {
-      controller.redoRequest();
+      this.requests.submit(controller::redoRequest);
       // return brightness slider back to 0 upon redo
       this.brightnessSlider.setValue(0);
     });
 
     verticalFlipButton.addActionListener(evt -> {
-      controller.verticalRequest();
+      this.requests.submit(controller::verticalRequest);
     });
 
     horizontalFlipButton.addActionListener(evt -> {
-      controller.horizontalRequest();
+      this.requests.submit(controller::horizontalRequest);
     });
 
     brightnessSlider.addChangeListener(evt -> {
-      controller.brightenRequest(brightnessSlider.getValue());
+      // while the slider is dragged, only the latest value is previewed on a copy of the
+      // image that fits the viewport; the full image is brightened once it is released
+      int increment = brightnessSlider.getValue();
+      if (brightnessSlider.getValueIsAdjusting()) {
+        Dimension viewport = this.imageScrollPane.getViewport().getExtentSize();
+        int width = Math.max(1, viewport.width);
+        int height = Math.max(1, viewport.height);
+        this.requests.submitReplaceable(() -> controller.previewBrightenRequest(increment,
+                width, height));
+      } else {
+        this.requests.submitReplaceable(() -> controller.brightenRequest(increment));
+      }
     });
 
     redCompButton.addActionListener(evt -> {
-      controller.redCompRequest();
+      this.requests.submit(controller::redCompRequest);
     });
 
     greenCompButton.addActionListener(evt -> {
-      controller.greenCompRequest();
+      this.requests.submit(controller::greenCompRequest);
     });
 
     blueCompButton.addActionListener(evt -> {
-      controller.blueCompRequest();
+      this.requests.submit(controller::blueCompRequest);
     });
 
     valueButton.addActionListener(evt -> {
-      controller.valueRequest();
+      this.requests.submit(controller::valueRequest);
     });
 
     intensityButton.addActionListener(evt -> {
-      controller.intensityRequest();
+      this.requests.submit(controller::intensityRequest);
     });
 
     lumaButton.addActionListener(evt -> {
-      controller.lumaRequest();
+      this.requests.submit(controller::lumaRequest);
     });
 
     blurButton.addActionListener(evt -> {
-      controller.blurRequest();
+      this.requests.submit(controller::blurRequest);
     });
 
     sharpenButton.addActionListener(evt -> {
-      controller.sharpenRequest();
+      this.requests.submit(controller::sharpenRequest);
     });
 
     sepiaButton.addActionListener(evt -> {
-      controller.sepiaRequest();
+      this.requests.submit(controller::sepiaRequest);
     });
 
     customMatrixButton.addActionListener(evt -> {
@@ -359,22 +390,30 @@ public class ImageGUIViewImpl extends JFrame implements ImageGUIView {
                         Double.valueOf(fields[7].getText()),
                         Double.valueOf(fields[8].getText())}
         };
-        controller.customMatrixRequest(cMatrix);
+        this.requests.submit(() -> controller.customMatrixRequest(cMatrix));
       }
     });
   }
 
+  /**
+   * May be called from any thread. The histograms are counted on the calling thread, and
+   * the image is rendered on the event thread, once the latest request has finished.
+   */
   @Override
   public void refreshImage(BufferedImage img) {
     if (img == null) {
       throw new IllegalArgumentException("image cannot be null");
     }
 
-    this.displayImage.setIcon(new ImageIcon(img));
-    this.redHistogram.refreshImage(img);
-    this.greenHistogram.refreshImage(img);
-    this.blueHistogram.refreshImage(img);
-    this.intensityHistogram.refreshImage(img);
+    // counted once for all four panels, off the event thread
+    Histogram histogram = Histogram.of(img);
+    this.requests.render(() -> {
+      this.displayImage.setIcon(new ImageIcon(img));
+      this.redHistogram.refreshHistogram(histogram);
+      this.greenHistogram.refreshHistogram(histogram);
+      this.blueHistogram.refreshHistogram(histogram);
+      this.intensityHistogram.refreshHistogram(histogram);
+    });
   }
 
   /**
@@ -383,11 +422,13 @@ public class ImageGUIViewImpl extends JFrame implements ImageGUIView {
    */
   @Override
   public void firstMount() {
-    this.toolbarPanel.setVisible(true);
-    this.imageScrollPane.setToolTipText("");
+    this.requests.publish(() -> {
+      this.toolbarPanel.setVisible(true);
+      this.imageScrollPane.setToolTipText("");
 
-    // return brightness slider back to 0 upon loading a new image
-    this.brightnessSlider.setValue(0);
+      // return brightness slider back to 0 upon loading a new image
+      this.brightnessSlider.setValue(0);
+    });
   }
 
   /**
@@ -395,7 +436,7 @@ public class ImageGUIViewImpl extends JFrame implements ImageGUIView {
    */
   @Override
   public void renderMessage(String message) {
-    JOptionPane.showMessageDialog(this, message,
-            "Error", JOptionPane.WARNING_MESSAGE);
+    this.requests.publish(() -> JOptionPane.showMessageDialog(this, message,
+            "Error", JOptionPane.WARNING_MESSAGE));
   }
 }
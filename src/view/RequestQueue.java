@@ -0,0 +1,205 @@
+package view;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Runs the requests of a GUI on a background thread, one at a time and in the order they
+ * were submitted, so that the event thread never waits for an image operation. Updates to
+ * the GUI are handed to a publisher (normally the event thread) instead of being made on
+ * the background thread.
+ * <p></p>
+ * A replaceable request (such as the brightness slider being dragged) that has not
+ * started yet is replaced by the next replaceable request submitted right after it, so
+ * only the latest value is computed. Renders are only published once the last submitted
+ * request has finished: while newer requests are waiting, the result of an older one is
+ * never shown, and only the latest requested state is rendered.
+ */
+public final class RequestQueue {
+
+  /**
+   * One submitted request.
+   */
+  private static final class Task {
+
+    private Runnable request;
+    private final boolean replaceable;
+    private boolean started;
+
+    /**
+     * Create a task that has not started.
+     *
+     * @param request
+     *     The request to run
+     * @param replaceable
+     *     True if a later replaceable request may replace it before it starts
+     */
+    Task(Runnable request, boolean replaceable) {
+      this.request = request;
+      this.replaceable = replaceable;
+      this.started = false;
+    }
+  }
+
+  private final ExecutorService worker;
+  private final Consumer<Runnable> publisher;
+  private final Consumer<Boolean> busyListener;
+
+  /**
+   * The last submitted task, or null if none was submitted yet.
+   */
+  private Task last;
+
+  /**
+   * The number of submitted tasks that have not finished.
+   */
+  private int pending;
+
+  /**
+   * The latest render that has not been published, or null.
+   */
+  private Runnable render;
+
+  /**
+   * Create a queue with no requests.
+   *
+   * @param publisher
+   *     Runs updates to the GUI, such as SwingUtilities::invokeLater
+   * @param busyListener
+   *     Told, through the publisher, whether requests are running or waiting, so that
+   *     progress can be shown
+   * @throws IllegalArgumentException
+   *     If the publisher or the listener is null
+   */
+  public RequestQueue(Consumer<Runnable> publisher, Consumer<Boolean> busyListener)
+          throws IllegalArgumentException {
+    if (publisher == null || busyListener == null) {
+      throw new IllegalArgumentException("the publisher and listener cannot be null");
+    }
+    this.publisher = publisher;
+    this.busyListener = busyListener;
+    this.worker = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "requests");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.last = null;
+    this.pending = 0;
+    this.render = null;
+  }
+
+  /**
+   * Submit a request to run after every request submitted before it.
+   *
+   * @param request
+   *     The request
+   */
+  public void submit(Runnable request) {
+    this.enqueue(new Task(request, false));
+  }
+
+  /**
+   * Submit a request that replaces the previous request if that one is replaceable and
+   * has not started yet. Otherwise, it runs after every request submitted before it.
+   *
+   * @param request
+   *     The request
+   */
+  public void submitReplaceable(Runnable request) {
+    synchronized (this) {
+      if (this.last != null && this.last.replaceable && !this.last.started) {
+        this.last.request = request;
+        return;
+      }
+    }
+    this.enqueue(new Task(request, true));
+  }
+
+  /**
+   * Publish an update to the GUI right away, such as a message.
+   *
+   * @param update
+   *     The update
+   */
+  public void publish(Runnable update) {
+    this.publisher.accept(update);
+  }
+
+  /**
+   * Render a new state. If requests are running or waiting, the render is held back until
+   * the last of them has finished, and replaced by any later render.
+   *
+   * @param update
+   *     The update that renders the state
+   */
+  public void render(Runnable update) {
+    synchronized (this) {
+      if (this.pending > 0) {
+        this.render = update;
+        return;
+      }
+    }
+    this.publisher.accept(update);
+  }
+
+  /**
+   * Add a task to the queue.
+   *
+   * @param task
+   *     The task
+   */
+  private void enqueue(Task task) {
+    synchronized (this) {
+      this.last = task;
+      this.pending++;
+    }
+    this.publishBusy();
+    this.worker.execute(() -> this.run(task));
+  }
+
+  /**
+   * Run a task on the background thread, then publish the latest render if it was the
+   * last submitted task.
+   *
+   * @param task
+   *     The task
+   */
+  private void run(Task task) {
+    Runnable request;
+    synchronized (this) {
+      task.started = true;
+      request = task.request;
+    }
+    try {
+      request.run();
+    } finally {
+      Runnable update = null;
+      synchronized (this) {
+        this.pending--;
+        if (task == this.last) {
+          update = this.render;
+          this.render = null;
+        }
+      }
+      if (update != null) {
+        this.publisher.accept(update);
+      }
+      this.publishBusy();
+    }
+  }
+
+  /**
+   * Tell the listener whether requests are running or waiting, as of when the publisher
+   * runs the update.
+   */
+  private void publishBusy() {
+    this.publisher.accept(() -> {
+      boolean busy;
+      synchronized (this) {
+        busy = this.pending > 0;
+      }
+      this.busyListener.accept(busy);
+    });
+  }
+}
@@ -0,0 +1,187 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import model.ImageProcessor;
+import model.ImageProcessorImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stress tests for one image processor shared by several threads.
+ */
+public class ConcurrentImageProcessorTest {
+
+  private static final int THREADS = 8;
+
+  /**
+   * Run a chain of operations on the given model, saving every step under names that
+   * start with the given prefix.
+   *
+   * @param model
+   *     The model to run the operations on
+   * @param prefix
+   *     The prefix of the destination names
+   */
+  private void runChain(ImageProcessor model, String prefix) {
+    model.brightness(15, "original", prefix + "bright");
+    model.sepia(prefix + "bright", prefix + "sepia");
+    model.gaussianBlur(prefix + "sepia", prefix + "blur");
+    model.rotate90(prefix + "blur", prefix + "rotate");
+    model.sharpen(prefix + "rotate", prefix + "sharp");
+    model.intensity("original", prefix + "intensity");
+  }
+
+  /**
+   * Start the given tasks on their own threads at the same time, and wait for all of
+   * them to finish.
+   *
+   * @param tasks
+   *     The tasks to run
+   * @return
+   *     The results of the tasks, in order
+   * @throws Exception
+   *     If any task failed
+   */
+  private <T> List<T> runTogether(List<Callable<T>> tasks) throws Exception {
+    ExecutorService threads = Executors.newFixedThreadPool(tasks.size());
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      List<Future<T>> futures = new ArrayList<>();
+      for (Callable<T> task : tasks) {
+        futures.add(threads.submit(() -> {
+          start.await();
+          return task.call();
+        }));
+      }
+      start.countDown();
+      List<T> results = new ArrayList<>();
+      for (Future<T> future : futures) {
+        try {
+          results.add(future.get());
+        } catch (ExecutionException e) {
+          throw (Exception) e.getCause();
+        }
+      }
+      return results;
+    } finally {
+      threads.shutdownNow();
+    }
+  }
+
+  /**
+   * Test that threads running chains of operations from the same source image into
+   * their own names get exactly the images of a single-threaded run.
+   */
+  @Test
+  public void testParallelChainsMatchSequential() throws Exception {
+    ImageProcessor sequential = new ImageProcessorImpl();
+    sequential.loadImage("res/Kirby.ppm", "original");
+    this.runChain(sequential, "");
+
+    for (ImageProcessor shared : new ImageProcessor[]{new ImageProcessorImpl(),
+        new ImageProcessorImpl(4, 0)}) {
+      shared.loadImage("res/Kirby.ppm", "original");
+      List<Callable<Void>> tasks = new ArrayList<>();
+      for (int t = 0; t < THREADS; t++) {
+        String prefix = "t" + t + "-";
+        tasks.add(() -> {
+          this.runChain(shared, prefix);
+          return null;
+        });
+      }
+      this.runTogether(tasks);
+
+      for (int t = 0; t < THREADS; t++) {
+        for (String step : new String[]{"bright", "sepia", "blur", "rotate", "sharp",
+            "intensity"}) {
+          assertEquals(ImageTestUtil.savePPMString(sequential, step),
+                  ImageTestUtil.savePPMString(shared, "t" + t + "-" + step));
+        }
+      }
+    }
+  }
+
+  /**
+   * Test that readers of an image that other threads keep overwriting only ever see
+   * one of the complete images that were written, never a mix of them.
+   */
+  @Test
+  public void testReadersSeeWholeImages() throws Exception {
+    ImageProcessor shared = new ImageProcessorImpl();
+    shared.loadImage("res/onePPM.ppm", "original");
+    shared.brightness(0, "original", "shared");
+
+    Set<String> written = new HashSet<>();
+    written.add(ImageTestUtil.savePPMString(shared, "original"));
+    for (int increment = 1; increment <= 4; increment++) {
+      shared.brightness(increment * 10, "original", "expected" + increment);
+      written.add(ImageTestUtil.savePPMString(shared, "expected" + increment));
+    }
+
+    List<Callable<Set<String>>> tasks = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      int increment = t % 4 + 1;
+      boolean writer = t % 2 == 0;
+      tasks.add(() -> {
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < 50; i++) {
+          if (writer) {
+            shared.brightness(increment * 10, "original", "shared");
+          } else {
+            seen.add(ImageTestUtil.savePPMString(shared, "shared"));
+            assertEquals(144, shared.getImageState("shared").getWidth());
+          }
+        }
+        return seen;
+      });
+    }
+
+    for (Set<String> seen : this.runTogether(tasks)) {
+      assertTrue(written.containsAll(seen));
+    }
+    assertTrue(written.contains(ImageTestUtil.savePPMString(shared, "shared")));
+  }
+
+  /**
+   * Test that threads that load and process different images at the same time do not
+   * see each other's images.
+   */
+  @Test
+  public void testIndependentSessions() throws Exception {
+    ImageProcessor shared = new ImageProcessorImpl();
+    String[] files = new String[]{"res/Kirby.ppm", "res/onePPM.ppm", "res/onePNG.png",
+        "res/oneBMP.bmp"};
+
+    List<Callable<String>> tasks = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      String file = files[t % files.length];
+      String session = "session" + t;
+      tasks.add(() -> {
+        shared.loadImage(file, session);
+        shared.luma(session, session + "-luma");
+        shared.flipVertical(session + "-luma", session + "-flip");
+        return ImageTestUtil.savePPMString(shared, session + "-flip");
+      });
+    }
+    List<String> results = this.runTogether(tasks);
+
+    for (int t = 0; t < THREADS; t++) {
+      ImageProcessor alone = new ImageProcessorImpl();
+      alone.loadImage(files[t % files.length], "img");
+      alone.luma("img", "luma");
+      alone.flipVertical("luma", "flip");
+      assertEquals(ImageTestUtil.savePPMString(alone, "flip"), results.get(t));
+    }
+  }
+}
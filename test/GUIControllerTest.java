@@ -6,6 +6,8 @@ import model.ImageProcessor;
 import model.ImageProcessorImpl;
 import view.ImageGUIView;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -1098,6 +1100,152 @@ public class GUIControllerTest {
     assertTrue(log.toString().contains("firstMount is being called"));
   }
 
-}
+  // Counts the states of the history that are kept in the model.
+  private int keptStates(ImageProcessor model, int steps) {
+    int kept = 0;
+    for (int i = 0; i <= steps; i++) {
+      if (model.hasLoadedImage(Integer.toString(i))) {
+        kept++;
+      }
+    }
+    return kept;
+  }
+
+  // This tests that a long session only keeps a few states in the model, and that every
+  // state that was dropped is rebuilt exactly when it is undone or redone.
+  @Test
+  public void testHistoryRebuildsStates() {
+    ImageProcessor model = new ImageProcessorImpl();
+    ImageControllerFeatures controller = new ImageControllerFeaturesImpl(model,
+            new MockViewController(new StringBuilder()), 10, 4);
+    ImageProcessor expected = new ImageProcessorImpl();
+
+    controller.loadRequest("res/onePPM.ppm");
+    expected.loadImage("res/onePPM.ppm", "0");
+    int steps = 60;
+    for (int i = 1; i <= steps; i++) {
+      String name = Integer.toString(i);
+      String previous = Integer.toString(i - 1);
+      switch (i % 4) {
+        case 1:
+          controller.verticalRequest();
+          expected.flipVertical(previous, name);
+          break;
+        case 2:
+          controller.brightenRequest(10);
+          expected.brightness(10, previous, name);
+          break;
+        case 3:
+          // brightness applies to the same base as the previous brightness
+          controller.brightenRequest(-20);
+          expected.brightness(-20, Integer.toString(i - 2), name);
+          break;
+        default:
+          controller.sepiaRequest();
+          expected.sepia(previous, name);
+          break;
+      }
+      assertEquals(ImageTestUtil.savePPMString(expected, name),
+              ImageTestUtil.savePPMString(model, name));
+    }
+    assertTrue(this.keptStates(model, steps) <= 6);
+
+    for (int i = steps - 1; i >= 0; i--) {
+      controller.undoRequest();
+      String name = Integer.toString(i);
+      assertEquals(ImageTestUtil.savePPMString(expected, name),
+              ImageTestUtil.savePPMString(model, name));
+      assertTrue(this.keptStates(model, steps) <= 6);
+    }
+    for (int i = 1; i <= steps; i++) {
+      controller.redoRequest();
+      String name = Integer.toString(i);
+      assertEquals(ImageTestUtil.savePPMString(expected, name),
+              ImageTestUtil.savePPMString(model, name));
+      assertTrue(this.keptStates(model, steps) <= 6);
+    }
+  }
+
+  // This tests that the states that can no longer be redone are removed from the model.
+  @Test
+  public void testHistoryDiscardsRedoneStates() {
+    ImageProcessor model = new ImageProcessorImpl();
+    ImageControllerFeatures controller = new ImageControllerFeaturesImpl(model,
+            new MockViewController(new StringBuilder()), 1, 100);
+
+    controller.loadRequest("res/onePPM.ppm");
+    for (int i = 0; i < 10; i++) {
+      controller.horizontalRequest();
+    }
+    assertEquals(11, this.keptStates(model, 10));
+    for (int i = 0; i < 5; i++) {
+      controller.undoRequest();
+    }
+    controller.lumaRequest();
+    assertEquals(7, this.keptStates(model, 10));
+    for (int i = 7; i <= 10; i++) {
+      assertFalse(model.hasLoadedImage(Integer.toString(i)));
+    }
 
+    // loading another image starts a new history
+    controller.loadRequest("res/onePPM.ppm");
+    assertEquals(1, this.keptStates(model, 10));
+  }
 
+  // This tests that previews shrink the base image once, brighten the shrunk copy, and
+  // are not added to the history.
+  @Test
+  public void testPreviewBrighten() {
+    StringBuilder log = new StringBuilder();
+    ImageProcessor model = new MockModelController(log);
+    ImageGUIView view = new MockViewController(log);
+    ImageControllerFeatures controller = new ImageControllerFeaturesImpl(model, view);
+
+    controller.loadRequest("res/Kirby.ppm");
+    controller.previewBrightenRequest(10, 200, 100);
+    controller.previewBrightenRequest(20, 200, 100);
+    controller.brightenRequest(20);
+    controller.undoRequest();
+    controller.previewBrightenRequest(30, 200, 100);
+
+    String calls = log.toString();
+    String downscale = "downscale: maxWidth = 200, maxHeight = 100, name = 0, "
+            + "destName = preview-source\n";
+    assertTrue(calls.contains("increment = 10, name = preview-source, destName = preview"));
+    assertTrue(calls.contains("increment = 20, name = preview-source, destName = preview"));
+    assertTrue(calls.contains("increment = 20, name = 0, destName = 1"));
+    // undoing changes the base image, so the next preview shrinks it again
+    int first = calls.indexOf(downscale);
+    int second = calls.indexOf(downscale, first + 1);
+    assertTrue(first >= 0 && second > calls.indexOf("increment = 20, name = 0, destName = 1"));
+    assertEquals(-1, calls.indexOf(downscale, second + 1));
+  }
+
+  // A real preview is shrunk to fit the requested size, and keeps the full image intact.
+  @Test
+  public void testPreviewSize() {
+    ImageProcessor model = new ImageProcessorImpl();
+    ImageControllerFeatures controller = new ImageControllerFeaturesImpl(model,
+            new MockViewController(new StringBuilder()));
+
+    controller.loadRequest("res/Kirby.ppm");
+    controller.previewBrightenRequest(50, 40, 40);
+    assertTrue(model.getImageState("preview").getWidth() <= 40);
+    assertTrue(model.getImageState("preview").getHeight() <= 40);
+    assertFalse(model.hasLoadedImage("1"));
+
+    controller.brightenRequest(50);
+    ImageProcessor expected = new ImageProcessorImpl();
+    expected.loadImage("res/Kirby.ppm", "0");
+    expected.brightness(50, "0", "1");
+    assertEquals(ImageTestUtil.savePPMString(expected, "1"),
+            ImageTestUtil.savePPMString(model, "1"));
+  }
+
+  // The history must keep at least one state, and have a positive keyframe spacing.
+  @Test(expected = IllegalArgumentException.class)
+  public void testExceptionInvalidHistory() {
+    new ImageControllerFeaturesImpl(new ImageProcessorImpl(),
+            new MockViewController(new StringBuilder()), 0, 4);
+  }
+}
@@ -8,8 +8,10 @@ import java.util.Map;
 
 import model.ImageProcessor;
 import model.ImageProcessorImpl;
+import view.Histogram;
 import view.HistogramPanel;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -785,4 +787,94 @@ public class HistogramTest {
     HistogramPanel c = new HistogramPanel(
             new BufferedImage(5, 5, 0), null);
   }
+
+  /**
+   * Count the values of a channel of an image one pixel at a time.
+   *
+   * @param image
+   *     The image
+   * @param channel
+   *     One of: red, green, blue, or intensity
+   * @return
+   *     The count of each 0-255 value
+   */
+  private int[] naiveCounts(BufferedImage image, String channel) {
+    int[] counts = new int[256];
+    for (int x = 0; x < image.getWidth(); x++) {
+      for (int y = 0; y < image.getHeight(); y++) {
+        int rgb = image.getRGB(x, y);
+        int r = (rgb >> 16) & 0xFF;
+        int g = (rgb >> 8) & 0xFF;
+        int b = rgb & 0xFF;
+        switch (channel) {
+          case "red":
+            counts[r]++;
+            break;
+          case "green":
+            counts[g]++;
+            break;
+          case "blue":
+            counts[b]++;
+            break;
+          default:
+            counts[(r + g + b) / 3]++;
+            break;
+        }
+      }
+    }
+    return counts;
+  }
+
+  // the shared histogram counts every pixel of every channel in one pass
+  @Test
+  public void testSharedHistogram() {
+    Histogram shared = Histogram.of(img);
+    assertEquals(img.getWidth() * img.getHeight(), shared.getTotalPixels());
+    for (String channel : new String[]{"red", "green", "blue", "intensity"}) {
+      assertArrayEquals(this.naiveCounts(img, channel), shared.getCounts(channel));
+    }
+  }
+
+  // images that are not packed RGB are read through their color model
+  @Test
+  public void testSharedHistogramOtherType() {
+    BufferedImage other = new BufferedImage(img.getWidth(), img.getHeight(),
+            BufferedImage.TYPE_3BYTE_BGR);
+    other.getGraphics().drawImage(img, 0, 0, null);
+    Histogram shared = Histogram.of(other);
+    for (String channel : new String[]{"red", "green", "blue", "intensity"}) {
+      assertArrayEquals(this.naiveCounts(other, channel), shared.getCounts(channel));
+    }
+  }
+
+  // large images are counted in parallel bands that add up to the same counts
+  @Test
+  public void testSharedHistogramParallel() {
+    BufferedImage large = new BufferedImage(700, 500, BufferedImage.TYPE_INT_RGB);
+    for (int x = 0; x < large.getWidth(); x++) {
+      for (int y = 0; y < large.getHeight(); y++) {
+        large.setRGB(x, y, x * 7919 + y * 104729);
+      }
+    }
+    Histogram shared = Histogram.of(large);
+    assertEquals(700 * 500, shared.getTotalPixels());
+    for (String channel : new String[]{"red", "green", "blue", "intensity"}) {
+      assertArrayEquals(this.naiveCounts(large, channel), shared.getCounts(channel));
+    }
+  }
+
+  // the counts handed out are copies
+  @Test
+  public void testSharedHistogramCopies() {
+    Histogram shared = Histogram.of(img);
+    shared.getCounts("red")[5] = -1;
+    assertEquals(this.naiveCounts(img, "red")[5], shared.getCounts("red")[5]);
+    assertEquals(0, Histogram.of(null).getTotalPixels());
+  }
+
+  // throws an exception when asked for a channel that is not counted
+  @Test (expected = IllegalArgumentException.class)
+  public void testSharedHistogramInvalidChannel() {
+    Histogram.of(img).getCounts("alpha");
+  }
 }
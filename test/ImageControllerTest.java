@@ -1,9 +1,13 @@
 import org.junit.Test;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 import controller.ImageController;
 import controller.ImageControllerImpl;
@@ -12,6 +16,7 @@ import model.ImageProcessorImpl;
 import view.ImageTextView;
 import view.ImageView;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -3919,7 +3924,7 @@ public class ImageControllerTest {
     ImageProcessor model = new ImageProcessorImpl();
     ImageView view = new ImageTextView(model, log);
     StringReader in = new StringReader("load res/oneJPG.jpg one "
-            + "save res/oneJPEG.jpeg one q ");
+            + "save " + ImageTestUtil.scratchPath(".jpeg") + " one q ");
     ImageController controller = new ImageControllerImpl(model, view, in);
     controller.modifyImages();
 
@@ -3934,7 +3939,7 @@ public class ImageControllerTest {
     ImageProcessor model = new ImageProcessorImpl();
     ImageView view = new ImageTextView(model, log);
     StringReader in = new StringReader("load res/oneJPG.jpg one "
-            + "save res/oneBMP.bmp one q ");
+            + "save " + ImageTestUtil.scratchPath(".bmp") + " one q ");
     ImageController controller = new ImageControllerImpl(model, view, in);
     controller.modifyImages();
 
@@ -3949,7 +3954,7 @@ public class ImageControllerTest {
     ImageProcessor model = new ImageProcessorImpl();
     ImageView view = new ImageTextView(model, log);
     StringReader in = new StringReader("load res/oneJPG.jpg one "
-            + "save res/onePNG.png one q ");
+            + "save " + ImageTestUtil.scratchPath(".png") + " one q ");
     ImageController controller = new ImageControllerImpl(model, view, in);
     controller.modifyImages();
 
@@ -3964,7 +3969,7 @@ public class ImageControllerTest {
     ImageProcessor model = new ImageProcessorImpl();
     ImageView view = new ImageTextView(model, log);
     StringReader in = new StringReader("load res/onePPM.ppm one "
-            + "save res/oneJPG.jpg one q ");
+            + "save " + ImageTestUtil.scratchPath(".jpg") + " one q ");
     ImageController controller = new ImageControllerImpl(model, view, in);
     controller.modifyImages();
 
@@ -4139,6 +4144,9 @@ public class ImageControllerTest {
 
     assertTrue(log.toString().contains("The following are the formats this program can support:\n" +
             ".ppm\n" +
+            ".pnm\n" +
+            ".pgm\n" +
+            ".pbm\n" +
             ".jpg\n" +
             ".jpeg\n" +
             ".png\n" +
@@ -5016,6 +5024,9 @@ public class ImageControllerTest {
     assertTrue(log.toString().contains("The following are " +
             "the formats this program can support:\n" +
             ".ppm\n" +
+            ".pnm\n" +
+            ".pgm\n" +
+            ".pbm\n" +
             ".jpg\n" +
             ".jpeg\n" +
             ".png\n" +
@@ -5068,4 +5079,231 @@ public class ImageControllerTest {
     }
 
   }
+
+  /**
+   * Run a script with a controller of the given parallelism on a new model.
+   *
+   * @param script      the script
+   * @param parallelism the number of commands to run at the same time
+   * @return everything the controller showed
+   */
+  private String runScript(String script, int parallelism) {
+    Appendable log = new StringBuilder();
+    ImageProcessor model = new ImageProcessorImpl();
+    ImageView view = new ImageTextView(model, log);
+    ImageController controller = new ImageControllerImpl(model, view,
+            new StringReader(script), parallelism);
+    controller.modifyImages();
+    return log.toString();
+  }
+
+  /**
+   * Read a whole file.
+   *
+   * @param path the path of the file
+   * @return the contents of the file
+   */
+  private byte[] readFile(String path) {
+    try {
+      return Files.readAllBytes(Paths.get(path));
+    } catch (IOException e) {
+      throw new IllegalStateException("could not read " + path);
+    }
+  }
+
+  // testing that a batch run shows the same messages in the same order, and saves the
+  // same files, as running the script one command at a time
+  @Test
+  public void testBatchMatchesSequential() {
+    String[] sequentialFiles = new String[6];
+    String[] batchFiles = new String[6];
+    String[] logs = new String[2];
+    for (int run = 0; run < 2; run++) {
+      String[] files = run == 0 ? sequentialFiles : batchFiles;
+      for (int i = 0; i < files.length; i++) {
+        files[i] = ImageTestUtil.scratchPath(i % 2 == 0 ? ".ppm" : ".png");
+      }
+      String script = "load res/Kirby.ppm kirby\n"
+              + "load res/onePNG.png png\n"
+              + "brighten 30 kirby bright\n"
+              + "sepia kirby sepia\n"
+              + "blur bright brightBlur\n"
+              + "brighten x kirby skipped\n"
+              + "luma-component png luma\n"
+              + "sharpen missing nothing\n"
+              + "save " + files[0] + " brightBlur\n"
+              + "save " + files[1] + " luma\n"
+              + "stored-images\n"
+              + "greyscale 0.2 0.3 0.5 sepia grey\n"
+              + "horizontal-flip grey flipped\n"
+              + "save " + files[2] + " flipped\n"
+              + "vertical-flip png png\n"
+              + "value-component kirby kirby2\n"
+              + "intensity-component kirby2 kirby\n"
+              + "save " + files[3] + " kirby\n"
+              + "menu\n"
+              + "red-component png red\n"
+              + "save " + files[4] + " red\n"
+              + "save " + files[5] + " sepia\n"
+              + "stored-images\n"
+              + "q";
+      logs[run] = this.runScript(script, run == 0 ? 1 : 4)
+              .replace(files[0], "file0").replace(files[1], "file1")
+              .replace(files[2], "file2").replace(files[3], "file3")
+              .replace(files[4], "file4").replace(files[5], "file5");
+    }
+
+    assertEquals(logs[0], logs[1]);
+    for (int i = 0; i < sequentialFiles.length; i++) {
+      assertArrayEquals(this.readFile(sequentialFiles[i]), this.readFile(batchFiles[i]));
+    }
+  }
+
+  // testing that a batch run keeps the script order of commands that use the same file
+  // or image name, so that a saved file can be loaded again and names can be reused
+  @Test
+  public void testBatchKeepsDependencies() {
+    String file = ImageTestUtil.scratchPath(".ppm");
+    String script = "load res/Kirby.ppm kirby\n"
+            + "brighten 50 kirby step\n"
+            + "save " + file + " step\n"
+            + "load " + file + " reloaded\n"
+            + "sepia kirby step\n"
+            + "save " + file + " step\n"
+            + "blur reloaded blurred\n"
+            + "q";
+
+    String sequential = this.runScript(script, 1);
+    byte[] sequentialFile = this.readFile(file);
+    String batch = this.runScript(script, 3);
+
+    assertEquals(sequential, batch);
+    assertArrayEquals(sequentialFile, this.readFile(file));
+  }
+
+  // testing that a batch script that ends early shows every complete command first
+  @Test
+  public void testBatchNotEnoughInputs() {
+    Appendable log = new StringBuilder();
+    ImageProcessor model = new ImageProcessorImpl();
+    ImageView view = new ImageTextView(model, log);
+    ImageController controller = new ImageControllerImpl(model, view,
+            new StringReader("load res/Kirby.ppm kirby sepia kirby sepia blur sepia"), 2);
+    try {
+      controller.modifyImages();
+      fail("the script should end early");
+    } catch (IllegalStateException e) {
+      assertEquals("There is not enough inputs.", e.getMessage());
+    }
+    assertTrue(log.toString().endsWith("The update to the image has been done! " +
+            "Sepia color transformation has been applied!\n"));
+  }
+
+  // testing that the controller must run at least one command at a time
+  @Test (expected = IllegalArgumentException.class)
+  public void testBatchInvalidParallelism() {
+    new ImageControllerImpl(new ImageProcessorImpl(),
+            new ImageTextView(new ImageProcessorImpl()), new StringReader("q"), 0);
+  }
+
+  // testing that plan mode skips commands whose images are never saved or used, and
+  // removes every image after the last command that uses it
+  @Test
+  public void testPlanSkipsDeadCommands() {
+    StringBuilder log = new StringBuilder();
+    ImageProcessor model = new MockModelController(log);
+    Appendable output = new StringBuilder();
+    ImageView view = new ImageTextView(model, output);
+    StringReader in = new StringReader("load res/Kirby.ppm kirby\n"
+            + "sepia kirby unused\n"
+            + "brighten 10 kirby bright\n"
+            + "blur bright blurred\n"
+            + "sepia bright unused\n"
+            + "save " + ImageTestUtil.scratchPath(".ppm") + " blurred\n"
+            + "q");
+    ImageController controller = new ImageControllerImpl(model, view, in, 1, true);
+    controller.modifyImages();
+
+    String calls = log.toString();
+    assertFalse(calls.contains("Sepia"));
+    // each image is removed after its last use, and only once
+    String[] order = new String[]{"increment = 10, name = kirby, destName = bright\n",
+        "removeImage: name = kirby\n",
+        "gaussianBlur is called with, name = bright, destname = blurred\n",
+        "removeImage: name = bright\n",
+        "blurred has been saved, saveImage is being called\n",
+        "removeImage: name = blurred\n"};
+    assertTrue(calls.indexOf(order[0]) < calls.indexOf(order[1]));
+    assertTrue(calls.indexOf(order[2]) < calls.indexOf(order[3]));
+    assertTrue(calls.indexOf(order[0]) < calls.indexOf(order[2]));
+    assertTrue(calls.indexOf(order[4]) < calls.indexOf(order[5]));
+    assertTrue(calls.indexOf(order[2]) < calls.indexOf(order[4]));
+    for (String call : order) {
+      assertEquals(calls.indexOf(call), calls.lastIndexOf(call));
+    }
+    assertTrue(output.toString().contains("An image has been successfully uploaded!\n"
+            + "Welcome!"));
+    assertTrue(output.toString().contains("menu : view all the functionalities if you have "
+            + "forgotten!\nstored-images : view all the images you have stored.\n"
+            + "q or Q : end the program.\n"
+            + "The image \"unused\" is never saved or used, so it has not been created.\n"
+            + "The update to the image has been done! "
+            + "The image has been brightened or darkened!\n"
+            + "The update to the image has been done! The image has undergone a blur!\n"
+            + "The image \"unused\" is never saved or used, so it has not been created.\n"
+            + "The image has been saved! Check it out!\n"
+            + "Successfully ended the program.\n"));
+  }
+
+  // testing that listing the stored images in plan mode keeps every earlier command
+  @Test
+  public void testPlanStoredImagesKeepsCommands() {
+    StringBuilder log = new StringBuilder();
+    ImageProcessor model = new MockModelController(log);
+    ImageView view = new ImageTextView(model, new StringBuilder());
+    StringReader in = new StringReader("load res/Kirby.ppm kirby "
+            + "sepia kirby listed stored-images sepia kirby unlisted q");
+    ImageController controller = new ImageControllerImpl(model, view, in, 1, true);
+    controller.modifyImages();
+
+    assertTrue(log.toString().contains("greyscale: Sepia, name = kirby, destName = listed"));
+    assertFalse(log.toString().contains("unlisted"));
+  }
+
+  // testing that plan mode saves the same files as running every command, and leaves no
+  // intermediate images behind
+  @Test
+  public void testPlanMatchesSequential() {
+    String[] files = new String[]{ImageTestUtil.scratchPath(".ppm"),
+            ImageTestUtil.scratchPath(".png")};
+    String script = "load res/Kirby.ppm kirby\n"
+            + "brighten 30 kirby bright\n"
+            + "sepia kirby unused\n"
+            + "blur bright blurred\n"
+            + "save " + files[0] + " blurred\n"
+            + "luma-component kirby luma\n"
+            + "horizontal-flip luma flipped\n"
+            + "sharpen flipped unused\n"
+            + "save " + files[1] + " flipped\n"
+            + "q";
+
+    ImageProcessor sequential = new ImageProcessorImpl();
+    new ImageControllerImpl(sequential, new ImageTextView(sequential, new StringBuilder()),
+            new StringReader(script)).modifyImages();
+    byte[][] expected = new byte[][]{this.readFile(files[0]), this.readFile(files[1])};
+    for (String file : files) {
+      new File(file).delete();
+    }
+
+    ImageProcessor planned = new ImageProcessorImpl();
+    new ImageControllerImpl(planned, new ImageTextView(planned, new StringBuilder()),
+            new StringReader(script), 2, true).modifyImages();
+
+    assertArrayEquals(expected[0], this.readFile(files[0]));
+    assertArrayEquals(expected[1], this.readFile(files[1]));
+    for (String name : new String[]{"kirby", "bright", "blurred", "luma", "flipped",
+        "unused"}) {
+      assertFalse(planned.hasLoadedImage(name));
+    }
+  }
 }
@@ -0,0 +1,52 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import model.ImageProcessor;
+
+/**
+ * Helpers shared by the tests that save images or write files.
+ */
+public final class ImageTestUtil {
+
+  /**
+   * This class only has static helpers.
+   */
+  private ImageTestUtil() {
+  }
+
+  /**
+   * Save an image of the given model as an ASCII PPM string.
+   *
+   * @param model
+   *     The model to save from
+   * @param name
+   *     The name of the image
+   * @return
+   *     The PPM file contents
+   */
+  public static String savePPMString(ImageProcessor model, String name) {
+    ByteArrayOutputStream imageData = new ByteArrayOutputStream();
+    model.saveImage(imageData, name, ".ppm");
+    return imageData.toString();
+  }
+
+  /**
+   * Create an empty temporary file to save to, which is deleted when the tests end.
+   * Saving to a scratch file keeps the images in res/ unchanged for the other tests.
+   *
+   * @param extension
+   *     The file extension (includes ".")
+   * @return
+   *     The path of the file
+   */
+  public static String scratchPath(String extension) {
+    try {
+      File file = File.createTempFile("imageTest", extension);
+      file.deleteOnExit();
+      return file.getPath();
+    } catch (IOException e) {
+      throw new IllegalStateException("could not create temporary file");
+    }
+  }
+}
@@ -1,9 +1,16 @@
 import org.junit.Test;
 
+import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 import model.ImageUtil;
+import model.PixelBuffer;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -171,4 +178,272 @@ public class ImageUtilTest {
   public void testInvalidFileExtensionBadEndCharacter() {
     this.util.getExtension("okAy.ppm#");
   }
-}
\ No newline at end of file
+
+  /**
+   * Write the given contents to a new temporary file, which is deleted when the tests end.
+   *
+   * @param contents
+   *     The contents of the file
+   * @param extension
+   *     The file extension (includes ".")
+   * @return
+   *     The path of the file
+   */
+  private String writeTempFile(byte[] contents, String extension) {
+    try {
+      File file = File.createTempFile("imageUtilTest", extension);
+      file.deleteOnExit();
+      FileOutputStream out = new FileOutputStream(file);
+      out.write(contents);
+      out.close();
+      return file.getPath();
+    } catch (IOException e) {
+      throw new IllegalStateException("could not write temporary file");
+    }
+  }
+
+  /**
+   * Test that readPPM skips comments anywhere in the file, including right after a number.
+   */
+  @Test
+  public void testReadPPMComments() {
+    String path = this.writeTempFile(("P3 # magic\n"
+            + "# a full line comment\n"
+            + "2# width\n1 255\n"
+            + "10 20 30 # first pixel\n"
+            + "# between pixels\n"
+            + "300 0 255").getBytes(StandardCharsets.US_ASCII), ".ppm");
+
+    int[][][] expected = new int[][][]{
+        new int[][]{new int[]{10, 20, 30}, new int[]{255, 0, 255}}
+    };
+    assertArrayEquals(expected, this.util.readPPM(path));
+  }
+
+  /**
+   * Test that readPPM rejects a file that ends before all of its samples.
+   */
+  @Test (expected = IllegalArgumentException.class)
+  public void testReadPPMExceptionTruncated() {
+    String path = this.writeTempFile("P3\n2 1\n255\n1 2 3 4"
+            .getBytes(StandardCharsets.US_ASCII), ".ppm");
+    this.util.readPPM(path);
+  }
+
+  /**
+   * Test that readPPM rejects a sample that is not a number.
+   */
+  @Test (expected = IllegalArgumentException.class)
+  public void testReadPPMExceptionNotANumber() {
+    String path = this.writeTempFile("P3\n1 1\n255\n1 x 3"
+            .getBytes(StandardCharsets.US_ASCII), ".ppm");
+    this.util.readPPM(path);
+  }
+
+  /**
+   * Test that readPPM rejects a dimension too large for an int, even one that would wrap
+   * around to a small positive number (2^32 + 2).
+   */
+  @Test (expected = IllegalArgumentException.class)
+  public void testReadPPMExceptionNumberTooLarge() {
+    String path = this.writeTempFile("P3\n4294967298 1\n255\n1 2 3 4 5 6"
+            .getBytes(StandardCharsets.US_ASCII), ".ppm");
+    this.util.readPPM(path);
+  }
+
+  /**
+   * Test that readPPM rejects a file that does not start with a Netpbm magic number.
+   */
+  @Test (expected = IllegalArgumentException.class)
+  public void testReadPPMExceptionBadMagic() {
+    String path = this.writeTempFile("Q3\n1 1\n255\n1 2 3"
+            .getBytes(StandardCharsets.US_ASCII), ".ppm");
+    this.util.readPPM(path);
+  }
+
+  /**
+   * A 3x2 image with a mix of colors, as a pixel array.
+   *
+   * @return
+   *     The image pixel array
+   */
+  private int[][][] colorImage() {
+    return new int[][][]{
+        new int[][]{new int[]{255, 0, 0}, new int[]{0, 255, 0}, new int[]{0, 0, 255}},
+        new int[][]{new int[]{10, 20, 30}, new int[]{255, 255, 255}, new int[]{0, 0, 0}}
+    };
+  }
+
+  /**
+   * Test that a raw PPM (P6) is written as a binary raster and read back unchanged.
+   */
+  @Test
+  public void testSaveRawPPMRoundTrip() {
+    ByteArrayOutputStream imageData = new ByteArrayOutputStream();
+    ImageUtil.saveRawPPM(imageData, ImageUtil.toPixelBuffer(this.colorImage()));
+    byte[] bytes = imageData.toByteArray();
+
+    // "P6\n3 2\n255\n" followed by 3 bytes per pixel
+    assertEquals(11 + 3 * 6, bytes.length);
+    assertArrayEquals(this.colorImage(), this.util.readPPM(this.writeTempFile(bytes, ".pnm")));
+  }
+
+  /**
+   * Test that a raw PGM (P5) stores the luma of each pixel, and is read back as grey pixels.
+   */
+  @Test
+  public void testSavePGMRoundTrip() {
+    ByteArrayOutputStream imageData = new ByteArrayOutputStream();
+    ImageUtil.savePGM(imageData, ImageUtil.toPixelBuffer(this.colorImage()));
+    PixelBuffer grey = ImageUtil.readPNMPixels(this.writeTempFile(imageData.toByteArray(),
+            ".pgm"));
+
+    int[] expected = new int[]{54, 182, 18, 19, 255, 0};
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(PixelBuffer.pack(expected[i], expected[i], expected[i]), grey.getRGB(i));
+    }
+  }
+
+  /**
+   * Test that a raw PBM (P4) stores dark pixels as black and light pixels as white.
+   */
+  @Test
+  public void testSavePBMRoundTrip() {
+    ByteArrayOutputStream imageData = new ByteArrayOutputStream();
+    ImageUtil.savePBM(imageData, ImageUtil.toPixelBuffer(this.colorImage()));
+    byte[] bytes = imageData.toByteArray();
+    PixelBuffer bits = ImageUtil.readPNMPixels(this.writeTempFile(bytes, ".pbm"));
+
+    // "P4\n3 2\n" followed by one padded byte per row
+    assertEquals(7 + 2, bytes.length);
+    int[] expected = new int[]{0x000000, 0xFFFFFF, 0x000000, 0x000000, 0xFFFFFF, 0x000000};
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], bits.getRGB(i));
+    }
+  }
+
+  /**
+   * Test reading plain bitmaps (P1), whose bits do not need to be separated.
+   */
+  @Test
+  public void testReadPlainPBM() {
+    String path = this.writeTempFile("P1\n3 2\n1 0 1\n011".getBytes(StandardCharsets.US_ASCII),
+            ".pbm");
+    PixelBuffer bits = ImageUtil.readPNMPixels(path);
+
+    int[] expected = new int[]{0x000000, 0xFFFFFF, 0x000000, 0xFFFFFF, 0x000000, 0x000000};
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], bits.getRGB(i));
+    }
+  }
+
+  /**
+   * Test that samples of plain greymaps (P2) are scaled from their max value to 0-255.
+   */
+  @Test
+  public void testReadPlainPGMScaled() {
+    String path = this.writeTempFile("P2\n3 1\n15\n0 15 5".getBytes(StandardCharsets.US_ASCII),
+            ".pgm");
+    PixelBuffer grey = ImageUtil.readPNMPixels(path);
+
+    assertEquals(PixelBuffer.pack(0, 0, 0), grey.getRGB(0));
+    assertEquals(PixelBuffer.pack(255, 255, 255), grey.getRGB(1));
+    assertEquals(PixelBuffer.pack(85, 85, 85), grey.getRGB(2));
+  }
+
+  /**
+   * Test that raw greymaps with 2-byte samples are scaled to 0-255.
+   */
+  @Test
+  public void testReadRawPGMTwoByteSamples() {
+    byte[] header = "P5\n2 1\n65535\n".getBytes(StandardCharsets.US_ASCII);
+    byte[] bytes = new byte[header.length + 4];
+    System.arraycopy(header, 0, bytes, 0, header.length);
+    bytes[header.length] = (byte) 0xFF;
+    bytes[header.length + 1] = (byte) 0xFF;
+    bytes[header.length + 2] = (byte) 0x80;
+    bytes[header.length + 3] = (byte) 0x00;
+    PixelBuffer grey = ImageUtil.readPNMPixels(this.writeTempFile(bytes, ".pgm"));
+
+    assertEquals(PixelBuffer.pack(255, 255, 255), grey.getRGB(0));
+    assertEquals(PixelBuffer.pack(128, 128, 128), grey.getRGB(1));
+  }
+
+  /**
+   * Test that a raw raster that ends early is rejected.
+   */
+  @Test (expected = IllegalArgumentException.class)
+  public void testReadRawPPMExceptionTruncated() {
+    String path = this.writeTempFile("P6\n2 2\n255\nabcdefg".getBytes(StandardCharsets.US_ASCII),
+            ".ppm");
+    ImageUtil.readPNMPixels(path);
+  }
+
+  /**
+   * Test that savePPM can write several samples per line, and always declares 255
+   * as the max value.
+   */
+  @Test
+  public void testSavePPMSamplesPerLine() {
+    ByteArrayOutputStream imageData = new ByteArrayOutputStream();
+    int[][][] img = new int[][][]{
+        new int[][]{new int[]{1, 22, 133}, new int[]{4, 5, 6}}
+    };
+    ImageUtil.savePPM(imageData, ImageUtil.toPixelBuffer(img), 4);
+
+    assertEquals("P3\n2 1\n255\n1 22 133 4\n5 6\n", imageData.toString());
+  }
+
+  /**
+   * Test that savePPM needs at least one sample per line.
+   */
+  @Test (expected = IllegalArgumentException.class)
+  public void testSavePPMExceptionNoSamplesPerLine() {
+    ImageUtil.savePPM(new ByteArrayOutputStream(),
+            ImageUtil.toPixelBuffer(this.colorImage()), 0);
+  }
+
+  /**
+   * Test that converting a buffered image gives the same colors as getRGB for every
+   * fast path, and for an image type without one.
+   */
+  @Test
+  public void testToPixelBufferImageTypes() {
+    int[] types = new int[]{BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB,
+        BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR,
+        BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_USHORT_565_RGB};
+
+    for (int type : types) {
+      BufferedImage img = new BufferedImage(5, 3, type);
+      for (int y = 0; y < 3; y++) {
+        for (int x = 0; x < 5; x++) {
+          img.setRGB(x, y, 0xFF000000 | (x * 50) << 16 | (y * 100) << 8 | (x + y) * 30);
+        }
+      }
+      PixelBuffer pixels = ImageUtil.toPixelBuffer(img);
+
+      for (int y = 0; y < 3; y++) {
+        for (int x = 0; x < 5; x++) {
+          assertEquals(img.getRGB(x, y) & 0xFFFFFF, pixels.getRGB(y, x));
+        }
+      }
+    }
+  }
+
+  /**
+   * Test that a generated buffered image has the same colors as the pixel buffer.
+   */
+  @Test
+  public void testGenerateBufferedImageRoundTrip() {
+    PixelBuffer pixels = ImageUtil.toPixelBuffer(this.colorImage());
+    BufferedImage img = ImageUtil.generateBufferedImage(pixels);
+
+    assertEquals(BufferedImage.TYPE_INT_RGB, img.getType());
+    for (int y = 0; y < pixels.getHeight(); y++) {
+      for (int x = 0; x < pixels.getWidth(); x++) {
+        assertEquals(pixels.getRGB(y, x), img.getRGB(x, y) & 0xFFFFFF);
+      }
+    }
+    assertArrayEquals(this.colorImage(), ImageUtil.toArray(ImageUtil.toPixelBuffer(img)));
+  }
+}
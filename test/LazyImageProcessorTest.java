@@ -0,0 +1,310 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+import model.ImageProcessor;
+import model.ImageProcessorImpl;
+import model.LazyImageProcessor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * To test the lazy image processor.
+ */
+public class LazyImageProcessorTest {
+
+  private ImageProcessor eager;
+  private ImageProcessor lazy;
+
+  /**
+   * Load the same image into an eager and a lazy image processor.
+   */
+  @Before
+  public void setUp() {
+    this.eager = new ImageProcessorImpl();
+    this.lazy = new LazyImageProcessor();
+    this.eager.loadImage("res/Kirby.ppm", "original");
+    this.lazy.loadImage("res/Kirby.ppm", "original");
+  }
+
+  /**
+   * Test that every single operation produces exactly the same image in lazy mode.
+   */
+  @Test
+  public void testSingleOperationsMatchEager() {
+    for (ImageProcessor model : new ImageProcessor[]{this.eager, this.lazy}) {
+      model.brightness(40, "original", "bright");
+      model.sepia("original", "sepia");
+      model.luma("original", "luma");
+      model.redChannel("original", "red");
+      model.maxVal("original", "value");
+      model.intensity("original", "intensity");
+      model.flipHorizontal("original", "horizontal");
+      model.flipVertical("original", "vertical");
+      model.gaussianBlur("original", "blur");
+      model.gaussianBlur(2, "original", "blur2");
+      model.sharpen("original", "sharp");
+    }
+
+    for (String name : new String[]{"original", "bright", "sepia", "luma", "red", "value",
+        "intensity", "horizontal", "vertical", "blur", "blur2", "sharp"}) {
+      assertEquals(ImageTestUtil.savePPMString(this.eager, name),
+              ImageTestUtil.savePPMString(this.lazy, name));
+    }
+  }
+
+  /**
+   * Test that a chain of operations without consecutive color transformations produces
+   * exactly the same image in lazy mode, even though the per-pixel operations run in a
+   * single pass.
+   */
+  @Test
+  public void testUnfusedChainMatchesEager() {
+    for (ImageProcessor model : new ImageProcessor[]{this.eager, this.lazy}) {
+      model.sepia("original", "a");
+      model.brightness(-30, "a", "b");
+      model.flipHorizontal("b", "c");
+      model.intensity("c", "d");
+      model.brightness(10, "d", "e");
+      model.gaussianBlur("e", "f");
+      model.luma("f", "g");
+    }
+
+    for (String name : new String[]{"b", "e", "g"}) {
+      assertEquals(ImageTestUtil.savePPMString(this.eager, name),
+              ImageTestUtil.savePPMString(this.lazy, name));
+    }
+  }
+
+  /**
+   * Test that consecutive color transformations are not fused by default, so they give
+   * exactly the same image in lazy mode.
+   */
+  @Test
+  public void testColorTransformationsMatchEager() {
+    for (ImageProcessor model : new ImageProcessor[]{this.eager, this.lazy}) {
+      model.luma("original", "luma");
+      model.redChannel("luma", "red");
+      model.customGreyscale(0.3, 0.3, 0.3, "red", "grey");
+      model.sepia("grey", "sepia");
+    }
+
+    for (String name : new String[]{"grey", "sepia"}) {
+      assertEquals(ImageTestUtil.savePPMString(this.eager, name),
+              ImageTestUtil.savePPMString(this.lazy, name));
+    }
+  }
+
+  /**
+   * Test that, with matrix fusion turned on, consecutive color transformations that keep
+   * every channel within 0-255 are fused into the product of their matrices, which gives
+   * the same image as a single transformation by that product.
+   */
+  @Test
+  public void testColorTransformationsAreFused() {
+    ImageProcessor fused = new LazyImageProcessor(1, 0, true);
+    fused.loadImage("res/Kirby.ppm", "original");
+    fused.luma("original", "luma");
+    fused.redChannel("luma", "red");
+    fused.customGreyscale(0.5, 0.25, 0.25, "red", "grey");
+
+    // customGreyscale * redChannel * luma
+    double[] lumaRed = new double[]{0.2126, 0.7152, 0.0722};
+    double[] grey = new double[3];
+    for (int i = 0; i < 3; i++) {
+      grey[i] = 0.5 * lumaRed[i] + 0.25 * lumaRed[i] + 0.25 * lumaRed[i];
+    }
+    this.eager.colorTransformation(new double[][]{grey, grey, grey}, "original", "grey");
+
+    assertEquals(ImageTestUtil.savePPMString(this.eager, "grey"),
+            ImageTestUtil.savePPMString(fused, "grey"));
+  }
+
+  /**
+   * Test that, even with matrix fusion turned on, color transformations whose results
+   * the eager processor clamps are not fused, so the chain gives exactly the same image.
+   */
+  @Test
+  public void testClampingTransformationsMatchEager() {
+    ImageProcessor fused = new LazyImageProcessor(1, 0, true);
+    fused.loadImage("res/Kirby.ppm", "original");
+    for (ImageProcessor model : new ImageProcessor[]{this.eager, fused}) {
+      model.customGreyscale(-1, 0, 0, "original", "negative");
+      model.customGreyscale(-1, 0, 0, "negative", "twice");
+      model.sepia("original", "sepia");
+      model.customGreyscale(1, -1, 0, "sepia", "difference");
+      model.luma("difference", "luma");
+    }
+
+    for (String name : new String[]{"twice", "difference", "luma"}) {
+      assertEquals(ImageTestUtil.savePPMString(this.eager, name),
+              ImageTestUtil.savePPMString(fused, name));
+    }
+  }
+
+  /**
+   * Test that several images computed from the same filtered intermediate, which keeps
+   * its result, give exactly the same images in lazy mode, in any order.
+   */
+  @Test
+  public void testSharedIntermediateMatchesEager() {
+    for (ImageProcessor model : new ImageProcessor[]{this.eager, this.lazy}) {
+      model.gaussianBlur("original", "blur");
+      model.sepia("blur", "sepia");
+      model.sharpen("blur", "sharp");
+      model.flipHorizontal("blur", "flip");
+      model.brightness(20, "sepia", "bright");
+    }
+
+    for (String name : new String[]{"bright", "sharp", "flip", "sepia", "blur"}) {
+      assertEquals(ImageTestUtil.savePPMString(this.eager, name),
+              ImageTestUtil.savePPMString(this.lazy, name));
+    }
+  }
+
+  /**
+   * Test that a chain of point operations, which is composed into a single lookup
+   * table, produces exactly the same image in lazy mode.
+   */
+  @Test
+  public void testPointOperationsMatchEager() {
+    for (ImageProcessor model : new ImageProcessor[]{this.eager, this.lazy}) {
+      model.brightness(30, "original", "a");
+      model.gamma(0.8, "a", "b");
+      model.contrast(1.4, "b", "c");
+      model.levels(10, 120, 240, "c", "d");
+      model.curves(new int[][]{new int[]{0, 20}, new int[]{128, 100}, new int[]{255, 250}},
+              "d", "e");
+      model.brightness(-15, "e", "f");
+    }
+
+    for (String name : new String[]{"c", "f"}) {
+      assertEquals(ImageTestUtil.savePPMString(this.eager, name),
+              ImageTestUtil.savePPMString(this.lazy, name));
+    }
+  }
+
+  /**
+   * Test that an image is not affected by operations recorded after it,
+   * including reloading its source under the same name.
+   */
+  @Test
+  public void testLaterOperationsDoNotAffectImage() {
+    this.eager.sepia("original", "sepia");
+    this.lazy.sepia("original", "sepia");
+    String expected = ImageTestUtil.savePPMString(this.eager, "sepia");
+
+    this.lazy.luma("sepia", "luma");
+    this.lazy.loadImage("res/blur.ppm", "original");
+
+    assertEquals(expected, ImageTestUtil.savePPMString(this.lazy, "sepia"));
+  }
+
+  /**
+   * Test that getImageState returns the computed image.
+   */
+  @Test
+  public void testGetImageState() {
+    this.eager.brightness(25, "original", "bright");
+    this.lazy.brightness(25, "original", "bright");
+    BufferedImage expected = this.eager.getImageState("bright");
+    BufferedImage actual = this.lazy.getImageState("bright");
+
+    assertEquals(expected.getWidth(), actual.getWidth());
+    assertEquals(expected.getHeight(), actual.getHeight());
+    for (int y = 0; y < expected.getHeight(); y++) {
+      for (int x = 0; x < expected.getWidth(); x++) {
+        assertEquals(expected.getRGB(x, y), actual.getRGB(x, y));
+      }
+    }
+  }
+
+  /**
+   * Test that recorded operations are reported as loaded images.
+   */
+  @Test
+  public void testHasLoadedImage() {
+    this.lazy.flipVertical("original", "vertical");
+
+    assertTrue(this.lazy.hasLoadedImage("vertical"));
+    assertFalse(this.lazy.hasLoadedImage("horizontal"));
+  }
+
+  /**
+   * Test that an operation on a missing image fails when it is recorded.
+   */
+  @Test (expected = IllegalArgumentException.class)
+  public void testExceptionMissingImage() {
+    this.lazy.sepia("missing", "sepia");
+  }
+
+  /**
+   * Test that an operation cannot overwrite its own source.
+   */
+  @Test (expected = IllegalArgumentException.class)
+  public void testExceptionSameNames() {
+    this.lazy.brightness(10, "original", "original");
+  }
+
+  /**
+   * Test that a color transformation matrix must be 3x3.
+   */
+  @Test (expected = IllegalArgumentException.class)
+  public void testExceptionInvalidMatrix() {
+    this.lazy.colorTransformation(new double[][]{new double[]{1, 0}}, "original", "bad");
+  }
+
+  /**
+   * Test that a kernel larger than the image is rejected when the filter is recorded.
+   */
+  @Test (expected = IllegalArgumentException.class)
+  public void testExceptionKernelLargerThanImage() {
+    this.lazy.gaussianBlur(10000, "original", "blur");
+  }
+
+  /**
+   * Test that a missing file is reported by loadImage.
+   */
+  @Test (expected = IllegalArgumentException.class)
+  public void testExceptionMissingFile() {
+    this.lazy.loadImage("res/doesNotExist.ppm", "missing");
+  }
+
+  /**
+   * Test that rotations, transposes and crops have the right size in lazy mode, so
+   * later operations are checked against it, and match eager mode.
+   */
+  @Test
+  public void testGeometryMatchesEager() {
+    for (ImageProcessor model : new ImageProcessor[]{this.eager, this.lazy}) {
+      model.rotate90("original", "rotate90");
+      model.rotate180("rotate90", "rotate270");
+      model.transpose("rotate270", "transposed");
+      model.crop(2, 1, 9, 5, "rotate90", "cropped");
+      model.gaussianBlur(2, "cropped", "croppedBlur");
+      model.rotate270("croppedBlur", "back");
+      model.downscale(5, 5, "back", "small");
+    }
+    for (String name : new String[]{"rotate90", "rotate270", "transposed", "cropped",
+        "croppedBlur", "back", "small"}) {
+      assertEquals(ImageTestUtil.savePPMString(this.eager, name),
+              ImageTestUtil.savePPMString(this.lazy, name));
+    }
+  }
+
+  /**
+   * Test that a lazy crop is checked against the size of the image as soon as it is
+   * requested.
+   */
+  @Test (expected = IllegalArgumentException.class)
+  public void testExceptionCropOutside() {
+    this.lazy.rotate90("original", "rotated");
+    BufferedImage original = this.eager.getImageState("original");
+    // the rotated image is exactly as wide as the original is tall
+    this.lazy.crop(0, 0, original.getHeight(), 1, "rotated", "cropped");
+    this.lazy.crop(0, 0, original.getHeight() + 1, 1, "rotated", "cropped");
+  }
+}
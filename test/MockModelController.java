@@ -1,9 +1,11 @@
 import java.awt.image.BufferedImage;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Objects;
 
 import model.ImageProcessor;
 import model.ImageUtil;
+import model.SaveOptions;
 
 /**
  * This represents a mock model controller used to test the inputs of the user.
@@ -95,6 +97,38 @@ public class MockModelController implements ImageProcessor {
     return;
   }
 
+  @Override
+  public void gamma(double gamma, String name, String destName)
+          throws IllegalArgumentException {
+    log.append(String.format("gamma = %f, name = %s, destName = %s\n",
+            gamma, name, destName));
+    return;
+  }
+
+  @Override
+  public void levels(int black, int mid, int white, String name, String destName)
+          throws IllegalArgumentException {
+    log.append(String.format("levels: black = %d, mid = %d, white = %d, " +
+            "name = %s, destName = %s\n", black, mid, white, name, destName));
+    return;
+  }
+
+  @Override
+  public void contrast(double factor, String name, String destName)
+          throws IllegalArgumentException {
+    log.append(String.format("contrast = %f, name = %s, destName = %s\n",
+            factor, name, destName));
+    return;
+  }
+
+  @Override
+  public void curves(int[][] points, String name, String destName)
+          throws IllegalArgumentException {
+    log.append(String.format("curves: points = %s, name = %s, destName = %s\n",
+            Arrays.deepToString(points), name, destName));
+    return;
+  }
+
   @Override
   public void flipHorizontal(String name, String destName)
           throws IllegalArgumentException {
@@ -113,6 +147,46 @@ public class MockModelController implements ImageProcessor {
     return;
   }
 
+  @Override
+  public void rotate90(String name, String destName) throws IllegalArgumentException {
+    log.append(String.format("rotate90: name = %s, destName = %s\n", name, destName));
+    return;
+  }
+
+  @Override
+  public void rotate180(String name, String destName) throws IllegalArgumentException {
+    log.append(String.format("rotate180: name = %s, destName = %s\n", name, destName));
+    return;
+  }
+
+  @Override
+  public void rotate270(String name, String destName) throws IllegalArgumentException {
+    log.append(String.format("rotate270: name = %s, destName = %s\n", name, destName));
+    return;
+  }
+
+  @Override
+  public void transpose(String name, String destName) throws IllegalArgumentException {
+    log.append(String.format("transpose: name = %s, destName = %s\n", name, destName));
+    return;
+  }
+
+  @Override
+  public void crop(int x, int y, int width, int height, String name, String destName)
+          throws IllegalArgumentException {
+    log.append(String.format("crop: x = %d, y = %d, width = %d, height = %d, " +
+            "name = %s, destName = %s\n", x, y, width, height, name, destName));
+    return;
+  }
+
+  @Override
+  public void downscale(int maxWidth, int maxHeight, String name, String destName)
+          throws IllegalArgumentException {
+    log.append(String.format("downscale: maxWidth = %d, maxHeight = %d, " +
+            "name = %s, destName = %s\n", maxWidth, maxHeight, name, destName));
+    return;
+  }
+
   @Override
   public void gaussianBlur(String name, String destName)
           throws IllegalArgumentException {
@@ -122,6 +196,15 @@ public class MockModelController implements ImageProcessor {
     return;
   }
 
+  @Override
+  public void gaussianBlur(int radius, String name, String destName)
+          throws IllegalArgumentException {
+    log.append(String.format("gaussianBlur is called with," +
+                    " radius = %d, name = %s, destname = %s\n",
+            radius, name, destName));
+    return;
+  }
+
   @Override
   public void sharpen(String name, String destName)
           throws IllegalArgumentException {
@@ -147,6 +230,11 @@ public class MockModelController implements ImageProcessor {
     return ImageUtil.generateBufferedImage(new int[10][10][3]);
   }
 
+  @Override
+  public void removeImage(String name) {
+    log.append(String.format("removeImage: name = %s\n", name));
+  }
+
   @Override
   public boolean hasLoadedImage(String name) {
     log.append("hasLoadedImage called with " + name + "\n");
@@ -174,5 +262,12 @@ public class MockModelController implements ImageProcessor {
     log.append(name + " has been saved, saveImage is being called\n");
     return;
   }
+
+  @Override
+  public void saveImage(OutputStream imageData, String name, String extension,
+                        SaveOptions options) throws IllegalArgumentException {
+    log.append(name + " has been saved with options, saveImage is being called\n");
+    return;
+  }
 }
 
@@ -0,0 +1,227 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import model.ImageProcessor;
+import model.ImageProcessorImpl;
+import model.ImageStore;
+import model.OffHeapImageStore;
+import model.PackedPixelBuffer;
+import model.PixelBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * To test the image store that keeps pixels outside the Java heap.
+ */
+public class OffHeapImageStoreTest {
+
+  private Path scratchDirectory;
+
+  /**
+   * Create an empty scratch directory for each test.
+   */
+  @Before
+  public void setUp() {
+    try {
+      this.scratchDirectory = Files.createTempDirectory("offHeapTest");
+    } catch (IOException e) {
+      throw new IllegalStateException("could not create temporary directory");
+    }
+    this.scratchDirectory.toFile().deleteOnExit();
+  }
+
+  /**
+   * Count the mapped files in the scratch directory.
+   *
+   * @return
+   *     The number of files
+   */
+  private int scratchFiles() {
+    File[] files = this.scratchDirectory.toFile().listFiles();
+    return files == null ? 0 : files.length;
+  }
+
+  /**
+   * Run the same operations on a processor that keeps images on the heap and on one that
+   * uses the given store, and check that they produce the same images.
+   *
+   * @param store
+   *     The off-heap store
+   */
+  private void checkMatchesHeap(ImageStore store) {
+    ImageProcessor heap = new ImageProcessorImpl();
+    ImageProcessor offHeap = new ImageProcessorImpl(store);
+
+    for (ImageProcessor model : new ImageProcessor[]{heap, offHeap}) {
+      model.loadImage("res/Kirby.ppm", "original");
+      model.loadImage("res/onePNG.png", "png");
+      model.sepia("original", "sepia");
+      model.brightness(20, "sepia", "bright");
+      model.gamma(1.5, "bright", "gamma");
+      model.gaussianBlur("original", "blur");
+      model.gaussianBlur(3, "original", "blur3");
+      model.sharpen("original", "sharp");
+      model.intensity("original", "intensity");
+      model.flipHorizontal("bright", "flip");
+      model.flipVertical("flip", "flip2");
+      // overwrite a state, which releases the old one
+      model.luma("original", "sepia");
+    }
+
+    for (String name : new String[]{"original", "png", "sepia", "bright", "gamma", "blur",
+        "blur3", "sharp", "intensity", "flip", "flip2"}) {
+      ByteArrayOutputStream expected = new ByteArrayOutputStream();
+      ByteArrayOutputStream actual = new ByteArrayOutputStream();
+      heap.saveImage(expected, name, ".ppm");
+      offHeap.saveImage(actual, name, ".ppm");
+      assertEquals(expected.toString(), actual.toString());
+    }
+  }
+
+  /**
+   * Test that a processor backed by direct buffers produces the same images as one that
+   * keeps images on the heap.
+   */
+  @Test
+  public void testDirectMatchesHeap() {
+    this.checkMatchesHeap(new OffHeapImageStore());
+  }
+
+  /**
+   * Test that a processor backed by memory-mapped files produces the same images as one
+   * that keeps images on the heap.
+   */
+  @Test
+  public void testMappedMatchesHeap() {
+    this.checkMatchesHeap(new OffHeapImageStore(this.scratchDirectory));
+  }
+
+  /**
+   * Test that replacing or removing a mapped image deletes its file.
+   */
+  @Test
+  public void testMappedFilesAreReleased() {
+    ImageStore store = new OffHeapImageStore(this.scratchDirectory);
+    store.put("a", store.allocate(4, 4));
+    store.put("b", store.allocate(4, 4));
+    assertEquals(2, this.scratchFiles());
+
+    store.put("a", store.allocate(8, 8));
+    assertEquals(2, this.scratchFiles());
+
+    store.remove("a");
+    store.remove("b");
+    assertFalse(store.contains("a"));
+    assertEquals(0, this.scratchFiles());
+  }
+
+  /**
+   * Test that the buffers of a released direct image are reused by the next image
+   * of the same size, and not by images of other sizes.
+   */
+  @Test
+  public void testDirectBuffersAreReused() {
+    ImageStore store = new OffHeapImageStore();
+    PixelBuffer first = store.allocate(5, 3);
+    store.put("a", first);
+    store.remove("a");
+
+    assertNotSame(first, store.allocate(3, 5));
+    assertSame(first, store.allocate(5, 3));
+    assertNotSame(first, store.allocate(5, 3));
+  }
+
+  /**
+   * Test that an image created on the heap is copied into the store.
+   */
+  @Test
+  public void testPutHeapImage() {
+    ImageStore store = new OffHeapImageStore();
+    PixelBuffer img = new PackedPixelBuffer(2, 2);
+    img.setRGB(3, PixelBuffer.pack(1, 2, 3));
+    store.put("a", img);
+    img.setRGB(3, 0);
+
+    assertTrue(store.contains("a"));
+    assertEquals(PixelBuffer.pack(1, 2, 3), store.get("a").getRGB(3));
+    assertEquals(1, store.getHits());
+  }
+
+  /**
+   * Test that a copy of an off-heap image does not share its pixels.
+   */
+  @Test
+  public void testCopyIsDeep() {
+    ImageStore store = new OffHeapImageStore();
+    PixelBuffer img = store.allocate(2, 2);
+    img.setRGB(0, PixelBuffer.pack(9, 9, 9));
+    PixelBuffer copy = img.copy();
+    img.setRGB(0, 0);
+
+    assertEquals(PixelBuffer.pack(9, 9, 9), copy.getRGB(0));
+  }
+
+  /**
+   * Test that a missing image cannot be looked up.
+   */
+  @Test (expected = IllegalArgumentException.class)
+  public void testExceptionMissingImage() {
+    new OffHeapImageStore().get("missing");
+  }
+
+  /**
+   * Test that an off-heap image must have positive dimensions.
+   */
+  @Test (expected = IllegalArgumentException.class)
+  public void testExceptionInvalidDimensions() {
+    new OffHeapImageStore().allocate(0, 4);
+  }
+
+  /**
+   * Test that an image stored under several names is only released when the last
+   * of them is removed.
+   */
+  @Test
+  public void testSharedImageReleasedOnce() {
+    ImageStore store = new OffHeapImageStore(this.scratchDirectory);
+    PixelBuffer img = store.allocate(4, 4);
+    img.setRGB(5, PixelBuffer.pack(7, 8, 9));
+    store.put("a", img);
+    store.put("b", img);
+    store.put("b", img);
+    assertEquals(1, this.scratchFiles());
+
+    store.remove("a");
+    assertEquals(1, this.scratchFiles());
+    assertEquals(PixelBuffer.pack(7, 8, 9), store.get("b").getRGB(5));
+
+    store.remove("b");
+    assertEquals(0, this.scratchFiles());
+  }
+
+  /**
+   * Test that a direct image that is still stored under another name is not reused.
+   */
+  @Test
+  public void testSharedDirectBufferNotReused() {
+    ImageStore store = new OffHeapImageStore();
+    PixelBuffer img = store.allocate(5, 3);
+    store.put("a", img);
+    store.put("b", img);
+    store.remove("a");
+
+    assertNotSame(img, store.allocate(5, 3));
+    store.remove("b");
+    assertSame(img, store.allocate(5, 3));
+  }
+}
@@ -0,0 +1,234 @@
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import model.ImageProcessor;
+import model.ImageProcessorImpl;
+import model.OperationCache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * To test the cache of operation results of an image processor.
+ */
+public class OperationCacheTest {
+
+  /**
+   * Test that repeating an operation on the same image is a hit, and gives the same
+   * image as computing it.
+   */
+  @Test
+  public void testRepeatedOperationHits() {
+    OperationCache cache = new OperationCache(64L * 1024 * 1024);
+    ImageProcessor model = new ImageProcessorImpl(1, 0, cache);
+    model.loadImage("res/onePPM.ppm", "original");
+
+    model.gaussianBlur("original", "blur1");
+    assertEquals(0, cache.getHits());
+    assertEquals(1, cache.getMisses());
+    model.gaussianBlur("original", "blur2");
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+    assertEquals(0.5, cache.getHitRate(), 1e-9);
+    assertEquals(ImageTestUtil.savePPMString(model, "blur1"),
+            ImageTestUtil.savePPMString(model, "blur2"));
+
+    ImageProcessor uncached = new ImageProcessorImpl(1, 0, (OperationCache) null);
+    uncached.loadImage("res/onePPM.ppm", "original");
+    uncached.gaussianBlur("original", "blur");
+    assertEquals(ImageTestUtil.savePPMString(uncached, "blur"),
+            ImageTestUtil.savePPMString(model, "blur2"));
+  }
+
+  /**
+   * Test that parameters are part of an operation, so different parameters miss.
+   */
+  @Test
+  public void testParametersMiss() {
+    OperationCache cache = new OperationCache(64L * 1024 * 1024);
+    ImageProcessor model = new ImageProcessorImpl(1, 0, cache);
+    model.loadImage("res/onePPM.ppm", "original");
+
+    model.brightness(10, "original", "bright10");
+    model.brightness(20, "original", "bright20");
+    model.brightness(10, "original", "again10");
+    model.gamma(1.5, "original", "gamma");
+    model.gamma(2.5, "original", "gamma");
+    assertEquals(1, cache.getHits());
+    assertEquals(4, cache.getMisses());
+    assertNotEquals(ImageTestUtil.savePPMString(model, "bright10"),
+            ImageTestUtil.savePPMString(model, "bright20"));
+    assertEquals(ImageTestUtil.savePPMString(model, "bright10"),
+            ImageTestUtil.savePPMString(model, "again10"));
+  }
+
+  /**
+   * Test that results are found by the contents of their source, so the same operation
+   * on an image that was loaded again, or computed again, is a hit.
+   */
+  @Test
+  public void testContentAddressed() {
+    OperationCache cache = new OperationCache(64L * 1024 * 1024);
+    ImageProcessor model = new ImageProcessorImpl(1, 0, cache);
+    model.loadImage("res/onePPM.ppm", "first");
+    model.loadImage("res/onePPM.ppm", "second");
+
+    model.sepia("first", "sepia1");
+    model.sepia("second", "sepia2");
+    assertEquals(1, cache.getHits());
+
+    // chains of operations on a view hit through derived hashes
+    model.rotate90("sepia1", "rotated1");
+    model.rotate90("sepia2", "rotated2");
+    model.sharpen("rotated1", "sharp1");
+    model.sharpen("rotated2", "sharp2");
+    assertEquals(2, cache.getHits());
+    assertEquals(ImageTestUtil.savePPMString(model, "sharp1"),
+            ImageTestUtil.savePPMString(model, "sharp2"));
+
+    model.loadImage("res/Kirby.ppm", "other");
+    model.sepia("other", "sepia3");
+    assertEquals(2, cache.getHits());
+  }
+
+  /**
+   * Write a 64x32 black and white image whose pixels follow the Thue-Morse sequence:
+   * pixel i is white if i has an odd number of 1 bits. An image and its complement give
+   * the same polynomial hash modulo 2^64.
+   *
+   * @param complement
+   *     True to swap black and white
+   * @return
+   *     The path of the image
+   */
+  private String thueMorsePPM(boolean complement) {
+    StringBuilder ppm = new StringBuilder("P3\n64 32\n255\n");
+    for (int i = 0; i < 64 * 32; i++) {
+      int value = (Integer.bitCount(i) % 2 == 1) != complement ? 255 : 0;
+      ppm.append(value).append(' ').append(value).append(' ').append(value).append('\n');
+    }
+    String path = ImageTestUtil.scratchPath(".ppm");
+    try {
+      Files.write(Paths.get(path), ppm.toString().getBytes(StandardCharsets.US_ASCII));
+    } catch (IOException e) {
+      throw new IllegalStateException("could not write " + path);
+    }
+    return path;
+  }
+
+  /**
+   * Test that two different images whose hashes collide never share a result.
+   */
+  @Test
+  public void testHashCollisionMisses() {
+    OperationCache cache = new OperationCache(64L * 1024 * 1024);
+    ImageProcessor model = new ImageProcessorImpl(1, 0, cache);
+    model.loadImage(this.thueMorsePPM(false), "a");
+    model.loadImage(this.thueMorsePPM(true), "b");
+    model.sepia("a", "sepiaA");
+    model.sepia("b", "sepiaB");
+    assertEquals(0, cache.getHits());
+    assertNotEquals(ImageTestUtil.savePPMString(model, "sepiaA"),
+            ImageTestUtil.savePPMString(model, "sepiaB"));
+
+    ImageProcessor uncached = new ImageProcessorImpl(1, 0, (OperationCache) null);
+    uncached.loadImage(this.thueMorsePPM(true), "b");
+    uncached.sepia("b", "sepiaB");
+    assertEquals(ImageTestUtil.savePPMString(uncached, "sepiaB"),
+            ImageTestUtil.savePPMString(model, "sepiaB"));
+  }
+
+  /**
+   * Test that the least recently used results are evicted to stay within the budget.
+   */
+  @Test
+  public void testEviction() {
+    ImageProcessor probe = new ImageProcessorImpl();
+    probe.loadImage("res/onePPM.ppm", "original");
+    long size = 4L * probe.getImageState("original").getWidth()
+            * probe.getImageState("original").getHeight();
+
+    OperationCache cache = new OperationCache(2 * size);
+    ImageProcessor model = new ImageProcessorImpl(1, 0, cache);
+    model.loadImage("res/onePPM.ppm", "original");
+    model.brightness(1, "original", "a");
+    model.brightness(2, "original", "b");
+    model.brightness(1, "original", "a");
+    model.brightness(3, "original", "c");
+    assertEquals(1, cache.getEvictions());
+
+    // 1 was used more recently than 2, so 2 was evicted
+    model.brightness(1, "original", "a");
+    assertEquals(2, cache.getHits());
+    model.brightness(2, "original", "b");
+    assertEquals(2, cache.getHits());
+    assertEquals(4, cache.getMisses());
+  }
+
+  /**
+   * Test that a result larger than the budget is never cached.
+   */
+  @Test
+  public void testLargerThanBudget() {
+    OperationCache cache = new OperationCache(16);
+    ImageProcessor model = new ImageProcessorImpl(1, 0, cache);
+    model.loadImage("res/onePPM.ppm", "original");
+    model.intensity("original", "a");
+    model.intensity("original", "b");
+    assertEquals(0, cache.getHits());
+    assertEquals(2, cache.getMisses());
+    assertEquals(0, cache.getEvictions());
+    assertEquals(ImageTestUtil.savePPMString(model, "a"), ImageTestUtil.savePPMString(model, "b"));
+  }
+
+  /**
+   * Test that the results computed from an image are forgotten when it is removed.
+   */
+  @Test
+  public void testRemovedSourceForgotten() {
+    OperationCache cache = new OperationCache(64L * 1024 * 1024);
+    ImageProcessor model = new ImageProcessorImpl(1, 0, cache);
+    model.loadImage("res/onePPM.ppm", "original");
+    model.sepia("original", "sepia");
+    model.removeImage("original");
+
+    model.loadImage("res/onePPM.ppm", "again");
+    model.sepia("again", "sepia2");
+    assertEquals(0, cache.getHits());
+    assertEquals(2, cache.getMisses());
+    model.sepia("again", "sepia3");
+    assertEquals(1, cache.getHits());
+  }
+
+  /**
+   * Test that a failed operation is not cached.
+   */
+  @Test
+  public void testFailedOperationNotCached() {
+    OperationCache cache = new OperationCache(64L * 1024 * 1024);
+    ImageProcessor model = new ImageProcessorImpl(1, 0, cache);
+    model.loadImage("res/onePPM.ppm", "original");
+    for (int i = 0; i < 2; i++) {
+      try {
+        model.gamma(-1, "original", "gamma");
+      } catch (IllegalArgumentException e) {
+        // expected
+      }
+    }
+    assertEquals(0, cache.getHits());
+    assertEquals(2, cache.getMisses());
+    assertEquals(0, cache.getHitRate(), 0);
+  }
+
+  /**
+   * Test that a cache cannot have a negative budget.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testExceptionNegativeBudget() {
+    new OperationCache(-1);
+  }
+}
@@ -0,0 +1,77 @@
+import org.junit.Test;
+
+import model.ImageUtil;
+import model.PackedPixelBuffer;
+import model.PixelBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * To test the packed pixel buffer.
+ */
+public class PackedPixelBufferTest {
+
+  /**
+   * Test that a new buffer has the given dimensions and starts out black.
+   */
+  @Test
+  public void testNewBufferIsBlack() {
+    PixelBuffer buffer = new PackedPixelBuffer(3, 2);
+
+    assertEquals(3, buffer.getWidth());
+    assertEquals(2, buffer.getHeight());
+    for (int i = 0; i < 6; i++) {
+      assertEquals(0, buffer.getRGB(i));
+    }
+  }
+
+  /**
+   * Test that a buffer cannot be created with a non-positive width or height.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidDimensions() {
+    new PackedPixelBuffer(0, 2);
+  }
+
+  /**
+   * Test that (row, col) addressing and flat-index addressing refer to the same pixels.
+   */
+  @Test
+  public void testRowColMatchesIndex() {
+    PixelBuffer buffer = new PackedPixelBuffer(3, 2);
+    buffer.setRGB(1, 2, PixelBuffer.pack(10, 20, 30));
+
+    assertEquals(PixelBuffer.pack(10, 20, 30), buffer.getRGB(5));
+    assertEquals(10, PixelBuffer.red(buffer.getRGB(1, 2)));
+    assertEquals(20, PixelBuffer.green(buffer.getRGB(1, 2)));
+    assertEquals(30, PixelBuffer.blue(buffer.getRGB(1, 2)));
+  }
+
+  /**
+   * Test that a copy does not share pixels with the original buffer.
+   */
+  @Test
+  public void testCopyIsIndependent() {
+    PixelBuffer buffer = new PackedPixelBuffer(2, 2);
+    buffer.setRGB(0, PixelBuffer.pack(255, 0, 0));
+    PixelBuffer copy = buffer.copy();
+    copy.setRGB(0, PixelBuffer.pack(0, 0, 255));
+
+    assertEquals(PixelBuffer.pack(255, 0, 0), buffer.getRGB(0));
+    assertEquals(PixelBuffer.pack(0, 0, 255), copy.getRGB(0));
+  }
+
+  /**
+   * Test converting between pixel arrays and pixel buffers.
+   */
+  @Test
+  public void testArrayRoundTrip() {
+    int[][][] img = new int[][][]{
+        new int[][]{new int[]{1, 2, 3}, new int[]{4, 5, 6}},
+        new int[][]{new int[]{7, 8, 9}, new int[]{255, 0, 128}}
+    };
+
+    assertArrayEquals(img, ImageUtil.toArray(ImageUtil.toPixelBuffer(img)));
+  }
+}
@@ -0,0 +1,181 @@
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import view.RequestQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * To test the queue that runs GUI requests in the background.
+ */
+public class RequestQueueTest {
+
+  private final List<String> log = Collections.synchronizedList(new ArrayList<>());
+
+  /**
+   * Create a queue that publishes updates right away, and logs when it becomes busy or
+   * idle.
+   *
+   * @return
+   *     The queue
+   */
+  private RequestQueue queue() {
+    return new RequestQueue(Runnable::run, busy -> {
+      if (!busy) {
+        this.log.add("idle");
+      }
+    });
+  }
+
+  /**
+   * Submit a request that waits until the given latch is released.
+   *
+   * @param queue
+   *     The queue
+   * @param release
+   *     The latch
+   */
+  private void block(RequestQueue queue, CountDownLatch release) {
+    queue.submit(() -> {
+      try {
+        release.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+  }
+
+  /**
+   * Wait until every request submitted so far has finished.
+   *
+   * @param queue
+   *     The queue
+   */
+  private void drain(RequestQueue queue) throws InterruptedException {
+    CountDownLatch done = new CountDownLatch(1);
+    queue.submit(done::countDown);
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+  }
+
+  /**
+   * Wait until the queue has told its listener that it is idle.
+   */
+  private void awaitIdle() throws InterruptedException {
+    for (int i = 0; i < 1000 && !this.log.contains("idle"); i++) {
+      Thread.sleep(10);
+    }
+    assertTrue(this.log.contains("idle"));
+  }
+
+  /**
+   * Test that requests run one at a time, in the order they were submitted, off the
+   * submitting thread.
+   */
+  @Test
+  public void testRunsInOrder() throws InterruptedException {
+    RequestQueue queue = this.queue();
+    Thread submitter = Thread.currentThread();
+    for (int i = 0; i < 20; i++) {
+      int request = i;
+      queue.submit(() -> {
+        assertTrue(Thread.currentThread() != submitter);
+        this.log.add(Integer.toString(request));
+      });
+    }
+    this.drain(queue);
+    List<String> requests = new ArrayList<>(this.log);
+    requests.removeIf(entry -> entry.equals("idle"));
+    for (int i = 0; i < 20; i++) {
+      assertEquals(Integer.toString(i), requests.get(i));
+    }
+  }
+
+  /**
+   * Test that replaceable requests waiting in the queue are replaced by later ones, but
+   * not across other requests.
+   */
+  @Test
+  public void testReplaceableRequests() throws InterruptedException {
+    RequestQueue queue = this.queue();
+    CountDownLatch release = new CountDownLatch(1);
+    this.block(queue, release);
+    for (int i = 0; i < 10; i++) {
+      int value = i;
+      queue.submitReplaceable(() -> this.log.add("slider " + value));
+    }
+    queue.submit(() -> this.log.add("flip"));
+    queue.submitReplaceable(() -> this.log.add("slider 10"));
+    queue.submitReplaceable(() -> this.log.add("slider 11"));
+    release.countDown();
+    this.drain(queue);
+
+    List<String> requests = new ArrayList<>(this.log);
+    requests.removeIf(entry -> entry.equals("idle"));
+    assertEquals(3, requests.size());
+    assertEquals("slider 9", requests.get(0));
+    assertEquals("flip", requests.get(1));
+    assertEquals("slider 11", requests.get(2));
+  }
+
+  /**
+   * Test that only the latest render is published, once the last request has finished.
+   */
+  @Test
+  public void testOnlyLatestRendered() throws InterruptedException {
+    RequestQueue queue = this.queue();
+    CountDownLatch release = new CountDownLatch(1);
+    this.block(queue, release);
+    for (int i = 0; i < 5; i++) {
+      int state = i;
+      queue.submit(() -> queue.render(() -> this.log.add("render " + state)));
+    }
+    // messages are not held back
+    queue.submit(() -> queue.publish(() -> this.log.add("message")));
+    release.countDown();
+    this.awaitIdle();
+
+    List<String> updates = new ArrayList<>(this.log);
+    updates.removeIf(entry -> entry.equals("idle"));
+    assertEquals(2, updates.size());
+    assertEquals("message", updates.get(0));
+    assertEquals("render 4", updates.get(1));
+  }
+
+  /**
+   * Test that a render outside of any request is published right away.
+   */
+  @Test
+  public void testRenderWhenIdle() throws InterruptedException {
+    RequestQueue queue = this.queue();
+    queue.render(() -> this.log.add("render"));
+    assertEquals("render", this.log.get(0));
+  }
+
+  /**
+   * Test that a failing request does not stop later requests.
+   */
+  @Test
+  public void testFailingRequest() throws InterruptedException {
+    RequestQueue queue = this.queue();
+    queue.submit(() -> {
+      throw new IllegalStateException("failed");
+    });
+    queue.submit(() -> this.log.add("after"));
+    this.drain(queue);
+    assertTrue(this.log.contains("after"));
+  }
+
+  /**
+   * Test that a queue needs a publisher and a listener.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testExceptionNullPublisher() {
+    new RequestQueue(null, busy -> { });
+  }
+}
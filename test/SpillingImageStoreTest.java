@@ -0,0 +1,258 @@
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import model.ImageProcessor;
+import model.ImageProcessorImpl;
+import model.ImageStore;
+import model.PackedPixelBuffer;
+import model.PixelBuffer;
+import model.SpillingImageStore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * To test the image store that spills least recently used images to disk.
+ */
+public class SpillingImageStoreTest {
+
+  private Path spillDirectory;
+
+  /**
+   * Create an empty spill directory for each test.
+   */
+  @Before
+  public void setUp() {
+    try {
+      this.spillDirectory = Files.createTempDirectory("spillTest");
+    } catch (IOException e) {
+      throw new IllegalStateException("could not create temporary directory");
+    }
+    this.spillDirectory.toFile().deleteOnExit();
+  }
+
+  /**
+   * Create a 10x10 image (400 bytes) whose pixels are derived from the given seed.
+   *
+   * @param seed
+   *     The seed of the pixel values
+   * @return
+   *     The image
+   */
+  private PixelBuffer image(int seed) {
+    PixelBuffer img = new PackedPixelBuffer(10, 10);
+    for (int i = 0; i < 100; i++) {
+      img.setRGB(i, PixelBuffer.pack((seed + i) % 256, (seed * 3 + i) % 256, (seed * 7) % 256));
+    }
+    return img;
+  }
+
+  /**
+   * Check that two images have the same dimensions and pixels.
+   *
+   * @param expected
+   *     The expected image
+   * @param actual
+   *     The actual image
+   */
+  private void checkSameImage(PixelBuffer expected, PixelBuffer actual) {
+    assertEquals(expected.getWidth(), actual.getWidth());
+    assertEquals(expected.getHeight(), actual.getHeight());
+    for (int i = 0; i < expected.getWidth() * expected.getHeight(); i++) {
+      assertEquals(expected.getRGB(i), actual.getRGB(i));
+    }
+  }
+
+  /**
+   * Count the spill files in the spill directory.
+   *
+   * @return
+   *     The number of files
+   */
+  private int spillFiles() {
+    File[] files = this.spillDirectory.toFile().listFiles();
+    return files == null ? 0 : files.length;
+  }
+
+  /**
+   * Test that images within the budget stay in memory, and every lookup is a hit.
+   */
+  @Test
+  public void testWithinBudgetStaysInMemory() {
+    ImageStore store = new SpillingImageStore(800, this.spillDirectory);
+    store.put("a", this.image(1));
+    store.put("b", this.image(2));
+
+    this.checkSameImage(this.image(1), store.get("a"));
+    this.checkSameImage(this.image(2), store.get("b"));
+    assertEquals(2, store.getHits());
+    assertEquals(0, store.getMisses());
+    assertEquals(0, store.getEvictions());
+    assertEquals(0, this.spillFiles());
+  }
+
+  /**
+   * Test that the least recently used image is spilled, and is read back unchanged.
+   */
+  @Test
+  public void testLeastRecentlyUsedIsSpilledAndReloaded() {
+    ImageStore store = new SpillingImageStore(800, this.spillDirectory);
+    store.put("a", this.image(1));
+    store.put("b", this.image(2));
+    // "a" becomes the most recently used image, so "b" is spilled
+    store.get("a");
+    store.put("c", this.image(3));
+
+    assertEquals(1, store.getEvictions());
+    assertEquals(1, this.spillFiles());
+    assertTrue(store.contains("b"));
+
+    this.checkSameImage(this.image(2), store.get("b"));
+    assertEquals(1, store.getMisses());
+    // reloading "b" spilled "a", the least recently used image by then
+    assertEquals(2, store.getEvictions());
+    assertEquals(1, this.spillFiles());
+    this.checkSameImage(this.image(3), store.get("c"));
+    this.checkSameImage(this.image(1), store.get("a"));
+    assertEquals(2, store.getMisses());
+  }
+
+  /**
+   * Test that an image larger than the budget still stays in memory while it is the most
+   * recently used image.
+   */
+  @Test
+  public void testImageLargerThanBudget() {
+    ImageStore store = new SpillingImageStore(100, this.spillDirectory);
+    store.put("a", this.image(1));
+
+    this.checkSameImage(this.image(1), store.get("a"));
+    assertEquals(0, store.getEvictions());
+
+    store.put("b", this.image(2));
+    assertEquals(1, store.getEvictions());
+    this.checkSameImage(this.image(1), store.get("a"));
+  }
+
+  /**
+   * Test that replacing or removing a spilled image deletes its spill file.
+   */
+  @Test
+  public void testReplaceAndRemoveDeleteSpillFiles() {
+    ImageStore store = new SpillingImageStore(0, this.spillDirectory);
+    store.put("a", this.image(1));
+    store.put("b", this.image(2));
+    assertEquals(1, this.spillFiles());
+
+    store.put("a", this.image(5));
+    // the old "a" was deleted, and "b" was spilled by the new "a"
+    assertEquals(1, this.spillFiles());
+    this.checkSameImage(this.image(5), store.get("a"));
+
+    store.remove("b");
+    assertFalse(store.contains("b"));
+    assertEquals(0, this.spillFiles());
+  }
+
+  /**
+   * Test that an image processor with a tiny memory budget produces the same images
+   * as one that keeps every image in memory.
+   */
+  @Test
+  public void testProcessorWithSpillingStore() {
+    ImageProcessor memory = new ImageProcessorImpl();
+    SpillingImageStore store = new SpillingImageStore(1, this.spillDirectory);
+    ImageProcessor spilling = new ImageProcessorImpl(store);
+
+    for (ImageProcessor model : new ImageProcessor[]{memory, spilling}) {
+      model.loadImage("res/Kirby.ppm", "original");
+      model.sepia("original", "sepia");
+      model.brightness(20, "sepia", "bright");
+      model.gaussianBlur("original", "blur");
+      model.flipHorizontal("bright", "flip");
+    }
+
+    for (String name : new String[]{"original", "sepia", "bright", "blur", "flip"}) {
+      ByteArrayOutputStream expected = new ByteArrayOutputStream();
+      ByteArrayOutputStream actual = new ByteArrayOutputStream();
+      memory.saveImage(expected, name, ".ppm");
+      spilling.saveImage(actual, name, ".ppm");
+      assertEquals(expected.toString(), actual.toString());
+    }
+    assertTrue(store.getEvictions() > 0);
+    assertTrue(store.getMisses() > 0);
+  }
+
+  /**
+   * Test that a missing image cannot be looked up.
+   */
+  @Test (expected = IllegalArgumentException.class)
+  public void testExceptionMissingImage() {
+    new SpillingImageStore(800, this.spillDirectory).get("missing");
+  }
+
+  /**
+   * Test that the memory budget cannot be negative.
+   */
+  @Test (expected = IllegalArgumentException.class)
+  public void testExceptionNegativeBudget() {
+    new SpillingImageStore(-1, this.spillDirectory);
+  }
+
+  /**
+   * Test that an image stored under several names only counts against the budget once.
+   */
+  @Test
+  public void testSharedImageCountedOnce() {
+    ImageStore store = new SpillingImageStore(400, this.spillDirectory);
+    PixelBuffer img = this.image(1);
+    store.put("a", img);
+    store.put("b", img);
+    store.put("c", img);
+    assertEquals(0, store.getEvictions());
+    assertSame(store.get("a"), store.get("c"));
+
+    // removing one name keeps the image in memory for the others
+    store.remove("b");
+    store.put("d", this.image(2));
+    assertEquals(2, store.getEvictions());
+    this.checkSameImage(this.image(1), store.get("a"));
+    this.checkSameImage(this.image(1), store.get("c"));
+  }
+
+  /**
+   * Test that an image stored under several names is spilled to a single file, and read
+   * back as a single image that still only counts against the budget once.
+   */
+  @Test
+  public void testSharedImageSpilledOnce() {
+    ImageStore store = new SpillingImageStore(400, this.spillDirectory);
+    PixelBuffer img = this.image(1);
+    store.put("a", img);
+    store.put("b", img);
+    store.put("c", this.image(2));
+    assertEquals(2, store.getEvictions());
+    assertEquals(1, this.spillFiles());
+
+    PixelBuffer reloaded = store.get("a");
+    this.checkSameImage(this.image(1), reloaded);
+    assertEquals(1, store.getMisses());
+    // "c" was spilled to make room, and "b" came back with "a"
+    assertEquals(1, this.spillFiles());
+    assertSame(reloaded, store.get("b"));
+    assertEquals(1, store.getMisses());
+
+    store.remove("a");
+    store.remove("b");
+    store.remove("c");
+    assertEquals(0, this.spillFiles());
+  }
+}
@@ -0,0 +1,182 @@
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import model.ImageProcessor;
+import model.ImageProcessorImpl;
+import model.StreamingPipeline;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * To test the pipeline that streams images a strip of rows at a time.
+ */
+public class StreamingPipelineTest {
+
+  /**
+   * Read a whole file.
+   *
+   * @param path
+   *     The path of the file
+   * @return
+   *     The contents of the file
+   */
+  private byte[] readFile(String path) {
+    try {
+      return Files.readAllBytes(Paths.get(path));
+    } catch (IOException e) {
+      throw new IllegalStateException("could not read " + path);
+    }
+  }
+
+  /**
+   * Save an image of the given model to a byte array.
+   *
+   * @param model
+   *     The model to save from
+   * @param name
+   *     The name of the image
+   * @param extension
+   *     The format to save in
+   * @return
+   *     The file contents
+   */
+  private byte[] saveBytes(ImageProcessor model, String name, String extension) {
+    ByteArrayOutputStream imageData = new ByteArrayOutputStream();
+    model.saveImage(imageData, name, extension);
+    return imageData.toByteArray();
+  }
+
+  /**
+   * Test that a chain of point operations, color transformations and filters streamed in
+   * strips much shorter than the image gives exactly the same image as the eager
+   * image processor.
+   */
+  @Test
+  public void testChainMatchesEager() {
+    ImageProcessor eager = new ImageProcessorImpl();
+    eager.loadImage("res/Kirby.ppm", "original");
+    eager.brightness(20, "original", "a");
+    eager.gamma(1.2, "a", "b");
+    eager.gaussianBlur("b", "c");
+    eager.sepia("c", "d");
+    eager.sharpen("d", "e");
+    eager.flipHorizontal("e", "f");
+    eager.gaussianBlur(3, "f", "g");
+    eager.intensity("g", "h");
+
+    for (int strip : new int[]{1, 7, 64, 100000}) {
+      String output = ImageTestUtil.scratchPath(".ppm");
+      new StreamingPipeline(strip).brightness(20).gamma(1.2).gaussianBlur().sepia()
+              .sharpen().flipHorizontal().gaussianBlur(3).intensity()
+              .run("res/Kirby.ppm", output);
+
+      assertArrayEquals(this.saveBytes(eager, "h", ".ppm"), this.readFile(output));
+    }
+  }
+
+  /**
+   * Test that an image one row taller than a multiple of the strip height, whose last
+   * strip is a single row, gives the same image as the eager image processor.
+   */
+  @Test
+  public void testShortLastStrip() {
+    ImageProcessor eager = new ImageProcessorImpl();
+    eager.loadImage("res/Kirby.ppm", "original");
+    eager.crop(0, 0, 275, 257, "original", "cropped");
+    String input = ImageTestUtil.scratchPath(".ppm");
+    try {
+      Files.write(Paths.get(input), this.saveBytes(eager, "cropped", ".ppm"));
+    } catch (IOException e) {
+      throw new IllegalStateException("could not write " + input);
+    }
+    eager.gaussianBlur("cropped", "blur");
+    eager.sharpen("cropped", "sharp");
+    eager.gaussianBlur("sharp", "chain");
+
+    for (int strip : new int[]{4, 8, 16, 64}) {
+      String output = ImageTestUtil.scratchPath(".ppm");
+      new StreamingPipeline(strip).gaussianBlur().run(input, output);
+      assertArrayEquals(this.saveBytes(eager, "blur", ".ppm"), this.readFile(output));
+
+      output = ImageTestUtil.scratchPath(".ppm");
+      new StreamingPipeline(strip).sharpen().gaussianBlur().run(input, output);
+      assertArrayEquals(this.saveBytes(eager, "chain", ".ppm"), this.readFile(output));
+    }
+  }
+
+  /**
+   * Test that a raw pixmap can be streamed in parallel into every Netpbm output format.
+   */
+  @Test
+  public void testRawFormats() {
+    ImageProcessor eager = new ImageProcessorImpl();
+    eager.loadImage("res/Kirby.ppm", "original");
+    String input = ImageTestUtil.scratchPath(".pnm");
+    try {
+      Files.write(Paths.get(input), this.saveBytes(eager, "original", ".pnm"));
+    } catch (IOException e) {
+      throw new IllegalStateException("could not write " + input);
+    }
+    eager.luma("original", "luma");
+    eager.gaussianBlur("luma", "blur");
+
+    for (String extension : new String[]{".pnm", ".pgm", ".pbm"}) {
+      String output = ImageTestUtil.scratchPath(extension);
+      new StreamingPipeline(5, 4, 0).luma().gaussianBlur().run(input, output);
+
+      assertArrayEquals(this.saveBytes(eager, "blur", extension), this.readFile(output));
+    }
+  }
+
+  /**
+   * Test that a pipeline without operations copies the image.
+   */
+  @Test
+  public void testEmptyPipeline() {
+    ImageProcessor eager = new ImageProcessorImpl();
+    eager.loadImage("res/Kirby.ppm", "original");
+    String output = ImageTestUtil.scratchPath(".ppm");
+    new StreamingPipeline(3).run("res/Kirby.ppm", output);
+
+    assertEquals(new String(this.saveBytes(eager, "original", ".ppm")),
+            new String(this.readFile(output)));
+  }
+
+  /**
+   * Test that only Netpbm files can be streamed.
+   */
+  @Test (expected = IllegalArgumentException.class)
+  public void testExceptionNotNetpbm() {
+    new StreamingPipeline(8).sepia().run("res/onePNG.png", ImageTestUtil.scratchPath(".ppm"));
+  }
+
+  /**
+   * Test that only Netpbm files can be written.
+   */
+  @Test (expected = IllegalArgumentException.class)
+  public void testExceptionNotNetpbmOutput() {
+    new StreamingPipeline(8).sepia().run("res/Kirby.ppm", ImageTestUtil.scratchPath(".png"));
+  }
+
+  /**
+   * Test that a kernel larger than the image is rejected.
+   */
+  @Test (expected = IllegalArgumentException.class)
+  public void testExceptionKernelLargerThanImage() {
+    new StreamingPipeline(8).gaussianBlur(5000)
+            .run("res/Kirby.ppm", ImageTestUtil.scratchPath(".ppm"));
+  }
+
+  /**
+   * Test that the strip height must be positive.
+   */
+  @Test (expected = IllegalArgumentException.class)
+  public void testExceptionStripHeight() {
+    new StreamingPipeline(0);
+  }
+}